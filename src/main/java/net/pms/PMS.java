@@ -79,6 +79,7 @@ import net.pms.newgui.*;
 import net.pms.newgui.StatusTab.ConnectionState;
 import net.pms.newgui.components.WindowProperties.WindowPropertiesConfiguration;
 import net.pms.remote.RemoteWeb;
+import net.pms.service.ProbeCache;
 import net.pms.service.Services;
 import net.pms.util.*;
 import org.apache.commons.configuration.ConfigurationException;
@@ -95,6 +96,13 @@ public class PMS {
 	private static final String SCROLLBARS = "scrollbars";
 	private static final String CONSOLE = "console";
 	private static final String NOCONSOLE = "noconsole";
+
+	/** The startup stage that registers and tests the transcoding engines */
+	private static final String STAGE_ENGINES = "engines";
+
+	/** The startup stage that loads the renderer configurations */
+	private static final String STAGE_RENDERERS = "renderer configurations";
+
 	public static final String CROWDIN_LINK = "http://crowdin.com/project/DigitalMediaServer";
 
 	private boolean ready = false;
@@ -231,6 +239,12 @@ public class PMS {
 	 */
 	private IFrame frame;
 
+	/**
+	 * The thread that probes the transcoding engines again after startup, if
+	 * any, which is interrupted at shutdown.
+	 */
+	private volatile Thread probeRefresher;
+
 	/**
 	 * Main resource database that supports search capabilities. Also known as media cache.
 	 * @see net.pms.dlna.DLNAMediaDatabase
@@ -382,6 +396,8 @@ public class PMS {
 	 * @throws InitializationException If an error occurs during initialization.
 	 */
 	private boolean init(@Nullable Map<Option, Object> options) throws IOException, InitializationException {
+		StartupStages stages = new StartupStages();
+
 		// Gather and log system information from a separate thread
 		LogSystemInformationMode logSystemInfo = configuration.getLogSystemInformation();
 		if (
@@ -453,7 +469,25 @@ public class PMS {
 		// Call this as early as possible
 		displayBanner();
 
+		// The transcoding engines and the renderer configurations don't
+		// depend on the database, so they're prepared while it's initialized
+		stages.start(STAGE_ENGINES, new Runnable() {
+
+			@Override
+			public void run() {
+				PlayerFactory.initialize();
+			}
+		});
+		stages.start(STAGE_RENDERERS, new Runnable() {
+
+			@Override
+			public void run() {
+				RendererConfiguration.loadRendererConfigurations(configuration);
+			}
+		});
+
 		// Initialize database
+		long stageStart = System.nanoTime();
 		try {
 			if (!initializeDatabase(options, splash[0])) {
 				if (splash[0] != null) {
@@ -481,6 +515,7 @@ public class PMS {
 			}
 			throw e;
 		}
+		stages.record("database", stageStart);
 
 		// Log registered ImageIO plugins
 		if (LOGGER.isTraceEnabled()) {
@@ -510,6 +545,15 @@ public class PMS {
 
 		globalRepo = new GlobalIdRepo();
 
+		// The main window lists the renderer configurations
+		try {
+			stages.await(STAGE_RENDERERS);
+		} catch (InterruptedException e) {
+			LOGGER.info("Loading of the renderer configurations was interrupted, aborting...");
+			return false;
+		}
+
+		stageStart = System.nanoTime();
 		if (!isHeadless()) {
 			try {
 				SwingUtilities.invokeAndWait(new Runnable() {
@@ -531,6 +575,7 @@ public class PMS {
 			LOGGER.info("Switching to console mode");
 			frame = new DummyFrame();
 		}
+		stages.record("main window", stageStart);
 
 		// Close splash screen
 		if (splash[0] != null) {
@@ -597,7 +642,6 @@ public class PMS {
 		codes = new CodeDb();
 		masterCode = null;
 
-		RendererConfiguration.loadRendererConfigurations(configuration);
 		// Now that renderer confs are all loaded, we can start searching for renderers
 		UPNPHelper.getInstance().init();
 
@@ -671,14 +715,20 @@ public class PMS {
 
 		server = new HTTPServer(configuration.getServerPort());
 
-		// Initialize a player factory to register all players
-		PlayerFactory.initialize();
+		// Wait for the player factory to register all players
+		try {
+			stages.await(STAGE_ENGINES);
+		} catch (InterruptedException e) {
+			LOGGER.info("Testing of the transcoding engines was interrupted, aborting...");
+			return false;
+		}
 
 		// Any plugin-defined players are now registered, create the gui view.
 		frame.addEngines();
 
 		boolean binding = false;
 
+		stageStart = System.nanoTime();
 		try {
 			binding = server.start();
 		} catch (BindException b) {
@@ -705,12 +755,14 @@ public class PMS {
 		if (!binding) {
 			return false;
 		}
+		stages.record("HTTP server", stageStart);
 
 		if (web != null && web.getServer() != null) {
 			LOGGER.info("WEB interface is available at: {}", web.getUrl());
 		}
 
 		// initialize the cache
+		stageStart = System.nanoTime();
 		if (configuration.getUseCache()) {
 			mediaLibrary = new MediaLibrary();
 			LOGGER.info("A tiny cache admin interface is available at: http://{}:{}/console/home", server.getHost(), server.getPort());
@@ -720,6 +772,7 @@ public class PMS {
 		//     a) *after* loading plugins i.e. plugins register root folders then RootFolder.discoverChildren adds them
 		//     b) *after* mediaLibrary is initialized, if enabled (above)
 		getRootFolder(RendererConfiguration.getDefaultConf());
+		stages.record("root folder", stageStart);
 
 		frame.serverReady();
 
@@ -741,6 +794,10 @@ public class PMS {
 
 					LOGGER.debug("Shutting down all active processes");
 
+					Thread refresher = probeRefresher;
+					if (refresher != null) {
+						refresher.interrupt();
+					}
 					if (Services.processManager() != null) {
 						Services.processManager().stop();
 					}
@@ -757,6 +814,19 @@ public class PMS {
 					LOGGER.trace("", e);
 				}
 
+				if (!Platform.isWindows()) {
+					PosixNamedPipe.closePool();
+				}
+
+				// Write pending parsing results while the database is still open
+				DLNAMediaDatabase pendingDatabase;
+				synchronized (databaseLock) {
+					pendingDatabase = database;
+				}
+				if (pendingDatabase != null) {
+					pendingDatabase.getWriteQueue().shutdown();
+				}
+
 				// Destroy services
 				Services.destroy();
 
@@ -782,6 +852,7 @@ public class PMS {
 			LOGGER.trace("Waiting 250 milliseconds...");
 			Thread.sleep(250);
 			UPNPHelper.sendAlive();
+			stages.logTimings(getName() + " was discoverable");
 			LOGGER.trace("Waiting 250 milliseconds...");
 			Thread.sleep(250);
 			UPNPHelper.listen();
@@ -789,6 +860,28 @@ public class PMS {
 			return false;
 		}
 
+		// Refresh outdated engine capabilities now that the server is up
+		final ProbeCache probeCache = Services.probeCache();
+		if (probeCache != null && probeCache.hasStaleProbes()) {
+			Thread refresher = new Thread("Engine Probe Refresh") {
+				@Override
+				public void run() {
+					try {
+						PlayerFactory.retestExecutables(probeCache.reprobe());
+					} catch (InterruptedException e) {
+						LOGGER.debug("Interrupted while probing the transcoding engines again");
+						Thread.currentThread().interrupt();
+					} finally {
+						probeRefresher = null;
+					}
+				}
+			};
+			// Don't keep the JVM alive while the probes run
+			refresher.setDaemon(true);
+			probeRefresher = refresher;
+			refresher.start();
+		}
+
 		return true;
 	}
 
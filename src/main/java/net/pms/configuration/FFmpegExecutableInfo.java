@@ -42,7 +42,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import net.pms.encoders.ExecutableErrorType;
 import net.pms.io.ListProcessWrapperResult;
-import net.pms.io.SimpleProcessWrapper;
+import net.pms.service.ProbeCache;
 import net.pms.util.Version;
 
 
@@ -337,7 +337,7 @@ public class FFmpegExecutableInfo extends ExecutableInfo {
 	 */
 	public static void determineFormats(@Nonnull FFmpegExecutableInfoBuilder builder) throws InterruptedException {
 
-		ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+		ListProcessWrapperResult output = ProbeCache.runProbe(
 			30000,
 			1000,
 			builder.executablePath().toString(),
@@ -396,7 +396,7 @@ public class FFmpegExecutableInfo extends ExecutableInfo {
 		builder.codecs(new HashMap<String, CodecBuilder>());
 
 		// Parse -codecs
-		ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+		ListProcessWrapperResult output = ProbeCache.runProbe(
 			30000,
 			1000,
 			builder.executablePath().toString(),
@@ -472,7 +472,7 @@ public class FFmpegExecutableInfo extends ExecutableInfo {
 		Pattern codersLine = Pattern.compile("\\s([ASV\\.])([F\\.])([S\\.])([X\\.])([B\\.])([D\\.])\\s+(\\S+)\\s+(.*\\S)\\s*");
 
 		// Parse -decoders
-		output = SimpleProcessWrapper.runProcessListOutput(
+		output = ProbeCache.runProbe(
 			30000,
 			1000,
 			builder.executablePath().toString(),
@@ -544,7 +544,7 @@ public class FFmpegExecutableInfo extends ExecutableInfo {
 		}
 
 		// Parse -encoders
-		output = SimpleProcessWrapper.runProcessListOutput(
+		output = ProbeCache.runProbe(
 			30000,
 			1000,
 			builder.executablePath().toString(),
@@ -624,7 +624,7 @@ public class FFmpegExecutableInfo extends ExecutableInfo {
 	 * @throws InterruptedException If interrupted during execution.
 	 */
 	public static void determineProtocols(@Nonnull FFmpegExecutableInfoBuilder builder) throws InterruptedException {
-		ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+		ListProcessWrapperResult output = ProbeCache.runProbe(
 			30000,
 			1000,
 			builder.executablePath().toString(),
@@ -705,7 +705,7 @@ public class FFmpegExecutableInfo extends ExecutableInfo {
 	 * @throws InterruptedException If interrupted during execution.
 	 */
 	public static void determineBitstreamFilters(@Nonnull FFmpegExecutableInfoBuilder builder) throws InterruptedException {
-		ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+		ListProcessWrapperResult output = ProbeCache.runProbe(
 			30000,
 			1000,
 			builder.executablePath().toString(),
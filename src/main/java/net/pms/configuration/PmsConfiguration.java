@@ -43,6 +43,7 @@ import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 import net.pms.Messages;
 import net.pms.PMS;
+import net.pms.database.DatabaseProfile;
 import net.pms.dlna.CodeEnter;
 import net.pms.dlna.MediaType;
 import net.pms.dlna.RootFolder;
@@ -156,6 +157,11 @@ public class PmsConfiguration extends RendererConfiguration {
 	protected static final String KEY_CODE_TMO = "code_valid_timeout";
 	protected static final String KEY_CODE_USE = "code_enable";
 	protected static final String KEY_DATABASE_CACHE_SIZE = "db_cache_size";
+	protected static final String KEY_DATABASE_COMPACT_THRESHOLD = "db_compact_threshold";
+	protected static final String KEY_DATABASE_LOCK_MODE = "db_lock_mode";
+	protected static final String KEY_DATABASE_RETENTION_TIME = "db_retention_time";
+	protected static final String KEY_DATABASE_STATEMENT_CACHE_SIZE = "db_statement_cache_size";
+	protected static final String KEY_DATABASE_WRITE_DELAY = "db_write_delay";
 	protected static final String KEY_DISABLE_FAKESIZE = "disable_fakesize";
 	public    static final String KEY_DISABLE_SUBTITLES = "disable_subtitles";
 	protected static final String KEY_DISABLE_TRANSCODE_FOR_EXTENSIONS = "disable_transcode_for_extensions";
@@ -209,6 +215,10 @@ public class PmsConfiguration extends RendererConfiguration {
 	protected static final String KEY_IP_FILTER = "ip_filter";
 	protected static final String KEY_ITUNES_LIBRARY_PATH = "itunes_library_path";
 	protected static final String KEY_LANGUAGE = "language";
+	protected static final String KEY_LIBRARY_LIVE_INDEX = "library_live_index";
+	protected static final String KEY_LIBRARY_LIVE_INDEX_DELAY = "library_live_index_delay";
+	protected static final String KEY_LIBRARY_SCAN_THREADS = "library_scan_threads";
+	protected static final String KEY_LIBRARY_SCAN_THREADS_PER_VOLUME = "library_scan_threads_per_volume";
 	protected static final String KEY_LIVE_SUBTITLES_KEEP = "live_subtitles_keep";
 	protected static final String KEY_LIVE_SUBTITLES_LIMIT = "live_subtitles_limit";
 	protected static final String KEY_LIVE_SUBTITLES_TMO = "live_subtitles_timeout";
@@ -226,6 +236,7 @@ public class PmsConfiguration extends RendererConfiguration {
 	protected static final String KEY_MAX_AUDIO_BUFFER = "maximum_audio_buffer_size";
 	protected static final String KEY_MAX_BITRATE = "maximum_bitrate";
 	protected static final String KEY_MAX_MEMORY_BUFFER_SIZE = "maximum_video_buffer_size";
+	protected static final String KEY_MEDIAINFO_POOL_SIZE = "mediainfo_pool_size";
 	protected static final String KEY_MEDIA_LIB_SORT = "media_lib_sort";
 	protected static final String KEY_MENCODER_ASS = "mencoder_ass";
 	protected static final String KEY_MENCODER_AC3_FIXED = "mencoder_ac3_fixed";
@@ -270,6 +281,10 @@ public class PmsConfiguration extends RendererConfiguration {
 	protected static final String KEY_PLAYLIST_AUTO_PLAY= "playlist_auto_play";
 	protected static final String KEY_PLUGIN_FOLDER = "plugins";
 	protected static final String KEY_PLUGIN_PURGE_ACTION = "plugin_purge";
+	protected static final String KEY_PREROLL_BUFFER_SIZE = "preroll_buffer_size";
+	protected static final String KEY_PREROLL_ENABLED = "preroll_enabled";
+	protected static final String KEY_PREROLL_MAX_CONCURRENT = "preroll_max_concurrent";
+	protected static final String KEY_PREROLL_START_PERCENT = "preroll_start_percent";
 	protected static final String KEY_PRETTIFY_FILENAMES = "prettify_filenames";
 	/**
 	 * This key was used in older versions, only supports {@code true} or
@@ -759,6 +774,21 @@ public class PmsConfiguration extends RendererConfiguration {
 		return Math.min(getInt(KEY_MENCODER_MAX_THREADS, getNumberOfCpuCores()), MENCODER_MAX_THREADS);
 	}
 
+	/**
+	 * Returns the maximum number of {@code MediaInfo} instances that can
+	 * parse files at the same time. If not configured, the number of CPU
+	 * cores up to 8 is used.
+	 *
+	 * @return The {@code MediaInfo} pool size.
+	 */
+	public int getMediaInfoPoolSize() {
+		int value = getInt(KEY_MEDIAINFO_POOL_SIZE, 0);
+		if (value > 0) {
+			return value;
+		}
+		return Math.max(1, Math.min(getNumberOfCpuCores(), 8));
+	}
+
 	/**
 	 * @return {@code true} if custom program paths are supported, {@code false}
 	 *         otherwise.
@@ -1295,6 +1325,58 @@ public class PmsConfiguration extends RendererConfiguration {
 		configuration.setProperty(KEY_MAX_MEMORY_BUFFER_SIZE, Math.max(0, Math.min(MAX_MAX_MEMORY_BUFFER_SIZE, value)));
 	}
 
+	/**
+	 * Returns whether the transcode of the next item in a folder or playlist
+	 * should be started in the background while the current item is playing.
+	 * Default is false.
+	 *
+	 * @return {@code true} if pre-rolling is enabled, {@code false} otherwise.
+	 */
+	public boolean isPreRollEnabled() {
+		return getBoolean(KEY_PREROLL_ENABLED, false);
+	}
+
+	/**
+	 * Sets whether the transcode of the next item in a folder or playlist
+	 * should be started in the background while the current item is playing.
+	 *
+	 * @param value whether pre-rolling should be enabled.
+	 */
+	public void setPreRollEnabled(boolean value) {
+		configuration.setProperty(KEY_PREROLL_ENABLED, value);
+	}
+
+	/**
+	 * Returns how far into the current item, in percent of its duration,
+	 * the pre-roll of the next item should start. Default value is 80.
+	 *
+	 * @return The pre-roll start position in percent.
+	 */
+	public int getPreRollStartPercent() {
+		return Math.max(0, Math.min(100, getInt(KEY_PREROLL_START_PERCENT, 80)));
+	}
+
+	/**
+	 * Returns the maximum amount of transcoded data in megabytes to buffer
+	 * for a pre-rolled item before playback starts. The value is limited by
+	 * {@link #getMaxMemoryBufferSize()}. Default value is 20.
+	 *
+	 * @return The pre-roll buffer size in megabytes.
+	 */
+	public int getPreRollBufferSize() {
+		return Math.max(1, Math.min(getMaxMemoryBufferSize(), getInt(KEY_PREROLL_BUFFER_SIZE, 20)));
+	}
+
+	/**
+	 * Returns the maximum number of pre-rolled transcodes that can run at
+	 * the same time across all renderers. Default value is 1.
+	 *
+	 * @return The maximum number of concurrent pre-rolls.
+	 */
+	public int getPreRollMaxConcurrent() {
+		return Math.max(0, getInt(KEY_PREROLL_MAX_CONCURRENT, 1));
+	}
+
 	/**
 	 * Returns the font scale used for ASS subtitling. Default value is 1.4.
 	 * @return The ASS font scale.
@@ -2276,6 +2358,49 @@ public class PmsConfiguration extends RendererConfiguration {
 		return getBoolean(KEY_USE_CACHE, true);
 	}
 
+	/**
+	 * Returns the number of threads the library scanner uses. If not
+	 * configured, the number of CPU cores is used.
+	 *
+	 * @return The number of library scanner threads.
+	 */
+	public int getLibraryScanThreads() {
+		int value = getInt(KEY_LIBRARY_SCAN_THREADS, 0);
+		return value > 0 ? value : Math.max(1, getNumberOfCpuCores());
+	}
+
+	/**
+	 * Returns the maximum number of folders on the same volume (mount point
+	 * or drive) the library scanner processes at the same time.
+	 *
+	 * @return The number of library scanner threads per volume.
+	 */
+	public int getLibraryScanThreadsPerVolume() {
+		return Math.max(1, getInt(KEY_LIBRARY_SCAN_THREADS_PER_VOLUME, 2));
+	}
+
+	/**
+	 * Returns whether changes to the shared folders should be applied to the
+	 * cache and the folder tree as they happen, based on file system
+	 * notifications.
+	 *
+	 * @return {@code true} if live indexing is enabled, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isLibraryLiveIndex() {
+		return getBoolean(KEY_LIBRARY_LIVE_INDEX, true);
+	}
+
+	/**
+	 * Returns the number of milliseconds a changed file must stay unchanged
+	 * before it is parsed by the live indexer.
+	 *
+	 * @return The live indexing delay in milliseconds.
+	 */
+	public int getLibraryLiveIndexDelay() {
+		return Math.max(0, getInt(KEY_LIBRARY_LIVE_INDEX_DELAY, 2000));
+	}
+
 	/**
 	 * Set to true if DMS should cache scanned media in its internal database,
 	 * speeding up later retrieval.
@@ -4365,6 +4490,65 @@ public class PmsConfiguration extends RendererConfiguration {
 		return dbLog || PMS.getLogDB();
 	}
 
+	/**
+	 * Returns the H2 lock mode to use for the database: {@code 0} for no
+	 * locking, {@code 1} for table level locking or {@code 3} for read
+	 * committed.
+	 *
+	 * @return The lock mode or {@code -1} to use the H2 default.
+	 */
+	public int getDatabaseLockMode() {
+		int value = getInt(KEY_DATABASE_LOCK_MODE, -1);
+		if (value != -1 && value != 0 && value != 1 && value != 3) {
+			LOGGER.warn("Ignoring invalid database lock mode {}", value);
+			return -1;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the maximum number of milliseconds the database waits before
+	 * committed changes are written to disk.
+	 *
+	 * @return The write delay in milliseconds or {@code -1} to use the H2
+	 *         default.
+	 */
+	public int getDatabaseWriteDelay() {
+		return Math.max(-1, getInt(KEY_DATABASE_WRITE_DELAY, -1));
+	}
+
+	/**
+	 * Returns the number of milliseconds the MVStore keeps old versions of
+	 * changed pages before their space can be reused.
+	 *
+	 * @return The retention time in milliseconds or {@code -1} to use the H2
+	 *         default.
+	 */
+	public int getDatabaseRetentionTime() {
+		return Math.max(-1, getInt(KEY_DATABASE_RETENTION_TIME, -1));
+	}
+
+	/**
+	 * Returns the number of parsed statements every database connection
+	 * keeps, so that preparing the same SQL again doesn't parse it again.
+	 *
+	 * @return The statement cache size, {@code 0} disables the cache.
+	 */
+	public int getDatabaseStatementCacheSize() {
+		return Math.max(0, getInt(KEY_DATABASE_STATEMENT_CACHE_SIZE, DatabaseProfile.DEFAULT_STATEMENT_CACHE_SIZE));
+	}
+
+	/**
+	 * Returns the percentage of unused space in the database file at which
+	 * the database is compacted during startup.
+	 *
+	 * @return The threshold in percent or {@code 0} if the database should
+	 *         never be compacted automatically.
+	 */
+	public int getDatabaseCompactThreshold() {
+		return Math.min(100, Math.max(0, getInt(KEY_DATABASE_COMPACT_THRESHOLD, 0)));
+	}
+
 	public boolean isVlcUseHardwareAccel() {
 		return getBoolean(KEY_VLC_USE_HW_ACCELERATION, false);
 	}
@@ -9,9 +9,13 @@ import java.io.IOException;
 import java.io.Reader;
 import java.net.InetAddress;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -43,6 +47,7 @@ import net.pms.network.SpeedStats;
 import net.pms.network.UPNPHelper;
 import net.pms.newgui.StatusTab;
 import net.pms.util.BasicPlayer;
+import net.pms.util.BasicThreadFactory;
 import net.pms.util.FileWatcher;
 import net.pms.util.FormattableColor;
 import net.pms.util.PropertiesUtil;
@@ -249,6 +254,13 @@ public class RendererConfiguration extends UPNPHelper.Renderer {
 	 */
 	public static final Object loadRendererConfigurationsLock = new Object();
 
+	/**
+	 * The index of parsed renderer configuration files, only set while
+	 * {@link #loadRendererConfigurations(PmsConfiguration)} is running.
+	 */
+	@Nullable
+	private static volatile RendererConfigurationIndex index;
+
 	/**
 	 * Load all renderer configuration files and set up the default renderer.
 	 *
@@ -257,7 +269,7 @@ public class RendererConfiguration extends UPNPHelper.Renderer {
 	public static void loadRendererConfigurations(PmsConfiguration dmsConf) {
 		synchronized(loadRendererConfigurationsLock) {
 			_pmsConfiguration = dmsConf;
-			enabledRendererConfs = new TreeSet<>(rendererLoadingPriorityComparator);
+			TreeSet<RendererConfiguration> enabledConfs = new TreeSet<>(rendererLoadingPriorityComparator);
 
 			try {
 				defaultConf = new RendererConfiguration();
@@ -274,30 +286,69 @@ public class RendererConfiguration extends UPNPHelper.Renderer {
 				Arrays.sort(confs);
 				int rank = 1;
 
-				List<String> selectedRenderers = dmsConf.getSelectedRenderers();
-				for (File f : confs) {
-					if (f.getName().endsWith(".conf")) {
+				/*
+				 * Parse the files in parallel, but rank and register them
+				 * in file name order so that the result is the same as when
+				 * they're parsed one by one.
+				 */
+				index = new RendererConfigurationIndex(Paths.get(dmsConf.getProfileFolder(), RendererConfigurationIndex.FILENAME));
+				ExecutorService executor = Executors.newFixedThreadPool(
+					Math.max(1, Runtime.getRuntime().availableProcessors()),
+					new BasicThreadFactory("Renderer configuration loader %d-%d")
+				);
+				try {
+					List<File> files = new ArrayList<>();
+					List<Future<RendererConfiguration>> futures = new ArrayList<>();
+					for (final File f : confs) {
+						if (f.getName().endsWith(".conf")) {
+							files.add(f);
+							futures.add(executor.submit(new Callable<RendererConfiguration>() {
+
+								@Override
+								public RendererConfiguration call() throws ConfigurationException {
+									return new RendererConfiguration(f);
+								}
+							}));
+						}
+					}
+
+					List<String> selectedRenderers = dmsConf.getSelectedRenderers();
+					for (int i = 0; i < futures.size(); i++) {
+						RendererConfiguration r;
 						try {
-							RendererConfiguration r = new RendererConfiguration(f);
-							r.rank = rank++;
-							String rendererName = r.getConfName();
-							allRenderersNames.add(rendererName);
-							String renderersGroup = null;
-							if (rendererName.indexOf(' ') > 0) {
-								renderersGroup = rendererName.substring(0, rendererName.indexOf(' '));
+							r = futures.get(i).get();
+						} catch (ExecutionException e) {
+							LOGGER.info("Error in loading configuration of: " + files.get(i).getAbsolutePath());
+							if (!(e.getCause() instanceof ConfigurationException)) {
+								LOGGER.debug("", e.getCause());
 							}
+							continue;
+						}
+						r.rank = rank++;
+						String rendererName = r.getConfName();
+						allRenderersNames.add(rendererName);
+						String renderersGroup = null;
+						if (rendererName.indexOf(' ') > 0) {
+							renderersGroup = rendererName.substring(0, rendererName.indexOf(' '));
+						}
 
-							if (selectedRenderers.contains(rendererName) || selectedRenderers.contains(renderersGroup) || selectedRenderers.contains(dmsConf.ALL_RENDERERS)) {
-								enabledRendererConfs.add(r);
-							} else {
-								LOGGER.debug("Ignored \"{}\" configuration", rendererName);
-							}
-						} catch (ConfigurationException ce) {
-							LOGGER.info("Error in loading configuration of: " + f.getAbsolutePath());
+						if (selectedRenderers.contains(rendererName) || selectedRenderers.contains(renderersGroup) || selectedRenderers.contains(dmsConf.ALL_RENDERERS)) {
+							enabledConfs.add(r);
+						} else {
+							LOGGER.debug("Ignored \"{}\" configuration", rendererName);
 						}
 					}
+				} catch (InterruptedException e) {
+					LOGGER.debug("Interrupted while loading renderer configurations");
+					Thread.currentThread().interrupt();
+				} finally {
+					executor.shutdownNow();
+					LOGGER.debug("Restored {} renderer configurations from the index", index.getHits());
+					index.save();
+					index = null;
 				}
 			}
+			enabledRendererConfs = enabledConfs;
 		}
 
 		LOGGER.info("Enabled " + enabledRendererConfs.size() + " configurations, listed in order of loading priority:");
@@ -987,7 +1038,13 @@ public class RendererConfiguration extends UPNPHelper.Renderer {
 
 	public boolean load(File f) throws ConfigurationException {
 		if (f != null && !f.equals(NOFILE) && (configuration instanceof PropertiesConfiguration)) {
-			((PropertiesConfiguration) configuration).load(f);
+			RendererConfigurationIndex currentIndex = index;
+			if (currentIndex == null || !currentIndex.restore(f, configuration)) {
+				((PropertiesConfiguration) configuration).load(f);
+				if (currentIndex != null) {
+					currentIndex.store(f, configuration);
+				}
+			}
 
 			// Set up the header matcher
 			SortedHeaderMap searchMap = new SortedHeaderMap();
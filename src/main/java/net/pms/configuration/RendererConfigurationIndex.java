@@ -0,0 +1,278 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.configuration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class keeps the parsed properties of the renderer configuration files,
+ * so that files that haven't changed since the last start don't have to be
+ * parsed again.
+ * <p>
+ * The properties are stored by path together with the size and modification
+ * time of the file, and are only used as long as they match. Entries for
+ * files that weren't used since the index was read are dropped when it's
+ * saved.
+ */
+@ThreadSafe
+public class RendererConfigurationIndex {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RendererConfigurationIndex.class);
+
+	/** The name of the index file in the profile folder */
+	public static final String FILENAME = "renderers.cache";
+
+	/** The version of the index file format */
+	private static final int VERSION = 1;
+
+	/** The index file or {@code null} if the index isn't persisted */
+	@Nullable
+	protected final Path file;
+
+	@GuardedBy("this")
+	private final HashMap<String, Entry> entries = new HashMap<>();
+
+	/** The paths that have been restored or stored since the index was read */
+	@GuardedBy("this")
+	private final HashSet<String> used = new HashSet<>();
+
+	@GuardedBy("this")
+	private boolean dirty;
+
+	@GuardedBy("this")
+	private int hits;
+
+	/**
+	 * Creates a new {@link RendererConfigurationIndex} and reads the index
+	 * file if it exists.
+	 *
+	 * @param file the index file or {@code null} to not persist the index.
+	 */
+	public RendererConfigurationIndex(@Nullable Path file) {
+		this.file = file;
+		load();
+	}
+
+	/**
+	 * Adds the indexed properties of the specified renderer configuration
+	 * file to {@code configuration} if the file is unchanged.
+	 *
+	 * @param conf the renderer configuration file.
+	 * @param configuration the {@link Configuration} to add the properties
+	 *            to.
+	 * @return {@code true} if the properties were added, {@code false} if
+	 *         the file must be parsed.
+	 */
+	public boolean restore(@Nonnull File conf, @Nonnull Configuration configuration) {
+		String path = conf.getAbsolutePath();
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(path);
+			if (entry == null || entry.size != conf.length() || entry.modified != conf.lastModified()) {
+				return false;
+			}
+			used.add(path);
+			hits++;
+		}
+		for (Map.Entry<String, List<String>> property : entry.properties.entrySet()) {
+			for (String value : property.getValue()) {
+				configuration.addProperty(property.getKey(), value);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the properties of a renderer configuration file that has just
+	 * been parsed.
+	 *
+	 * @param conf the renderer configuration file.
+	 * @param configuration the {@link Configuration} holding the parsed
+	 *            properties.
+	 */
+	public void store(@Nonnull File conf, @Nonnull Configuration configuration) {
+		LinkedHashMap<String, List<String>> properties = new LinkedHashMap<>();
+		for (Iterator<String> keys = configuration.getKeys(); keys.hasNext();) {
+			String key = keys.next();
+			List<String> values = new ArrayList<>();
+			for (Object value : configuration.getList(key)) {
+				values.add(value == null ? "" : value.toString());
+			}
+			properties.put(key, Collections.unmodifiableList(values));
+		}
+		String path = conf.getAbsolutePath();
+		Entry entry = new Entry(conf.length(), conf.lastModified(), properties);
+		synchronized (this) {
+			entries.put(path, entry);
+			used.add(path);
+			dirty = true;
+		}
+	}
+
+	/**
+	 * @return The number of indexed renderer configuration files.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The number of renderer configuration files that were restored
+	 *         from the index.
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Writes the index file if an entry has been stored or has become unused
+	 * since the index was read.
+	 */
+	public synchronized void save() {
+		if (entries.keySet().retainAll(used)) {
+			dirty = true;
+		}
+		if (file == null || !dirty) {
+			return;
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				output.writeInt(VERSION);
+				output.writeInt(entries.size());
+				for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+					Entry entry = mapEntry.getValue();
+					writeString(output, mapEntry.getKey());
+					output.writeLong(entry.size);
+					output.writeLong(entry.modified);
+					output.writeInt(entry.properties.size());
+					for (Map.Entry<String, List<String>> property : entry.properties.entrySet()) {
+						writeString(output, property.getKey());
+						output.writeInt(property.getValue().size());
+						for (String value : property.getValue()) {
+							writeString(output, value);
+						}
+					}
+				}
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			dirty = false;
+			LOGGER.debug("Saved the index of {} renderer configurations to \"{}\"", entries.size(), file);
+		} catch (IOException e) {
+			LOGGER.warn("Couldn't save the renderer configuration index to \"{}\": {}", file, e.getMessage());
+			LOGGER.trace("", e);
+		}
+	}
+
+	private synchronized void load() {
+		entries.clear();
+		if (file == null) {
+			return;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != VERSION) {
+				LOGGER.debug("Ignoring the renderer configuration index \"{}\" because it's from another version", file);
+				return;
+			}
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = readString(input);
+				long size = input.readLong();
+				long modified = input.readLong();
+				int propertyCount = input.readInt();
+				LinkedHashMap<String, List<String>> properties = new LinkedHashMap<>();
+				for (int j = 0; j < propertyCount; j++) {
+					String key = readString(input);
+					int valueCount = input.readInt();
+					List<String> values = new ArrayList<>(Math.max(0, valueCount));
+					for (int k = 0; k < valueCount; k++) {
+						values.add(readString(input));
+					}
+					properties.put(key, Collections.unmodifiableList(values));
+				}
+				entries.put(path, new Entry(size, modified, properties));
+			}
+			LOGGER.debug("Read the index of {} renderer configurations from \"{}\"", entries.size(), file);
+		} catch (NoSuchFileException e) {
+			LOGGER.trace("The renderer configuration index \"{}\" doesn't exist", file);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.debug("Ignoring the renderer configuration index \"{}\" because it couldn't be read: {}", file, e.getMessage());
+			LOGGER.trace("", e);
+			entries.clear();
+		}
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The parsed properties of a renderer configuration file.
+	 */
+	@Immutable
+	private static class Entry {
+		private final long size;
+		private final long modified;
+		private final Map<String, List<String>> properties;
+
+		public Entry(long size, long modified, Map<String, List<String>> properties) {
+			this.size = size;
+			this.modified = modified;
+			this.properties = Collections.unmodifiableMap(properties);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.database;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.h2.engine.Constants;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.util.ConversionUtil;
+
+/**
+ * The H2 settings that affect the performance of the database. Settings with
+ * a negative value, and a cache size of {@code 0}, are left at the H2
+ * default.
+ */
+@Immutable
+public class DatabaseProfile {
+
+	/** The default number of parsed statements kept per connection */
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+	private final int cacheSize;
+	private final int lockMode;
+	private final int writeDelay;
+	private final int retentionTime;
+	private final int statementCacheSize;
+	private final boolean logging;
+
+	/**
+	 * Creates a new profile.
+	 *
+	 * @param cacheSize the cache size in KiB or {@code 0}.
+	 * @param lockMode the H2 lock mode or {@code -1}.
+	 * @param writeDelay the write delay in milliseconds or {@code -1}.
+	 * @param retentionTime the MVStore retention time in milliseconds or
+	 *            {@code -1}.
+	 * @param statementCacheSize the number of parsed statements kept per
+	 *            connection or {@code -1}.
+	 * @param logging whether H2 should log to its trace file.
+	 */
+	public DatabaseProfile(
+		int cacheSize,
+		int lockMode,
+		int writeDelay,
+		int retentionTime,
+		int statementCacheSize,
+		boolean logging
+	) {
+		this.cacheSize = cacheSize;
+		this.lockMode = lockMode;
+		this.writeDelay = writeDelay;
+		this.retentionTime = retentionTime;
+		this.statementCacheSize = statementCacheSize;
+		this.logging = logging;
+	}
+
+	/**
+	 * Creates a profile from the database settings of the specified
+	 * configuration.
+	 *
+	 * @param configuration the {@link PmsConfiguration} or {@code null} to
+	 *            use the defaults.
+	 * @return The new {@link DatabaseProfile}.
+	 */
+	@Nonnull
+	public static DatabaseProfile create(@Nullable PmsConfiguration configuration) {
+		if (configuration == null) {
+			return new DatabaseProfile(0, -1, -1, -1, DEFAULT_STATEMENT_CACHE_SIZE, false);
+		}
+		return new DatabaseProfile(
+			configuration.getDatabaseCacheSize(),
+			configuration.getDatabaseLockMode(),
+			configuration.getDatabaseWriteDelay(),
+			configuration.getDatabaseRetentionTime(),
+			configuration.getDatabaseStatementCacheSize(),
+			configuration.getDatabaseLogging()
+		);
+	}
+
+	/**
+	 * @return The cache size in KiB or {@code 0} for the H2 default.
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * @return The H2 lock mode or {@code -1} for the H2 default.
+	 */
+	public int getLockMode() {
+		return lockMode;
+	}
+
+	/**
+	 * @return The write delay in milliseconds or {@code -1} for the H2
+	 *         default.
+	 */
+	public int getWriteDelay() {
+		return writeDelay;
+	}
+
+	/**
+	 * @return The MVStore retention time in milliseconds or {@code -1} for
+	 *         the H2 default.
+	 */
+	public int getRetentionTime() {
+		return retentionTime;
+	}
+
+	/**
+	 * @return The number of parsed statements kept per connection or
+	 *         {@code -1} for the H2 default.
+	 */
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * @return {@code true} if H2 logs to its trace file, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isLogging() {
+		return logging;
+	}
+
+	/**
+	 * Builds the JDBC URL for the specified database file with the settings
+	 * of this profile.
+	 *
+	 * @param databaseFilename the database file path without extension.
+	 * @return The JDBC URL.
+	 */
+	@Nonnull
+	public String buildURL(@Nonnull String databaseFilename) {
+		StringBuilder sb = new StringBuilder(Constants.START_URL)
+			.append("nio:")
+			.append(databaseFilename)
+			.append(";MULTI_THREADED=1");
+		if (cacheSize > 0) {
+			sb.append(";CACHE_SIZE=").append(cacheSize);
+		}
+		if (lockMode >= 0) {
+			sb.append(";LOCK_MODE=").append(lockMode);
+		}
+		if (writeDelay >= 0) {
+			sb.append(";WRITE_DELAY=").append(writeDelay);
+		}
+		if (retentionTime >= 0) {
+			sb.append(";RETENTION_TIME=").append(retentionTime);
+		}
+		if (statementCacheSize >= 0) {
+			sb.append(";QUERY_CACHE_SIZE=").append(statementCacheSize);
+		}
+		if (logging) {
+			sb.append(";TRACE_LEVEL_FILE=4");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("DatabaseProfile [cache=");
+		if (cacheSize <= 0) {
+			sb.append("default");
+		} else {
+			sb.append(ConversionUtil.formatBytes(cacheSize * 1024L, true));
+		}
+		sb.append(", lockMode=").append(lockMode < 0 ? "default" : Integer.toString(lockMode))
+			.append(", writeDelay=").append(writeDelay < 0 ? "default" : writeDelay + " ms")
+			.append(", retentionTime=").append(retentionTime < 0 ? "default" : retentionTime + " ms")
+			.append(", statementCache=").append(statementCacheSize < 0 ? "default" : Integer.toString(statementCacheSize))
+			.append(", logging=").append(logging).append(']');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.database;
+
+import java.io.File;
+import java.util.Iterator;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.h2.mvstore.Chunk;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.pms.util.ConversionUtil;
+
+/**
+ * The size of an H2 MVStore database file and how much of it is in use.
+ * <p>
+ * The MVStore only appends to the file. Rewritten and deleted rows leave
+ * their old pages in place until the chunk holding them is completely unused,
+ * so a database that has been scanned repeatedly can consist mostly of
+ * unused space, which costs reads and cache space. The statistics are read
+ * from the chunk metadata without opening the database itself.
+ */
+@Immutable
+public class DatabaseStatistics {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseStatistics.class);
+
+	private static final String CHUNK_PREFIX = "chunk.";
+
+	private final long fileSize;
+	private final long chunkLength;
+	private final long liveLength;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param fileSize the size of the database file in bytes.
+	 * @param chunkLength the total length of the pages in all chunks.
+	 * @param liveLength the length of the pages that are still in use.
+	 */
+	public DatabaseStatistics(long fileSize, long chunkLength, long liveLength) {
+		this.fileSize = fileSize;
+		this.chunkLength = chunkLength;
+		this.liveLength = liveLength;
+	}
+
+	/**
+	 * Reads the statistics of the specified MVStore file. This must be done
+	 * while the database is closed.
+	 *
+	 * @param file the MVStore database file.
+	 * @return The {@link DatabaseStatistics} or {@code null} if the file
+	 *         doesn't exist or can't be read.
+	 */
+	@Nullable
+	public static DatabaseStatistics read(@Nonnull File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		MVStore store = null;
+		try {
+			store = new MVStore.Builder().fileName(file.getAbsolutePath()).readOnly().open();
+			long chunkLength = 0;
+			long liveLength = 0;
+			MVMap<String, String> meta = store.getMetaMap();
+			for (Iterator<String> iterator = meta.keyIterator(CHUNK_PREFIX); iterator.hasNext();) {
+				String key = iterator.next();
+				if (!key.startsWith(CHUNK_PREFIX)) {
+					break;
+				}
+				Chunk chunk = Chunk.fromString(meta.get(key));
+				chunkLength += chunk.maxLen;
+				liveLength += chunk.maxLenLive;
+			}
+			return new DatabaseStatistics(file.length(), chunkLength, liveLength);
+		} catch (RuntimeException e) {
+			// The database is in use or damaged, which is reported when it's opened
+			LOGGER.debug("Couldn't read the statistics of database file \"{}\": {}", file, e.getMessage());
+			LOGGER.trace("", e);
+			return null;
+		} finally {
+			if (store != null) {
+				store.closeImmediately();
+			}
+		}
+	}
+
+	/**
+	 * @return The size of the database file in bytes.
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * @return The total length of the pages in all chunks.
+	 */
+	public long getChunkLength() {
+		return chunkLength;
+	}
+
+	/**
+	 * @return The length of the pages that are still in use.
+	 */
+	public long getLiveLength() {
+		return liveLength;
+	}
+
+	/**
+	 * @return The percentage of the stored pages that are no longer in use.
+	 */
+	public int getUnusedPercent() {
+		if (chunkLength <= 0) {
+			return 0;
+		}
+		return (int) ((chunkLength - Math.min(liveLength, chunkLength)) * 100 / chunkLength);
+	}
+
+	@Override
+	public String toString() {
+		return
+			ConversionUtil.formatBytes(fileSize, true) + ", " +
+			getUnusedPercent() + "% unused";
+	}
+}
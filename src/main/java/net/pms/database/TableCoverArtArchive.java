@@ -20,6 +20,7 @@ package net.pms.database;
 
 import static net.pms.database.Tables.*;
 import static org.apache.commons.lang3.StringUtils.isBlank;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -33,6 +34,8 @@ import org.h2.api.ErrorCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import net.pms.dlna.DLNABinaryThumbnail;
+import net.pms.dlna.DLNAThumbnail;
+import net.pms.dlna.MediaColumnCodec;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 
@@ -54,7 +57,7 @@ public final class TableCoverArtArchive extends Table {
 	 * definition. Table upgrade SQL must also be added to
 	 * {@link #upgradeTable()}
 	 */
-	private static final int TABLE_VERSION = 2;
+	private static final int TABLE_VERSION = 3;
 
 	/**
 	 * Should only be instantiated by {@link TableManager}.
@@ -92,7 +95,7 @@ public final class TableCoverArtArchive extends Table {
 					"EXPIRES DATETIME, " +
 					"MBID VARCHAR(36), " +
 					"COVER BLOB, " +
-					"THUMBNAIL OTHER" +
+					"THUMBNAIL VARBINARY" +
 				")");
 			statement.execute("CREATE INDEX MBID_IDX ON " + ID + "(MBID)");
 		}
@@ -114,6 +117,13 @@ public final class TableCoverArtArchive extends Table {
 						statement.executeUpdate("ALTER TABLE " + ID + " ADD COLUMN THUMBNAIL OTHER");
 						statement.executeUpdate("ALTER TABLE " + ID + " ALTER COLUMN MODIFIED RENAME TO EXPIRES");
 						break;
+					case 2:
+						// Version 3 stores THUMBNAIL in the MediaColumnCodec format instead of as a serialized object.
+						statement.executeUpdate("ALTER TABLE " + ID + " ADD COLUMN THUMBNAILDATA VARBINARY");
+						convertThumbnails(connection);
+						statement.executeUpdate("ALTER TABLE " + ID + " DROP COLUMN THUMBNAIL");
+						statement.executeUpdate("ALTER TABLE " + ID + " ALTER COLUMN THUMBNAILDATA RENAME TO THUMBNAIL");
+						break;
 					default:
 						throw new IllegalStateException(
 							"Table \"" + ID + "is missing table upgrade commands from version " +
@@ -130,6 +140,44 @@ public final class TableCoverArtArchive extends Table {
 		}
 	}
 
+	/**
+	 * Converts the serialized thumbnails in column {@code THUMBNAIL} to the
+	 * {@link MediaColumnCodec} format in column {@code THUMBNAILDATA}.
+	 * Thumbnails that can't be deserialized are dropped, they will be created
+	 * again when needed.
+	 *
+	 * @param connection the {@link Connection} to use.
+	 * @throws SQLException If a SQL error occurs during the operation.
+	 */
+	private static void convertThumbnails(@Nonnull Connection connection) throws SQLException {
+		int converted = 0;
+		try (
+			Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE);
+			ResultSet result = statement.executeQuery(
+				"SELECT ID, THUMBNAIL, THUMBNAILDATA FROM " + ID + " WHERE THUMBNAIL IS NOT NULL"
+			);
+		) {
+			while (result.next()) {
+				Object thumbnail;
+				try {
+					thumbnail = result.getObject("THUMBNAIL");
+				} catch (Exception e) {
+					LOGGER.trace("Dropping thumbnail {} that can't be deserialized: {}", result.getLong("ID"), e.getMessage());
+					continue;
+				}
+				if (thumbnail instanceof DLNABinaryThumbnail) {
+					byte[] bytes = encodeThumbnail((DLNABinaryThumbnail) thumbnail);
+					if (bytes != null) {
+						result.updateBytes("THUMBNAILDATA", bytes);
+						result.updateRow();
+						converted++;
+					}
+				}
+			}
+		}
+		LOGGER.debug("Converted {} thumbnails in database table \"{}\"", converted, ID);
+	}
+
 	/**
 	 * Stores the cover {@link Blob} with the given {@code MBID} in the
 	 * database.
@@ -170,7 +218,7 @@ public final class TableCoverArtArchive extends Table {
 							if (thumbnail == null) {
 								result.updateNull("THUMBNAIL");
 							} else {
-								result.updateObject("THUMBNAIL", thumbnail);
+								result.updateBytes("THUMBNAIL", encodeThumbnail(thumbnail));
 							}
 							result.updateRow();
 						} else if (trace) {
@@ -192,7 +240,7 @@ public final class TableCoverArtArchive extends Table {
 							result.updateBytes("COVER", cover);
 						}
 						if (thumbnail != null) {
-							result.updateObject("THUMBNAIL", thumbnail);
+							result.updateBytes("THUMBNAIL", encodeThumbnail(thumbnail));
 						}
 						result.insertRow();
 					}
@@ -235,12 +283,12 @@ public final class TableCoverArtArchive extends Table {
 					if (resultSet.next()) {
 						DLNABinaryThumbnail thumbnail;
 						try {
-							thumbnail = (DLNABinaryThumbnail) resultSet.getObject("THUMBNAIL");
+							thumbnail = decodeThumbnail(resultSet.getBytes("THUMBNAIL"));
 						} catch (Exception e) {
 							thumbnail = null;
 							if (trace) {
 								LOGGER.trace(
-									"Deserialization failed for MBID \"{}\", returning null: {}",
+									"Decoding thumbnail failed for MBID \"{}\", returning null: {}",
 									mBID,
 									e.getMessage()
 								);
@@ -297,11 +345,11 @@ public final class TableCoverArtArchive extends Table {
 			) {
 				if (resultSet.next()) {
 					try {
-						return (DLNABinaryThumbnail) resultSet.getObject("THUMBNAIL");
+						return decodeThumbnail(resultSet.getBytes("THUMBNAIL"));
 					} catch (Exception e) {
 						if (trace) {
 							LOGGER.trace(
-								"Deserialization failed for MBID \"{}\", returning null: {}",
+								"Decoding thumbnail failed for MBID \"{}\", returning null: {}",
 								mBID,
 								e.getMessage()
 							);
@@ -345,7 +393,7 @@ public final class TableCoverArtArchive extends Table {
 						if (thumbnail == null) {
 							result.updateNull("THUMBNAIL");
 						} else {
-							result.updateObject("THUMBNAIL", thumbnail);
+							result.updateBytes("THUMBNAIL", encodeThumbnail(thumbnail));
 						}
 						result.updateRow();
 					} else {
@@ -362,6 +410,26 @@ public final class TableCoverArtArchive extends Table {
 		}
 	}
 
+	@Nullable
+	private static byte[] encodeThumbnail(@Nullable DLNABinaryThumbnail thumbnail) {
+		try {
+			return MediaColumnCodec.encodeThumbnail(thumbnail);
+		} catch (IOException e) {
+			LOGGER.debug("Unable to encode thumbnail, it will not be stored: {}", e.getMessage());
+			LOGGER.trace("", e);
+			return null;
+		}
+	}
+
+	@Nullable
+	private static DLNABinaryThumbnail decodeThumbnail(@Nullable byte[] bytes) throws IOException {
+		DLNAThumbnail thumbnail = MediaColumnCodec.decodeThumbnail(bytes);
+		if (thumbnail == null || thumbnail instanceof DLNABinaryThumbnail) {
+			return (DLNABinaryThumbnail) thumbnail;
+		}
+		throw new IOException("Unexpected thumbnail type " + thumbnail.getClass().getSimpleName());
+	}
+
 	private static String contructMBIDWhere(String mBID) {
 		return " WHERE MBID" + sqlNullIfBlank(mBID, true, false);
 	}
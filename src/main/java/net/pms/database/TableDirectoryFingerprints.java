@@ -0,0 +1,366 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.database;
+
+import static net.pms.database.Tables.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * This class is responsible for managing the directory fingerprints table. A
+ * {@link DirectoryFingerprint} summarizes the direct entries of a directory,
+ * so that the library scanner can tell whether a directory has changed since
+ * it was last scanned without looking up every file in the cache. All
+ * operations involving this table shall be done with this class.
+ */
+public final class TableDirectoryFingerprints extends Table {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TableDirectoryFingerprints.class);
+	private static final TableId ID = TableId.DIRECTORY_FINGERPRINTS;
+
+	/**
+	 * Table version must be increased every time a change is done to the table
+	 * definition. Table upgrade SQL must also be added to
+	 * {@link #upgradeTable()}
+	 */
+	private static final int TABLE_VERSION = 1;
+
+	/**
+	 * Should only be instantiated by {@link TableManager}.
+	 *
+	 * @param tableManager the {@link TableManager} to use.
+	 */
+	TableDirectoryFingerprints(@Nonnull TableManager tableManager) {
+		super(tableManager);
+	}
+
+	@Override
+	@Nonnull
+	public TableId getTableId() {
+		return ID;
+	}
+
+	@Override
+	public int getTableVersion() {
+		return TABLE_VERSION;
+	}
+
+	@Override
+	@Nullable
+	public EnumSet<TableId> getRelatedTables() {
+		return null;
+	}
+
+	@Override
+	protected void createTable(@Nonnull Connection connection) throws SQLException {
+		LOGGER.debug("Creating database table \"{}\"", ID);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(
+				"CREATE TABLE " + ID + "(" +
+					"PATH VARCHAR(1024) PRIMARY KEY, " +
+					"MODIFIED BIGINT NOT NULL, " +
+					"ENTRIES INT NOT NULL, " +
+					"NAMES_HASH BIGINT NOT NULL" +
+				")");
+		}
+	}
+
+	@Override
+	protected void upgradeTable(@Nonnull Connection connection, int currentVersion) throws SQLException {
+		LOGGER.info("Upgrading database table \"{}\" from version {} to {}", ID, currentVersion, TABLE_VERSION);
+		throw new IllegalStateException(
+			"Table \"" + ID + "is missing table upgrade commands from version " +
+			currentVersion + " to " + TABLE_VERSION
+		);
+	}
+
+	/**
+	 * @return {@code true} if no fingerprints are stored, {@code false}
+	 *         otherwise.
+	 * @throws SQLException If an SQL error occurs during the operation.
+	 */
+	public boolean isEmpty() throws SQLException {
+		try (
+			Connection connection = getConnection();
+			Statement statement = connection.createStatement();
+			ResultSet resultSet = statement.executeQuery("SELECT TOP 1 PATH FROM " + ID)
+		) {
+			return !resultSet.next();
+		}
+	}
+
+	/**
+	 * Looks up the stored fingerprint for a directory.
+	 *
+	 * @param path the absolute path of the directory.
+	 * @return The stored {@link DirectoryFingerprint} or {@code null}.
+	 * @throws SQLException If an SQL error occurs during the operation.
+	 */
+	@Nullable
+	public DirectoryFingerprint find(@Nonnull String path) throws SQLException {
+		try (
+			Connection connection = getConnection();
+			PreparedStatement statement = connection.prepareStatement(
+				"SELECT MODIFIED, ENTRIES, NAMES_HASH FROM " + ID + " WHERE PATH = ?"
+			)
+		) {
+			statement.setString(1, path);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (resultSet.next()) {
+					return new DirectoryFingerprint(
+						path,
+						resultSet.getLong("MODIFIED"),
+						resultSet.getInt("ENTRIES"),
+						resultSet.getLong("NAMES_HASH"),
+						null
+					);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stores or replaces the specified fingerprints in a single transaction.
+	 *
+	 * @param fingerprints the {@link DirectoryFingerprint}s to store.
+	 * @throws SQLException If an SQL error occurs during the operation.
+	 */
+	public void store(@Nonnull Collection<DirectoryFingerprint> fingerprints) throws SQLException {
+		if (fingerprints.isEmpty()) {
+			return;
+		}
+		try (Connection connection = getConnection()) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection.prepareStatement(
+				"MERGE INTO " + ID + " (PATH, MODIFIED, ENTRIES, NAMES_HASH) KEY(PATH) VALUES (?, ?, ?, ?)"
+			)) {
+				for (DirectoryFingerprint fingerprint : fingerprints) {
+					statement.setString(1, fingerprint.getPath());
+					statement.setLong(2, fingerprint.getModified());
+					statement.setInt(3, fingerprint.getEntries());
+					statement.setLong(4, fingerprint.getNamesHash());
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		LOGGER.trace("Stored {} directory fingerprints", fingerprints.size());
+	}
+
+	/**
+	 * Removes the fingerprints of the specified directory and the directories
+	 * below it that no longer exist.
+	 *
+	 * @param path the absolute path of the directory.
+	 * @return The number of removed fingerprints.
+	 * @throws SQLException If an SQL error occurs during the operation.
+	 */
+	public int removeMissing(@Nonnull String path) throws SQLException {
+		int removed = 0;
+		try (
+			Connection connection = getConnection();
+			PreparedStatement statement = connection.prepareStatement(
+				"SELECT PATH FROM " + ID + " WHERE PATH = ? OR PATH LIKE ?",
+				ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_UPDATABLE
+			)
+		) {
+			statement.setString(1, path);
+			statement.setString(2, sqlLikeEscape(path.endsWith(File.separator) ? path : path + File.separator) + "%");
+			try (ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					if (!new File(resultSet.getString("PATH")).isDirectory()) {
+						resultSet.deleteRow();
+						removed++;
+					}
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * A summary of the direct entries of a directory. Two fingerprints are
+	 * equal if the directory's modification time, the number of entries and
+	 * the hash of the entry names, sizes and modification times are equal.
+	 */
+	@Immutable
+	public static class DirectoryFingerprint {
+
+		private final String path;
+		private final long modified;
+		private final int entries;
+		private final long namesHash;
+		private final List<Path> subdirectories;
+
+		/**
+		 * Creates a new instance using the specified values.
+		 *
+		 * @param path the absolute path of the directory.
+		 * @param modified the modification time of the directory.
+		 * @param entries the number of entries in the directory.
+		 * @param namesHash the hash of the entries.
+		 * @param subdirectories the sub-directories or {@code null} if unknown.
+		 */
+		public DirectoryFingerprint(
+			@Nonnull String path,
+			long modified,
+			int entries,
+			long namesHash,
+			@Nullable List<Path> subdirectories
+		) {
+			this.path = path;
+			this.modified = modified;
+			this.entries = entries;
+			this.namesHash = namesHash;
+			this.subdirectories = subdirectories == null ? null : Collections.unmodifiableList(subdirectories);
+		}
+
+		/**
+		 * Lists the specified directory and creates its fingerprint. This
+		 * reads the attributes of every entry, but doesn't descend into
+		 * sub-directories.
+		 *
+		 * @param directory the directory.
+		 * @return The new {@link DirectoryFingerprint}.
+		 * @throws IOException If an error occurs while reading the directory.
+		 */
+		@Nonnull
+		public static DirectoryFingerprint create(@Nonnull Path directory) throws IOException {
+			directory = directory.toAbsolutePath();
+			long modified = Files.getLastModifiedTime(directory).toMillis();
+			ArrayList<Path> subdirectories = new ArrayList<>();
+			int entries = 0;
+			long hash = 0;
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (Path entry : stream) {
+					entries++;
+					long entryHash = entry.getFileName().toString().hashCode();
+					BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+					if (attributes.isDirectory()) {
+						subdirectories.add(entry);
+					} else {
+						entryHash = entryHash * 31 + attributes.size();
+						entryHash = entryHash * 31 + attributes.lastModifiedTime().toMillis();
+					}
+					// The sum is independent of the listing order
+					hash += mix(entryHash);
+				}
+			}
+			return new DirectoryFingerprint(directory.toString(), modified, entries, hash, subdirectories);
+		}
+
+		private static long mix(long value) {
+			value ^= value >>> 33;
+			value *= 0xff51afd7ed558ccdL;
+			value ^= value >>> 33;
+			value *= 0xc4ceb9fe1a85ec53L;
+			value ^= value >>> 33;
+			return value;
+		}
+
+		/**
+		 * @return The absolute path of the directory.
+		 */
+		@Nonnull
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return The modification time of the directory.
+		 */
+		public long getModified() {
+			return modified;
+		}
+
+		/**
+		 * @return The number of entries in the directory.
+		 */
+		public int getEntries() {
+			return entries;
+		}
+
+		/**
+		 * @return The hash of the entries.
+		 */
+		public long getNamesHash() {
+			return namesHash;
+		}
+
+		/**
+		 * @return The sub-directories found by {@link #create(Path)} or
+		 *         {@code null} if this fingerprint was read from the database.
+		 */
+		@Nullable
+		public List<Path> getSubdirectories() {
+			return subdirectories;
+		}
+
+		/**
+		 * Compares the directory state of this and another fingerprint.
+		 *
+		 * @param other the other {@link DirectoryFingerprint}.
+		 * @return {@code true} if the directory is unchanged, {@code false}
+		 *         otherwise.
+		 */
+		public boolean matches(@Nullable DirectoryFingerprint other) {
+			return
+				other != null &&
+				path.equals(other.path) &&
+				modified == other.modified &&
+				entries == other.entries &&
+				namesHash == other.namesHash;
+		}
+
+		@Override
+		public String toString() {
+			return
+				"DirectoryFingerprint [path=" + path + ", modified=" + modified +
+				", entries=" + entries + ", namesHash=" + namesHash + "]";
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.database;
+
+import static net.pms.database.Tables.*;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * This class is responsible for managing the folder relevance table. A
+ * {@link FolderRelevance} records whether a directory contains anything that
+ * can be shown when empty folders are hidden, so that the directory tree
+ * doesn't have to be walked again after a restart. All operations involving
+ * this table shall be done with this class.
+ */
+public final class TableFolderRelevance extends Table {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TableFolderRelevance.class);
+	private static final TableId ID = TableId.FOLDER_RELEVANCE;
+
+	/** The separator used to store {@link FolderRelevance#getNames()} */
+	private static final String NAMES_SEPARATOR = "/";
+
+	/**
+	 * Table version must be increased every time a change is done to the table
+	 * definition. Table upgrade SQL must also be added to
+	 * {@link #upgradeTable()}
+	 */
+	private static final int TABLE_VERSION = 1;
+
+	/**
+	 * Should only be instantiated by {@link TableManager}.
+	 *
+	 * @param tableManager the {@link TableManager} to use.
+	 */
+	TableFolderRelevance(@Nonnull TableManager tableManager) {
+		super(tableManager);
+	}
+
+	@Override
+	@Nonnull
+	public TableId getTableId() {
+		return ID;
+	}
+
+	@Override
+	public int getTableVersion() {
+		return TABLE_VERSION;
+	}
+
+	@Override
+	@Nullable
+	public EnumSet<TableId> getRelatedTables() {
+		return null;
+	}
+
+	@Override
+	protected void createTable(@Nonnull Connection connection) throws SQLException {
+		LOGGER.debug("Creating database table \"{}\"", ID);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(
+				"CREATE TABLE " + ID + "(" +
+					"PATH VARCHAR(1024) PRIMARY KEY, " +
+					"MODIFIED BIGINT NOT NULL, " +
+					"RELEVANT BOOLEAN NOT NULL, " +
+					"ARCHIVES BOOLEAN NOT NULL, " +
+					"NAMES VARCHAR" +
+				")");
+		}
+	}
+
+	@Override
+	protected void upgradeTable(@Nonnull Connection connection, int currentVersion) throws SQLException {
+		LOGGER.info("Upgrading database table \"{}\" from version {} to {}", ID, currentVersion, TABLE_VERSION);
+		throw new IllegalStateException(
+			"Table \"" + ID + "is missing table upgrade commands from version " +
+			currentVersion + " to " + TABLE_VERSION
+		);
+	}
+
+	/**
+	 * Looks up the stored relevance of a directory.
+	 *
+	 * @param path the absolute path of the directory.
+	 * @param archiveBrowsing whether archives are browsable. Relevance stored
+	 *            with a different setting is ignored.
+	 * @return The stored {@link FolderRelevance} or {@code null}.
+	 * @throws SQLException If an SQL error occurs during the operation.
+	 */
+	@Nullable
+	public FolderRelevance find(@Nonnull String path, boolean archiveBrowsing) throws SQLException {
+		try (
+			Connection connection = getConnection();
+			PreparedStatement statement = connection.prepareStatement(
+				"SELECT MODIFIED, RELEVANT, NAMES FROM " + ID + " WHERE PATH = ? AND ARCHIVES = ?"
+			)
+		) {
+			statement.setString(1, path);
+			statement.setBoolean(2, archiveBrowsing);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (resultSet.next()) {
+					String names = resultSet.getString("NAMES");
+					return new FolderRelevance(
+						path,
+						resultSet.getLong("MODIFIED"),
+						resultSet.getBoolean("RELEVANT"),
+						StringUtils.isEmpty(names) ?
+							Collections.<String>emptyList() :
+							Arrays.asList(names.split(NAMES_SEPARATOR))
+					);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stores or replaces the specified entries in a single transaction.
+	 *
+	 * @param entries the {@link FolderRelevance}s to store.
+	 * @param archiveBrowsing whether archives were browsable when the
+	 *            relevance was determined.
+	 * @throws SQLException If an SQL error occurs during the operation.
+	 */
+	public void store(@Nonnull Collection<FolderRelevance> entries, boolean archiveBrowsing) throws SQLException {
+		if (entries.isEmpty()) {
+			return;
+		}
+		try (Connection connection = getConnection()) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = connection.prepareStatement(
+				"MERGE INTO " + ID + " (PATH, MODIFIED, RELEVANT, ARCHIVES, NAMES) KEY(PATH) VALUES (?, ?, ?, ?, ?)"
+			)) {
+				for (FolderRelevance entry : entries) {
+					statement.setString(1, entry.getPath());
+					statement.setLong(2, entry.getModified());
+					statement.setBoolean(3, entry.isRelevant());
+					statement.setBoolean(4, archiveBrowsing);
+					statement.setString(5, StringUtils.join(entry.getNames(), NAMES_SEPARATOR));
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		}
+		LOGGER.trace("Stored the relevance of {} folders", entries.size());
+	}
+
+	/**
+	 * Removes the entries of the specified directory and all directories
+	 * below it.
+	 *
+	 * @param path the absolute path of the directory.
+	 * @return The number of removed entries.
+	 * @throws SQLException If an SQL error occurs during the operation.
+	 */
+	public int remove(@Nonnull String path) throws SQLException {
+		try (
+			Connection connection = getConnection();
+			PreparedStatement statement = connection.prepareStatement(
+				"DELETE FROM " + ID + " WHERE PATH = ? OR PATH LIKE ?"
+			)
+		) {
+			statement.setString(1, path);
+			statement.setString(2, sqlLikeEscape(path.endsWith(File.separator) ? path : path + File.separator) + "%");
+			return statement.executeUpdate();
+		}
+	}
+
+	/**
+	 * Whether a directory contains anything that can be shown when empty
+	 * folders are hidden. The directory is relevant if it contains a
+	 * relevant file or directory, whose name is the only name of a relevant
+	 * entry. An entry that isn't relevant lists the names of all the
+	 * sub-directories, since they must all be irrelevant for it to stay
+	 * irrelevant.
+	 */
+	@Immutable
+	public static class FolderRelevance {
+
+		private final String path;
+		private final long modified;
+		private final boolean relevant;
+		private final List<String> names;
+
+		/**
+		 * Creates a new instance using the specified values.
+		 *
+		 * @param path the absolute path of the directory.
+		 * @param modified the modification time of the directory.
+		 * @param relevant whether the directory is relevant.
+		 * @param names the name of the relevant child if {@code relevant},
+		 *            otherwise the names of all sub-directories.
+		 */
+		public FolderRelevance(@Nonnull String path, long modified, boolean relevant, @Nonnull List<String> names) {
+			this.path = path;
+			this.modified = modified;
+			this.relevant = relevant;
+			this.names = Collections.unmodifiableList(names);
+		}
+
+		/**
+		 * @return The absolute path of the directory.
+		 */
+		@Nonnull
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return The modification time of the directory.
+		 */
+		public long getModified() {
+			return modified;
+		}
+
+		/**
+		 * @return {@code true} if the directory is relevant, {@code false}
+		 *         otherwise.
+		 */
+		public boolean isRelevant() {
+			return relevant;
+		}
+
+		/**
+		 * @return The name of the relevant child if this is relevant,
+		 *         otherwise the names of all sub-directories.
+		 */
+		@Nonnull
+		public List<String> getNames() {
+			return names;
+		}
+
+		@Override
+		public String toString() {
+			return
+				"FolderRelevance [path=" + path + ", modified=" + modified +
+				", relevant=" + relevant + ", names=" + names + "]";
+		}
+	}
+}
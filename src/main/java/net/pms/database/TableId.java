@@ -37,6 +37,12 @@ public enum TableId {
 	/** The ID for {@link TableCoverArtArchive} */
 	COVER_ART_ARCHIVE(TableCoverArtArchive.class, null),
 
+	/** The ID for {@link TableDirectoryFingerprints} */
+	DIRECTORY_FINGERPRINTS(TableDirectoryFingerprints.class, null),
+
+	/** The ID for {@link TableFolderRelevance} */
+	FOLDER_RELEVANCE(TableFolderRelevance.class, null),
+
 	/** The ID for {@link TableMusicBrainzReleases} */
 	MUSIC_BRAINZ_RELEASES(TableMusicBrainzReleases.class, null),
 
@@ -146,6 +152,10 @@ public enum TableId {
 		switch (this) {
 			case COVER_ART_ARCHIVE:
 				return new TableCoverArtArchive(tableManager);
+			case DIRECTORY_FINGERPRINTS:
+				return new TableDirectoryFingerprints(tableManager);
+			case FOLDER_RELEVANCE:
+				return new TableFolderRelevance(tableManager);
 			case MUSIC_BRAINZ_RELEASES:
 				return new TableMusicBrainzReleases(tableManager);
 			case TABLES:
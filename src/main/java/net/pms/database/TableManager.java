@@ -23,6 +23,7 @@ import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -66,10 +67,14 @@ public class TableManager implements Service {
 	private final String databaseName;
 	private final String databaseFilename;
 	private final String url;
+	private final DatabaseProfile profile;
+	private final int compactThreshold;
 	private final Map<TableId, Table> tables;
 
 	@Nullable
 	private final TableCoverArtArchive tableCoverArtArchive;
+	private final TableDirectoryFingerprints tableDirectoryFingerprints;
+	private final TableFolderRelevance tableFolderRelevance;
 
 	@Nullable
 	private final TableMusicBrainzReleases tableMusicBrainzReleases;
@@ -103,7 +108,9 @@ public class TableManager implements Service {
 		this.databaseName = isBlank(databaseName) ? DEFAULT_NAME : databaseName;
 		PmsConfiguration configuration = PMS.getConfiguration();
 		this.databaseFilename = determineDBFilename(this.databaseName, configuration);
-		this.url = buildURL(databaseFilename, configuration);
+		this.profile = DatabaseProfile.create(configuration);
+		this.url = buildURL(databaseFilename, profile);
+		this.compactThreshold = configuration == null ? 0 : configuration.getDatabaseCompactThreshold();
 		if (LOGGER.isDebugEnabled()) {
 			LOGGER.debug(
 				"Using database file \"{}\" with URL: {}",
@@ -124,6 +131,8 @@ public class TableManager implements Service {
 
 		// Set constants to frequently used table instances
 		this.tableCoverArtArchive = (TableCoverArtArchive) tables.get(TableId.COVER_ART_ARCHIVE);
+		this.tableDirectoryFingerprints = (TableDirectoryFingerprints) tables.get(TableId.DIRECTORY_FINGERPRINTS);
+		this.tableFolderRelevance = (TableFolderRelevance) tables.get(TableId.FOLDER_RELEVANCE);
 		this.tableMusicBrainzReleases = (TableMusicBrainzReleases) tables.get(TableId.MUSIC_BRAINZ_RELEASES);
 
 		start();
@@ -151,6 +160,9 @@ public class TableManager implements Service {
 			return;
 		}
 
+		if (connectionPool == null) {
+			checkStorage();
+		}
 		createConnectionPool();
 		try (Connection connection = connectionPool.getConnection()) {
 			Tables tablesInstance = new Tables(this);
@@ -382,6 +394,59 @@ public class TableManager implements Service {
 		return DriverManager.getConnection(url, "sa", "");
 	}
 
+	/**
+	 * Compacts the database file by rewriting it without the pages that are
+	 * no longer in use. This can only be done while this {@link TableManager}
+	 * is disconnected, and closes all remaining connections to the database.
+	 *
+	 * @return The {@link DatabaseStatistics} after compacting or {@code null}
+	 *         if they can't be read.
+	 * @throws SQLException If a SQL error occurs during the operation.
+	 * @throws IllegalStateException If this {@link TableManager} is connected.
+	 */
+	@Nullable
+	@SuppressFBWarnings("DMI_EMPTY_DB_PASSWORD")
+	public synchronized DatabaseStatistics compact() throws SQLException {
+		if (connected) {
+			throw new IllegalStateException("TableManager is not in a disconnected state");
+		}
+		clearConnectionPool();
+		long start = System.currentTimeMillis();
+		try (
+			Connection connection = DriverManager.getConnection(url, "sa", "");
+			Statement statement = connection.createStatement();
+		) {
+			statement.execute("SHUTDOWN COMPACT");
+		}
+		DatabaseStatistics statistics = getStatistics();
+		LOGGER.info(
+			"Compacted the database in {} ms{}",
+			System.currentTimeMillis() - start,
+			statistics == null ? "" : ", the database file size is now " + statistics
+		);
+		return statistics;
+	}
+
+	/**
+	 * Reads the {@link DatabaseStatistics} of the database file. This can
+	 * only be done while the database is closed.
+	 *
+	 * @return The {@link DatabaseStatistics} or {@code null} if the database
+	 *         file doesn't exist or is in use.
+	 */
+	@Nullable
+	public DatabaseStatistics getStatistics() {
+		return DatabaseStatistics.read(new File(getDatabaseFilepath(true)));
+	}
+
+	/**
+	 * @return The {@link DatabaseProfile} used for the database connections.
+	 */
+	@Nonnull
+	public DatabaseProfile getProfile() {
+		return profile;
+	}
+
 	/**
 	 * @return The database name.
 	 */
@@ -426,6 +491,23 @@ public class TableManager implements Service {
 		return tableCoverArtArchive;
 	}
 
+	/**
+	 * @return The registered {@link TableDirectoryFingerprints} or
+	 *         {@code null}.
+	 */
+	@Nullable
+	public TableDirectoryFingerprints getTableDirectoryFingerprints() {
+		return tableDirectoryFingerprints;
+	}
+
+	/**
+	 * @return The registered {@link TableFolderRelevance} or {@code null}.
+	 */
+	@Nullable
+	public TableFolderRelevance getTableFolderRelevance() {
+		return tableFolderRelevance;
+	}
+
 	/**
 	 * @return The registered {@link TableMusicBrainzReleases} or {@code null}.
 	 */
@@ -448,6 +530,28 @@ public class TableManager implements Service {
 		super.finalize();
 	}
 
+	/**
+	 * Logs the size and unused space of the database file before it's opened,
+	 * and compacts it if the unused space has reached the configured
+	 * threshold.
+	 */
+	private void checkStorage() {
+		DatabaseStatistics statistics = getStatistics();
+		if (statistics == null) {
+			return;
+		}
+		LOGGER.info("Database file size is {}", statistics);
+		if (compactThreshold > 0 && statistics.getUnusedPercent() >= compactThreshold) {
+			LOGGER.info("Compacting the database since {}% of it is unused", statistics.getUnusedPercent());
+			try {
+				compact();
+			} catch (SQLException e) {
+				LOGGER.error("Database compaction failed with: {}", e.getMessage());
+				LOGGER.trace("", e);
+			}
+		}
+	}
+
 	private void createConnectionPool() {
 		if (connectionPool == null) {
 			connectionPool = JdbcConnectionPool.create(url, "sa", "");
@@ -536,24 +640,16 @@ public class TableManager implements Service {
 		return databaseFile.getAbsolutePath();
 	}
 
-	private static String buildURL(@Nonnull String databaseFilename, @Nullable PmsConfiguration configuration) {
-		StringBuilder sb = new StringBuilder(Constants.START_URL)
-			.append("nio:")
-			.append(databaseFilename)
-			.append(";MULTI_THREADED=1");
-		if (configuration != null) {
-			int cacheSize = configuration.getDatabaseCacheSize();
-			if (cacheSize > 0) {
-				sb.append(";CACHE_SIZE=").append(cacheSize);
-				LOGGER.debug("Database cache size is {}", ConversionUtil.formatBytes(cacheSize * 1024L, true));
-			} else {
-				LOGGER.debug("Database cache is disabled");
-			}
-			if (configuration.getDatabaseLogging()) {
-				sb.append(";TRACE_LEVEL_FILE=4");
-				LOGGER.info("Database logging is enabled");
-			}
+	private static String buildURL(@Nonnull String databaseFilename, @Nonnull DatabaseProfile profile) {
+		if (profile.getCacheSize() > 0) {
+			LOGGER.debug("Database cache size is {}", ConversionUtil.formatBytes(profile.getCacheSize() * 1024L, true));
+		} else {
+			LOGGER.debug("Database cache is disabled");
+		}
+		if (profile.isLogging()) {
+			LOGGER.info("Database logging is enabled");
 		}
-		return sb.toString();
+		LOGGER.debug("Using {}", profile);
+		return profile.buildURL(databaseFilename);
 	}
 }
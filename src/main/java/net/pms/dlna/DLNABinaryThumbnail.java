@@ -47,9 +47,9 @@ public class DLNABinaryThumbnail extends DLNAImage implements DLNAThumbnail {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DLNAImage.class);
 	/*
-	 * Please note: This class is packed and stored in the database. Any changes
-	 * to the data structure (fields) will invalidate any instances already
-	 * stored, and will require a wipe of all rows with a stored instance. The
+	 * Please note: This class is packed and stored in the database by
+	 * MediaColumnCodec. Any changes to the data structure (fields) must be
+	 * reflected there, and MediaColumnCodec.VERSION must be bumped. The
 	 * serialVersionUID value below should also be bumped.
 	 */
 	private static final long serialVersionUID = 1L;
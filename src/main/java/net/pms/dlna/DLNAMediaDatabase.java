@@ -22,9 +22,25 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import net.pms.Messages;
 import net.pms.PMS;
 import net.pms.dlna.DLNAMediaInfo.RateMode;
+import net.pms.dlna.SearchCriteria.Field;
 import net.pms.formats.Format;
 import net.pms.formats.FormatType;
 import net.pms.formats.v2.SubtitleType;
@@ -32,7 +48,9 @@ import net.pms.image.ImageInfo;
 import net.pms.media.VideoLevel;
 import net.pms.service.Services;
 import net.pms.util.Rational;
+import static net.pms.database.Tables.sqlLikeEscape;
 import static org.apache.commons.lang3.StringUtils.*;
+import org.apache.commons.io.FilenameUtils;
 import org.h2.api.ErrorCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,20 +65,50 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 public class DLNAMediaDatabase implements Runnable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(DLNAMediaDatabase.class);
 
+	/** The maximum number of files whose summaries are read by one query */
+	private static final int SUMMARY_BATCH_SIZE = 500;
+
 	public static final String NONAME = "###";
 	private Thread scanner;
 	private int dbCount;
 
+	/**
+	 * Incremented whenever {@code FILES} rows are added, changed or removed,
+	 * so that the library views know when they must be queried again.
+	 */
+	private final AtomicLong changeCount = new AtomicLong();
+
+	/** Holds parsing results that are waiting to be written */
+	private final DatabaseWriteQueue writeQueue = new DatabaseWriteQueue(
+		this,
+		DatabaseWriteQueue.DEFAULT_BATCH_SIZE,
+		DatabaseWriteQueue.DEFAULT_MAX_DELAY
+	);
+
+	/** Holds recently read and written parsing results */
+	private final MediaInfoCache mediaInfoCache = new MediaInfoCache(MediaInfoCache.DEFAULT_MAX_SIZE);
+
+	/** Removes the rows of files that no longer exist or have been modified */
+	private final DatabaseCleaner cleaner = new DatabaseCleaner(this, DatabaseCleaner.DEFAULT_BATCH_SIZE) {
+
+		@Override
+		protected void onProgress(int percent) {
+			PMS.get().getFrame().setStatusLine(Messages.getString("DLNAMediaDatabase.2") + " " + percent + "%");
+		}
+	};
+
 	/**
 	 * The database version should be incremented when we change anything to
 	 * do with the database since the last released version.
 	 */
-	private final String latestVersion = "12";
+	private final String latestVersion = "14";
 
 	// Database column sizes
 	private final int SIZE_CODECV = 32;
 	private final int SIZE_FRAMERATE = 32;
 	private final int SIZE_VIDEO_PROFILE = 40;
+	private final int SIZE_VIDEO_LEVEL = 32;
+	private final int SIZE_ENUM = 32;
 	private final int SIZE_CONTAINER = 32;
 	private final int SIZE_MATRIX_COEFFICIENTS = 16;
 	private final int SIZE_MUXINGMODE = 32;
@@ -74,6 +122,25 @@ public class DLNAMediaDatabase implements Runnable {
 	private final int SIZE_SONGNAME = 255;
 	private final int SIZE_GENRE = 64;
 
+	/** The {@code FILES} columns that were stored as serialized objects before version 14 */
+	private final String[][] FILES_CONVERTED_COLUMNS = {
+		{"BITRATEMODE", "VARCHAR2(" + SIZE_ENUM + ")"},
+		{"ASPECTRATIODVD", "VARBINARY"},
+		{"ASPECTRATIOCONTAINER", "VARBINARY"},
+		{"ASPECTRATIOVIDEOTRACK", "VARBINARY"},
+		{"VIDEOLEVEL", "VARCHAR2(" + SIZE_VIDEO_LEVEL + ")"},
+		{"IMAGEINFO", "VARBINARY"},
+		{"THUMB", "VARBINARY"},
+		{"PIXELASPECTRATIO", "VARBINARY"},
+		{"SCANTYPE", "VARCHAR2(" + SIZE_ENUM + ")"},
+		{"SCANORDER", "VARCHAR2(" + SIZE_ENUM + ")"},
+	};
+
+	/** The {@code AUDIOTRACKS} columns that were stored as serialized objects before version 14 */
+	private final String[][] AUDIOTRACKS_CONVERTED_COLUMNS = {
+		{"BITRATEMODE", "VARCHAR2(" + SIZE_ENUM + ")"},
+	};
+
 	/**
 	 * Initializes the database for use, performing checks and creating a new
 	 * database if necessary.
@@ -83,6 +150,8 @@ public class DLNAMediaDatabase implements Runnable {
 	@SuppressFBWarnings("SQL_NONCONSTANT_STRING_PASSED_TO_EXECUTE")
 	public synchronized void init(boolean force) {
 		dbCount = -1;
+		mediaInfoCache.clear();
+		cleaner.reset();
 		String version = null;
 		boolean trace = LOGGER.isTraceEnabled();
 
@@ -116,10 +185,14 @@ public class DLNAMediaDatabase implements Runnable {
 			}
 		}
 
-		// Recreate database if it is not the latest version.
+		// Recreate database if it is not the latest version and can't be upgraded.
 		boolean force_reinit = !latestVersion.equals(version);
+		if (force_reinit && !force && dbCount != -1 && version != null && upgradeDatabase(version)) {
+			force_reinit = false;
+		}
 		if (force || dbCount == -1 || force_reinit) {
 			LOGGER.debug("Database will be (re)initialized");
+			changeCount.incrementAndGet();
 			try (Connection connection = Services.tableManager().getConnection()) {
 				if (connection == null) {
 					LOGGER.error("Can't initialize database since TableManager isn't connected");
@@ -127,6 +200,8 @@ public class DLNAMediaDatabase implements Runnable {
 				}
 
 				try {
+					LOGGER.trace("DROPPING TABLE SEARCHTERMS");
+					executeUpdate(connection, "DROP TABLE IF EXISTS SEARCHTERMS");
 					LOGGER.trace("DROPPING TABLE FILES");
 					executeUpdate(connection, "DROP TABLE FILES");
 					LOGGER.trace("DROPPING TABLE METADATA");
@@ -153,20 +228,20 @@ public class DLNAMediaDatabase implements Runnable {
 					sb.append(", TYPE                    INT");
 					sb.append(", DURATION                DOUBLE");
 					sb.append(", BITRATE                 INT");
-					sb.append(", BITRATEMODE             OTHER");
+					sb.append(", BITRATEMODE             VARCHAR2(").append(SIZE_ENUM).append(')');
 					sb.append(", WIDTH                   INT");
 					sb.append(", HEIGHT                  INT");
 					sb.append(", SIZE                    NUMERIC");
 					sb.append(", CODECV                  VARCHAR2(").append(SIZE_CODECV).append(')');
 					sb.append(", FRAMERATE               VARCHAR2(").append(SIZE_FRAMERATE).append(')');
-					sb.append(", ASPECTRATIODVD          OTHER");
-					sb.append(", ASPECTRATIOCONTAINER    OTHER");
-					sb.append(", ASPECTRATIOVIDEOTRACK   OTHER");
+					sb.append(", ASPECTRATIODVD          VARBINARY");
+					sb.append(", ASPECTRATIOCONTAINER    VARBINARY");
+					sb.append(", ASPECTRATIOVIDEOTRACK   VARBINARY");
 					sb.append(", REFRAMES                INT");
 					sb.append(", VIDEOPROFILE            VARCHAR2(").append(SIZE_VIDEO_PROFILE).append(')');
-					sb.append(", VIDEOLEVEL              OTHER");
-					sb.append(", IMAGEINFO               OTHER");
-					sb.append(", THUMB                   OTHER");
+					sb.append(", VIDEOLEVEL              VARCHAR2(").append(SIZE_VIDEO_LEVEL).append(')');
+					sb.append(", IMAGEINFO               VARBINARY");
+					sb.append(", THUMB                   VARBINARY");
 					sb.append(", CONTAINER               VARCHAR2(").append(SIZE_CONTAINER).append(')');
 					sb.append(", MUXINGMODE              VARCHAR2(").append(SIZE_MUXINGMODE).append(')');
 					sb.append(", FRAMERATEMODE           VARCHAR2(").append(SIZE_FRAMERATE_MODE).append(')');
@@ -177,15 +252,18 @@ public class DLNAMediaDatabase implements Runnable {
 					sb.append(", VIDEOTRACKCOUNT         INT");
 					sb.append(", IMAGECOUNT              INT");
 					sb.append(", BITDEPTH                INT");
-					sb.append(", PIXELASPECTRATIO        OTHER");
-					sb.append(", SCANTYPE                OTHER");
-					sb.append(", SCANORDER               OTHER");
+					sb.append(", PIXELASPECTRATIO        VARBINARY");
+					sb.append(", SCANTYPE                VARCHAR2(").append(SIZE_ENUM).append(')');
+					sb.append(", SCANORDER               VARCHAR2(").append(SIZE_ENUM).append(')');
 					sb.append(", constraint PK1 primary key (FILENAME, MODIFIED, ID))");
 					if (trace) {
 						LOGGER.trace("Creating table FILES with:\n\n{}\n", sb.toString());
 					}
 					executeUpdate(connection, sb.toString());
 
+					LOGGER.trace("Creating index IDXFILEID");
+					executeUpdate(connection, "CREATE UNIQUE INDEX IDXFILEID on FILES (ID);");
+
 					sb = new StringBuilder();
 					sb.append("CREATE TABLE AUDIOTRACKS (");
 					sb.append("  FILEID            INT              NOT NULL");
@@ -205,7 +283,7 @@ public class DLNAMediaDatabase implements Runnable {
 					sb.append(", DELAY             INT");
 					sb.append(", MUXINGMODE        VARCHAR2(").append(SIZE_MUXINGMODE).append(')');
 					sb.append(", BITRATE           INT");
-					sb.append(", BITRATEMODE       OTHER");
+					sb.append(", BITRATEMODE       VARCHAR2(").append(SIZE_ENUM).append(')');
 					sb.append(", constraint PKAUDIO primary key (FILEID, ID))");
 					if (trace) {
 						LOGGER.trace("Creating table AUDIOTRACKS with:\n\n{}\n", sb.toString());
@@ -225,6 +303,8 @@ public class DLNAMediaDatabase implements Runnable {
 					}
 					executeUpdate(connection, sb.toString());
 
+					createSearchTerms(connection);
+
 					LOGGER.trace("Creating table METADATA");
 					executeUpdate(connection, "CREATE TABLE METADATA (KEY VARCHAR2(255) NOT NULL, VALUE VARCHAR2(255) NOT NULL)");
 					executeUpdate(connection, "INSERT INTO METADATA VALUES ('VERSION', '" + latestVersion + "')");
@@ -269,6 +349,202 @@ public class DLNAMediaDatabase implements Runnable {
 		}
 	}
 
+	/**
+	 * Upgrades the database from {@code version} to {@link #latestVersion} in
+	 * place, so that the media information doesn't have to be parsed again.
+	 *
+	 * @param version the current database version.
+	 * @return {@code true} if the database was upgraded, {@code false} if it
+	 *         must be recreated.
+	 */
+	private boolean upgradeDatabase(@Nonnull String version) {
+		int currentVersion;
+		int targetVersion = Integer.parseInt(latestVersion);
+		try {
+			currentVersion = Integer.parseInt(version);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		if (currentVersion < 12 || currentVersion >= targetVersion) {
+			return false;
+		}
+		LOGGER.info("Upgrading database from version {} to {}", currentVersion, targetVersion);
+		try (Connection connection = Services.tableManager().getConnection()) {
+			if (connection == null) {
+				LOGGER.error("Can't upgrade database since TableManager isn't connected");
+				return false;
+			}
+			for (int i = currentVersion; i < targetVersion; i++) {
+				LOGGER.trace("Upgrading database from version {} to {}", i, i + 1);
+				switch (i) {
+					case 12:
+						// Version 13 adds the search index
+						executeUpdate(connection, "CREATE UNIQUE INDEX IF NOT EXISTS IDXFILEID on FILES (ID);");
+						executeUpdate(connection, "DROP TABLE IF EXISTS SEARCHTERMS");
+						createSearchTerms(connection);
+						fillSearchTerms(connection);
+						break;
+					case 13:
+						// Version 14 stores the metadata columns in the MediaColumnCodec format instead of as serialized objects.
+						if (
+							!convertColumns(connection, "FILES", "FILENAME, MODIFIED, ID", FILES_CONVERTED_COLUMNS) ||
+							!convertColumns(connection, "AUDIOTRACKS", "FILEID, ID", AUDIOTRACKS_CONVERTED_COLUMNS)
+						) {
+							return false;
+						}
+						break;
+					default:
+						LOGGER.debug("Database is missing upgrade commands from version {}", i);
+						return false;
+				}
+				executeUpdate(connection, "UPDATE METADATA SET VALUE = '" + (i + 1) + "' WHERE KEY = 'VERSION'");
+			}
+		} catch (SQLException e) {
+			LOGGER.error("Database upgrade failed, it will be recreated: {}", e.getMessage());
+			LOGGER.trace("", e);
+			return false;
+		}
+		LOGGER.debug("Database upgraded to version {}", targetVersion);
+		return true;
+	}
+
+	/**
+	 * Rewrites columns holding serialized objects in the
+	 * {@link MediaColumnCodec} format. Each column is converted into a new
+	 * column that then replaces it.
+	 *
+	 * @param connection the {@link Connection} to use.
+	 * @param table the table name.
+	 * @param primaryKey the comma separated primary key columns of
+	 *            {@code table}.
+	 * @param columns the column names and their new SQL types.
+	 * @return {@code true} if all rows were converted, {@code false} if a
+	 *         value couldn't be decoded.
+	 * @throws SQLException If a SQL error occurs during the operation.
+	 */
+	@SuppressFBWarnings("SQL_NONCONSTANT_STRING_PASSED_TO_EXECUTE")
+	private static boolean convertColumns(
+		@Nonnull Connection connection,
+		@Nonnull String table,
+		@Nonnull String primaryKey,
+		@Nonnull String[][] columns
+	) throws SQLException {
+		StringBuilder sb = new StringBuilder("SELECT ").append(primaryKey);
+		for (String[] column : columns) {
+			executeUpdate(connection, "ALTER TABLE " + table + " ADD COLUMN " + column[0] + "_NEW " + column[1]);
+			sb.append(", ").append(column[0]).append(", ").append(column[0]).append("_NEW");
+		}
+		sb.append(" FROM ").append(table);
+
+		int converted = 0;
+		try (
+			Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE);
+			ResultSet result = statement.executeQuery(sb.toString());
+		) {
+			while (result.next()) {
+				for (String[] column : columns) {
+					Object value;
+					try {
+						value = result.getObject(column[0]);
+					} catch (SQLException e) {
+						LOGGER.debug("Column {}.{} can't be deserialized: {}", table, column[0], e.getMessage());
+						return false;
+					}
+					try {
+						if (value == null) {
+							result.updateNull(column[0] + "_NEW");
+						} else if (value instanceof VideoLevel) {
+							result.updateString(column[0] + "_NEW", MediaColumnCodec.encodeVideoLevel((VideoLevel) value));
+						} else if (value instanceof Enum) {
+							result.updateString(column[0] + "_NEW", MediaColumnCodec.encodeEnum((Enum<?>) value));
+						} else if (value instanceof Rational) {
+							result.updateBytes(column[0] + "_NEW", MediaColumnCodec.encodeRational((Rational) value));
+						} else if (value instanceof ImageInfo) {
+							result.updateBytes(column[0] + "_NEW", MediaColumnCodec.encodeImageInfo((ImageInfo) value));
+						} else if (value instanceof DLNAThumbnail) {
+							result.updateBytes(column[0] + "_NEW", MediaColumnCodec.encodeThumbnail((DLNAThumbnail) value));
+						} else {
+							throw new IOException("Unexpected type " + value.getClass().getSimpleName());
+						}
+					} catch (IOException e) {
+						LOGGER.debug("Column {}.{} can't be converted: {}", table, column[0], e.getMessage());
+						return false;
+					}
+				}
+				result.updateRow();
+				converted++;
+			}
+		}
+
+		for (String[] column : columns) {
+			executeUpdate(connection, "ALTER TABLE " + table + " DROP COLUMN " + column[0]);
+			executeUpdate(connection, "ALTER TABLE " + table + " ALTER COLUMN " + column[0] + "_NEW RENAME TO " + column[0]);
+		}
+		LOGGER.debug("Converted {} rows in database table \"{}\"", converted, table);
+		return true;
+	}
+
+	/**
+	 * Fills the search index from the existing {@code FILES} and
+	 * {@code AUDIOTRACKS} rows.
+	 *
+	 * @param connection the {@link Connection} to use.
+	 * @throws SQLException If a SQL error occurs during the operation.
+	 */
+	private static void fillSearchTerms(@Nonnull Connection connection) throws SQLException {
+		int count = 0;
+		try (
+			Statement statement = connection.createStatement();
+			ResultSet files = statement.executeQuery("SELECT ID, FILENAME, TITLECONTAINER FROM FILES");
+			PreparedStatement audios = connection.prepareStatement(
+				"SELECT SONGNAME, ARTIST, ALBUM, GENRE FROM AUDIOTRACKS WHERE FILEID = ?"
+			);
+			PreparedStatement termStatement = connection.prepareStatement(
+				"INSERT INTO SEARCHTERMS (TERM, FIELD, FILEID) VALUES (?, ?, ?)"
+			);
+		) {
+			while (files.next()) {
+				int fileId = files.getInt("ID");
+				DLNAMediaInfo media = new DLNAMediaInfo();
+				media.setFileTitleFromMetadata(files.getString("TITLECONTAINER"));
+				audios.setInt(1, fileId);
+				try (ResultSet tracks = audios.executeQuery()) {
+					while (tracks.next()) {
+						DLNAMediaAudio audio = new DLNAMediaAudio();
+						audio.setSongname(tracks.getString("SONGNAME"));
+						audio.setArtist(tracks.getString("ARTIST"));
+						audio.setAlbum(tracks.getString("ALBUM"));
+						audio.setGenre(tracks.getString("GENRE"));
+						media.getAudioTracksList().add(audio);
+					}
+				}
+				addSearchTerms(termStatement, fileId, files.getString("FILENAME"), media);
+				if (++count % DatabaseWriteQueue.DEFAULT_BATCH_SIZE == 0) {
+					termStatement.executeBatch();
+				}
+			}
+			termStatement.executeBatch();
+		}
+		LOGGER.debug("Indexed {} files for search", count);
+	}
+
+	private static void createSearchTerms(Connection connection) throws SQLException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("CREATE TABLE SEARCHTERMS (");
+		sb.append("  TERM     VARCHAR2(").append(SearchCriteria.MAX_TERM_LENGTH).append(") NOT NULL");
+		sb.append(", FIELD    INT              NOT NULL");
+		sb.append(", FILEID   INT              NOT NULL");
+		sb.append(", constraint PKSEARCH primary key (FIELD, TERM, FILEID)");
+		sb.append(", constraint FKSEARCHFILE foreign key (FILEID) references FILES (ID) on delete cascade)");
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("Creating table SEARCHTERMS with:\n\n{}\n", sb.toString());
+		}
+		executeUpdate(connection, sb.toString());
+
+		LOGGER.trace("Creating index IDXSEARCHFILEID");
+		executeUpdate(connection, "CREATE INDEX IDXSEARCHFILEID on SEARCHTERMS (FILEID asc, FIELD asc, TERM asc);");
+	}
+
 	private static void executeUpdate(Connection conn, String sql) throws SQLException {
 		if (conn != null) {
 			try (Statement stmt = conn.createStatement()) {
@@ -277,6 +553,41 @@ public class DLNAMediaDatabase implements Runnable {
 		}
 	}
 
+	/**
+	 * Returns a counter that changes whenever files are added to, changed in
+	 * or removed from the database. If the value is unchanged, queries on the
+	 * {@code FILES} table will return the same result as before.
+	 *
+	 * @return The current change count.
+	 */
+	public long getChangeCount() {
+		return changeCount.get();
+	}
+
+	/**
+	 * Returns the {@link DatabaseWriteQueue} that writes parsing results to
+	 * this database in the background. Entries in the queue are already
+	 * visible to {@link #getData} and {@link #isDataExists}, and are written
+	 * before any other query is run.
+	 *
+	 * @return The {@link DatabaseWriteQueue}.
+	 */
+	@Nonnull
+	public DatabaseWriteQueue getWriteQueue() {
+		return writeQueue;
+	}
+
+	/**
+	 * Returns the {@link MediaInfoCache} that holds the most recently read
+	 * and written parsing results, for instance to inspect its statistics.
+	 *
+	 * @return The {@link MediaInfoCache}.
+	 */
+	@Nonnull
+	public MediaInfoCache getMediaInfoCache() {
+		return mediaInfoCache;
+	}
+
 	/**
 	 * Checks whether a row representing a {@link DLNAMediaInfo} instance for
 	 * the given media exists in the database.
@@ -287,6 +598,13 @@ public class DLNAMediaDatabase implements Runnable {
 	 *         otherwise.
 	 */
 	public synchronized boolean isDataExists(String name, long modified) {
+		DatabaseWriteQueue.Entry pending = writeQueue.get(name);
+		if (pending != null) {
+			return pending.getModified() == modified;
+		}
+		if (mediaInfoCache.contains(name, modified)) {
+			return true;
+		}
 		boolean found = false;
 		try (
 			Connection connection = Services.tableManager().getConnection();
@@ -318,6 +636,10 @@ public class DLNAMediaDatabase implements Runnable {
 	/**
 	 * Gets rows of {@link DLNAMediaDatabase} from the database and returns them
 	 * as a {@link List} of {@link DLNAMediaInfo} instances.
+	 * <p>
+	 * Entries waiting in the {@link DatabaseWriteQueue} and entries in the
+	 * {@link MediaInfoCache} are returned without querying the database, and
+	 * without waiting for other database operations to finish.
 	 *
 	 * @param name the full path of the media.
 	 * @param modified the current {@code lastModified} value of the media file.
@@ -326,7 +648,30 @@ public class DLNAMediaDatabase implements Runnable {
 	 * @throws SQLException if an SQL error occurs during the operation.
 	 * @throws IOException if an IO error occurs during the operation.
 	 */
-	public synchronized ArrayList<DLNAMediaInfo> getData(String name, long modified) throws IOException, SQLException {
+	public ArrayList<DLNAMediaInfo> getData(String name, long modified) throws IOException, SQLException {
+		ArrayList<DLNAMediaInfo> list = new ArrayList<>();
+		DatabaseWriteQueue.Entry pending = writeQueue.get(name);
+		if (pending != null) {
+			// The stored row is outdated or about to be replaced
+			if (pending.getModified() == modified) {
+				DLNAMediaInfo media = pending.getMedia();
+				if (media == null) {
+					media = new DLNAMediaInfo();
+					media.setMediaparsed(true);
+				}
+				list.add(media);
+			}
+			return list;
+		}
+		DLNAMediaInfo cached = mediaInfoCache.get(name, modified);
+		if (cached != null) {
+			list.add(cached);
+			return list;
+		}
+		return readData(name, modified);
+	}
+
+	private synchronized ArrayList<DLNAMediaInfo> readData(String name, long modified) throws IOException, SQLException {
 		ArrayList<DLNAMediaInfo> list = new ArrayList<>();
 		try (
 			Connection connection = Services.tableManager().getConnection();
@@ -350,20 +695,20 @@ public class DLNAMediaDatabase implements Runnable {
 					int id = rs.getInt("ID");
 					media.setDuration(toDouble(rs, "DURATION"));
 					media.setBitRate(rs.getInt("BITRATE"));
-					media.setBitRateMode((RateMode) rs.getObject("BITRATEMODE"));
+					media.setBitRateMode(MediaColumnCodec.decodeEnum(rs.getString("BITRATEMODE"), RateMode.class));
 					media.setWidth(rs.getInt("WIDTH"));
 					media.setHeight(rs.getInt("HEIGHT"));
 					media.setSize(rs.getLong("SIZE"));
 					media.setCodecV(rs.getString("CODECV"));
 					media.setFrameRate(rs.getString("FRAMERATE"));
-					media.setAspectRatioDvdIso((Rational) rs.getObject("ASPECTRATIODVD"));
-					media.setAspectRatioContainer((Rational) rs.getObject("ASPECTRATIOCONTAINER"));
-					media.setAspectRatioVideoTrack((Rational) rs.getObject("ASPECTRATIOVIDEOTRACK"));
+					media.setAspectRatioDvdIso(MediaColumnCodec.decodeRational(rs.getBytes("ASPECTRATIODVD")));
+					media.setAspectRatioContainer(MediaColumnCodec.decodeRational(rs.getBytes("ASPECTRATIOCONTAINER")));
+					media.setAspectRatioVideoTrack(MediaColumnCodec.decodeRational(rs.getBytes("ASPECTRATIOVIDEOTRACK")));
 					media.setReferenceFrameCount(rs.getInt("REFRAMES"));
 					media.setVideoProfile(rs.getString("VIDEOPROFILE"));
-					media.setVideoLevel((VideoLevel) rs.getObject("VIDEOLEVEL"));
-					media.setImageInfo((ImageInfo) rs.getObject("IMAGEINFO"));
-					media.setThumb((DLNAThumbnail) rs.getObject("THUMB"));
+					media.setVideoLevel(MediaColumnCodec.decodeVideoLevel(rs.getString("VIDEOLEVEL")));
+					media.setImageInfo(MediaColumnCodec.decodeImageInfo(rs.getBytes("IMAGEINFO")));
+					media.setThumb(MediaColumnCodec.decodeThumbnail(rs.getBytes("THUMB")));
 					media.setContainer(rs.getString("CONTAINER"));
 					media.setMuxingMode(rs.getString("MUXINGMODE"));
 					media.setFrameRateMode(rs.getString("FRAMERATEMODE"));
@@ -374,9 +719,9 @@ public class DLNAMediaDatabase implements Runnable {
 					media.setVideoTrackCount(rs.getInt("VIDEOTRACKCOUNT"));
 					media.setImageCount(rs.getInt("IMAGECOUNT"));
 					media.setVideoBitDepth(rs.getInt("BITDEPTH"));
-					media.setPixelAspectRatio((Rational) rs.getObject("PIXELASPECTRATIO"));
-					media.setScanType((DLNAMediaInfo.ScanType) rs.getObject("SCANTYPE"));
-					media.setScanOrder((DLNAMediaInfo.ScanOrder) rs.getObject("SCANORDER"));
+					media.setPixelAspectRatio(MediaColumnCodec.decodeRational(rs.getBytes("PIXELASPECTRATIO")));
+					media.setScanType(MediaColumnCodec.decodeEnum(rs.getString("SCANTYPE"), DLNAMediaInfo.ScanType.class));
+					media.setScanOrder(MediaColumnCodec.decodeEnum(rs.getString("SCANORDER"), DLNAMediaInfo.ScanOrder.class));
 					media.setMediaparsed(true);
 
 					audios.setInt(1, id);
@@ -399,7 +744,7 @@ public class DLNAMediaDatabase implements Runnable {
 							audio.setDelay(elements.getInt("DELAY"));
 							audio.setMuxingModeAudio(elements.getString("MUXINGMODE"));
 							audio.setBitRate(elements.getInt("BITRATE"));
-							audio.setBitRateMode((RateMode) rs.getObject("BITRATEMODE"));
+							audio.setBitRateMode(MediaColumnCodec.decodeEnum(elements.getString("BITRATEMODE"), RateMode.class));
 							media.getAudioTracksList().add(audio);
 						}
 					}
@@ -424,6 +769,9 @@ public class DLNAMediaDatabase implements Runnable {
 			}
 			throw se;
 		}
+		if (list.size() == 1) {
+			mediaInfoCache.put(name, modified, list.get(0));
+		}
 		return list;
 	}
 
@@ -435,160 +783,15 @@ public class DLNAMediaDatabase implements Runnable {
 		return null;
 	}
 
-	private void insertOrUpdateSubtitleTracks(Connection connection, int fileId, DLNAMediaInfo media) throws SQLException {
-		if (connection == null || fileId < 0 || media == null || media.getSubTrackCount() < 1) {
-			return;
-		}
-
-		/* XXX This is flawed, multiple subtitle tracks with the same language will
-		 * overwrite each other.
-		 */
-		try (
-			PreparedStatement updateStatment = connection.prepareStatement(
-				"SELECT " +
-					"FILEID, ID, LANG, TITLE, TYPE " +
-				"FROM SUBTRACKS " +
-				"WHERE " +
-					"FILEID = ? AND ID = ?",
-				ResultSet.TYPE_FORWARD_ONLY,
-				ResultSet.CONCUR_UPDATABLE
-			);
-			PreparedStatement insertStatement = connection.prepareStatement(
-				"INSERT INTO SUBTRACKS (" +
-					"FILEID, ID, LANG, TITLE, TYPE " +
-				") VALUES (" +
-					"?, ?, ?, ?, ?" +
-				")"
-			);
-		) {
-			for (DLNAMediaSubtitle subtitleTrack : media.getSubtitleTracksList()) {
-				updateStatment.setInt(1, fileId);
-				updateStatment.setInt(2, subtitleTrack.getId());
-				try (ResultSet rs = updateStatment.executeQuery()) {
-					if (rs.next()) {
-						rs.updateString("LANG", left(subtitleTrack.getLang(), SIZE_LANG));
-						rs.updateString("TITLE", left(subtitleTrack.getSubtitlesTrackTitleFromMetadata(), SIZE_TITLE));
-						rs.updateInt("TYPE", subtitleTrack.getType().getStableIndex());
-						rs.updateRow();
-					} else {
-						insertStatement.clearParameters();
-						insertStatement.setInt(1, fileId);
-						insertStatement.setInt(2, subtitleTrack.getId());
-						insertStatement.setString(3, left(subtitleTrack.getLang(), SIZE_LANG));
-						insertStatement.setString(4, left(subtitleTrack.getSubtitlesTrackTitleFromMetadata(), SIZE_TITLE));
-						insertStatement.setInt(5, subtitleTrack.getType().getStableIndex());
-						insertStatement.executeUpdate();
-					}
-				}
-			}
-		} catch (SQLException e) {
-			connection.rollback();
-			throw e;
-		}
-	}
-
-	private void insertOrUpdateAudioTracks(Connection connection, int fileId, DLNAMediaInfo media) throws SQLException {
-		if (connection == null || fileId < 0 || media == null || media.getAudioTrackCount() < 1) {
-			return;
-		}
-
-		/* XXX This is flawed, multiple audio tracks with the same language will
-		 * overwrite each other.
-		 */
-		try (
-			PreparedStatement updateStatment = connection.prepareStatement(
-				"SELECT " +
-					"FILEID, ID, LANG, TITLE, NRAUDIOCHANNELS, SAMPLEFREQ, CODECA, " +
-					"BITSPERSAMPLE, ALBUM, ARTIST, SONGNAME, GENRE, YEAR, TRACK, " +
-					"DELAY, MUXINGMODE, BITRATE, BITRATEMODE " +
-				"FROM AUDIOTRACKS " +
-				"WHERE " +
-					"FILEID = ? AND ID = ?",
-				ResultSet.TYPE_FORWARD_ONLY,
-				ResultSet.CONCUR_UPDATABLE
-			);
-			PreparedStatement insertStatement = connection.prepareStatement(
-				"INSERT INTO AUDIOTRACKS (" +
-					"FILEID, ID, LANG, TITLE, NRAUDIOCHANNELS, SAMPLEFREQ, CODECA, BITSPERSAMPLE, " +
-					"ALBUM, ARTIST, SONGNAME, GENRE, YEAR, TRACK, DELAY, MUXINGMODE, BITRATE, BITRATEMODE" +
-				") VALUES (" +
-					"?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?" +
-				")"
-			);
-		) {
-			for (DLNAMediaAudio audioTrack : media.getAudioTracksList()) {
-				updateStatment.setInt(1, fileId);
-				updateStatment.setInt(2, audioTrack.getId());
-				try (ResultSet rs = updateStatment.executeQuery()) {
-					if (rs.next()) {
-						rs.updateString("LANG", left(audioTrack.getLang(), SIZE_LANG));
-						rs.updateString("TITLE", left(audioTrack.getAudioTrackTitleFromMetadata(), SIZE_TITLE));
-						rs.updateInt("NRAUDIOCHANNELS", audioTrack.getNumberOfChannelsRaw());
-						rs.updateInt("SAMPLEFREQ", audioTrack.getSampleFrequencyRaw());
-						rs.updateString("CODECA", left(audioTrack.getCodecA(), SIZE_CODECA));
-						rs.updateInt("BITSPERSAMPLE", audioTrack.getBitsPerSampleRaw());
-						rs.updateString("ALBUM", left(trimToEmpty(audioTrack.getAlbum()), SIZE_ALBUM));
-						rs.updateString("ARTIST", left(trimToEmpty(audioTrack.getArtist()), SIZE_ARTIST));
-						rs.updateString("SONGNAME", left(trimToEmpty(audioTrack.getSongname()), SIZE_SONGNAME));
-						rs.updateString("GENRE", left(trimToEmpty(audioTrack.getGenre()), SIZE_GENRE));
-						rs.updateInt("YEAR", audioTrack.getYear());
-						rs.updateInt("TRACK", audioTrack.getTrack());
-						rs.updateInt("DELAY", audioTrack.getDelayRaw());
-						rs.updateString("MUXINGMODE", left(trimToEmpty(audioTrack.getMuxingModeAudio()), SIZE_MUXINGMODE));
-						rs.updateInt("BITRATE", audioTrack.getBitRateRaw());
-						updateSerialized(rs, audioTrack.getBitRateModeRaw(), "BITRATEMODE");
-						rs.updateRow();
-					} else {
-						insertStatement.clearParameters();
-						insertStatement.setInt(1, fileId);
-						insertStatement.setInt(2, audioTrack.getId());
-						insertStatement.setString(3, left(audioTrack.getLang(), SIZE_LANG));
-						insertStatement.setString(4, left(audioTrack.getAudioTrackTitleFromMetadata(), SIZE_TITLE));
-						insertStatement.setInt(5, audioTrack.getNumberOfChannelsRaw());
-						insertStatement.setInt(6, audioTrack.getSampleFrequencyRaw());
-						insertStatement.setString(7, left(audioTrack.getCodecA(), SIZE_CODECA));
-						insertStatement.setInt(8, audioTrack.getBitsPerSampleRaw());
-						insertStatement.setString(9, left(trimToEmpty(audioTrack.getAlbum()), SIZE_ALBUM));
-						insertStatement.setString(10, left(trimToEmpty(audioTrack.getArtist()), SIZE_ARTIST));
-						insertStatement.setString(11, left(trimToEmpty(audioTrack.getSongname()), SIZE_SONGNAME));
-						insertStatement.setString(12, left(trimToEmpty(audioTrack.getGenre()), SIZE_GENRE));
-						insertStatement.setInt(13, audioTrack.getYear());
-						insertStatement.setInt(14, audioTrack.getTrack());
-						insertStatement.setInt(15, audioTrack.getDelayRaw());
-						insertStatement.setString(16, left(trimToEmpty(audioTrack.getMuxingModeAudio()), SIZE_MUXINGMODE));
-						insertStatement.setInt(17, audioTrack.getBitRateRaw());
-						insertSerialized(insertStatement, audioTrack.getBitRateModeRaw(), 18);
-						insertStatement.executeUpdate();
-					}
-				}
-			}
-		} catch (SQLException e) {
-			connection.rollback();
-			throw e;
-		}
-	}
-
-	protected void updateSerialized(ResultSet rs, Object x, String columnLabel) throws SQLException {
-		if (x != null) {
-			rs.updateObject(columnLabel, x);
-		} else {
-			rs.updateNull(columnLabel);
-		}
-	}
-
-	protected void insertSerialized(PreparedStatement ps, Object x, int parameterIndex) throws SQLException {
-		if (x != null) {
-			ps.setObject(parameterIndex, x);
-		} else {
-			ps.setNull(parameterIndex, Types.OTHER);
-		}
-	}
-
 	/**
 	 * Inserts or updates a database row representing an {@link DLNAMediaInfo}
 	 * instance. If the row already exists, it will be updated with the
 	 * information given in {@code media}. If it doesn't exist, a new will row
 	 * be created using the same information.
+	 * <p>
+	 * The row is written immediately, and any older entry for {@code name}
+	 * that is waiting in the {@link DatabaseWriteQueue} is discarded. Use
+	 * {@link #getWriteQueue()} to write parsing results in the background.
 	 *
 	 * @param name the full path of the media.
 	 * @param modified the current {@code lastModified} value of the media file.
@@ -598,186 +801,359 @@ public class DLNAMediaDatabase implements Runnable {
 	 * @throws SQLException if an SQL error occurs during the operation.
 	 */
 	public synchronized void insertOrUpdateData(String name, long modified, FormatType type, DLNAMediaInfo media) throws SQLException {
+		writeQueue.remove(name);
 		try (Connection connection = Services.tableManager().getConnection()) {
 			if (connection == null) {
 				LOGGER.error("Can't insert or update data since TableManager isn't connected");
 				return;
 			}
 			connection.setAutoCommit(false);
-			int fileId = -1;
-			try (PreparedStatement ps = connection.prepareStatement(
-				"SELECT " +
-					"ID, FILENAME, MODIFIED, TYPE, DURATION, BITRATE, BITRATEMODE, WIDTH, HEIGHT, SIZE, CODECV, " +
-					"FRAMERATE, ASPECTRATIODVD, ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, VIDEOPROFILE, " +
-					"VIDEOLEVEL, IMAGEINFO, THUMB, CONTAINER, MUXINGMODE, FRAMERATEMODE, STEREOSCOPY, MATRIXCOEFFICIENTS, " +
-					"TITLECONTAINER, TITLEVIDEOTRACK, VIDEOTRACKCOUNT, IMAGECOUNT, BITDEPTH, PIXELASPECTRATIO, " +
-					"SCANTYPE, SCANORDER " +
-				"FROM FILES " +
-				"WHERE " +
-					"FILENAME = ?",
-				ResultSet.TYPE_FORWARD_ONLY,
-				ResultSet.CONCUR_UPDATABLE
-			)) {
-				ps.setString(1, name);
-				try (ResultSet rs = ps.executeQuery()) {
-					if (rs.next()) {
-						fileId = rs.getInt("ID");
-						rs.updateTimestamp("MODIFIED", new Timestamp(modified));
-						rs.updateInt("TYPE", type == null ? 0 : type.getValue());
-						if (media != null) {
-							if (media.getDuration() != null) {
-								rs.updateDouble("DURATION", media.getDurationInSeconds());
-							} else {
-								rs.updateNull("DURATION");
-							}
-
-							rs.updateInt("BITRATE", media.getMediaType() == MediaType.IMAGE ? 0 : media.getBitRate());
-							updateSerialized(rs, media.getBitRateMode(), "BITRATEMODE");
-							rs.updateInt("WIDTH", media.getWidth());
-							rs.updateInt("HEIGHT", media.getHeight());
-							rs.updateLong("SIZE", media.getSize());
-							rs.updateString("CODECV", left(media.getCodecV(), SIZE_CODECV));
-							rs.updateString("FRAMERATE", left(media.getFrameRate(), SIZE_FRAMERATE));
-							updateSerialized(rs, media.getAspectRatioDvdIso(), "ASPECTRATIODVD");
-							updateSerialized(rs, media.getAspectRatioContainer(), "ASPECTRATIOCONTAINER");
-							updateSerialized(rs, media.getAspectRatioVideoTrack(), "ASPECTRATIOVIDEOTRACK");
-							rs.updateInt("REFRAMES", media.getReferenceFrameCount());
-							rs.updateString("VIDEOPROFILE", left(media.getVideoProfile(), SIZE_VIDEO_PROFILE));
-							updateSerialized(rs, media.getVideoLevel(), "VIDEOLEVEL");
-							updateSerialized(rs, media.getImageInfo(), "IMAGEINFO");
-							updateSerialized(rs, media.getThumb(), "THUMB");
-							rs.updateString("CONTAINER", left(media.getContainer(), SIZE_CONTAINER));
-							rs.updateString("MUXINGMODE", left(media.getMuxingModeAudio(), SIZE_MUXINGMODE));
-							rs.updateString("FRAMERATEMODE", left(media.getFrameRateMode(), SIZE_FRAMERATE_MODE));
-							rs.updateString("STEREOSCOPY", left(media.getStereoscopy(), SIZE_STEREOSCOPY));
-							rs.updateString("MATRIXCOEFFICIENTS", left(media.getMatrixCoefficients(), SIZE_MATRIX_COEFFICIENTS));
-							rs.updateString("TITLECONTAINER", left(media.getFileTitleFromMetadata(), SIZE_TITLE));
-							rs.updateString("TITLEVIDEOTRACK", left(media.getVideoTrackTitleFromMetadata(), SIZE_TITLE));
-							rs.updateInt("VIDEOTRACKCOUNT", media.getVideoTrackCount());
-							rs.updateInt("IMAGECOUNT", media.getImageCount());
-							rs.updateInt("BITDEPTH", media.getVideoBitDepth());
-							updateSerialized(rs, media.getPixelAspectRatio(), "PIXELASPECTRATIO");
-							updateSerialized(rs, media.getScanType(), "SCANTYPE");
-							updateSerialized(rs, media.getScanOrder(), "SCANORDER");
-						}
-						rs.updateRow();
-					}
-				}
+			try {
+				writeData(connection, Collections.singletonList(new DatabaseWriteQueue.Entry(name, modified, type, media)));
+				connection.commit();
+				mediaInfoCache.put(name, modified, media);
 			} catch (SQLException e) {
 				connection.rollback();
+				mediaInfoCache.remove(name);
 				throw e;
+			} finally {
+				connection.setAutoCommit(true);
 			}
-			if (fileId < 0) {
-				// No fileId means it didn't exist
-				try (
-					PreparedStatement ps = connection.prepareStatement(
-						"INSERT INTO FILES (FILENAME, MODIFIED, TYPE, DURATION, BITRATE, BITRATEMODE, WIDTH, HEIGHT, SIZE, CODECV, " +
-						"FRAMERATE, ASPECTRATIODVD, ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, VIDEOPROFILE, VIDEOLEVEL, " +
-						"IMAGEINFO, THUMB, CONTAINER, MUXINGMODE, FRAMERATEMODE, STEREOSCOPY, MATRIXCOEFFICIENTS, TITLECONTAINER, " +
-						"TITLEVIDEOTRACK, VIDEOTRACKCOUNT, IMAGECOUNT, BITDEPTH, PIXELASPECTRATIO, SCANTYPE, SCANORDER) VALUES " +
-						"(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")
-				) {
-					ps.setString(1, name);
-					ps.setTimestamp(2, new Timestamp(modified));
-					ps.setInt(3, type == null ? 0 : type.getValue());
-					if (media != null) {
-						if (media.getDuration() != null) {
-							ps.setDouble(4, media.getDurationInSeconds());
-						} else {
-							ps.setNull(4, Types.DOUBLE);
-						}
+		} catch (SQLException se) {
+			throw wrapDuplicateKey(se, name);
+		}
+	}
 
-						ps.setInt(5, media.getMediaType() == MediaType.IMAGE ? 0 : media.getBitRate());
-						insertSerialized(ps, media.getBitRateMode(), 6);
-						ps.setInt(7, media.getWidth());
-						ps.setInt(8, media.getHeight());
-						ps.setLong(9, media.getSize());
-						ps.setString(10, left(media.getCodecV(), SIZE_CODECV));
-						ps.setString(11, left(media.getFrameRate(), SIZE_FRAMERATE));
-						insertSerialized(ps, media.getAspectRatioDvdIso(), 12);
-						insertSerialized(ps, media.getAspectRatioContainer(), 13);
-						insertSerialized(ps, media.getAspectRatioVideoTrack(), 14);
-						ps.setInt(15, media.getReferenceFrameCount());
-						ps.setString(16, left(media.getVideoProfile(), SIZE_VIDEO_PROFILE));
-						insertSerialized(ps, media.getVideoLevel(), 17);
-						insertSerialized(ps, media.getImageInfo(), 18);
-						insertSerialized(ps, media.getThumb(), 19);
-						ps.setString(20, left(media.getContainer(), SIZE_CONTAINER));
-						ps.setString(21, left(media.getMuxingModeAudio(), SIZE_MUXINGMODE));
-						ps.setString(22, left(media.getFrameRateMode(), SIZE_FRAMERATE_MODE));
-						ps.setString(23, left(media.getStereoscopy(), SIZE_STEREOSCOPY));
-						ps.setString(24, left(media.getMatrixCoefficients(), SIZE_MATRIX_COEFFICIENTS));
-						ps.setString(25, left(media.getFileTitleFromMetadata(), SIZE_TITLE));
-						ps.setString(26, left(media.getVideoTrackTitleFromMetadata(), SIZE_TITLE));
-						ps.setInt(27, media.getVideoTrackCount());
-						ps.setInt(28, media.getImageCount());
-						ps.setInt(29, media.getVideoBitDepth());
-						insertSerialized(ps, media.getPixelAspectRatio(), 30);
-						insertSerialized(ps, media.getScanType(), 31);
-						insertSerialized(ps, media.getScanOrder(), 32);
-					} else {
-						ps.setString(4, null);
-						ps.setInt(5, 0);
-						ps.setNull(6, Types.OTHER);
-						ps.setInt(7, 0);
-						ps.setInt(8, 0);
-						ps.setLong(9, 0);
-						ps.setNull(10, Types.VARCHAR);
-						ps.setNull(11, Types.VARCHAR);
-						ps.setNull(12, Types.VARCHAR);
-						ps.setNull(13, Types.VARCHAR);
-						ps.setNull(14, Types.VARCHAR);
-						ps.setByte(15, (byte) -1);
-						ps.setNull(16, Types.VARCHAR);
-						ps.setNull(17, Types.OTHER);
-						ps.setNull(18, Types.OTHER);
-						ps.setNull(19, Types.OTHER);
-						ps.setNull(20, Types.VARCHAR);
-						ps.setNull(21, Types.VARCHAR);
-						ps.setNull(22, Types.VARCHAR);
-						ps.setNull(23, Types.VARCHAR);
-						ps.setNull(24, Types.VARCHAR);
-						ps.setNull(25, Types.VARCHAR);
-						ps.setNull(26, Types.VARCHAR);
-						ps.setInt(27, 0);
-						ps.setInt(28, 0);
-						ps.setInt(29, 0);
-						ps.setNull(30, Types.OTHER);
-						ps.setNull(31, Types.OTHER);
-						ps.setNull(32, Types.OTHER);
-					}
-					ps.executeUpdate();
-					try (ResultSet rs = ps.getGeneratedKeys()) {
-						if (rs.next()) {
-							fileId = rs.getInt(1);
-						}
-					}
+	/**
+	 * Inserts or updates the database rows representing the
+	 * {@link DLNAMediaInfo} instances in {@code entries} in a single
+	 * transaction. If the transaction fails, the entries are written one by
+	 * one so that a single bad entry doesn't prevent the others from being
+	 * cached.
+	 * <p>
+	 * This is used by the {@link DatabaseWriteQueue}, {@code entries} must not
+	 * contain more than one entry for the same name.
+	 *
+	 * @param entries the {@link DatabaseWriteQueue.Entry} instances to write.
+	 */
+	public synchronized void insertOrUpdateData(@Nonnull List<DatabaseWriteQueue.Entry> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		try (Connection connection = Services.tableManager().getConnection()) {
+			if (connection == null) {
+				LOGGER.error("Can't insert or update data since TableManager isn't connected");
+				return;
+			}
+			connection.setAutoCommit(false);
+			try {
+				writeData(connection, entries);
+				connection.commit();
+				for (DatabaseWriteQueue.Entry entry : entries) {
+					mediaInfoCache.put(entry.getName(), entry.getModified(), entry.getMedia());
+				}
+				LOGGER.trace("Wrote {} cache entries in one transaction", entries.size());
+				return;
+			} catch (SQLException e) {
+				connection.rollback();
+				LOGGER.debug("Batched cache update failed, writing entries individually: {}", e.getMessage());
+				LOGGER.trace("", e);
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			LOGGER.debug("Couldn't get a database connection for a batched cache update: {}", e.getMessage());
+			LOGGER.trace("", e);
+		}
+
+		for (DatabaseWriteQueue.Entry entry : entries) {
+			try (Connection connection = Services.tableManager().getConnection()) {
+				if (connection == null) {
+					LOGGER.error("Can't insert or update data since TableManager isn't connected");
+					return;
+				}
+				connection.setAutoCommit(false);
+				try {
+					writeData(connection, Collections.singletonList(entry));
+					connection.commit();
+					mediaInfoCache.put(entry.getName(), entry.getModified(), entry.getMedia());
 				} catch (SQLException e) {
 					connection.rollback();
+					mediaInfoCache.remove(entry.getName());
 					throw e;
+				} finally {
+					connection.setAutoCommit(true);
 				}
+			} catch (SQLException e) {
+				e = wrapDuplicateKey(e, entry.getName());
+				LOGGER.error(
+					"Database error while trying to add parsed information for \"{}\" to the cache: {}",
+					entry.getName(),
+					e.getMessage()
+				);
+				LOGGER.trace("", e);
 			}
+		}
+	}
 
-			if (media != null && fileId > -1) {
-				insertOrUpdateAudioTracks(connection, fileId, media);
-				insertOrUpdateSubtitleTracks(connection, fileId, media);
+	private static SQLException wrapDuplicateKey(SQLException se, String name) {
+		if (se.getErrorCode() == 23505) {
+			return new SQLException(String.format(
+				"Duplicate key while adding \"%s\" to the cache: %s",
+				name,
+				se.getMessage()
+			), se);
+		}
+		return se;
+	}
+
+	/**
+	 * Writes the entries using an existing {@link Connection} with auto
+	 * commit disabled. The caller is responsible for committing or rolling
+	 * back.
+	 * <p>
+	 * The {@code FILES} rows are merged on {@code FILENAME} in one JDBC batch.
+	 * The audio tracks, subtitle tracks and search terms of the written files
+	 * are then deleted and written again with one batch per table, so the
+	 * number of statements doesn't depend on the number of tracks.
+	 */
+	private void writeData(Connection connection, List<DatabaseWriteQueue.Entry> entries) throws SQLException {
+		changeCount.incrementAndGet();
+		try (PreparedStatement ps = connection.prepareStatement(
+			"MERGE INTO FILES (FILENAME, MODIFIED, TYPE, DURATION, BITRATE, BITRATEMODE, WIDTH, HEIGHT, SIZE, CODECV, " +
+			"FRAMERATE, ASPECTRATIODVD, ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, VIDEOPROFILE, VIDEOLEVEL, " +
+			"IMAGEINFO, THUMB, CONTAINER, MUXINGMODE, FRAMERATEMODE, STEREOSCOPY, MATRIXCOEFFICIENTS, TITLECONTAINER, " +
+			"TITLEVIDEOTRACK, VIDEOTRACKCOUNT, IMAGECOUNT, BITDEPTH, PIXELASPECTRATIO, SCANTYPE, SCANORDER) KEY (FILENAME) VALUES " +
+			"(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+		)) {
+			for (DatabaseWriteQueue.Entry entry : entries) {
+				setFileParameters(ps, entry);
+				ps.addBatch();
 			}
+			ps.executeBatch();
+		}
 
-			connection.commit();
-			connection.setAutoCommit(true);
-		} catch (SQLException se) {
-			if (se.getErrorCode() == 23505) {
-				throw new SQLException(String.format(
-					"Duplicate key while adding \"%s\" to the cache: %s",
-					name,
-					se.getMessage()
-				), se);
+		int[] fileIds = new int[entries.size()];
+		try (PreparedStatement ps = connection.prepareStatement("SELECT ID FROM FILES WHERE FILENAME = ?")) {
+			for (int i = 0; i < fileIds.length; i++) {
+				ps.setString(1, entries.get(i).getName());
+				try (ResultSet rs = ps.executeQuery()) {
+					fileIds[i] = rs.next() ? rs.getInt(1) : -1;
+				}
+			}
+		}
+
+		try (
+			PreparedStatement deleteAudio = connection.prepareStatement("DELETE FROM AUDIOTRACKS WHERE FILEID = ?");
+			PreparedStatement deleteSubtitles = connection.prepareStatement("DELETE FROM SUBTRACKS WHERE FILEID = ?");
+			PreparedStatement deleteTerms = connection.prepareStatement("DELETE FROM SEARCHTERMS WHERE FILEID = ?");
+		) {
+			for (int fileId : fileIds) {
+				if (fileId > -1) {
+					deleteAudio.setInt(1, fileId);
+					deleteAudio.addBatch();
+					deleteSubtitles.setInt(1, fileId);
+					deleteSubtitles.addBatch();
+					deleteTerms.setInt(1, fileId);
+					deleteTerms.addBatch();
+				}
+			}
+			deleteAudio.executeBatch();
+			deleteSubtitles.executeBatch();
+			deleteTerms.executeBatch();
+		}
+
+		/* XXX This is flawed, multiple tracks with the same ID will overwrite
+		 * each other.
+		 */
+		try (
+			PreparedStatement audioStatement = connection.prepareStatement(
+				"MERGE INTO AUDIOTRACKS (" +
+					"FILEID, ID, LANG, TITLE, NRAUDIOCHANNELS, SAMPLEFREQ, CODECA, BITSPERSAMPLE, " +
+					"ALBUM, ARTIST, SONGNAME, GENRE, YEAR, TRACK, DELAY, MUXINGMODE, BITRATE, BITRATEMODE" +
+				") KEY (FILEID, ID) VALUES (" +
+					"?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?" +
+				")"
+			);
+			PreparedStatement subtitleStatement = connection.prepareStatement(
+				"MERGE INTO SUBTRACKS (" +
+					"FILEID, ID, LANG, TITLE, TYPE" +
+				") KEY (FILEID, ID) VALUES (" +
+					"?, ?, ?, ?, ?" +
+				")"
+			);
+			PreparedStatement termStatement = connection.prepareStatement(
+				"INSERT INTO SEARCHTERMS (TERM, FIELD, FILEID) VALUES (?, ?, ?)"
+			);
+		) {
+			for (int i = 0; i < fileIds.length; i++) {
+				int fileId = fileIds[i];
+				if (fileId < 0) {
+					continue;
+				}
+				DatabaseWriteQueue.Entry entry = entries.get(i);
+				DLNAMediaInfo media = entry.getMedia();
+				if (media != null) {
+					for (DLNAMediaAudio audioTrack : media.getAudioTracksList()) {
+						audioStatement.setInt(1, fileId);
+						audioStatement.setInt(2, audioTrack.getId());
+						audioStatement.setString(3, left(audioTrack.getLang(), SIZE_LANG));
+						audioStatement.setString(4, left(audioTrack.getAudioTrackTitleFromMetadata(), SIZE_TITLE));
+						audioStatement.setInt(5, audioTrack.getNumberOfChannelsRaw());
+						audioStatement.setInt(6, audioTrack.getSampleFrequencyRaw());
+						audioStatement.setString(7, left(audioTrack.getCodecA(), SIZE_CODECA));
+						audioStatement.setInt(8, audioTrack.getBitsPerSampleRaw());
+						audioStatement.setString(9, left(trimToEmpty(audioTrack.getAlbum()), SIZE_ALBUM));
+						audioStatement.setString(10, left(trimToEmpty(audioTrack.getArtist()), SIZE_ARTIST));
+						audioStatement.setString(11, left(trimToEmpty(audioTrack.getSongname()), SIZE_SONGNAME));
+						audioStatement.setString(12, left(trimToEmpty(audioTrack.getGenre()), SIZE_GENRE));
+						audioStatement.setInt(13, audioTrack.getYear());
+						audioStatement.setInt(14, audioTrack.getTrack());
+						audioStatement.setInt(15, audioTrack.getDelayRaw());
+						audioStatement.setString(16, left(trimToEmpty(audioTrack.getMuxingModeAudio()), SIZE_MUXINGMODE));
+						audioStatement.setInt(17, audioTrack.getBitRateRaw());
+						audioStatement.setString(18, MediaColumnCodec.encodeEnum(audioTrack.getBitRateModeRaw()));
+						audioStatement.addBatch();
+					}
+					for (DLNAMediaSubtitle subtitleTrack : media.getSubtitleTracksList()) {
+						subtitleStatement.setInt(1, fileId);
+						subtitleStatement.setInt(2, subtitleTrack.getId());
+						subtitleStatement.setString(3, left(subtitleTrack.getLang(), SIZE_LANG));
+						subtitleStatement.setString(4, left(subtitleTrack.getSubtitlesTrackTitleFromMetadata(), SIZE_TITLE));
+						subtitleStatement.setInt(5, subtitleTrack.getType().getStableIndex());
+						subtitleStatement.addBatch();
+					}
+				}
+				addSearchTerms(termStatement, fileId, entry.getName(), media);
+			}
+			audioStatement.executeBatch();
+			subtitleStatement.executeBatch();
+			termStatement.executeBatch();
+		}
+	}
+
+	/**
+	 * Sets the parameters of a {@code FILES} {@code INSERT} or {@code MERGE}
+	 * statement listing all columns except {@code ID}.
+	 */
+	private void setFileParameters(PreparedStatement ps, DatabaseWriteQueue.Entry entry) throws SQLException {
+		DLNAMediaInfo media = entry.getMedia();
+		ps.setString(1, entry.getName());
+		ps.setTimestamp(2, new Timestamp(entry.getModified()));
+		ps.setInt(3, entry.getType() == null ? 0 : entry.getType().getValue());
+		if (media != null) {
+			if (media.getDuration() != null) {
+				ps.setDouble(4, media.getDurationInSeconds());
+			} else {
+				ps.setNull(4, Types.DOUBLE);
+			}
+
+			ps.setInt(5, media.getMediaType() == MediaType.IMAGE ? 0 : media.getBitRate());
+			ps.setString(6, MediaColumnCodec.encodeEnum(media.getBitRateMode()));
+			ps.setInt(7, media.getWidth());
+			ps.setInt(8, media.getHeight());
+			ps.setLong(9, media.getSize());
+			ps.setString(10, left(media.getCodecV(), SIZE_CODECV));
+			ps.setString(11, left(media.getFrameRate(), SIZE_FRAMERATE));
+			ps.setBytes(12, MediaColumnCodec.encodeRational(media.getAspectRatioDvdIso()));
+			ps.setBytes(13, MediaColumnCodec.encodeRational(media.getAspectRatioContainer()));
+			ps.setBytes(14, MediaColumnCodec.encodeRational(media.getAspectRatioVideoTrack()));
+			ps.setInt(15, media.getReferenceFrameCount());
+			ps.setString(16, left(media.getVideoProfile(), SIZE_VIDEO_PROFILE));
+			ps.setString(17, MediaColumnCodec.encodeVideoLevel(media.getVideoLevel()));
+			try {
+				ps.setBytes(18, MediaColumnCodec.encodeImageInfo(media.getImageInfo()));
+				ps.setBytes(19, MediaColumnCodec.encodeThumbnail(media.getThumb()));
+			} catch (IOException e) {
+				throw new SQLException("Unable to encode the image information of \"" + entry.getName() + "\"", e);
+			}
+			ps.setString(20, left(media.getContainer(), SIZE_CONTAINER));
+			ps.setString(21, left(media.getMuxingModeAudio(), SIZE_MUXINGMODE));
+			ps.setString(22, left(media.getFrameRateMode(), SIZE_FRAMERATE_MODE));
+			ps.setString(23, left(media.getStereoscopy(), SIZE_STEREOSCOPY));
+			ps.setString(24, left(media.getMatrixCoefficients(), SIZE_MATRIX_COEFFICIENTS));
+			ps.setString(25, left(media.getFileTitleFromMetadata(), SIZE_TITLE));
+			ps.setString(26, left(media.getVideoTrackTitleFromMetadata(), SIZE_TITLE));
+			ps.setInt(27, media.getVideoTrackCount());
+			ps.setInt(28, media.getImageCount());
+			ps.setInt(29, media.getVideoBitDepth());
+			ps.setBytes(30, MediaColumnCodec.encodeRational(media.getPixelAspectRatio()));
+			ps.setString(31, MediaColumnCodec.encodeEnum(media.getScanType()));
+			ps.setString(32, MediaColumnCodec.encodeEnum(media.getScanOrder()));
+		} else {
+			ps.setNull(4, Types.DOUBLE);
+			ps.setInt(5, 0);
+			ps.setNull(6, Types.VARCHAR);
+			ps.setInt(7, 0);
+			ps.setInt(8, 0);
+			ps.setLong(9, 0);
+			ps.setNull(10, Types.VARCHAR);
+			ps.setNull(11, Types.VARCHAR);
+			ps.setNull(12, Types.VARBINARY);
+			ps.setNull(13, Types.VARBINARY);
+			ps.setNull(14, Types.VARBINARY);
+			ps.setByte(15, (byte) -1);
+			ps.setNull(16, Types.VARCHAR);
+			ps.setNull(17, Types.VARCHAR);
+			ps.setNull(18, Types.VARBINARY);
+			ps.setNull(19, Types.VARBINARY);
+			ps.setNull(20, Types.VARCHAR);
+			ps.setNull(21, Types.VARCHAR);
+			ps.setNull(22, Types.VARCHAR);
+			ps.setNull(23, Types.VARCHAR);
+			ps.setNull(24, Types.VARCHAR);
+			ps.setNull(25, Types.VARCHAR);
+			ps.setNull(26, Types.VARCHAR);
+			ps.setInt(27, 0);
+			ps.setInt(28, 0);
+			ps.setInt(29, 0);
+			ps.setNull(30, Types.VARBINARY);
+			ps.setNull(31, Types.VARCHAR);
+			ps.setNull(32, Types.VARCHAR);
+		}
+	}
+
+	/**
+	 * Adds the {@code SEARCHTERMS} rows for a file with the words from its
+	 * file name, title, song names, artists, albums and genres to the batch
+	 * of {@code statement}.
+	 */
+	private static void addSearchTerms(
+		PreparedStatement statement,
+		int fileId,
+		String name,
+		DLNAMediaInfo media
+	) throws SQLException {
+		EnumMap<Field, Set<String>> terms = new EnumMap<>(Field.class);
+		for (Field field : Field.values()) {
+			terms.put(field, new HashSet<String>());
+		}
+		int splitTrack = name.indexOf("#SplitTrack");
+		String fileName = new File(splitTrack < 0 ? name : name.substring(0, splitTrack)).getName();
+		terms.get(Field.TITLE).addAll(SearchCriteria.tokenize(FilenameUtils.getBaseName(fileName)));
+		if (media != null) {
+			terms.get(Field.TITLE).addAll(SearchCriteria.tokenize(media.getFileTitleFromMetadata()));
+			for (DLNAMediaAudio audioTrack : media.getAudioTracksList()) {
+				terms.get(Field.TITLE).addAll(SearchCriteria.tokenize(audioTrack.getSongname()));
+				terms.get(Field.ARTIST).addAll(SearchCriteria.tokenize(audioTrack.getArtist()));
+				terms.get(Field.ALBUM).addAll(SearchCriteria.tokenize(audioTrack.getAlbum()));
+				terms.get(Field.GENRE).addAll(SearchCriteria.tokenize(audioTrack.getGenre()));
+			}
+		}
+
+		for (Entry<Field, Set<String>> entry : terms.entrySet()) {
+			for (String term : entry.getValue()) {
+				statement.setString(1, term);
+				statement.setInt(2, entry.getKey().getValue());
+				statement.setInt(3, fileId);
+				statement.addBatch();
 			}
-			throw se;
 		}
 	}
 
 	public synchronized void deleteThumbnails() {
+		writeQueue.flush();
+		mediaInfoCache.clear();
 		try (
 			Connection connection = Services.tableManager().getConnection();
 			PreparedStatement preparedStatement = connection == null ? null : connection.prepareStatement(
@@ -788,7 +1164,7 @@ public class DLNAMediaDatabase implements Runnable {
 				LOGGER.error("Can't delete thumbnails since TableManager isn't connected");
 				return;
 			}
-			preparedStatement.setNull(1, Types.OTHER);
+			preparedStatement.setNull(1, Types.VARBINARY);
 			preparedStatement.executeUpdate();
 		} catch (SQLException se) {
 			LOGGER.error("Error deleting cached thumbnails: {}", se.getMessage());
@@ -797,6 +1173,8 @@ public class DLNAMediaDatabase implements Runnable {
 	}
 
 	public synchronized void updateThumbnail(String name, long modified, DLNAMediaInfo media) {
+		writeQueue.flush();
+		mediaInfoCache.remove(name);
 		try (
 			Connection connection = Services.tableManager().getConnection();
 			PreparedStatement preparedStatement = connection == null ? null : connection.prepareStatement(
@@ -809,20 +1187,26 @@ public class DLNAMediaDatabase implements Runnable {
 			}
 			preparedStatement.setString(2, name);
 			preparedStatement.setTimestamp(3, new Timestamp(modified));
-			if (media != null && media.getThumb() != null) {
-				preparedStatement.setObject(1, media.getThumb());
-			} else {
-				preparedStatement.setNull(1, Types.OTHER);
-			}
+			preparedStatement.setBytes(1, media == null ? null : MediaColumnCodec.encodeThumbnail(media.getThumb()));
 			preparedStatement.executeUpdate();
-		} catch (SQLException se) {
+		} catch (IOException | SQLException se) {
 			LOGGER.error("Error updating cached thumbnail for \"{}\": {}", media, se.getMessage());
 			LOGGER.trace("", se);
 		}
 	}
 
-	public synchronized ArrayList<String> getStrings(String sql) {
-		ArrayList<String> list = new ArrayList<>();
+	/**
+	 * Runs a query returning a single column of strings. The query should
+	 * return distinct values itself, blank values are returned as
+	 * {@link #NONAME} and merged.
+	 *
+	 * @param sql the SQL query.
+	 * @return The distinct values in query order or {@code null} if an error
+	 *         occurred.
+	 */
+	public ArrayList<String> getStrings(String sql) {
+		writeQueue.flush();
+		LinkedHashSet<String> values = new LinkedHashSet<>();
 		try (Connection connection = Services.tableManager().getConnection()) {
 			if (connection == null) {
 				LOGGER.error("Can't get strings since TableManager isn't connected");
@@ -834,13 +1218,7 @@ public class DLNAMediaDatabase implements Runnable {
 			) {
 				while (resultSet.next()) {
 					String str = resultSet.getString(1);
-					if (isBlank(str)) {
-						if (!list.contains(NONAME)) {
-							list.add(NONAME);
-						}
-					} else if (!list.contains(str)) {
-						list.add(str);
-					}
+					values.add(isBlank(str) ? NONAME : str);
 				}
 			}
 		} catch (SQLException se) {
@@ -848,51 +1226,207 @@ public class DLNAMediaDatabase implements Runnable {
 			LOGGER.trace("", se);
 			return null;
 		}
-		return list;
+		return new ArrayList<>(values);
+	}
+
+	/**
+	 * Removes the rows for files that no longer exist or have been modified
+	 * using the {@link DatabaseCleaner}. If the previous cleanup was stopped,
+	 * this continues where it stopped. Blocks until the cleanup is done or
+	 * stopped with {@link #stopCleanup()}, but doesn't block readers while
+	 * the files are checked.
+	 */
+	public void cleanup() {
+		cleaner.run(PMS.getConfiguration().getLibraryScanThreads());
+	}
+
+	/**
+	 * Stops a running {@link #cleanup()} after the rows being checked.
+	 */
+	public void stopCleanup() {
+		cleaner.stop();
 	}
 
-	public synchronized void cleanup() {
+	/**
+	 * Counts the {@code FILES} rows after the specified row in file name
+	 * order.
+	 *
+	 * @param after the row to count from or {@code null} to count all rows.
+	 * @return The number of rows or {@code 0} if an error occurred.
+	 */
+	int getCleanupRowCount(@Nullable DatabaseCleaner.Row after) {
 		try (Connection connection = Services.tableManager().getConnection()) {
 			if (connection == null) {
-				LOGGER.error("Can't cleanup database since TableManager isn't connected");
-				return;
+				LOGGER.error("Can't count files since TableManager isn't connected");
+				return 0;
 			}
 			try (
-				PreparedStatement preparedStatement = connection.prepareStatement("SELECT COUNT(*) FROM FILES");
-				ResultSet resultSet = preparedStatement.executeQuery();
+				PreparedStatement statement = connection.prepareStatement(
+					after == null ?
+						"SELECT COUNT(*) FROM FILES" :
+						"SELECT COUNT(*) FROM FILES WHERE FILENAME > ? OR (FILENAME = ? AND ID > ?)"
+				);
 			) {
-				dbCount = 0;
+				if (after != null) {
+					statement.setString(1, after.getFilename());
+					statement.setString(2, after.getFilename());
+					statement.setInt(3, after.getId());
+				}
+				try (ResultSet resultSet = statement.executeQuery()) {
+					return resultSet.next() ? resultSet.getInt(1) : 0;
+				}
+			}
+		} catch (SQLException se) {
+			LOGGER.error("An error occured while counting files: {}", se.getMessage());
+			LOGGER.trace("", se);
+			return 0;
+		}
+	}
 
-				if (resultSet.next()) {
-					dbCount = resultSet.getInt(1);
+	/**
+	 * Reads the next page of {@code FILES} rows in file name order for the
+	 * {@link DatabaseCleaner}.
+	 *
+	 * @param after the last row of the previous page or {@code null} to read
+	 *            the first page.
+	 * @param count the maximum number of rows to read.
+	 * @return The rows or {@code null} if an error occurred.
+	 */
+	@Nullable
+	List<DatabaseCleaner.Row> getCleanupRows(@Nullable DatabaseCleaner.Row after, int count) {
+		try (Connection connection = Services.tableManager().getConnection()) {
+			if (connection == null) {
+				LOGGER.error("Can't cleanup database since TableManager isn't connected");
+				return null;
+			}
+			try (
+				PreparedStatement statement = connection.prepareStatement(
+					"SELECT ID, FILENAME, MODIFIED FROM FILES " +
+					(after == null ? "" : "WHERE FILENAME > ? OR (FILENAME = ? AND ID > ?) ") +
+					"ORDER BY FILENAME, ID LIMIT ?"
+				);
+			) {
+				int i = 1;
+				if (after != null) {
+					statement.setString(i++, after.getFilename());
+					statement.setString(i++, after.getFilename());
+					statement.setInt(i++, after.getId());
+				}
+				statement.setInt(i, count);
+				ArrayList<DatabaseCleaner.Row> rows = new ArrayList<>();
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						rows.add(new DatabaseCleaner.Row(
+							resultSet.getInt("ID"),
+							resultSet.getString("FILENAME"),
+							resultSet.getTimestamp("MODIFIED").getTime()
+						));
+					}
 				}
+				return rows;
 			}
+		} catch (SQLException se) {
+			LOGGER.error("An error occured while reading files to clean up: {}", se.getMessage());
+			LOGGER.trace("", se);
+			return null;
+		}
+	}
 
-			PMS.get().getFrame().setStatusLine(Messages.getString("DLNAMediaDatabase.2") + " 0%");
-			int i = 0;
-			int oldpercent = 0;
+	/**
+	 * Removes the specified rows found obsolete by the
+	 * {@link DatabaseCleaner} in one transaction, including their audio and
+	 * subtitle tracks and search terms. A row is only removed if its
+	 * modification time hasn't changed since it was checked.
+	 *
+	 * @param rows the rows to remove.
+	 * @return The number of removed {@code FILES} rows.
+	 */
+	synchronized int removeCleanupRows(@Nonnull List<DatabaseCleaner.Row> rows) {
+		int removed = 0;
+		try (Connection connection = Services.tableManager().getConnection()) {
+			if (connection == null) {
+				LOGGER.error("Can't cleanup database since TableManager isn't connected");
+				return 0;
+			}
+			connection.setAutoCommit(false);
+			String condition = " IN (SELECT ID FROM FILES WHERE ID = ? AND MODIFIED = ?)";
+			try (
+				PreparedStatement deleteAudio = connection.prepareStatement("DELETE FROM AUDIOTRACKS WHERE FILEID" + condition);
+				PreparedStatement deleteSubtitles = connection.prepareStatement("DELETE FROM SUBTRACKS WHERE FILEID" + condition);
+				PreparedStatement deleteTerms = connection.prepareStatement("DELETE FROM SEARCHTERMS WHERE FILEID" + condition);
+				PreparedStatement deleteFile = connection.prepareStatement("DELETE FROM FILES WHERE ID = ? AND MODIFIED = ?");
+			) {
+				for (DatabaseCleaner.Row row : rows) {
+					Timestamp modified = new Timestamp(row.getModified());
+					for (PreparedStatement statement : new PreparedStatement[] {deleteAudio, deleteSubtitles, deleteTerms, deleteFile}) {
+						statement.setInt(1, row.getId());
+						statement.setTimestamp(2, modified);
+						statement.addBatch();
+					}
+				}
+				deleteAudio.executeBatch();
+				deleteSubtitles.executeBatch();
+				deleteTerms.executeBatch();
+				for (int count : deleteFile.executeBatch()) {
+					if (count > 0) {
+						removed += count;
+					}
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				removed = 0;
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException se) {
+			LOGGER.error("An error occured while cleaning up the database: {}", se.getMessage());
+			LOGGER.trace("", se);
+		}
+		if (removed > 0) {
+			changeCount.incrementAndGet();
+			for (DatabaseCleaner.Row row : rows) {
+				mediaInfoCache.remove(row.getFilename());
+			}
+		}
+		return removed;
+	}
 
-			if (dbCount > 0) {
-				try (
-					PreparedStatement preparedStatement = connection.prepareStatement(
-						"SELECT FILENAME, MODIFIED, ID FROM FILES",
-						ResultSet.TYPE_FORWARD_ONLY,
-						ResultSet.CONCUR_UPDATABLE
-					);
-					ResultSet resultSet = preparedStatement.executeQuery();
-				) {
-					while (resultSet.next()) {
-						String filename = resultSet.getString("FILENAME");
-						long modified = resultSet.getTimestamp("MODIFIED").getTime();
-						File file = new File(filename);
-						if (!file.exists() || file.lastModified() != modified) {
-							resultSet.deleteRow();
-						}
-						i++;
-						int newpercent = i * 100 / dbCount;
-						if (newpercent > oldpercent) {
-							PMS.get().getFrame().setStatusLine(Messages.getString("DLNAMediaDatabase.2") + newpercent + "%");
-							oldpercent = newpercent;
+	/**
+	 * Removes the rows for files that no longer exist or have been modified
+	 * below the specified directories. Files directly in one of the
+	 * directories are checked individually, while files further down are only
+	 * removed if their directory no longer exists, since changes to other
+	 * directories will have been reported separately.
+	 *
+	 * @param directories the absolute paths of the changed directories.
+	 */
+	public void cleanup(@Nonnull Collection<String> directories) {
+		if (directories.isEmpty()) {
+			return;
+		}
+		writeQueue.flush();
+		for (String directory : directories) {
+			mediaInfoCache.discard(directory);
+		}
+		ArrayList<DatabaseCleaner.Row> rows = new ArrayList<>();
+		try (Connection connection = Services.tableManager().getConnection()) {
+			if (connection == null) {
+				LOGGER.error("Can't cleanup database since TableManager isn't connected");
+				return;
+			}
+			try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT ID, FILENAME, MODIFIED FROM FILES WHERE FILENAME LIKE ?")) {
+				for (String directory : directories) {
+					String prefix = directory.endsWith(File.separator) ? directory : directory + File.separator;
+					preparedStatement.setString(1, sqlLikeEscape(prefix) + "%");
+					try (ResultSet resultSet = preparedStatement.executeQuery()) {
+						while (resultSet.next()) {
+							rows.add(new DatabaseCleaner.Row(
+								resultSet.getInt("ID"),
+								resultSet.getString("FILENAME"),
+								resultSet.getTimestamp("MODIFIED").getTime()
+							));
 						}
 					}
 				}
@@ -900,10 +1434,113 @@ public class DLNAMediaDatabase implements Runnable {
 		} catch (SQLException se) {
 			LOGGER.error("An error occured while cleaning up the database: {}", se.getMessage());
 			LOGGER.trace("", se);
+			return;
+		}
+
+		// The files are checked without holding the database lock
+		HashSet<String> prefixes = new HashSet<>();
+		for (String directory : directories) {
+			prefixes.add(directory.endsWith(File.separator) ? directory : directory + File.separator);
+		}
+		HashMap<String, Boolean> existingDirectories = new HashMap<>();
+		ArrayList<DatabaseCleaner.Row> obsolete = new ArrayList<>();
+		for (DatabaseCleaner.Row row : rows) {
+			File file = new File(row.getFilename());
+			String parent = file.getParent();
+			boolean remove;
+			if (parent == null || prefixes.contains(parent + File.separator)) {
+				remove = !file.exists() || file.lastModified() != row.getModified();
+			} else {
+				Boolean exists = existingDirectories.get(parent);
+				if (exists == null) {
+					exists = new File(parent).isDirectory();
+					existingDirectories.put(parent, exists);
+				}
+				remove = !exists;
+			}
+			if (remove) {
+				obsolete.add(row);
+			}
+		}
+
+		int removed = 0;
+		for (int i = 0; i < obsolete.size(); i += DatabaseCleaner.DEFAULT_BATCH_SIZE) {
+			removed += removeCleanupRows(obsolete.subList(i, Math.min(i + DatabaseCleaner.DEFAULT_BATCH_SIZE, obsolete.size())));
+		}
+		LOGGER.debug(
+			"Checked {} cached files in {} changed folders and removed {}",
+			rows.size(),
+			directories.size(),
+			removed
+		);
+	}
+
+	/**
+	 * Removes the rows for the specified file, including its split tracks and
+	 * its audio and subtitle tracks. If {@code path} is a directory, the rows
+	 * for all files below it are removed. Matching entries that are waiting
+	 * in the {@link DatabaseWriteQueue} are discarded.
+	 *
+	 * @param path the absolute path of the removed file or directory.
+	 * @return The number of removed {@code FILES} rows.
+	 */
+	public synchronized int removeData(@Nonnull String path) {
+		int removed = 0;
+		writeQueue.discard(path);
+		mediaInfoCache.discard(path);
+		try (Connection connection = Services.tableManager().getConnection()) {
+			if (connection == null) {
+				LOGGER.error("Can't remove data since TableManager isn't connected");
+				return 0;
+			}
+			String prefix = path.endsWith(File.separator) ? path : path + File.separator;
+			connection.setAutoCommit(false);
+			try (
+				PreparedStatement select = connection.prepareStatement(
+					"SELECT ID FROM FILES WHERE FILENAME = ? OR FILENAME LIKE ? OR FILENAME LIKE ?"
+				);
+				PreparedStatement deleteAudio = connection.prepareStatement("DELETE FROM AUDIOTRACKS WHERE FILEID = ?");
+				PreparedStatement deleteSubtitles = connection.prepareStatement("DELETE FROM SUBTRACKS WHERE FILEID = ?");
+				PreparedStatement deleteFile = connection.prepareStatement("DELETE FROM FILES WHERE ID = ?");
+			) {
+				select.setString(1, path);
+				select.setString(2, sqlLikeEscape(path + "#SplitTrack") + "%");
+				select.setString(3, sqlLikeEscape(prefix) + "%");
+				try (ResultSet resultSet = select.executeQuery()) {
+					while (resultSet.next()) {
+						int id = resultSet.getInt("ID");
+						deleteAudio.setInt(1, id);
+						deleteAudio.addBatch();
+						deleteSubtitles.setInt(1, id);
+						deleteSubtitles.addBatch();
+						deleteFile.setInt(1, id);
+						deleteFile.addBatch();
+						removed++;
+					}
+				}
+				if (removed > 0) {
+					changeCount.incrementAndGet();
+					deleteAudio.executeBatch();
+					deleteSubtitles.executeBatch();
+					deleteFile.executeBatch();
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				removed = 0;
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException se) {
+			LOGGER.error("An error occured while removing \"{}\" from the database: {}", path, se.getMessage());
+			LOGGER.trace("", se);
 		}
+		return removed;
 	}
 
-	public synchronized ArrayList<File> getFiles(String sql) {
+	public ArrayList<File> getFiles(String sql) {
+		writeQueue.flush();
 		ArrayList<File> list = new ArrayList<>();
 		try (Connection connection = Services.tableManager().getConnection()) {
 			if (connection == null) {
@@ -934,6 +1571,240 @@ public class DLNAMediaDatabase implements Runnable {
 		return list;
 	}
 
+	/**
+	 * Reads a page of the files returned by a media library query. Paging is
+	 * done by the query, so only the requested rows are read from the
+	 * database and only they are turned into {@link File}s. Unlike
+	 * {@link #getFiles(String)}, the files aren't checked on disk: the scans
+	 * and the file watchers keep the database up to date, and a file that has
+	 * gone missing is dropped when it's resolved.
+	 *
+	 * @param sql the query returning {@code FILENAME} and {@code MODIFIED}
+	 *            or the condition for a query on {@code FILES}.
+	 * @param start the index of the first row to return.
+	 * @param count the maximum number of rows to return or {@code 0} to
+	 *            return all rows from {@code start}.
+	 * @return The {@link LibraryPage} or {@code null} if an error occurred.
+	 */
+	@Nullable
+	public LibraryPage getFiles(@Nonnull String sql, int start, int count) {
+		writeQueue.flush();
+		if (!sql.toLowerCase(Locale.ROOT).startsWith("select")) {
+			sql = "SELECT FILENAME, MODIFIED FROM FILES WHERE " + sql;
+		}
+		try (Connection connection = Services.tableManager().getConnection()) {
+			if (connection == null) {
+				LOGGER.error("Can't get files since TableManager isn't connected");
+				return null;
+			}
+
+			int totalMatches = 0;
+			try (
+				PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM (" + sql + ")");
+				ResultSet resultSet = statement.executeQuery();
+			) {
+				if (resultSet.next()) {
+					totalMatches = resultSet.getInt(1);
+				}
+			}
+
+			ArrayList<File> files = new ArrayList<>();
+			if (totalMatches > start) {
+				StringBuilder pageSql = new StringBuilder(sql);
+				if (count > 0) {
+					pageSql.append(" LIMIT ").append(count);
+				}
+				if (start > 0) {
+					pageSql.append(" OFFSET ").append(start);
+				}
+				try (
+					PreparedStatement statement = connection.prepareStatement(pageSql.toString());
+					ResultSet resultSet = statement.executeQuery();
+				) {
+					while (resultSet.next()) {
+						files.add(new File(resultSet.getString("FILENAME")));
+					}
+				}
+			}
+			return new LibraryPage(files, totalMatches, getSummaries(connection, files));
+		} catch (SQLException se) {
+			LOGGER.error("An error occured while getting a page of files: {}", se.getMessage());
+			LOGGER.trace("", se);
+			return null;
+		}
+	}
+
+	private static Map<String, LibraryItem.Summary> getSummaries(Connection connection, List<File> files) throws SQLException {
+		HashMap<String, LibraryItem.Summary> summaries = new HashMap<>();
+		for (int from = 0; from < files.size(); from += SUMMARY_BATCH_SIZE) {
+			int to = Math.min(from + SUMMARY_BATCH_SIZE, files.size());
+			StringBuilder sql = new StringBuilder(
+				"SELECT F.FILENAME, F.MODIFIED, F.TYPE, F.SIZE, F.DURATION, A.SONGNAME, A.ARTIST, A.ALBUM FROM FILES F " +
+				"LEFT JOIN AUDIOTRACKS A ON A.FILEID = F.ID AND A.ID = (SELECT MIN(ID) FROM AUDIOTRACKS WHERE FILEID = F.ID) " +
+				"WHERE F.FILENAME IN ("
+			);
+			for (int i = from; i < to; i++) {
+				sql.append(i == from ? "?" : ", ?");
+			}
+			sql.append(')');
+			try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+				for (int i = from; i < to; i++) {
+					statement.setString(i - from + 1, files.get(i).getPath());
+				}
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						String filename = resultSet.getString("FILENAME");
+						long modified = resultSet.getTimestamp("MODIFIED").getTime();
+						LibraryItem.Summary summary = summaries.get(filename);
+						if (summary != null && summary.getModified() >= modified) {
+							continue;
+						}
+						summaries.put(filename, new LibraryItem.Summary(
+							filename,
+							modified,
+							FormatType.typeOf(resultSet.getInt("TYPE")),
+							resultSet.getLong("SIZE"),
+							toDouble(resultSet, "DURATION"),
+							resultSet.getString("SONGNAME"),
+							resultSet.getString("ARTIST"),
+							resultSet.getString("ALBUM")
+						));
+					}
+				}
+			}
+		}
+		return summaries;
+	}
+
+	/**
+	 * Finds the audio, image and video files matching the specified
+	 * {@link SearchCriteria} using the {@code SEARCHTERMS} index. Paging is
+	 * done by the query, so only the requested rows are read from the
+	 * database. Like {@link #getFiles(String, int, int)}, the result isn't
+	 * checked against the file system, so that every page has the reported
+	 * number of matches. Files that are removed or modified are taken care of
+	 * by {@link #removeData} and {@link #cleanup}.
+	 *
+	 * @param criteria the {@link SearchCriteria} to match.
+	 * @param start the index of the first match to return.
+	 * @param count the maximum number of matches to return or {@code 0} to
+	 *            return all matches from {@code start}.
+	 * @return The {@link SearchResult} or {@code null} if the database can't
+	 *         be searched.
+	 */
+	@Nullable
+	public SearchResult search(@Nonnull SearchCriteria criteria, int start, int count) {
+		writeQueue.flush();
+		try (Connection connection = Services.tableManager().getConnection()) {
+			if (connection == null) {
+				LOGGER.error("Can't search since TableManager isn't connected");
+				return null;
+			}
+			ArrayList<Object> parameters = new ArrayList<>();
+			String condition =
+				"F.TYPE IN (" + FormatType.AUDIO.getValue() + ", " + FormatType.IMAGE.getValue() + ", " +
+				FormatType.VIDEO.getValue() + ") AND " + criteria.toSql(connection, parameters);
+
+			int totalMatches = 0;
+			try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM FILES F WHERE " + condition)) {
+				setParameters(statement, parameters);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					if (resultSet.next()) {
+						totalMatches = resultSet.getInt(1);
+					}
+				}
+			}
+
+			ArrayList<File> files = new ArrayList<>();
+			if (totalMatches > start) {
+				StringBuilder sql = new StringBuilder("SELECT F.FILENAME FROM FILES F WHERE ");
+				sql.append(condition).append(" ORDER BY F.FILENAME");
+				if (count > 0) {
+					sql.append(" LIMIT ").append(count);
+				}
+				if (start > 0) {
+					sql.append(" OFFSET ").append(start);
+				}
+				try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+					setParameters(statement, parameters);
+					try (ResultSet resultSet = statement.executeQuery()) {
+						while (resultSet.next()) {
+							files.add(new File(resultSet.getString("FILENAME")));
+						}
+					}
+				}
+			}
+			LOGGER.trace("Search for {} matched {} files", criteria, totalMatches);
+			return new SearchResult(files, totalMatches);
+		} catch (SQLException se) {
+			LOGGER.error("An error occured while searching the database: {}", se.getMessage());
+			LOGGER.trace("", se);
+			return null;
+		}
+	}
+
+	private static void setParameters(PreparedStatement statement, List<Object> parameters) throws SQLException {
+		for (int i = 0; i < parameters.size(); i++) {
+			statement.setObject(i + 1, parameters.get(i));
+		}
+	}
+
+	/**
+	 * A page of the files returned by a media library query.
+	 */
+	@Immutable
+	public static class LibraryPage {
+		private final List<File> files;
+		private final int totalMatches;
+		private final Map<String, LibraryItem.Summary> summaries;
+
+		public LibraryPage(@Nonnull List<File> files, int totalMatches) {
+			this(files, totalMatches, Collections.<String, LibraryItem.Summary>emptyMap());
+		}
+
+		public LibraryPage(@Nonnull List<File> files, int totalMatches, @Nonnull Map<String, LibraryItem.Summary> summaries) {
+			this.files = Collections.unmodifiableList(files);
+			this.totalMatches = totalMatches;
+			this.summaries = Collections.unmodifiableMap(summaries);
+		}
+
+		/**
+		 * @return The files in the requested page.
+		 */
+		@Nonnull
+		public List<File> getFiles() {
+			return files;
+		}
+
+		/**
+		 * @return The total number of rows returned by the query.
+		 */
+		public int getTotalMatches() {
+			return totalMatches;
+		}
+
+		/**
+		 * @param file the file.
+		 * @return The {@link LibraryItem.Summary} of {@code file} or
+		 *         {@code null} if it wasn't read.
+		 */
+		@Nullable
+		public LibraryItem.Summary getSummary(@Nonnull File file) {
+			return summaries.get(file.getPath());
+		}
+	}
+
+	/**
+	 * The result of {@link DLNAMediaDatabase#search}.
+	 */
+	@Immutable
+	public static class SearchResult extends LibraryPage {
+
+		public SearchResult(@Nonnull List<File> files, int totalMatches) {
+			super(files, totalMatches);
+		}
+	}
+
 	public boolean isScanLibraryRunning() {
 		return scanner != null && scanner.isAlive();
 	}
@@ -51,6 +51,8 @@ import net.pms.io.ProcessWrapperImpl;
 import net.pms.media.VideoCodec;
 import net.pms.media.VideoLevel;
 import net.pms.network.HTTPResource;
+import net.pms.service.TranscodePriority;
+import net.pms.service.TranscodeScheduler;
 import net.pms.util.FileUtil;
 import net.pms.util.MpegUtil;
 import net.pms.util.ProcessUtil;
@@ -259,6 +261,12 @@ public class DLNAMediaInfo implements Cloneable {
 	@Deprecated
 	public volatile boolean thumbready;
 
+	/**
+	 * Whether thumbnail generation was skipped because the CPU was busy
+	 * transcoding, in which case it's attempted again later.
+	 */
+	private volatile boolean thumbnailDeferred;
+
 	/**
 	 * @deprecated Use standard getter and setter to access this variable.
 	 */
@@ -571,10 +579,11 @@ public class DLNAMediaInfo implements Cloneable {
 
 		forThumbnail.parse(input, ext, true, resume, renderer);
 		thumb = forThumbnail.thumb;
-		thumbready = true;
+		// A deferred thumbnail is generated on a later request
+		thumbready = !forThumbnail.thumbnailDeferred;
 	}
 
-	private ProcessWrapperImpl getFFmpegThumbnail(InputFile media, boolean resume) {
+	private ProcessWrapperImpl getFFmpegThumbnail(InputFile media, boolean resume, boolean thumbOnly) {
 		/*
 		 * Note: The text output from FFmpeg is used by renderers that do
 		 * not use MediaInfo, so do not make any changes that remove or
@@ -589,6 +598,20 @@ public class DLNAMediaInfo implements Cloneable {
 			return null;
 		}
 
+		OutputParams params = new OutputParams(configuration);
+		if (
+			generateThumbnail &&
+			TranscodeScheduler.tryAdmit(params, "FFmpeg thumbnail", TranscodePriority.BACKGROUND, 1) == null
+		) {
+			// Don't hold up the caller while the CPU is busy transcoding
+			LOGGER.trace("Deferring the thumbnail for \"{}\" since the CPU is busy", media.getFilename());
+			thumbnailDeferred = true;
+			if (thumbOnly) {
+				return null;
+			}
+			generateThumbnail = false;
+		}
+
 		if (generateThumbnail) {
 			args.add("-ss");
 			if (resume) {
@@ -632,7 +655,6 @@ public class DLNAMediaInfo implements Cloneable {
 			args.add("pipe:");
 		}
 
-		OutputParams params = new OutputParams(configuration);
 		params.maxBufferSize = 1;
 		params.stdin = media.getPush();
 		params.noexitcheck = true; // not serious if anything happens during the thumbnailer
@@ -707,6 +729,12 @@ public class DLNAMediaInfo implements Cloneable {
 		params.stdin = media.getPush();
 		params.log = true;
 		params.noexitcheck = true; // not serious if anything happens during the thumbnailer
+		if (TranscodeScheduler.tryAdmit(params, "MPlayer thumbnail", TranscodePriority.BACKGROUND, 1) == null) {
+			// Don't hold up the caller while the CPU is busy transcoding
+			LOGGER.trace("Deferring the thumbnail for \"{}\" since the CPU is busy", media.getFilename());
+			thumbnailDeferred = true;
+			return null;
+		}
 		final ProcessWrapperImpl pw = new ProcessWrapperImpl(args, true, params);
 
 		// FAILSAFE
@@ -1009,7 +1037,7 @@ public class DLNAMediaInfo implements Cloneable {
 						!configuration.isUseMplayerForVideoThumbs()
 					)
 				) {
-					pw = getFFmpegThumbnail(inputFile, resume);
+					pw = getFFmpegThumbnail(inputFile, resume, thumbOnly);
 				}
 
 				String input = "-";
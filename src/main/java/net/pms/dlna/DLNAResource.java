@@ -28,6 +28,7 @@ import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import net.pms.Messages;
 import net.pms.PMS;
@@ -50,6 +51,10 @@ import net.pms.io.SizeLimitInputStream;
 import net.pms.media.VideoLevel;
 import net.pms.network.HTTPResource;
 import net.pms.network.UPNPControl.Renderer;
+import net.pms.service.PreRollManager;
+import net.pms.service.Services;
+import net.pms.service.TranscodePriority;
+import net.pms.service.TranscodeScheduler;
 import net.pms.util.*;
 import static net.pms.util.StringUtil.*;
 import org.apache.commons.lang3.StringUtils;
@@ -159,6 +164,12 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 
 	private ProcessWrapper externalProcess;
 
+	/**
+	 * The {@link OutputParams} of {@link #externalProcess} while it's a
+	 * pre-rolled transcode that hasn't been adopted by playback.
+	 */
+	private OutputParams preRollParams;
+
 	/**
 	 * @deprecated Use #hasExternalSubtitles()
 	 */
@@ -1222,10 +1233,18 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 				resources.add(dlna);
 				dlna.refreshChildrenIfNeeded(searchStr);
 			} else {
-				dlna.discoverWithRenderer(renderer, count, true, searchStr);
+				List<DLNAResource> page = searchStr == null ? dlna.getChildrenPage(start, count, renderer) : null;
+				if (page != null) {
+					// Only the requested children were created, so all of them are returned
+					start = 0;
+					count = page.size();
+				} else {
+					dlna.discoverWithRenderer(renderer, count, true, searchStr);
+					page = dlna.getChildren();
 
-				if (count == 0) {
-					count = dlna.getChildren().size();
+					if (count == 0) {
+						count = page.size();
+					}
 				}
 
 				if (count > 0) {
@@ -1245,8 +1264,8 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 						new BasicThreadFactory("DLNAResource resolver thread %d-%d")
 					);
 
-					for (int i = start; i < start + count && i < dlna.getChildren().size(); i++) {
-						DLNAResource child = dlna.getChildren().get(i);
+					for (int i = start; i < start + count && i < page.size(); i++) {
+						DLNAResource child = page.get(i);
 						if (child != null) {
 							tpe.execute(child);
 							resources.add(child);
@@ -1271,6 +1290,25 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		return resources;
 	}
 
+	/**
+	 * Creates only the requested page of children, for containers that can
+	 * do so without discovering all their children first. The default
+	 * implementation returns {@code null}, which makes
+	 * {@link #getDLNAResources} discover all children and return the
+	 * requested range.
+	 *
+	 * @param start the index of the first child to return.
+	 * @param count the maximum number of children to return or {@code 0} to
+	 *            return all children from {@code start}.
+	 * @param renderer the {@link RendererConfiguration} to browse for.
+	 * @return The requested children or {@code null} if they aren't paged by
+	 *         this container.
+	 */
+	@Nullable
+	protected List<DLNAResource> getChildrenPage(int start, int count, RendererConfiguration renderer) {
+		return null;
+	}
+
 	protected void refreshChildrenIfNeeded(String search) {
 		if (isDiscovered() && isRefreshNeeded()) {
 			refreshChildren(search);
@@ -3138,6 +3176,10 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 								LOGGER.info("Started playing " + getName() + " on your " + rendererName);
 								LOGGER.debug("The full filename of which is: " + getSystemName() + " and the address of the renderer is: " + rendererId);
 							}
+							PreRollManager preRollManager = Services.preRollManager();
+							if (preRollManager != null) {
+								preRollManager.playbackStarted(self, renderer);
+							}
 						} catch (UnknownHostException ex) {
 							LOGGER.debug("" + ex);
 						}
@@ -3205,6 +3247,10 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 										LOGGER.info("Stopped playing " + getName() + " on your " + rendererName);
 										LOGGER.debug("The full filename of which is: " + getSystemName() + " and the address of the renderer is: " + rendererId);
 									}
+									PreRollManager preRollManager = Services.preRollManager();
+									if (preRollManager != null) {
+										preRollManager.playbackStopped(self, renderer);
+									}
 								} catch (UnknownHostException ex) {
 									LOGGER.debug("" + ex);
 								}
@@ -3389,6 +3435,10 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 			}
 		}
 
+		if (preRollParams != null) {
+			adoptPreRoll(externalProcess);
+		}
+
 		// (Re)start transcoding process if necessary
 		if (externalProcess == null || externalProcess.isDestroyed()) {
 			// First playback attempt => start new transcoding process
@@ -3474,6 +3524,93 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		return is;
 	}
 
+	/**
+	 * Starts transcoding this resource ahead of playback so that playback can
+	 * start without waiting for the transcoding engine. The transcoding
+	 * process will stall after producing {@code bufferSize} megabytes until
+	 * {@link #getInputStream(Range, RendererConfiguration)} is called, at
+	 * which point the already running process is used.
+	 *
+	 * @param renderer the {@link RendererConfiguration} to transcode for.
+	 * @param bufferSize the maximum amount of data in megabytes to produce
+	 *            before playback starts.
+	 * @return The started {@link ProcessWrapper} or {@code null} if this
+	 *         resource can't be pre-rolled.
+	 */
+	@Nullable
+	public synchronized ProcessWrapper startPreRoll(@Nonnull RendererConfiguration renderer, int bufferSize) {
+		if (
+			player == null ||
+			media == null ||
+			resume != null ||
+			this instanceof IPushOutput ||
+			externalProcess != null && !externalProcess.isDestroyed()
+		) {
+			return null;
+		}
+
+		OutputParams params = new OutputParams(PMS.getConfiguration(renderer));
+		params.aid = getMediaAudio();
+		params.sid = media_subtitle;
+		params.header = getHeaders();
+		params.mediaRenderer = renderer;
+		Range.Time timeRange = new Range.Time();
+		timeRange.limit(getSplitRange());
+		params.timeseek = timeRange.getStartOrZero();
+		params.timeend = timeRange.getEndOrZero();
+		params.preRollLimit = bufferSize * 1048576L;
+
+		// Pre-rolls run as background work so that they never compete with playback
+		if (TranscodeScheduler.tryAdmit(params, getName() + " (pre-roll)", TranscodePriority.BACKGROUND, 1) == null) {
+			LOGGER.debug("Not pre-rolling \"{}\" since the CPU is busy", getName());
+			return null;
+		}
+
+		LOGGER.debug("Pre-rolling transcode/remux of \"{}\" with media info: {}", getName(), media);
+		externalProcess = player.launchTranscode(this, media, params);
+		preRollParams = externalProcess == null ? null : params;
+		return externalProcess;
+	}
+
+	/**
+	 * Hands a transcoding process started by
+	 * {@link #startPreRoll(RendererConfiguration, int)} over to playback. The
+	 * process is no longer stalled and is admitted as
+	 * {@link TranscodePriority#PLAYBACK} from now on. Adopting a process more
+	 * than once is harmless.
+	 *
+	 * @param process the pre-rolled {@link ProcessWrapper} to adopt.
+	 * @return {@code true} if {@code process} was adopted, {@code false} if
+	 *         it has been replaced or was adopted already.
+	 */
+	public synchronized boolean adoptPreRoll(@Nullable ProcessWrapper process) {
+		if (process == null || externalProcess != process || preRollParams == null) {
+			return false;
+		}
+		TranscodeScheduler.adoptPreRoll(preRollParams);
+		preRollParams = null;
+		return true;
+	}
+
+	/**
+	 * Stops a transcoding process started by
+	 * {@link #startPreRoll(RendererConfiguration, int)} if it hasn't been
+	 * replaced in the meanwhile.
+	 *
+	 * @param process the pre-rolled {@link ProcessWrapper} to stop.
+	 */
+	public void cancelPreRoll(@Nonnull ProcessWrapper process) {
+		synchronized (this) {
+			if (externalProcess != process) {
+				return;
+			}
+			externalProcess = null;
+			preRollParams = null;
+		}
+		LOGGER.debug("Stopping pre-rolled transcode of \"{}\"", getName());
+		process.stopProcess();
+	}
+
 	/**
 	 * Wrap an {@link InputStream} in a {@link SizeLimitInputStream} that sets a
 	 * limit to the maximum number of bytes to be read from the original input
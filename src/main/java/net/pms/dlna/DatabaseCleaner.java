@@ -0,0 +1,352 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import net.pms.util.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the {@code FILES} rows for files that no longer exist or have been
+ * modified since they were parsed.
+ * <p>
+ * The rows are read in pages of {@code batchSize} rows ordered by file name,
+ * so that the files of a directory end up in the same page. The files of a
+ * page are grouped by directory, and the names of every directory are listed
+ * once so that files that are gone are found without checking them one by
+ * one. Only the files that still exist have their modification time read. The
+ * directories of a page are checked in parallel and the obsolete rows of a
+ * page are removed in one transaction.
+ * Only that transaction holds the {@link DLNAMediaDatabase} lock, so the
+ * database can be read while the cleanup is running.
+ * <p>
+ * A cleanup can be {@link #stop() stopped} between two pages. The next
+ * {@link #run(int)} continues after the last completed page.
+ */
+@ThreadSafe
+public class DatabaseCleaner {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseCleaner.class);
+
+	/** The default number of rows checked per page */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final DLNAMediaDatabase database;
+	private final int batchSize;
+	private volatile boolean stopped;
+
+	@GuardedBy("this")
+	private boolean running;
+
+	/** The last row of the last completed page of an unfinished cleanup */
+	@GuardedBy("this")
+	private Row resumeAfter;
+
+	/**
+	 * Creates a new cleaner.
+	 *
+	 * @param database the {@link DLNAMediaDatabase} to clean up.
+	 * @param batchSize the number of rows to check per page.
+	 */
+	public DatabaseCleaner(@Nonnull DLNAMediaDatabase database, int batchSize) {
+		if (database == null) {
+			throw new IllegalArgumentException("database cannot be null");
+		}
+		this.database = database;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Checks all rows, or the rows after the last completed page if the
+	 * previous cleanup didn't finish, and removes the obsolete ones. Blocks
+	 * until the cleanup is done or {@link #stop() stopped}.
+	 *
+	 * @param threads the number of directories to check at the same time.
+	 * @return {@code true} if all rows were checked, {@code false} if the
+	 *         cleanup was stopped, failed or was already running.
+	 */
+	public boolean run(int threads) {
+		Row position;
+		synchronized (this) {
+			if (running) {
+				LOGGER.debug("Not starting a database cleanup since one is already running");
+				return false;
+			}
+			running = true;
+			stopped = false;
+			position = resumeAfter;
+		}
+		if (position != null) {
+			LOGGER.debug("Resuming the database cleanup after \"{}\"", position.getFilename());
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+			Math.max(1, threads),
+			new BasicThreadFactory("Database cleanup thread %d-%d")
+		);
+		long start = System.currentTimeMillis();
+		int checked = 0;
+		int removed = 0;
+		try {
+			database.getWriteQueue().flush();
+			int total = database.getCleanupRowCount(position);
+			onProgress(0);
+			while (!stopped && !Thread.currentThread().isInterrupted()) {
+				List<Row> rows = database.getCleanupRows(position, batchSize);
+				if (rows == null) {
+					return false;
+				}
+				if (rows.isEmpty()) {
+					synchronized (this) {
+						resumeAfter = null;
+					}
+					LOGGER.debug(
+						"Checked {} cached files and removed {} in {} ms",
+						checked,
+						removed,
+						System.currentTimeMillis() - start
+					);
+					return true;
+				}
+
+				List<Row> obsolete = checkRows(executor, rows);
+				if (obsolete == null) {
+					break;
+				}
+				if (!obsolete.isEmpty()) {
+					removed += database.removeCleanupRows(obsolete);
+				}
+				checked += rows.size();
+				position = rows.get(rows.size() - 1);
+				synchronized (this) {
+					resumeAfter = position;
+				}
+				if (total > 0) {
+					onProgress(Math.min(100, checked * 100 / total));
+				}
+			}
+			LOGGER.debug(
+				"Stopped the database cleanup after checking {} cached files and removing {}",
+				checked,
+				removed
+			);
+			return false;
+		} finally {
+			executor.shutdownNow();
+			synchronized (this) {
+				running = false;
+			}
+		}
+	}
+
+	/**
+	 * Stops a running cleanup after the current page. The next
+	 * {@link #run(int)} continues where it stopped.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Forgets where an unfinished cleanup stopped, so that the next
+	 * {@link #run(int)} checks all rows.
+	 */
+	public synchronized void reset() {
+		resumeAfter = null;
+	}
+
+	/**
+	 * @return {@code true} if a cleanup is running, {@code false} otherwise.
+	 */
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return {@code true} if the previous cleanup didn't finish and the next
+	 *         {@link #run(int)} continues where it stopped, {@code false}
+	 *         otherwise.
+	 */
+	public synchronized boolean isResumable() {
+		return resumeAfter != null;
+	}
+
+	/**
+	 * Called after every page with the percentage of the rows that have been
+	 * checked.
+	 *
+	 * @param percent the progress from {@code 0} to {@code 100}.
+	 */
+	protected void onProgress(int percent) {
+	}
+
+	/**
+	 * Checks a page of rows one directory per task.
+	 *
+	 * @return The obsolete rows or {@code null} if the check was interrupted.
+	 */
+	@Nullable
+	private static List<Row> checkRows(@Nonnull ExecutorService executor, @Nonnull List<Row> rows) {
+		LinkedHashMap<String, List<Row>> directories = new LinkedHashMap<>();
+		for (Row row : rows) {
+			String parent = new File(row.getFilename()).getParent();
+			List<Row> directoryRows = directories.get(parent);
+			if (directoryRows == null) {
+				directoryRows = new ArrayList<>();
+				directories.put(parent, directoryRows);
+			}
+			directoryRows.add(row);
+		}
+
+		List<Future<List<Row>>> futures = new ArrayList<>(directories.size());
+		for (final Map.Entry<String, List<Row>> entry : directories.entrySet()) {
+			futures.add(executor.submit(new Callable<List<Row>>() {
+
+				@Override
+				public List<Row> call() {
+					return checkDirectory(entry.getKey(), entry.getValue());
+				}
+			}));
+		}
+
+		List<Row> obsolete = new ArrayList<>();
+		try {
+			for (Future<List<Row>> future : futures) {
+				try {
+					obsolete.addAll(future.get());
+				} catch (ExecutionException e) {
+					// Keep the rows, they will be checked by the next cleanup
+					LOGGER.error("Unexpected error while checking cached files: {}", e.getCause().getMessage());
+					LOGGER.trace("", e.getCause());
+				}
+			}
+		} catch (InterruptedException | CancellationException e) {
+			for (Future<List<Row>> future : futures) {
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return obsolete;
+	}
+
+	/**
+	 * Checks the rows of files in the same directory against a single
+	 * listing of the names in that directory. Files that aren't in the
+	 * listing, for example because the name differs in case, are checked on
+	 * their own. The modification time is only read for the files of
+	 * {@code rows}.
+	 *
+	 * @param directory the directory of the files or {@code null}.
+	 * @param rows the rows to check.
+	 * @return The obsolete rows.
+	 */
+	@Nonnull
+	static List<Row> checkDirectory(@Nullable String directory, @Nonnull List<Row> rows) {
+		List<Row> obsolete = new ArrayList<>();
+		HashSet<String> names = null;
+		if (directory != null) {
+			File folder = new File(directory);
+			if (!folder.isDirectory()) {
+				obsolete.addAll(rows);
+				return obsolete;
+			}
+			if (rows.size() > 1) {
+				String[] list = folder.list();
+				if (list != null) {
+					names = new HashSet<>(Arrays.asList(list));
+				}
+			}
+		}
+
+		for (Row row : rows) {
+			File file = new File(row.getFilename());
+			if (names != null && !names.contains(file.getName()) && !file.exists()) {
+				obsolete.add(row);
+				continue;
+			}
+			// File.lastModified() returns 0 if the file doesn't exist
+			long lastModified = file.lastModified();
+			if (lastModified != row.getModified() || lastModified == 0 && !file.exists()) {
+				obsolete.add(row);
+			}
+		}
+		return obsolete;
+	}
+
+	/**
+	 * A {@code FILES} row to check.
+	 */
+	@Immutable
+	public static final class Row {
+		private final int id;
+		private final String filename;
+		private final long modified;
+
+		public Row(int id, @Nonnull String filename, long modified) {
+			this.id = id;
+			this.filename = filename;
+			this.modified = modified;
+		}
+
+		/**
+		 * @return The {@code ID} of the row.
+		 */
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * @return The full path of the file.
+		 */
+		@Nonnull
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * @return The stored modification time of the file.
+		 */
+		public long getModified() {
+			return modified;
+		}
+
+		@Override
+		public String toString() {
+			return "Row [id=" + id + ", filename=" + filename + ", modified=" + modified + "]";
+		}
+	}
+}
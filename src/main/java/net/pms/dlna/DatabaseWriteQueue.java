@@ -0,0 +1,356 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import net.pms.formats.FormatType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write-behind queue for parsed {@link DLNAMediaInfo} instances.
+ * <p>
+ * {@link #add} only stores a copy of the parsing result in memory. A
+ * background thread writes the pending entries to the
+ * {@link DLNAMediaDatabase} in transactions of up to {@code batchSize}
+ * entries, as soon as {@code batchSize} entries have been collected or
+ * {@code maxDelay} milliseconds after an entry was added, whichever comes
+ * first. Until an entry is written, {@link DLNAMediaDatabase#getData} and
+ * {@link DLNAMediaDatabase#isDataExists} read it from the queue instead of
+ * the database. Only the latest entry for each file name is kept.
+ * <p>
+ * {@link #shutdown()} writes everything that is still pending and must be
+ * called before the database is closed.
+ */
+@ThreadSafe
+public class DatabaseWriteQueue {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseWriteQueue.class);
+
+	/** The default number of entries written per transaction */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/** The default number of milliseconds an entry can wait to be written */
+	public static final long DEFAULT_MAX_DELAY = 2000;
+
+	private final DLNAMediaDatabase database;
+	private final int batchSize;
+	private final long maxDelay;
+	private final ConcurrentHashMap<String, Entry> pending = new ConcurrentHashMap<>();
+	private final AtomicLong written = new AtomicLong();
+
+	private final Runnable flushTask = new Runnable() {
+
+		@Override
+		public void run() {
+			synchronized (DatabaseWriteQueue.this) {
+				scheduledFlush = null;
+			}
+			try {
+				flush();
+			} catch (RuntimeException e) {
+				LOGGER.error("Unexpected error while writing parsed information to the cache: {}", e.getMessage());
+				LOGGER.trace("", e);
+			}
+			if (!pending.isEmpty()) {
+				schedule();
+			}
+		}
+	};
+
+	@GuardedBy("this")
+	private ScheduledExecutorService executor;
+
+	@GuardedBy("this")
+	private ScheduledFuture<?> scheduledFlush;
+
+	/**
+	 * Creates a new queue and starts its writer thread.
+	 *
+	 * @param database the {@link DLNAMediaDatabase} to write to.
+	 * @param batchSize the number of entries to collect before they are
+	 *            written and the maximum number of entries written per
+	 *            transaction.
+	 * @param maxDelay the maximum number of milliseconds an entry waits before
+	 *            it is written.
+	 */
+	public DatabaseWriteQueue(@Nonnull DLNAMediaDatabase database, int batchSize, long maxDelay) {
+		if (database == null) {
+			throw new IllegalArgumentException("database cannot be null");
+		}
+		this.database = database;
+		this.batchSize = Math.max(1, batchSize);
+		this.maxDelay = Math.max(0, maxDelay);
+		ScheduledThreadPoolExecutor threadPool = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Database writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		threadPool.setRemoveOnCancelPolicy(true);
+		this.executor = threadPool;
+	}
+
+	/**
+	 * Adds an entry to the queue, replacing any pending entry for the same
+	 * name. A copy of {@code media} is stored, so later changes to it aren't
+	 * written.
+	 * <p>
+	 * If the queue has been shut down, the entry is written immediately.
+	 *
+	 * @param name the full path of the media.
+	 * @param modified the current {@code lastModified} value of the media file.
+	 * @param type the {@link FormatType} of the media.
+	 * @param media the {@link DLNAMediaInfo} to write.
+	 */
+	public void add(@Nonnull String name, long modified, @Nullable FormatType type, @Nullable DLNAMediaInfo media) {
+		pending.put(name, new Entry(name, modified, type, copy(media)));
+		if (!schedule()) {
+			flush();
+		}
+	}
+
+	/**
+	 * Returns the pending entry for {@code name}. The returned
+	 * {@link DLNAMediaInfo} is a copy that the caller is free to modify.
+	 *
+	 * @param name the full path of the media.
+	 * @return The pending {@link Entry} or {@code null} if nothing is pending
+	 *         for {@code name}.
+	 */
+	@Nullable
+	public Entry get(@Nonnull String name) {
+		Entry entry = pending.get(name);
+		if (entry == null || entry.getMedia() == null) {
+			return entry;
+		}
+		return new Entry(entry.getName(), entry.getModified(), entry.getType(), copy(entry.getMedia()));
+	}
+
+	/**
+	 * @return {@code true} if no entries are waiting to be written,
+	 *         {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return pending.isEmpty();
+	}
+
+	/**
+	 * Discards the pending entry for {@code name}.
+	 *
+	 * @param name the full path of the media.
+	 * @return {@code true} if an entry was discarded, {@code false} otherwise.
+	 */
+	public boolean remove(@Nonnull String name) {
+		return pending.remove(name) != null;
+	}
+
+	/**
+	 * Discards the pending entry for {@code name}, its split tracks and, if
+	 * {@code name} is a directory, all entries below it.
+	 *
+	 * @param name the full path of the removed file or directory.
+	 * @return The number of discarded entries.
+	 */
+	public int discard(@Nonnull String name) {
+		String splitTrackPrefix = name + "#SplitTrack";
+		String prefix = name.endsWith(File.separator) ? name : name + File.separator;
+		int result = 0;
+		for (Iterator<String> iterator = pending.keySet().iterator(); iterator.hasNext();) {
+			String key = iterator.next();
+			if (key.equals(name) || key.startsWith(splitTrackPrefix) || key.startsWith(prefix)) {
+				iterator.remove();
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes all pending entries to the database and blocks until they are
+	 * written. Entries that can't be written are logged and dropped.
+	 */
+	public void flush() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		List<Entry> entries = new ArrayList<>(pending.values());
+		for (int i = 0; i < entries.size(); i += batchSize) {
+			List<Entry> snapshot = entries.subList(i, Math.min(i + batchSize, entries.size()));
+			List<Entry> batch = new ArrayList<>(snapshot.size());
+			/*
+			 * The database lock is only held for one batch at a time, from
+			 * checking that the entries are still pending until they are
+			 * removed from the queue. That way readers either find an entry
+			 * here or in the database, an entry that has been replaced or
+			 * discarded by DLNAMediaDatabase.removeData() since the snapshot
+			 * isn't written, and other database users can run between the
+			 * batches.
+			 */
+			synchronized (database) {
+				for (Entry entry : snapshot) {
+					if (pending.get(entry.getName()) == entry) {
+						batch.add(entry);
+					}
+				}
+				if (batch.isEmpty()) {
+					continue;
+				}
+				database.insertOrUpdateData(batch);
+				for (Entry entry : batch) {
+					pending.remove(entry.getName(), entry);
+				}
+			}
+			written.addAndGet(batch.size());
+		}
+	}
+
+	/**
+	 * Stops the writer thread and writes all pending entries. Entries that are
+	 * added after this are written immediately.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (executor == null) {
+				return;
+			}
+			executor.shutdown();
+			executor = null;
+			scheduledFlush = null;
+		}
+		int count = pending.size();
+		flush();
+		if (count > 0) {
+			LOGGER.debug("Wrote {} pending cache entries during shutdown", count);
+		}
+	}
+
+	/**
+	 * @return The number of entries written to the database so far.
+	 */
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * Makes sure a flush is scheduled, immediately if the queue has
+	 * {@code batchSize} entries, otherwise within {@code maxDelay}.
+	 *
+	 * @return {@code false} if the queue has been shut down, {@code true}
+	 *         otherwise.
+	 */
+	private synchronized boolean schedule() {
+		if (executor == null) {
+			return false;
+		}
+		boolean full = pending.size() >= batchSize;
+		if (scheduledFlush != null) {
+			if (!full || scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= 0 || !scheduledFlush.cancel(false)) {
+				// Either soon enough or already running, which reschedules if needed
+				return true;
+			}
+		}
+		scheduledFlush = executor.schedule(flushTask, full ? 0 : maxDelay, TimeUnit.MILLISECONDS);
+		return true;
+	}
+
+	@Nullable
+	private static DLNAMediaInfo copy(@Nullable DLNAMediaInfo media) {
+		if (media == null) {
+			return null;
+		}
+		try {
+			return media.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError("DLNAMediaInfo must be cloneable", e);
+		}
+	}
+
+	/**
+	 * An immutable pending database write.
+	 */
+	public static class Entry {
+		private final String name;
+		private final long modified;
+		private final FormatType type;
+		private final DLNAMediaInfo media;
+
+		/**
+		 * Creates a new instance.
+		 *
+		 * @param name the full path of the media.
+		 * @param modified the {@code lastModified} value of the media file.
+		 * @param type the {@link FormatType} of the media.
+		 * @param media the {@link DLNAMediaInfo} to write.
+		 */
+		public Entry(@Nonnull String name, long modified, @Nullable FormatType type, @Nullable DLNAMediaInfo media) {
+			this.name = name;
+			this.modified = modified;
+			this.type = type;
+			this.media = media;
+		}
+
+		/**
+		 * @return The full path of the media.
+		 */
+		@Nonnull
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The {@code lastModified} value of the media file.
+		 */
+		public long getModified() {
+			return modified;
+		}
+
+		/**
+		 * @return The {@link FormatType} of the media.
+		 */
+		@Nullable
+		public FormatType getType() {
+			return type;
+		}
+
+		/**
+		 * @return The {@link DLNAMediaInfo} to write.
+		 */
+		@Nullable
+		public DLNAMediaInfo getMedia() {
+			return media;
+		}
+	}
+}
@@ -5,11 +5,15 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import net.pms.PMS;
 import net.pms.configuration.FormatConfiguration;
+import net.pms.configuration.PmsConfiguration;
 import net.pms.configuration.RendererConfiguration;
 import net.pms.dlna.DLNAMediaInfo.RateMode;
 import net.pms.dlna.MediaInfo.StreamType;
@@ -114,40 +118,97 @@ public class LibMediaInfoParser {
 		"^\\s*([^@]*[^@\\s])?\\s*@?\\s*(?:L|LEVEL)?\\s*(\\d+(?:\\.\\d+|,\\d+)?)?\\s*(?:@\\S.*\\S)?\\s*(?:/|$)", Pattern.CASE_INSENSITIVE
 	);
 
-	private static MediaInfo MI;
+	private static final boolean VALID;
 	private static final Version VERSION;
+	private static final Object POOL_LOCK = new Object();
+
+	/** The instance created during class initialization, handed to the pool */
+	@GuardedBy("POOL_LOCK")
+	private static MediaInfo initialInstance;
+
+	@GuardedBy("POOL_LOCK")
+	private static volatile MediaInfoPool pool;
 
 	static {
-		MI = new MediaInfo();
-
-		if (MI.isValid()) {
-			MI.Option("Internet", "No"); // avoid MediaInfoLib to try to connect to an Internet server for availability of newer software, anonymous statistics and retrieving information about a file
-			MI.Option("Complete", "1");
-			MI.Option("Language", "raw");
-			MI.Option("File_TestContinuousFileNames", "0");
-			Matcher matcher = Pattern.compile("MediaInfoLib[\\s-]*(\\S+)", Pattern.CASE_INSENSITIVE).matcher(MI.Option("Info_Version"));
+		MediaInfo mediaInfo = new MediaInfo();
+		VALID = mediaInfo.isValid();
+
+		if (VALID) {
+			Matcher matcher = Pattern.compile("MediaInfoLib[\\s-]*(\\S+)", Pattern.CASE_INSENSITIVE).matcher(mediaInfo.Option("Info_Version"));
 			if (matcher.find() && isNotBlank(matcher.group(1))) {
 				VERSION = new Version(matcher.group(1));
 			} else {
 				VERSION = null;
 			}
-			if (VERSION != null && VERSION.isGreaterThan(18, 5)) {
-				MI.Option("LegacyStreamDisplay", "1");
-				MI.Option("File_HighestFormat", "0");
-				MI.Option("File_ChannelLayout", "1");
-				MI.Option("Legacy", "1");
-			}
-			LOGGER.debug("Option 'File_TestContinuousFileNames' is set to: " + MI.Option("File_TestContinuousFileNames_Get"));
-			MI.Option("ParseSpeed", "0");
-			LOGGER.debug("Option 'ParseSpeed' is set to: " + MI.Option("ParseSpeed_Get"));
-//			LOGGER.debug(MI.Option("Info_Parameters_CSV")); // It can be used to export all current MediaInfo parameters
+			configure(mediaInfo);
+			LOGGER.debug("Option 'File_TestContinuousFileNames' is set to: " + mediaInfo.Option("File_TestContinuousFileNames_Get"));
+			LOGGER.debug("Option 'ParseSpeed' is set to: " + mediaInfo.Option("ParseSpeed_Get"));
+//			LOGGER.debug(mediaInfo.Option("Info_Parameters_CSV")); // It can be used to export all current MediaInfo parameters
+			initialInstance = mediaInfo;
 		} else {
 			VERSION = null;
 		}
 	}
 
+	/**
+	 * Sets the options used for parsing on a new {@link MediaInfo} instance.
+	 *
+	 * @param mediaInfo the {@link MediaInfo} instance to configure.
+	 */
+	private static void configure(MediaInfo mediaInfo) {
+		mediaInfo.Option("Internet", "No"); // avoid MediaInfoLib to try to connect to an Internet server for availability of newer software, anonymous statistics and retrieving information about a file
+		mediaInfo.Option("Complete", "1");
+		mediaInfo.Option("Language", "raw");
+		mediaInfo.Option("File_TestContinuousFileNames", "0");
+		if (VERSION != null && VERSION.isGreaterThan(18, 5)) {
+			mediaInfo.Option("LegacyStreamDisplay", "1");
+			mediaInfo.Option("File_HighestFormat", "0");
+			mediaInfo.Option("File_ChannelLayout", "1");
+			mediaInfo.Option("Legacy", "1");
+		}
+		mediaInfo.Option("ParseSpeed", "0");
+	}
+
 	public static boolean isValid() {
-		return MI.isValid();
+		return VALID;
+	}
+
+	/**
+	 * Returns the {@link MediaInfoPool} used for parsing, which is created on
+	 * first use with the size from
+	 * {@link PmsConfiguration#getMediaInfoPoolSize()}.
+	 *
+	 * @return The {@link MediaInfoPool}.
+	 */
+	@Nonnull
+	public static MediaInfoPool getPool() {
+		MediaInfoPool result = pool;
+		if (result == null) {
+			synchronized (POOL_LOCK) {
+				result = pool;
+				if (result == null) {
+					PmsConfiguration configuration = PMS.getConfiguration();
+					int size = configuration != null ?
+						configuration.getMediaInfoPoolSize() :
+						Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+					result = new MediaInfoPool(new MediaInfoPool.Factory() {
+
+						@Override
+						public MediaInfo createInstance() {
+							MediaInfo mediaInfo = new MediaInfo();
+							if (mediaInfo.isValid()) {
+								configure(mediaInfo);
+							}
+							return mediaInfo;
+						}
+					}, size, initialInstance);
+					initialInstance = null;
+					pool = result;
+					LOGGER.debug("Parsing with up to {} MediaInfo instance{}", size, size == 1 ? "" : "s");
+				}
+			}
+		}
+		return result;
 	}
 
 	/**
@@ -160,25 +221,65 @@ public class LibMediaInfoParser {
 	}
 
 	/**
-	 * Parse media via MediaInfo.
+	 * Parse media via MediaInfo. A {@link MediaInfo} instance is checked out
+	 * from the {@link MediaInfoPool} for the duration of the parse, so
+	 * different files can be parsed in parallel.
 	 */
-	public synchronized static void parse(DLNAMediaInfo media, InputFile inputFile, FormatType type, RendererConfiguration renderer) {
+	public static void parse(DLNAMediaInfo media, InputFile inputFile, FormatType type, RendererConfiguration renderer) {
 		File file = inputFile.getFile();
-		ParseLogger parseLogger = LOGGER.isTraceEnabled() ? new ParseLogger() : null;
-		if (!media.isMediaparsed() && file != null && MI.isValid() && MI.Open(file.getAbsolutePath()) > 0) {
+		if (file == null || !VALID) {
+			return;
+		}
+		synchronized (media) {
+			if (media.isMediaparsed()) {
+				return;
+			}
+			MediaInfoPool mediaInfoPool = getPool();
+			MediaInfo mediaInfo;
+			try {
+				mediaInfo = mediaInfoPool.acquire();
+			} catch (InterruptedException e) {
+				LOGGER.debug("Interrupted while waiting for a MediaInfo instance, \"{}\" wasn't parsed", file);
+				Thread.currentThread().interrupt();
+				return;
+			}
+			long start = System.nanoTime();
+			try {
+				parse(mediaInfo, media, inputFile, file, type, renderer);
+			} finally {
+				long elapsed = System.nanoTime() - start;
+				mediaInfoPool.release(mediaInfo);
+				mediaInfoPool.recordParseTime(elapsed);
+				if (LOGGER.isTraceEnabled()) {
+					LOGGER.trace("MediaInfo parsed \"{}\" in {} ms", file, TimeUnit.NANOSECONDS.toMillis(elapsed));
+				}
+			}
+		}
+	}
+
+	private static void parse(
+		MediaInfo mediaInfo,
+		DLNAMediaInfo media,
+		InputFile inputFile,
+		File file,
+		FormatType type,
+		RendererConfiguration renderer
+	) {
+		ParseLogger parseLogger = LOGGER.isTraceEnabled() ? new ParseLogger(mediaInfo) : null;
+		if (mediaInfo.Open(file.getAbsolutePath()) > 0) {
 			DLNAMediaAudio currentAudioTrack = new DLNAMediaAudio();
 			DLNAMediaSubtitle currentSubTrack;
 			media.setSize(file.length());
 			String value;
 
 			// Set General
-			getFormat(StreamType.General, media, currentAudioTrack, MI.Get(StreamType.General, 0, "Format"), file);
-			getFormat(StreamType.General, media, currentAudioTrack, MI.Get(StreamType.General, 0, "CodecID").trim(), file);
-			media.setDuration(parseDuration(MI.Get(StreamType.General, 0, "Duration")));
-			media.setBitRate(parseBitRate(MI.Get(StreamType.General, 0, "OverallBitRate"), false));
-			media.setBitRateMode(parseBitRateMode(MI.Get(StreamType.General, 0, "OverallBitRate_Mode")));
-			media.setStereoscopy(MI.Get(StreamType.General, 0, "StereoscopicLayout"));
-			value = MI.Get(StreamType.General, 0, "Cover_Data");
+			getFormat(StreamType.General, media, currentAudioTrack, mediaInfo.Get(StreamType.General, 0, "Format"), file);
+			getFormat(StreamType.General, media, currentAudioTrack, mediaInfo.Get(StreamType.General, 0, "CodecID").trim(), file);
+			media.setDuration(parseDuration(mediaInfo.Get(StreamType.General, 0, "Duration")));
+			media.setBitRate(parseBitRate(mediaInfo.Get(StreamType.General, 0, "OverallBitRate"), false));
+			media.setBitRateMode(parseBitRateMode(mediaInfo.Get(StreamType.General, 0, "OverallBitRate_Mode")));
+			media.setStereoscopy(mediaInfo.Get(StreamType.General, 0, "StereoscopicLayout"));
+			value = mediaInfo.Get(StreamType.General, 0, "Cover_Data");
 			if (isNotBlank(value)) {
 				try {
 					media.setThumb(DLNABinaryThumbnail.toThumbnail(
@@ -202,7 +303,7 @@ public class LibMediaInfoParser {
 				}
 			}
 
-			value = MI.Get(StreamType.General, 0, "Title");
+			value = mediaInfo.Get(StreamType.General, 0, "Title");
 			if (isNotBlank(value)) {
 				media.setFileTitleFromMetadata(value);
 			}
@@ -212,71 +313,71 @@ public class LibMediaInfoParser {
 			}
 
 			// set Video
-			media.setVideoTrackCount(MI.Count_Get(StreamType.Video));
+			media.setVideoTrackCount(mediaInfo.Count_Get(StreamType.Video));
 			if (media.getVideoTrackCount() > 0) {
 				for (int i = 0; i < media.getVideoTrackCount(); i++) {
 					// check for DXSA and DXSB subtitles (subs in video format)
-					if (MI.Get(StreamType.Video, i, "Title").startsWith("Subtitle")) {
+					if (mediaInfo.Get(StreamType.Video, i, "Title").startsWith("Subtitle")) {
 						currentSubTrack = new DLNAMediaSubtitle();
 						// First attempt to detect subtitle track format
-						currentSubTrack.setType(SubtitleType.valueOfLibMediaInfoCodec(MI.Get(StreamType.Video, i, "Format")));
+						currentSubTrack.setType(SubtitleType.valueOfLibMediaInfoCodec(mediaInfo.Get(StreamType.Video, i, "Format")));
 						// Second attempt to detect subtitle track format (CodecID usually is more accurate)
-						currentSubTrack.setType(SubtitleType.valueOfLibMediaInfoCodec(MI.Get(StreamType.Video, i, "CodecID")));
+						currentSubTrack.setType(SubtitleType.valueOfLibMediaInfoCodec(mediaInfo.Get(StreamType.Video, i, "CodecID")));
 						currentSubTrack.setId(media.getSubtitleTracksList().size());
 						addSub(currentSubTrack, media);
 						if (parseLogger != null) {
 							parseLogger.logSubtitleTrackColumns(i, true);
 						}
 					} else {
-						getFormat(StreamType.Video, media, currentAudioTrack, MI.Get(StreamType.Video, i, "Format"), file);
-						getFormat(StreamType.Video, media, currentAudioTrack, MI.Get(StreamType.Video, i, "Format_Version"), file);
-						value = MI.Get(StreamType.Video, i, "Format_Profile");
+						getFormat(StreamType.Video, media, currentAudioTrack, mediaInfo.Get(StreamType.Video, i, "Format"), file);
+						getFormat(StreamType.Video, media, currentAudioTrack, mediaInfo.Get(StreamType.Video, i, "Format_Version"), file);
+						value = mediaInfo.Get(StreamType.Video, i, "Format_Profile");
 						getFormat(StreamType.Video, media, currentAudioTrack, value, file);
-						getFormat(StreamType.Video, media, currentAudioTrack, MI.Get(StreamType.Video, i, "CodecID"), file);
-						media.setWidth(getPixelValue(MI.Get(StreamType.Video, i, "Width")));
-						media.setHeight(getPixelValue(MI.Get(StreamType.Video, i, "Height")));
-						media.setMatrixCoefficients(MI.Get(StreamType.Video, i, "matrix_coefficients"));
+						getFormat(StreamType.Video, media, currentAudioTrack, mediaInfo.Get(StreamType.Video, i, "CodecID"), file);
+						media.setWidth(getPixelValue(mediaInfo.Get(StreamType.Video, i, "Width")));
+						media.setHeight(getPixelValue(mediaInfo.Get(StreamType.Video, i, "Height")));
+						media.setMatrixCoefficients(mediaInfo.Get(StreamType.Video, i, "matrix_coefficients"));
 						if (!media.is3d()) {
-							media.setStereoscopy(MI.Get(StreamType.Video, i, "MultiView_Layout"));
+							media.setStereoscopy(mediaInfo.Get(StreamType.Video, i, "MultiView_Layout"));
 						}
 
-						media.setPixelAspectRatio(MI.Get(StreamType.Video, i, "PixelAspectRatio"));
-						media.setScanType(MI.Get(StreamType.Video, i, "ScanType"));
-						media.setScanOrder(MI.Get(StreamType.Video, i, "ScanOrder"));
-						media.setAspectRatioContainer(MI.Get(StreamType.Video, i, "DisplayAspectRatio/String"));
-						media.setAspectRatioVideoTrack(MI.Get(StreamType.Video, i, "DisplayAspectRatio_Original/String"));
-						media.setFrameRate(getFPSValue(MI.Get(StreamType.Video, i, "FrameRate")));
-						media.setFrameRateOriginal(MI.Get(StreamType.Video, i, "FrameRate_Original"));
-						media.setFrameRateMode(getFrameRateModeValue(MI.Get(StreamType.Video, i, "FrameRate_Mode")));
-						media.setFrameRateModeRaw(MI.Get(StreamType.Video, i, "FrameRate_Mode"));
-						media.setReferenceFrameCount(getReferenceFrameCount(MI.Get(StreamType.Video, i, "Format_Settings_RefFrames")));
-						media.setVideoTrackTitleFromMetadata(MI.Get(StreamType.Video, i, "Title"));
+						media.setPixelAspectRatio(mediaInfo.Get(StreamType.Video, i, "PixelAspectRatio"));
+						media.setScanType(mediaInfo.Get(StreamType.Video, i, "ScanType"));
+						media.setScanOrder(mediaInfo.Get(StreamType.Video, i, "ScanOrder"));
+						media.setAspectRatioContainer(mediaInfo.Get(StreamType.Video, i, "DisplayAspectRatio/String"));
+						media.setAspectRatioVideoTrack(mediaInfo.Get(StreamType.Video, i, "DisplayAspectRatio_Original/String"));
+						media.setFrameRate(getFPSValue(mediaInfo.Get(StreamType.Video, i, "FrameRate")));
+						media.setFrameRateOriginal(mediaInfo.Get(StreamType.Video, i, "FrameRate_Original"));
+						media.setFrameRateMode(getFrameRateModeValue(mediaInfo.Get(StreamType.Video, i, "FrameRate_Mode")));
+						media.setFrameRateModeRaw(mediaInfo.Get(StreamType.Video, i, "FrameRate_Mode"));
+						media.setReferenceFrameCount(getReferenceFrameCount(mediaInfo.Get(StreamType.Video, i, "Format_Settings_RefFrames")));
+						media.setVideoTrackTitleFromMetadata(mediaInfo.Get(StreamType.Video, i, "Title"));
 
 						if (isNotBlank(value) && media.getCodecV() != null) {
 							setVideoProfileAndLevel(media, value);
 						}
 
-						value = MI.Get(StreamType.Video, i, "Format_Settings_QPel");
+						value = mediaInfo.Get(StreamType.Video, i, "Format_Settings_QPel");
 						if (isNotBlank(value)) {
 							media.putExtra(FormatConfiguration.MI_QPEL, value);
 						}
 
-						value = MI.Get(StreamType.Video, i, "Format_Settings_GMC");
+						value = mediaInfo.Get(StreamType.Video, i, "Format_Settings_GMC");
 						if (isNotBlank(value)) {
 							media.putExtra(FormatConfiguration.MI_GMC, value);
 						}
 
-						value = MI.Get(StreamType.Video, i, "Format_Settings_GOP");
+						value = mediaInfo.Get(StreamType.Video, i, "Format_Settings_GOP");
 						if (isNotBlank(value)) {
 							media.putExtra(FormatConfiguration.MI_GOP, value);
 						}
 
-						media.setMuxingMode(MI.Get(StreamType.Video, i, "MuxingMode"));
+						media.setMuxingMode(mediaInfo.Get(StreamType.Video, i, "MuxingMode"));
 						if (!media.isEncrypted()) {
-							media.setEncrypted("encrypted".equals(MI.Get(StreamType.Video, i, "Encryption")));
+							media.setEncrypted("encrypted".equals(mediaInfo.Get(StreamType.Video, i, "Encryption")));
 						}
 
-						value = MI.Get(StreamType.Video, i, "BitDepth");
+						value = mediaInfo.Get(StreamType.Video, i, "BitDepth");
 						if (isNotBlank(value)) {
 							try {
 								media.setVideoBitDepth(Integer.parseInt(value));
@@ -292,32 +393,32 @@ public class LibMediaInfoParser {
 			}
 
 			// set Audio
-			int audioTracks = MI.Count_Get(StreamType.Audio);
+			int audioTracks = mediaInfo.Count_Get(StreamType.Audio);
 			if (audioTracks > 0) {
 				for (int i = 0; i < audioTracks; i++) {
 					currentAudioTrack = new DLNAMediaAudio();
-					getFormat(StreamType.Audio, media, currentAudioTrack, MI.Get(StreamType.Audio, i, "Format"), file);
-					getFormat(StreamType.Audio, media, currentAudioTrack, MI.Get(StreamType.Audio, i, "Format_Version"), file);
-					getFormat(StreamType.Audio, media, currentAudioTrack, MI.Get(StreamType.Audio, i, "Format_Profile"), file);
-					getFormat(StreamType.Audio, media, currentAudioTrack, MI.Get(StreamType.Audio, i, "CodecID"), file);
-					value = MI.Get(StreamType.Audio, i, "CodecID_Description");
+					getFormat(StreamType.Audio, media, currentAudioTrack, mediaInfo.Get(StreamType.Audio, i, "Format"), file);
+					getFormat(StreamType.Audio, media, currentAudioTrack, mediaInfo.Get(StreamType.Audio, i, "Format_Version"), file);
+					getFormat(StreamType.Audio, media, currentAudioTrack, mediaInfo.Get(StreamType.Audio, i, "Format_Profile"), file);
+					getFormat(StreamType.Audio, media, currentAudioTrack, mediaInfo.Get(StreamType.Audio, i, "CodecID"), file);
+					value = mediaInfo.Get(StreamType.Audio, i, "CodecID_Description");
 					if (isNotBlank(value) && value.startsWith("Windows Media Audio 10")) {
 						currentAudioTrack.setCodecA(FormatConfiguration.WMA10);
 					}
-					currentAudioTrack.setLang(getLang(MI.Get(StreamType.Audio, i, "Language/String")));
-					currentAudioTrack.setAudioTrackTitleFromMetadata(MI.Get(StreamType.Audio, i, "Title").trim());
-					currentAudioTrack.setNumberOfChannels(parseNumberOfChannels(MI.Get(StreamType.Audio, i, "Channel(s)_Original")));
+					currentAudioTrack.setLang(getLang(mediaInfo.Get(StreamType.Audio, i, "Language/String")));
+					currentAudioTrack.setAudioTrackTitleFromMetadata(mediaInfo.Get(StreamType.Audio, i, "Title").trim());
+					currentAudioTrack.setNumberOfChannels(parseNumberOfChannels(mediaInfo.Get(StreamType.Audio, i, "Channel(s)_Original")));
 					if (currentAudioTrack.isNumberOfChannelsUnknown()) {
-						currentAudioTrack.setNumberOfChannels(parseNumberOfChannels(MI.Get(StreamType.Audio, i, "Channel(s)")));
+						currentAudioTrack.setNumberOfChannels(parseNumberOfChannels(mediaInfo.Get(StreamType.Audio, i, "Channel(s)")));
 					}
-					currentAudioTrack.setDelay(parseDelay(MI.Get(StreamType.Audio, i, "Video_Delay")));
-					currentAudioTrack.setSampleFrequency(parseSamplingRate(MI.Get(StreamType.Audio, i, "SamplingRate")));
-					currentAudioTrack.setBitRate(parseBitRate(MI.Get(StreamType.Audio, i, "BitRate"), false));
-					currentAudioTrack.setBitRateMode(parseBitRateMode(MI.Get(StreamType.Audio, i, "BitRate_Mode")));
-					currentAudioTrack.setSongname(MI.Get(StreamType.General, 0, "Track"));
+					currentAudioTrack.setDelay(parseDelay(mediaInfo.Get(StreamType.Audio, i, "Video_Delay")));
+					currentAudioTrack.setSampleFrequency(parseSamplingRate(mediaInfo.Get(StreamType.Audio, i, "SamplingRate")));
+					currentAudioTrack.setBitRate(parseBitRate(mediaInfo.Get(StreamType.Audio, i, "BitRate"), false));
+					currentAudioTrack.setBitRateMode(parseBitRateMode(mediaInfo.Get(StreamType.Audio, i, "BitRate_Mode")));
+					currentAudioTrack.setSongname(mediaInfo.Get(StreamType.General, 0, "Track"));
 
 					if (
-						renderer.isPrependTrackNumbers() &&
+						renderer != null && renderer.isPrependTrackNumbers() &&
 						currentAudioTrack.getTrack() > 0 &&
 						currentAudioTrack.getSongname() != null &&
 						currentAudioTrack.getSongname().length() > 0
@@ -325,11 +426,11 @@ public class LibMediaInfoParser {
 						currentAudioTrack.setSongname(currentAudioTrack.getTrack() + ": " + currentAudioTrack.getSongname());
 					}
 
-					currentAudioTrack.setAlbum(MI.Get(StreamType.General, 0, "Album"));
-					currentAudioTrack.setArtist(MI.Get(StreamType.General, 0, "Performer"));
-					currentAudioTrack.setGenre(MI.Get(StreamType.General, 0, "Genre"));
+					currentAudioTrack.setAlbum(mediaInfo.Get(StreamType.General, 0, "Album"));
+					currentAudioTrack.setArtist(mediaInfo.Get(StreamType.General, 0, "Performer"));
+					currentAudioTrack.setGenre(mediaInfo.Get(StreamType.General, 0, "Genre"));
 					// Try to parse the year from the stored date
-					String recordedDate = MI.Get(StreamType.General, 0, "Recorded_Date");
+					String recordedDate = mediaInfo.Get(StreamType.General, 0, "Recorded_Date");
 					Matcher matcher = yearPattern.matcher(recordedDate);
 					if (matcher.matches()) {
 						try {
@@ -340,7 +441,7 @@ public class LibMediaInfoParser {
 					}
 
 					// Special check for OGM: MediaInfo reports specific Audio/Subs IDs (0xn) while mencoder does not
-					value = MI.Get(StreamType.Audio, i, "ID/String");
+					value = mediaInfo.Get(StreamType.Audio, i, "ID/String");
 					if (isNotBlank(value)) {
 						if (value.contains("(0x") && !FormatConfiguration.OGG.equals(media.getContainer())) {
 							currentAudioTrack.setId(getSpecificID(value));
@@ -349,7 +450,7 @@ public class LibMediaInfoParser {
 						}
 					}
 
-					value = MI.Get(StreamType.General, i, "Track/Position");
+					value = mediaInfo.Get(StreamType.General, i, "Track/Position");
 					if (isNotBlank(value)) {
 						try {
 							currentAudioTrack.setTrack(Integer.parseInt(value));
@@ -358,7 +459,7 @@ public class LibMediaInfoParser {
 						}
 					}
 
-					value = MI.Get(StreamType.Audio, i, "BitDepth");
+					value = mediaInfo.Get(StreamType.Audio, i, "BitDepth");
 					if (isNotBlank(value)) {
 						currentAudioTrack.setBitsPerSample(parseBitsperSample(value));
 					}
@@ -371,14 +472,14 @@ public class LibMediaInfoParser {
 			}
 
 			// set Image
-			media.setImageCount(MI.Count_Get(StreamType.Image));
+			media.setImageCount(mediaInfo.Count_Get(StreamType.Image));
 			if (media.getImageCount() > 0 || type == FormatType.IMAGE) {
 				boolean parseByMediainfo = false;
 				// For images use our own parser instead of MediaInfo which doesn't provide enough information
 				try {
 					ImagesUtil.parseImage(file, media);
 					// This is a little hack. MediaInfo only recognizes a few image formats
-					// so that MI.Count_Get(image) might return 0 even if there is an image.
+					// so that mediaInfo.Count_Get(image) might return 0 even if there is an image.
 					if (media.getImageCount() == 0) {
 						media.setImageCount(1);
 					}
@@ -395,9 +496,9 @@ public class LibMediaInfoParser {
 				}
 
 				if (parseByMediainfo) {
-					getFormat(StreamType.Image, media, currentAudioTrack, MI.Get(StreamType.Image, 0, "Format"), file);
-					media.setWidth(getPixelValue(MI.Get(StreamType.Image, 0, "Width")));
-					media.setHeight(getPixelValue(MI.Get(StreamType.Image, 0, "Height")));
+					getFormat(StreamType.Image, media, currentAudioTrack, mediaInfo.Get(StreamType.Image, 0, "Format"), file);
+					media.setWidth(getPixelValue(mediaInfo.Get(StreamType.Image, 0, "Width")));
+					media.setHeight(getPixelValue(mediaInfo.Get(StreamType.Image, 0, "Height")));
 				}
 				if (parseLogger != null) {
 					parseLogger.logImageColumns(0);
@@ -405,16 +506,16 @@ public class LibMediaInfoParser {
 			}
 
 			// set Subs in text format
-			int subTracks = MI.Count_Get(StreamType.Text);
+			int subTracks = mediaInfo.Count_Get(StreamType.Text);
 			if (subTracks > 0) {
 				for (int i = 0; i < subTracks; i++) {
 					currentSubTrack = new DLNAMediaSubtitle();
-					currentSubTrack.setType(SubtitleType.valueOfLibMediaInfoCodec(MI.Get(StreamType.Text, i, "Format")));
-					currentSubTrack.setType(SubtitleType.valueOfLibMediaInfoCodec(MI.Get(StreamType.Text, i, "CodecID")));
-					currentSubTrack.setLang(getLang(MI.Get(StreamType.Text, i, "Language/String")));
-					currentSubTrack.setSubtitlesTrackTitleFromMetadata((MI.Get(StreamType.Text, i, "Title")).trim());
+					currentSubTrack.setType(SubtitleType.valueOfLibMediaInfoCodec(mediaInfo.Get(StreamType.Text, i, "Format")));
+					currentSubTrack.setType(SubtitleType.valueOfLibMediaInfoCodec(mediaInfo.Get(StreamType.Text, i, "CodecID")));
+					currentSubTrack.setLang(getLang(mediaInfo.Get(StreamType.Text, i, "Language/String")));
+					currentSubTrack.setSubtitlesTrackTitleFromMetadata((mediaInfo.Get(StreamType.Text, i, "Title")).trim());
 					// Special check for OGM: MediaInfo reports specific Audio/Subs IDs (0xn) while mencoder does not
-					value = MI.Get(StreamType.Text, i, "ID/String");
+					value = mediaInfo.Get(StreamType.Text, i, "ID/String");
 					if (isNotBlank(value)) {
 						if (value.contains("(0x") && !FormatConfiguration.OGG.equals(media.getContainer())) {
 							currentSubTrack.setId(getSpecificID(value));
@@ -529,7 +630,7 @@ public class LibMediaInfoParser {
 				LOGGER.trace("{}", parseLogger);
 			}
 
-			MI.Close();
+			mediaInfo.Close();
 			if (media.getContainer() == null) {
 				media.setContainer(DLNAMediaLang.UND);
 			}
@@ -1371,10 +1472,21 @@ public class LibMediaInfoParser {
 	@SuppressWarnings("unused")
 	protected static class ParseLogger {
 
+		private final MediaInfo MI;
 		private final StringBuilder sb = new StringBuilder();
 		private final Columns generalColumns = new Columns(false, 2, 32, 62, 92);
 		private final Columns streamColumns = new Columns(false, 4, 34, 64, 94);
 
+		/**
+		 * Creates a new instance that logs from the specified {@link MediaInfo}
+		 * instance.
+		 *
+		 * @param mediaInfo the {@link MediaInfo} instance to log from.
+		 */
+		public ParseLogger(@Nullable MediaInfo mediaInfo) {
+			MI = mediaInfo;
+		}
+
 		/**
 		 * Appends a label and value to the internal {@link StringBuilder} at
 		 * the next column using the specified parameters.
@@ -0,0 +1,304 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import net.pms.configuration.RendererConfiguration;
+import net.pms.encoders.Player;
+import net.pms.formats.FormatType;
+
+/**
+ * A media library file created from its row in the database. Only the
+ * {@link Summary} is kept for the lifetime of the item. A new item is
+ * released: it isn't checked on disk or resolved when it's added, and it
+ * answers Browse requests from a {@link DLNAMediaInfo} created from its
+ * {@link Summary} on the first call to {@link #getMedia()}. The complete
+ * information is only loaded when a player is selected for the item, when
+ * it's streamed or when its thumbnail is needed, and can be dropped again
+ * with {@link #release()}.
+ */
+public class LibraryItem extends RealFile {
+	private final Summary summary;
+
+	/** Whether the complete {@link DLNAMediaInfo} isn't loaded */
+	private volatile boolean released = true;
+
+	/** The mime type of the complete {@link DLNAMediaInfo} when it was released */
+	private volatile String mimeType;
+
+	public LibraryItem(@Nonnull Summary summary) {
+		super(new File(summary.getFilename()), summary.getModified());
+		this.summary = summary;
+	}
+
+	/**
+	 * @return The {@link Summary} this item was created from.
+	 */
+	@Nonnull
+	public Summary getSummary() {
+		return summary;
+	}
+
+	/**
+	 * Replaces the {@link DLNAMediaInfo} with the information from the
+	 * {@link Summary}. Information that is still being parsed is kept.
+	 */
+	public synchronized void release() {
+		DLNAMediaInfo current = super.getMedia();
+		if (released || current != null && current.isParsing()) {
+			return;
+		}
+		if (current != null && current.isMediaparsed()) {
+			mimeType = current.getMimeType();
+		}
+		super.setMedia(null);
+		released = true;
+	}
+
+	/**
+	 * @return {@code true} if the complete {@link DLNAMediaInfo} isn't
+	 *         loaded, {@code false} otherwise.
+	 */
+	public boolean isReleased() {
+		return released;
+	}
+
+	/**
+	 * Loads the complete {@link DLNAMediaInfo} if the item is released.
+	 */
+	private synchronized void hydrate() {
+		if (released) {
+			released = false;
+			super.setMedia(null);
+			super.resolve();
+		}
+	}
+
+	/**
+	 * Creates the {@link DLNAMediaInfo} served while the item is released.
+	 * It holds the fields of the {@link Summary} and the mime type, which is
+	 * all that's needed to describe the item in a Browse response.
+	 *
+	 * @return The new {@link DLNAMediaInfo}.
+	 */
+	@Nonnull
+	private DLNAMediaInfo createSummaryMedia() {
+		DLNAMediaInfo summaryMedia = new DLNAMediaInfo();
+		summaryMedia.setSize(summary.getSize());
+		summaryMedia.setDuration(summary.getDuration());
+		String summaryMimeType = mimeType;
+		if (summaryMimeType == null && getFormat() != null) {
+			summaryMimeType = getFormat().mimeType();
+		}
+		summaryMedia.setMimeType(summaryMimeType);
+		if (summary.getType() == FormatType.VIDEO) {
+			summaryMedia.setVideoTrackCount(1);
+		} else if (summary.getType() == FormatType.IMAGE) {
+			summaryMedia.setImageCount(1);
+		} else if (summary.getType() == FormatType.AUDIO) {
+			DLNAMediaAudio audio = new DLNAMediaAudio();
+			audio.setSongname(summary.getTitle());
+			audio.setArtist(summary.getArtist());
+			audio.setAlbum(summary.getAlbum());
+			summaryMedia.getAudioTracksList().add(audio);
+		}
+		summaryMedia.setThumbready(true);
+		summaryMedia.setMediaparsed(summaryMimeType != null);
+		return summaryMedia;
+	}
+
+	/**
+	 * Returns the {@link DLNAMediaInfo} created from the {@link Summary} while
+	 * the item is released, and the complete {@link DLNAMediaInfo} otherwise.
+	 */
+	@Override
+	public synchronized DLNAMediaInfo getMedia() {
+		if (released && super.getMedia() == null) {
+			super.setMedia(createSummaryMedia());
+		}
+		return super.getMedia();
+	}
+
+	@Override
+	public synchronized void resolve() {
+		if (!released) {
+			super.resolve();
+		}
+	}
+
+	@Override
+	public synchronized void setMedia(DLNAMediaInfo media) {
+		released = false;
+		super.setMedia(media);
+	}
+
+	/**
+	 * A released item is valid if its format is known. It isn't checked on
+	 * disk or resolved, the scans and the file watchers keep the database up
+	 * to date.
+	 */
+	@Override
+	public boolean isValid() {
+		if (released) {
+			resolveFormat();
+			return getFormat() != null && getFormat().getType() != FormatType.SUBTITLES;
+		}
+		return super.isValid();
+	}
+
+	@Override
+	public long length() {
+		if (released && getPlayer() == null) {
+			return summary.getSize();
+		}
+		return super.length();
+	}
+
+	@Override
+	public boolean isFolder() {
+		return false;
+	}
+
+	@Override
+	public Player resolvePlayer(RendererConfiguration renderer) {
+		hydrate();
+		return super.resolvePlayer(renderer);
+	}
+
+	@Override
+	public synchronized InputStream getInputStream(Range range, RendererConfiguration mediarenderer) throws IOException {
+		hydrate();
+		return super.getInputStream(range, mediarenderer);
+	}
+
+	@Override
+	public void checkThumbnail() {
+		// The thumbnail is only kept with the complete information
+		hydrate();
+		super.checkThumbnail();
+	}
+
+	/**
+	 * The columns of a media library file that are cheap to keep in memory.
+	 * The audio fields are those of the first audio track.
+	 */
+	@Immutable
+	public static class Summary {
+		private final String filename;
+		private final long modified;
+		private final FormatType type;
+		private final long size;
+		private final Double duration;
+		private final String title;
+		private final String artist;
+		private final String album;
+
+		public Summary(
+			@Nonnull String filename,
+			long modified,
+			@Nullable FormatType type,
+			long size,
+			@Nullable Double duration,
+			@Nullable String title,
+			@Nullable String artist,
+			@Nullable String album
+		) {
+			this.filename = filename;
+			this.modified = modified;
+			this.type = type;
+			this.size = size;
+			this.duration = duration;
+			this.title = title;
+			this.artist = artist;
+			this.album = album;
+		}
+
+		/**
+		 * @return The absolute path of the file.
+		 */
+		@Nonnull
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * @return The modification time stored for the file.
+		 */
+		public long getModified() {
+			return modified;
+		}
+
+		/**
+		 * @return The {@link FormatType} or {@code null} if unknown.
+		 */
+		@Nullable
+		public FormatType getType() {
+			return type;
+		}
+
+		/**
+		 * @return The size of the file in bytes.
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return The duration in seconds or {@code null} if unknown.
+		 */
+		@Nullable
+		public Double getDuration() {
+			return duration;
+		}
+
+		/**
+		 * @return The song name or {@code null}.
+		 */
+		@Nullable
+		public String getTitle() {
+			return title;
+		}
+
+		/**
+		 * @return The artist or {@code null}.
+		 */
+		@Nullable
+		public String getArtist() {
+			return artist;
+		}
+
+		/**
+		 * @return The album or {@code null}.
+		 */
+		@Nullable
+		public String getAlbum() {
+			return album;
+		}
+
+		@Override
+		public String toString() {
+			return "Summary [filename=" + filename + ", modified=" + modified + ", type=" + type + ", size=" + size + "]";
+		}
+	}
+}
@@ -0,0 +1,640 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.sun.jna.Platform;
+import net.pms.configuration.RendererConfiguration;
+import net.pms.database.TableDirectoryFingerprints;
+import net.pms.database.TableDirectoryFingerprints.DirectoryFingerprint;
+import net.pms.exception.InvalidFileSystemException;
+import net.pms.util.FileUtil;
+
+/**
+ * Scans a {@link DLNAResource} tree in parallel on a work-stealing
+ * {@link ForkJoinPool}, so that the media cache can be built using all the
+ * available cores.
+ * <p>
+ * Every folder is discovered and analyzed by its own task, after which its
+ * sub-folders are scanned in parallel and its children are released again.
+ * Since parallel access to the same spinning disk quickly degrades
+ * throughput, the number of folders that are processed at the same time on
+ * the same volume is limited separately. Volumes are told apart using
+ * {@link FileUtil#getMountPoint(Path)} on Unix and the drive on Windows.
+ * <p>
+ * Parsing results are written to the database in batches by the
+ * {@link DatabaseWriteQueue}, which is flushed when the scan ends.
+ * <p>
+ * If a {@link TableDirectoryFingerprints} instance is given, the scan is
+ * incremental: the {@link DirectoryFingerprint} of every scanned directory is
+ * stored, and a folder whose directory and sub-directories all still match
+ * their stored fingerprints is skipped entirely. The directories that were
+ * scanned are available from {@link #getChangedDirectories()} so that the
+ * cleanup can be limited to them.
+ * <p>
+ * A scan is stopped cooperatively with {@link #stop()}: folders that are
+ * being processed are finished, but no new folders are started.
+ */
+@ThreadSafe
+public class LibraryScanner {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LibraryScanner.class);
+
+	/** The volume used for resources that aren't backed by a file */
+	protected static final String UNKNOWN_VOLUME = "";
+
+	private final int parallelism;
+	private final int threadsPerVolume;
+	private final DLNAMediaDatabase database;
+	private final TableDirectoryFingerprints fingerprints;
+	private final ConcurrentLinkedQueue<DirectoryFingerprint> scannedFingerprints = new ConcurrentLinkedQueue<>();
+
+	/** The fingerprints created during the current scan by absolute path */
+	private final ConcurrentHashMap<String, DirectoryFingerprint> currentFingerprints = new ConcurrentHashMap<>();
+
+	/** Whether the subtrees checked during the current scan are unchanged by absolute path */
+	private final ConcurrentHashMap<String, Boolean> unchangedSubtrees = new ConcurrentHashMap<>();
+	private final Set<String> changedDirectories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentHashMap<String, Semaphore> volumePermits = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Object, String> volumeNames = new ConcurrentHashMap<>();
+	private final AtomicLong foldersScanned = new AtomicLong();
+	private final AtomicLong filesScanned = new AtomicLong();
+	private final AtomicLong foldersSkipped = new AtomicLong();
+	private volatile boolean incremental;
+	private volatile boolean running;
+	private volatile long startTime;
+	private volatile long endTime;
+
+	/**
+	 * Creates a new scanner.
+	 *
+	 * @param parallelism the number of scanner threads.
+	 * @param threadsPerVolume the maximum number of folders to process at the
+	 *            same time on one volume.
+	 * @param database the {@link DLNAMediaDatabase} whose
+	 *            {@link DatabaseWriteQueue} should be flushed when the scan
+	 *            ends or {@code null}.
+	 * @param fingerprints the {@link TableDirectoryFingerprints} to use for
+	 *            incremental scans or {@code null} to scan everything.
+	 */
+	public LibraryScanner(
+		int parallelism,
+		int threadsPerVolume,
+		@Nullable DLNAMediaDatabase database,
+		@Nullable TableDirectoryFingerprints fingerprints
+	) {
+		this.parallelism = Math.max(1, parallelism);
+		this.threadsPerVolume = Math.max(1, threadsPerVolume);
+		this.database = database;
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * Scans all scannable descendants of {@code root} and blocks until the
+	 * scan is complete or has been stopped.
+	 *
+	 * @param root the {@link DLNAResource} whose children to scan.
+	 * @return {@code true} if the scan completed, {@code false} if it was
+	 *         stopped.
+	 */
+	public boolean scan(@Nonnull DLNAResource root) {
+		running = true;
+		foldersScanned.set(0);
+		filesScanned.set(0);
+		foldersSkipped.set(0);
+		scannedFingerprints.clear();
+		currentFingerprints.clear();
+		unchangedSubtrees.clear();
+		changedDirectories.clear();
+		incremental = false;
+		if (fingerprints != null) {
+			try {
+				incremental = !fingerprints.isEmpty();
+			} catch (SQLException e) {
+				LOGGER.error("Couldn't read directory fingerprints, scanning everything: {}", e.getMessage());
+				LOGGER.trace("", e);
+			}
+		}
+		startTime = System.nanoTime();
+		endTime = 0;
+		ForkJoinPool pool = new ForkJoinPool(parallelism, new ScannerThreadFactory(), null, false);
+		try {
+			pool.invoke(new RootTask(root));
+		} finally {
+			pool.shutdownNow();
+			if (database != null) {
+				database.getWriteQueue().flush();
+			}
+			storeFingerprints();
+			currentFingerprints.clear();
+			unchangedSubtrees.clear();
+			endTime = System.nanoTime();
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(
+				"Library scan {} after {} ms: {} folders ({} unchanged skipped) and {} files ({} files/s) using {} threads",
+				running ? "completed" : "stopped",
+				getElapsedTime(),
+				foldersScanned.get(),
+				foldersSkipped.get(),
+				filesScanned.get(),
+				String.format(Locale.ROOT, "%.1f", getFilesPerSecond()),
+				parallelism
+			);
+			if (database != null) {
+				LOGGER.debug("Media information cache after library scan: {}", database.getMediaInfoCache());
+			}
+		}
+		return running;
+	}
+
+	/**
+	 * Stops the scan. Folders that are being processed are finished, but no
+	 * new folders are started.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * @return {@code true} if a scan is in progress and hasn't been stopped,
+	 *         {@code false} otherwise.
+	 */
+	public boolean isRunning() {
+		return running && endTime == 0;
+	}
+
+	/**
+	 * @return The number of folders scanned so far.
+	 */
+	public long getFoldersScanned() {
+		return foldersScanned.get();
+	}
+
+	/**
+	 * @return The number of unchanged folders that were skipped so far.
+	 */
+	public long getFoldersSkipped() {
+		return foldersSkipped.get();
+	}
+
+	/**
+	 * Returns the directories that were scanned because they were new or had
+	 * changed. This is only available for incremental scans, that is when
+	 * fingerprints from a previous scan existed.
+	 *
+	 * @return The absolute paths of the scanned directories or {@code null}
+	 *         if every directory had to be scanned.
+	 */
+	@Nullable
+	public Set<String> getChangedDirectories() {
+		if (!incremental) {
+			return null;
+		}
+		return Collections.unmodifiableSet(new HashSet<>(changedDirectories));
+	}
+
+	/**
+	 * @return The number of files scanned so far.
+	 */
+	public long getFilesScanned() {
+		return filesScanned.get();
+	}
+
+	/**
+	 * @return The duration of the current or last scan in milliseconds.
+	 */
+	public long getElapsedTime() {
+		long start = startTime;
+		if (start == 0) {
+			return 0;
+		}
+		long end = endTime;
+		return TimeUnit.NANOSECONDS.toMillis((end == 0 ? System.nanoTime() : end) - start);
+	}
+
+	/**
+	 * @return The average number of files scanned per second.
+	 */
+	public double getFilesPerSecond() {
+		long elapsed = getElapsedTime();
+		return elapsed == 0 ? 0 : filesScanned.get() * 1000d / elapsed;
+	}
+
+	/**
+	 * Called on the scanner thread before a folder is processed. Can be
+	 * overridden to report progress.
+	 *
+	 * @param folder the {@link DLNAResource} that is about to be processed.
+	 */
+	protected void onScanFolder(@Nonnull DLNAResource folder) {
+	}
+
+	/**
+	 * Discovers and analyzes the children of a folder, or refreshes them if
+	 * they have already been discovered.
+	 *
+	 * @param folder the {@link DLNAResource} to process.
+	 */
+	protected void processFolder(@Nonnull DLNAResource folder) {
+		if (folder.isDiscovered()) {
+			folder.refreshChildren();
+		} else {
+			if (folder instanceof DVDISOFile || folder instanceof DVDISOTitle) { // ugly hack
+				folder.syncResolve();
+			}
+			folder.discoverChildren();
+			folder.analyzeChildren(-1);
+			folder.setDiscovered(true);
+		}
+	}
+
+	/**
+	 * Finds the directories whose entries are listed by a folder.
+	 *
+	 * @param folder the {@link DLNAResource}.
+	 * @return The {@link List} of directories, which is empty for virtual
+	 *         folders.
+	 */
+	@Nonnull
+	protected List<File> getDirectories(@Nonnull DLNAResource folder) {
+		if (folder instanceof MapFile) {
+			return ((MapFile) folder).getListedDirectories();
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Creates a {@link DirectoryFingerprint} for the folder if it lists
+	 * exactly one directory and incremental scanning is enabled.
+	 */
+	@Nullable
+	private DirectoryFingerprint createFingerprint(List<File> directories) {
+		if (fingerprints == null || directories.size() != 1) {
+			return null;
+		}
+		try {
+			return getFingerprint(directories.get(0).toPath());
+		} catch (IOException e) {
+			LOGGER.debug("Couldn't create fingerprint for \"{}\": {}", directories.get(0), e.getMessage());
+			LOGGER.trace("", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the {@link DirectoryFingerprint} of a directory, which is only
+	 * created once per scan: the fingerprints created while checking a
+	 * subtree are reused by the tasks of its sub-folders.
+	 *
+	 * @param directory the directory.
+	 * @return The {@link DirectoryFingerprint}.
+	 * @throws IOException If the directory can't be read.
+	 */
+	@Nonnull
+	private DirectoryFingerprint getFingerprint(@Nonnull Path directory) throws IOException {
+		String path = directory.toAbsolutePath().toString();
+		DirectoryFingerprint fingerprint = currentFingerprints.get(path);
+		if (fingerprint == null) {
+			fingerprint = DirectoryFingerprint.create(directory);
+			DirectoryFingerprint existing = currentFingerprints.putIfAbsent(path, fingerprint);
+			if (existing != null) {
+				fingerprint = existing;
+			}
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Checks whether a directory and all the directories below it match their
+	 * stored fingerprints. The result is remembered for the rest of the scan,
+	 * so that every directory is only compared once even though the tasks of
+	 * the sub-folders check their subtrees again.
+	 *
+	 * @param current the current {@link DirectoryFingerprint}.
+	 * @return {@code true} if the subtree is unchanged, {@code false}
+	 *         otherwise.
+	 */
+	private boolean isUnchanged(DirectoryFingerprint current) {
+		Boolean unchanged = unchangedSubtrees.get(current.getPath());
+		if (unchanged != null) {
+			return unchanged.booleanValue();
+		}
+		try {
+			if (!current.matches(fingerprints.find(current.getPath()))) {
+				unchangedSubtrees.put(current.getPath(), Boolean.FALSE);
+				return false;
+			}
+		} catch (SQLException e) {
+			LOGGER.debug("Couldn't look up fingerprint for \"{}\": {}", current.getPath(), e.getMessage());
+			LOGGER.trace("", e);
+			return false;
+		}
+		List<Path> subdirectories = current.getSubdirectories();
+		if (subdirectories == null) {
+			return false;
+		}
+		for (Path subdirectory : subdirectories) {
+			if (!running) {
+				// Not remembered, the subtree hasn't been checked completely
+				return false;
+			}
+			try {
+				if (!isUnchanged(getFingerprint(subdirectory))) {
+					unchangedSubtrees.put(current.getPath(), Boolean.FALSE);
+					return false;
+				}
+			} catch (IOException e) {
+				LOGGER.trace("Couldn't create fingerprint for \"{}\": {}", subdirectory, e.getMessage());
+				return false;
+			}
+		}
+		unchangedSubtrees.put(current.getPath(), Boolean.TRUE);
+		return true;
+	}
+
+	/**
+	 * Stores the fingerprints of the scanned directories and removes those of
+	 * directories that no longer exist. This is done after the parsing
+	 * results have been written, so that a fingerprint is never stored for a
+	 * directory whose files aren't in the cache.
+	 */
+	private void storeFingerprints() {
+		if (fingerprints == null) {
+			return;
+		}
+		List<DirectoryFingerprint> pending = new ArrayList<>(scannedFingerprints);
+		scannedFingerprints.clear();
+		try {
+			fingerprints.store(pending);
+			int removed = 0;
+			for (String directory : changedDirectories) {
+				removed += fingerprints.removeMissing(directory);
+			}
+			if (removed > 0) {
+				LOGGER.debug("Removed {} fingerprints of deleted directories", removed);
+			}
+		} catch (SQLException e) {
+			LOGGER.error("Couldn't store directory fingerprints: {}", e.getMessage());
+			LOGGER.trace("", e);
+		}
+	}
+
+	/**
+	 * Finds the volume the specified {@link DLNAResource} is stored on.
+	 *
+	 * @param resource the {@link DLNAResource}.
+	 * @return The volume identifier.
+	 */
+	@Nonnull
+	protected String getVolume(@Nonnull DLNAResource resource) {
+		File file = null;
+		if (resource instanceof RealFile) {
+			file = ((RealFile) resource).getFile();
+		} else if (resource instanceof MapFile && ((MapFile) resource).getConf() != null) {
+			for (File candidate : ((MapFile) resource).getConf().getFiles()) {
+				if (candidate != null) {
+					file = candidate;
+					break;
+				}
+			}
+		}
+		return file == null ? UNKNOWN_VOLUME : getVolume(file.toPath());
+	}
+
+	/**
+	 * Finds the volume the specified {@link Path} is stored on. The device ID
+	 * is used to look up the cached mount point, so that
+	 * {@link FileUtil#getMountPoint(Path)} is only called once per volume.
+	 *
+	 * @param path the {@link Path}.
+	 * @return The volume identifier.
+	 */
+	@Nonnull
+	protected String getVolume(@Nonnull Path path) {
+		if (Platform.isWindows()) {
+			Path root = path.toAbsolutePath().getRoot();
+			return root == null ? UNKNOWN_VOLUME : root.toString().toUpperCase(Locale.ROOT);
+		}
+		Object device;
+		try {
+			device = Files.getAttribute(path, "unix:dev");
+		} catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+			LOGGER.trace("Couldn't get the device of \"{}\": {}", path, e.getMessage());
+			return UNKNOWN_VOLUME;
+		}
+		String volume = volumeNames.get(device);
+		if (volume == null) {
+			try {
+				volume = FileUtil.getMountPoint(path).folder;
+			} catch (InvalidFileSystemException e) {
+				LOGGER.trace("Couldn't get the mount point of \"{}\": {}", path, e.getMessage());
+				volume = String.valueOf(device);
+			}
+			String existing = volumeNames.putIfAbsent(device, volume);
+			if (existing != null) {
+				volume = existing;
+			} else {
+				LOGGER.trace("Library scanner found volume \"{}\"", volume);
+			}
+		}
+		return volume;
+	}
+
+	private Semaphore getPermits(String volume) {
+		Semaphore permits = volumePermits.get(volume);
+		if (permits == null) {
+			permits = new Semaphore(threadsPerVolume);
+			Semaphore existing = volumePermits.putIfAbsent(volume, permits);
+			if (existing != null) {
+				permits = existing;
+			}
+		}
+		return permits;
+	}
+
+	/**
+	 * Creates tasks for the scannable children of {@code folder}.
+	 */
+	private List<FolderTask> createSubtasks(DLNAResource folder) {
+		List<FolderTask> tasks = new ArrayList<>();
+		RendererConfiguration renderer = folder.getDefaultRenderer();
+		for (DLNAResource child : new ArrayList<>(folder.getChildren())) {
+			if (child.allowScan()) {
+				tasks.add(new FolderTask(child, renderer));
+			} else if (!child.isFolder()) {
+				filesScanned.incrementAndGet();
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * Scans the children of the root without processing the root itself.
+	 */
+	@SuppressWarnings("serial")
+	private class RootTask extends RecursiveAction {
+		private final DLNAResource root;
+
+		public RootTask(DLNAResource root) {
+			this.root = root;
+		}
+
+		@Override
+		protected void compute() {
+			if (running) {
+				invokeAll(createSubtasks(root));
+			}
+		}
+	}
+
+	/**
+	 * Processes one folder and then scans its sub-folders in parallel.
+	 */
+	@SuppressWarnings("serial")
+	private class FolderTask extends RecursiveAction {
+		private final DLNAResource folder;
+		private final RendererConfiguration renderer;
+
+		public FolderTask(DLNAResource folder, RendererConfiguration renderer) {
+			this.folder = folder;
+			this.renderer = renderer;
+		}
+
+		@Override
+		protected void compute() {
+			if (!running) {
+				return;
+			}
+			folder.setDefaultRenderer(renderer);
+			onScanFolder(folder);
+
+			VolumePermit permit = new VolumePermit(getPermits(getVolume(folder)));
+			try {
+				ForkJoinPool.managedBlock(permit);
+			} catch (InterruptedException e) {
+				LOGGER.debug("Library scanner was interrupted while waiting to scan \"{}\"", folder.getName());
+				Thread.currentThread().interrupt();
+				return;
+			}
+			try {
+				if (!running) {
+					return;
+				}
+				List<File> directories = getDirectories(folder);
+				DirectoryFingerprint fingerprint = createFingerprint(directories);
+				if (fingerprint != null && isUnchanged(fingerprint)) {
+					LOGGER.trace("Skipping unchanged folder \"{}\"", fingerprint.getPath());
+					foldersSkipped.incrementAndGet();
+					return;
+				}
+				processFolder(folder);
+				if (fingerprint != null) {
+					scannedFingerprints.add(fingerprint);
+				}
+				for (File directory : directories) {
+					changedDirectories.add(directory.getAbsolutePath());
+				}
+			} finally {
+				permit.release();
+			}
+			foldersScanned.incrementAndGet();
+
+			if (folder.getChildren().isEmpty()) {
+				return;
+			}
+			invokeAll(createSubtasks(folder));
+			folder.getChildren().clear();
+		}
+	}
+
+	/**
+	 * Acquires a volume permit so that the {@link ForkJoinPool} can compensate
+	 * for the blocked worker.
+	 */
+	private static class VolumePermit implements ForkJoinPool.ManagedBlocker {
+		private final Semaphore permits;
+		private boolean acquired;
+
+		public VolumePermit(Semaphore permits) {
+			this.permits = permits;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			if (!acquired) {
+				permits.acquire();
+				acquired = true;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			if (!acquired) {
+				acquired = permits.tryAcquire();
+			}
+			return acquired;
+		}
+
+		public void release() {
+			if (acquired) {
+				acquired = false;
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Creates named daemon threads for the scanner pool.
+	 */
+	private static class ScannerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+		private static final AtomicLong THREAD_COUNTER = new AtomicLong();
+
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("Library Scanner-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
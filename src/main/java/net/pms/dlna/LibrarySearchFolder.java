@@ -0,0 +1,88 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import net.pms.PMS;
+import net.pms.configuration.RendererConfiguration;
+import net.pms.dlna.DLNAMediaDatabase.SearchResult;
+import net.pms.dlna.virtual.VirtualFolder;
+
+/**
+ * A hidden folder holding the current page of results for a UPnP
+ * {@code Search} action answered from the media database. It's the parent of
+ * the returned items, so that they can be referenced by ID afterwards, and it
+ * reports the total number of matches rather than the number of children.
+ */
+public class LibrarySearchFolder extends VirtualFolder {
+
+	private volatile int totalMatches;
+
+	public LibrarySearchFolder() {
+		super("Search", null);
+	}
+
+	/**
+	 * Replaces the children of this folder with the specified page of files
+	 * matching {@code criteria} and resolves them.
+	 *
+	 * @param criteria the {@link SearchCriteria} to match.
+	 * @param start the index of the first match to return.
+	 * @param count the maximum number of matches to return or {@code 0} to
+	 *            return all matches from {@code start}.
+	 * @param renderer the {@link RendererConfiguration} to search for.
+	 * @return The matching {@link DLNAResource}s or {@code null} if the
+	 *         database can't be searched.
+	 */
+	@Nullable
+	public synchronized List<DLNAResource> search(
+		@Nonnull SearchCriteria criteria,
+		int start,
+		int count,
+		@Nullable RendererConfiguration renderer
+	) {
+		DLNAMediaDatabase database = PMS.get().getDatabase();
+		SearchResult result = database == null ? null : database.search(criteria, start, count);
+		if (result == null) {
+			return null;
+		}
+
+		setDefaultRenderer(renderer);
+		getChildren().clear();
+		for (File file : result.getFiles()) {
+			addChild(new RealFile(file));
+		}
+		List<DLNAResource> resources = new ArrayList<>(getChildren());
+		for (DLNAResource resource : resources) {
+			resource.run();
+		}
+		totalMatches = result.getTotalMatches();
+		notifyRefresh();
+		return resources;
+	}
+
+	@Override
+	public int childrenNumber() {
+		return totalMatches;
+	}
+}
@@ -31,9 +31,10 @@ import java.util.regex.Pattern;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import net.pms.configuration.MapFileConfiguration;
-import net.pms.formats.Format;
-import net.pms.formats.FormatFactory;
 import net.pms.formats.FormatType;
+import net.pms.service.LibraryIndexer;
+import net.pms.service.Services;
+import net.pms.util.DirectorySnapshot;
 import net.pms.util.FileUtil;
 import net.pms.util.UMSUtils;
 import net.pms.util.StringUtil.LetterCase;
@@ -65,9 +66,10 @@ public class MapFile extends DLNAResource {
 	public static final Pattern FOLDER_THUMBNAIL = Pattern.compile(
 		"^albumart[_.]?(?:small|large)\\.[^.]*$",Pattern.CASE_INSENSITIVE
 	);
-	private List<File> discoverable;
+	private List<DirectorySnapshot.Entry> discoverable;
 	private List<File> emptyFoldersToRescan;
 	private String forcedName;
+	private volatile boolean invalidated;
 
 	private ArrayList<RealFile> searchList;
 
@@ -98,10 +100,20 @@ public class MapFile extends DLNAResource {
 	public MapFile(MapFileConfiguration conf, List<File> list) {
 		this.conf = conf;
 		setLastModified(0);
-		this.discoverable = list;
+		this.discoverable = new ArrayList<>(list.size());
+		for (File file : list) {
+			this.discoverable.add(DirectorySnapshot.Entry.of(file));
+		}
 		forcedName = null;
 	}
 
+	private MapFile(MapFileConfiguration conf, List<DirectorySnapshot.Entry> entries, String forcedName) {
+		this.conf = conf;
+		setLastModified(0);
+		this.discoverable = entries;
+		this.forcedName = forcedName;
+	}
+
 	/**
 	 * Returns the first {@link File} in a specified folder that is considered a
 	 * "folder thumbnail" by naming convention.
@@ -230,12 +242,13 @@ public class MapFile extends DLNAResource {
 		return MapFile.THUMBNAIL_EXTENSIONS.contains(FileUtil.getExtension(fileName, LetterCase.LOWER, Locale.ROOT));
 	}
 
-	private void manageFile(File file) {
-		boolean isFolder = file.isDirectory();
-		if (file.isFile() || isFolder) {
-			String extension = FileUtil.getExtension(file, LetterCase.LOWER, Locale.ROOT);
+	private void manageFile(DirectorySnapshot.Entry entry) {
+		File file = entry.getFile();
+		boolean isFolder = entry.isDirectory();
+		if (entry.isFile() || isFolder) {
+			String extension = FileUtil.getExtension(entry.getName(), LetterCase.LOWER, Locale.ROOT);
 
-			if (!file.isHidden()) {
+			if (!entry.isHidden()) {
 				if (!isFolder && configuration.isArchiveBrowsing() && ("zip".equals(extension) || "cbz".equals(extension))) {
 					addChild(new ZippedFile(file));
 				} else if (!isFolder && configuration.isArchiveBrowsing() && ("rar".equals(extension) || "cbr".equals(extension))) {
@@ -257,7 +270,7 @@ public class MapFile extends DLNAResource {
 							"img".equals(extension)
 						)
 					) || (
-						isFolder && "VIDEO_TS".equals(file.getName().toUpperCase(Locale.ROOT))
+						isFolder && "VIDEO_TS".equals(entry.getName().toUpperCase(Locale.ROOT))
 					)
 				) {
 					addChild(new DVDISOFile(file));
@@ -316,18 +329,15 @@ public class MapFile extends DLNAResource {
 		}
 	}
 
-	private List<File> getFileList() {
-		List<File> out = new ArrayList<>();
+	private List<DirectorySnapshot.Entry> getFileList() {
+		List<DirectorySnapshot.Entry> out = new ArrayList<>();
 
 		for (File file : this.conf.getFiles()) {
 			if (file != null && file.isDirectory()) {
 				if (file.canRead()) {
-					File[] files = file.listFiles();
-
-					if (files == null) {
-						LOGGER.warn("Can't read files from directory: {}", file.getAbsolutePath());
-					} else {
-						out.addAll(Arrays.asList(files));
+					DirectorySnapshot snapshot = DirectorySnapshot.get(file);
+					if (snapshot != null) {
+						out.addAll(snapshot.getEntries());
 					}
 				} else {
 					LOGGER.warn("Can't read directory: {}", file.getAbsolutePath());
@@ -383,33 +393,37 @@ public class MapFile extends DLNAResource {
 			return;
 		}
 
+		LibraryIndexer indexer = Services.libraryIndexer();
+		if (indexer != null) {
+			indexer.register(this);
+		}
+
 		int sm = configuration.getSortMethod(getPath());
 
-		List<File> files = getFileList();
+		List<DirectorySnapshot.Entry> files = getFileList();
 
-		// Build a map of all files and their corresponding formats
+		// Sort out thumbnails and audio/video files using the snapshot attributes
 		HashSet<File> images = new HashSet<>();
 		HashSet<File> audioVideo = new HashSet<>();
-		Iterator<File> iterator = files.iterator();
+		Iterator<DirectorySnapshot.Entry> iterator = files.iterator();
 		while (iterator.hasNext()) {
-			File file = iterator.next();
-			if (file.isFile()) {
-				if (isPotentialThumbnail(file.getName())) {
-					if (isFolderThumbnail(file, false)) {
-						potentialCover = file;
+			DirectorySnapshot.Entry entry = iterator.next();
+			if (entry.isFile()) {
+				if (isPotentialThumbnail(entry.getName())) {
+					if (FOLDER_THUMBNAIL.matcher(entry.getName()).matches()) {
+						potentialCover = entry.getFile();
 						iterator.remove();
 					} else {
-						images.add(file);
+						images.add(entry.getFile());
 					}
 				} else {
-					Format format = FormatFactory.getAssociatedFormat(file.getAbsolutePath());
-					FormatType formatType = format == null ? null : format.getType();
+					FormatType formatType = entry.getFormatType();
 					if (
 						formatType == FormatType.AUDIO ||
 						formatType == FormatType.CONTAINER ||
 						formatType == FormatType.VIDEO
 					) {
-						audioVideo.add(file);
+						audioVideo.add(entry.getFile());
 					}
 				}
 			}
@@ -417,15 +431,19 @@ public class MapFile extends DLNAResource {
 
 		// Remove cover/thumbnails from file list
 		if (images.size() > 0 && audioVideo.size() > 0) {
-			HashSet<File> potentialMatches = new HashSet<File>(THUMBNAIL_EXTENSIONS.size() * 2);
+			HashSet<File> thumbnails = new HashSet<>();
 			for (File audioVideoFile : audioVideo) {
-				potentialMatches = getPotentialFileThumbnails(audioVideoFile, false);
-				iterator = images.iterator();
+				for (File potentialMatch : getPotentialFileThumbnails(audioVideoFile, false)) {
+					if (images.remove(potentialMatch)) {
+						thumbnails.add(potentialMatch);
+					}
+				}
+			}
+			if (!thumbnails.isEmpty()) {
+				iterator = files.iterator();
 				while (iterator.hasNext()) {
-					File imageFile = iterator.next();
-					if (potentialMatches.contains(imageFile)) {
+					if (thumbnails.contains(iterator.next().getFile())) {
 						iterator.remove();
-						files.remove(imageFile);
 					}
 				}
 			}
@@ -440,13 +458,14 @@ public class MapFile extends DLNAResource {
 			 * Note: If we done this at the level directly above we don't do it again
 			 * since all files start with the same letter then
 			 */
-			TreeMap<String, ArrayList<File>> map = new TreeMap<>();
-			for (File f : files) {
-				if ((!f.isFile() && !f.isDirectory()) || f.isHidden()) {
+			TreeMap<String, ArrayList<DirectorySnapshot.Entry>> map = new TreeMap<>();
+			for (DirectorySnapshot.Entry entry : files) {
+				if ((!entry.isFile() && !entry.isDirectory()) || entry.isHidden()) {
 					// skip these
 					continue;
 				}
-				if (f.isDirectory() && configuration.isHideEmptyFolders() && !FileUtil.isFolderRelevant(f, configuration)) {
+				File f = entry.getFile();
+				if (entry.isDirectory() && configuration.isHideEmptyFolders() && !FileUtil.isFolderRelevant(f, configuration)) {
 					LOGGER.debug("Ignoring empty/non-relevant directory: " + f.getName());
 					// Keep track of the fact that we have empty folders, so when we're asked if we should refresh,
 					// we can re-scan the folders in this list to see if they contain something relevant
@@ -459,7 +478,7 @@ public class MapFile extends DLNAResource {
 					continue;
 				}
 
-				String filenameToSort = FileUtil.renameForSorting(f.getName());
+				String filenameToSort = FileUtil.renameForSorting(entry.getName());
 
 				char c = filenameToSort.toUpperCase().charAt(0);
 
@@ -467,48 +486,57 @@ public class MapFile extends DLNAResource {
 					// "other char"
 					c = '#';
 				}
-				ArrayList<File> l = map.get(String.valueOf(c));
+				ArrayList<DirectorySnapshot.Entry> l = map.get(String.valueOf(c));
 				if (l == null) {
 					// new letter
 					l = new ArrayList<>();
 				}
-				l.add(f);
+				l.add(entry);
 				map.put(String.valueOf(c), l);
 			}
 
-			for (Entry<String, ArrayList<File>> entry : map.entrySet()) {
+			for (Entry<String, ArrayList<DirectorySnapshot.Entry>> entry : map.entrySet()) {
 				// loop over all letters, this avoids adding
 				// empty letters
-				UMSUtils.sort(entry.getValue(), sm);
-				MapFile mf = new MapFile(getConf(), entry.getValue());
-				mf.forcedName = entry.getKey();
+				UMSUtils.sortEntries(entry.getValue(), sm);
+				MapFile mf = new MapFile(getConf(), entry.getValue(), entry.getKey());
 				addChild(mf);
 			}
 			return;
 		}
 
-		UMSUtils.sort(files, (sm == UMSUtils.SORT_RANDOM ? UMSUtils.SORT_LOC_NAT : sm));
+		UMSUtils.sortEntries(files, (sm == UMSUtils.SORT_RANDOM ? UMSUtils.SORT_LOC_NAT : sm));
 
-		for (File f : files) {
-			if (f.isDirectory()) {
-				discoverable.add(f); // manageFile(f);
+		for (DirectorySnapshot.Entry entry : files) {
+			if (entry.isDirectory()) {
+				discoverable.add(entry); // manageFile(f);
 			}
 		}
 
 		// For random sorting, we only randomize file entries
 		if (sm == UMSUtils.SORT_RANDOM) {
-			UMSUtils.sort(files, sm);
+			UMSUtils.sortEntries(files, sm);
 		}
 
-		for (File f : files) {
-			if (f.isFile()) {
-				discoverable.add(f); // manageFile(f);
+		for (DirectorySnapshot.Entry entry : files) {
+			if (entry.isFile()) {
+				discoverable.add(entry); // manageFile(f);
 			}
 		}
 	}
 
 	@Override
 	public boolean isRefreshNeeded() {
+		if (invalidated || configuration.getSortMethod(getPath()) == UMSUtils.SORT_RANDOM) {
+			return true;
+		}
+
+		// Changes to watched directories are reported by invalidate()
+		LibraryIndexer indexer = Services.libraryIndexer();
+		if (indexer != null && indexer.isWatched(getListedDirectories())) {
+			return false;
+		}
+
 		long modified = 0;
 
 		for (File f : this.getConf().getFiles()) {
@@ -527,10 +555,33 @@ public class MapFile extends DLNAResource {
 				}
 			}
 		}
-		return
-			getLastRefreshTime() < modified ||
-			configuration.getSortMethod(getPath()) == UMSUtils.SORT_RANDOM ||
-			emptyFolderNowNotEmpty;
+		return getLastRefreshTime() < modified || emptyFolderNowNotEmpty;
+	}
+
+	/**
+	 * Marks this folder as changed, so that its children are rebuilt the
+	 * next time it's browsed, and updates the update ids so that renderers
+	 * learn about the change.
+	 */
+	public void invalidate() {
+		invalidated = true;
+		notifyRefresh();
+	}
+
+	/**
+	 * Returns whether a change to the entries of the specified directory
+	 * affects the children of this folder.
+	 *
+	 * @param directory the changed directory.
+	 * @return {@code true} if this folder lists {@code directory} or has
+	 *         hidden it because it was empty, {@code false} otherwise.
+	 */
+	public boolean isAffectedBy(@Nonnull File directory) {
+		if (getListedDirectories().contains(directory)) {
+			return true;
+		}
+		List<File> emptyFolders = emptyFoldersToRescan;
+		return emptyFolders != null && emptyFolders.contains(directory);
 	}
 
 	@Override
@@ -540,6 +591,7 @@ public class MapFile extends DLNAResource {
 
 	@Override
 	public void doRefreshChildren(String str) {
+		invalidated = false;
 		getChildren().clear();
 		emptyFoldersToRescan = null; // Since we're re-scanning, reset this list so it can be built again
 		discoverable = null;
@@ -575,6 +627,27 @@ public class MapFile extends DLNAResource {
 		return null;
 	}
 
+	/**
+	 * Returns the directories whose entries are all listed by this folder.
+	 * Folders that only list a subset of the entries, like the alphabetical
+	 * groups of large folders, return an empty {@link List}.
+	 *
+	 * @return The {@link List} of directories.
+	 */
+	@Nonnull
+	public List<File> getListedDirectories() {
+		if (StringUtils.isNotEmpty(forcedName) || getConf() == null) {
+			return Collections.emptyList();
+		}
+		List<File> result = new ArrayList<>();
+		for (File file : getConf().getFiles()) {
+			if (file != null && file.isDirectory()) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
 	@Override
 	public boolean allowScan() {
 		return isFolder();
@@ -0,0 +1,350 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import net.pms.image.ImageInfo;
+import net.pms.image.ImageInfoCodec;
+import net.pms.media.AV1Level;
+import net.pms.media.H262Level;
+import net.pms.media.H263Level;
+import net.pms.media.H264Level;
+import net.pms.media.H265Level;
+import net.pms.media.MPEG4VisualLevel;
+import net.pms.media.VC1Level;
+import net.pms.media.VP9Level;
+import net.pms.media.VideoLevel;
+import net.pms.util.Rational;
+
+/**
+ * Converts the metadata columns of the media database to and from their
+ * stored form.
+ * <p>
+ * Enums and {@link VideoLevel}s are stored as their names in {@code VARCHAR}
+ * columns, while {@link Rational}s, {@link ImageInfo}s and
+ * {@link DLNAThumbnail}s are stored in a compact versioned binary format in
+ * {@code VARBINARY} columns. This is both smaller and considerably faster to
+ * read than Java serialization, and doesn't break when the classes change.
+ * <p>
+ * Names that are no longer known are decoded as {@code null}, while invalid
+ * or outdated binary values throw an {@link IOException} so that the media is
+ * parsed again.
+ */
+public final class MediaColumnCodec {
+
+	/** The version of the binary formats written by this class */
+	public static final int VERSION = 1;
+
+	private static final int THUMBNAIL_BINARY = 1;
+	private static final int THUMBNAIL_SERIALIZED = 2;
+
+	private static final Map<String, Class<? extends Enum<?>>> VIDEO_LEVEL_TYPES = createVideoLevelTypes();
+
+	/**
+	 * Not to be instantiated.
+	 */
+	private MediaColumnCodec() {
+	}
+
+	/**
+	 * @param value the {@link Enum} to encode.
+	 * @return The name of {@code value} or {@code null}.
+	 */
+	@Nullable
+	public static String encodeEnum(@Nullable Enum<?> value) {
+		return value == null ? null : value.name();
+	}
+
+	/**
+	 * Decodes a value encoded with {@link #encodeEnum}.
+	 *
+	 * @param value the stored name.
+	 * @param enumClass the {@link Enum} type.
+	 * @return The {@link Enum} constant or {@code null} if {@code value} is
+	 *         {@code null} or unknown.
+	 */
+	@Nullable
+	public static <E extends Enum<E>> E decodeEnum(@Nullable String value, Class<E> enumClass) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Enum.valueOf(enumClass, value);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param level the {@link VideoLevel} to encode.
+	 * @return The encoded {@link VideoLevel} or {@code null}.
+	 */
+	@Nullable
+	public static String encodeVideoLevel(@Nullable VideoLevel level) {
+		if (!(level instanceof Enum)) {
+			return null;
+		}
+		return level.getClass().getSimpleName() + ":" + ((Enum<?>) level).name();
+	}
+
+	/**
+	 * Decodes a value encoded with {@link #encodeVideoLevel}.
+	 *
+	 * @param value the stored value.
+	 * @return The {@link VideoLevel} or {@code null} if {@code value} is
+	 *         {@code null} or unknown.
+	 */
+	@Nullable
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static VideoLevel decodeVideoLevel(@Nullable String value) {
+		if (value == null) {
+			return null;
+		}
+		int index = value.indexOf(':');
+		if (index < 0) {
+			return null;
+		}
+		Class enumClass = VIDEO_LEVEL_TYPES.get(value.substring(0, index));
+		if (enumClass == null) {
+			return null;
+		}
+		return (VideoLevel) decodeEnum(value.substring(index + 1), enumClass);
+	}
+
+	/**
+	 * @param rational the {@link Rational} to encode.
+	 * @return The encoded {@link Rational} or {@code null} if
+	 *         {@code rational} is {@code null} or too large to store.
+	 */
+	@Nullable
+	public static byte[] encodeRational(@Nullable Rational rational) {
+		if (rational == null) {
+			return null;
+		}
+		byte[] numerator;
+		byte[] denominator;
+		if (rational.isNaN()) {
+			numerator = BigInteger.ZERO.toByteArray();
+			denominator = numerator;
+		} else if (rational.isInfinite()) {
+			numerator = BigInteger.valueOf(rational.signum()).toByteArray();
+			denominator = BigInteger.ZERO.toByteArray();
+		} else {
+			numerator = rational.getNumerator().toByteArray();
+			denominator = rational.getDenominator().toByteArray();
+		}
+		if (numerator.length > 0xFF || denominator.length > 0xFF) {
+			// Not a meaningful media property
+			return null;
+		}
+		byte[] result = new byte[3 + numerator.length + denominator.length];
+		result[0] = VERSION;
+		result[1] = (byte) numerator.length;
+		System.arraycopy(numerator, 0, result, 2, numerator.length);
+		result[2 + numerator.length] = (byte) denominator.length;
+		System.arraycopy(denominator, 0, result, 3 + numerator.length, denominator.length);
+		return result;
+	}
+
+	/**
+	 * Decodes a value encoded with {@link #encodeRational}.
+	 *
+	 * @param bytes the stored value.
+	 * @return The {@link Rational} or {@code null} if {@code bytes} is
+	 *         {@code null}.
+	 * @throws IOException If {@code bytes} is invalid.
+	 */
+	@Nullable
+	public static Rational decodeRational(@Nullable byte[] bytes) throws IOException {
+		if (bytes == null) {
+			return null;
+		}
+		if (bytes.length < 3 || bytes[0] != VERSION) {
+			throw new IOException("Invalid or outdated rational value");
+		}
+		int numeratorLength = bytes[1] & 0xFF;
+		if (bytes.length < 3 + numeratorLength || bytes.length != 3 + numeratorLength + (bytes[2 + numeratorLength] & 0xFF)) {
+			throw new IOException("Invalid rational value");
+		}
+		byte[] numerator = new byte[numeratorLength];
+		System.arraycopy(bytes, 2, numerator, 0, numeratorLength);
+		byte[] denominator = new byte[bytes.length - 3 - numeratorLength];
+		System.arraycopy(bytes, 3 + numeratorLength, denominator, 0, denominator.length);
+		return Rational.valueOf(
+			numerator.length == 0 ? BigInteger.ZERO : new BigInteger(numerator),
+			denominator.length == 0 ? BigInteger.ZERO : new BigInteger(denominator)
+		);
+	}
+
+	/**
+	 * @param imageInfo the {@link ImageInfo} to encode.
+	 * @return The encoded {@link ImageInfo} or {@code null}.
+	 * @throws IOException If {@code imageInfo} can't be encoded.
+	 */
+	@Nullable
+	public static byte[] encodeImageInfo(@Nullable ImageInfo imageInfo) throws IOException {
+		if (imageInfo == null) {
+			return null;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(ImageInfoCodec.VERSION);
+			ImageInfoCodec.write(out, imageInfo);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes a value encoded with {@link #encodeImageInfo}.
+	 *
+	 * @param bytes the stored value.
+	 * @return The {@link ImageInfo} or {@code null} if {@code bytes} is
+	 *         {@code null}.
+	 * @throws IOException If {@code bytes} is invalid or outdated.
+	 */
+	@Nullable
+	public static ImageInfo decodeImageInfo(@Nullable byte[] bytes) throws IOException {
+		if (bytes == null) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			checkVersion(in.readUnsignedByte(), ImageInfoCodec.VERSION);
+			return ImageInfoCodec.read(in);
+		}
+	}
+
+	/**
+	 * Encodes a {@link DLNAThumbnail}. {@link DLNABinaryThumbnail}s with a
+	 * standard profile are stored in the binary format, other implementations
+	 * fall back to Java serialization.
+	 *
+	 * @param thumbnail the {@link DLNAThumbnail} to encode.
+	 * @return The encoded {@link DLNAThumbnail} or {@code null}.
+	 * @throws IOException If {@code thumbnail} can't be encoded.
+	 */
+	@Nullable
+	public static byte[] encodeThumbnail(@Nullable DLNAThumbnail thumbnail) throws IOException {
+		if (thumbnail == null) {
+			return null;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			DLNAImageProfile profile = thumbnail instanceof DLNABinaryThumbnail ?
+				((DLNABinaryThumbnail) thumbnail).getDLNAImageProfile() :
+				null;
+			if (
+				profile != null &&
+				profile.mimeType == null &&
+				((DLNABinaryThumbnail) thumbnail).getImageInfo() != null
+			) {
+				DLNABinaryThumbnail binaryThumbnail = (DLNABinaryThumbnail) thumbnail;
+				out.writeByte(THUMBNAIL_BINARY);
+				out.writeInt(profile.toInt());
+				out.writeInt(profile.getH());
+				out.writeInt(profile.getV());
+				out.writeByte(ImageInfoCodec.VERSION);
+				ImageInfoCodec.write(out, binaryThumbnail.getImageInfo());
+				byte[] image = binaryThumbnail.getBytes(false);
+				out.writeInt(image.length);
+				out.write(image);
+			} else {
+				out.writeByte(THUMBNAIL_SERIALIZED);
+				out.flush();
+				try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+					objectOut.writeObject(thumbnail);
+				}
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes a value encoded with {@link #encodeThumbnail}.
+	 *
+	 * @param bytes the stored value.
+	 * @return The {@link DLNAThumbnail} or {@code null} if {@code bytes} is
+	 *         {@code null}.
+	 * @throws IOException If {@code bytes} is invalid or outdated or if the
+	 *             thumbnail doesn't comply with its profile.
+	 */
+	@Nullable
+	public static DLNAThumbnail decodeThumbnail(@Nullable byte[] bytes) throws IOException {
+		if (bytes == null) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			checkVersion(in.readUnsignedByte(), VERSION);
+			int type = in.readUnsignedByte();
+			if (type == THUMBNAIL_SERIALIZED) {
+				try (ObjectInputStream objectIn = new ObjectInputStream(in)) {
+					return (DLNAThumbnail) objectIn.readObject();
+				} catch (ClassNotFoundException | ClassCastException e) {
+					throw new IOException("Invalid serialized thumbnail: " + e.getMessage(), e);
+				}
+			}
+			if (type != THUMBNAIL_BINARY) {
+				throw new IOException("Unknown thumbnail type " + type);
+			}
+			int profileInt = in.readInt();
+			int horizontal = in.readInt();
+			int vertical = in.readInt();
+			DLNAImageProfile profile = profileInt == DLNAImageProfile.JPEG_RES_H_V_INT ?
+				DLNAImageProfile.createJPEG_RES_H_V(horizontal, vertical) :
+				DLNAImageProfile.toDLNAImageProfile(profileInt);
+			if (profile == null) {
+				throw new IOException("Unknown thumbnail profile " + profileInt);
+			}
+			checkVersion(in.readUnsignedByte(), ImageInfoCodec.VERSION);
+			ImageInfo imageInfo = ImageInfoCodec.read(in);
+			byte[] image = new byte[in.readInt()];
+			in.readFully(image);
+			return new DLNABinaryThumbnail(image, imageInfo, profile, false);
+		}
+	}
+
+	private static void checkVersion(int version, int expected) throws IOException {
+		if (version != expected) {
+			throw new IOException("Unsupported format version " + version + ", expected " + expected);
+		}
+	}
+
+	private static Map<String, Class<? extends Enum<?>>> createVideoLevelTypes() {
+		Map<String, Class<? extends Enum<?>>> result = new HashMap<>();
+		result.put(AV1Level.class.getSimpleName(), AV1Level.class);
+		result.put(H262Level.class.getSimpleName(), H262Level.class);
+		result.put(H263Level.class.getSimpleName(), H263Level.class);
+		result.put(H264Level.class.getSimpleName(), H264Level.class);
+		result.put(H265Level.class.getSimpleName(), H265Level.class);
+		result.put(MPEG4VisualLevel.class.getSimpleName(), MPEG4VisualLevel.class);
+		result.put(VC1Level.class.getSimpleName(), VC1Level.class);
+		result.put(VP9Level.class.getSimpleName(), VP9Level.class);
+		return result;
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A bounded in-memory cache of {@link DLNAMediaInfo} instances read from or
+ * written to the {@link DLNAMediaDatabase}, keyed by file name and
+ * modification time.
+ * <p>
+ * Every renderer has its own resource tree, so the same file is otherwise
+ * looked up in and decoded from the database once per renderer and again
+ * after every refresh. The cache is limited by the estimated memory use of
+ * the cached instances rather than by their number, since a thumbnail can be
+ * much larger than the rest of the information. The least recently used
+ * entries are evicted first.
+ * <p>
+ * Only copies are stored and returned, so callers are free to modify the
+ * instances they pass in or get back.
+ */
+@ThreadSafe
+public class MediaInfoCache {
+
+	/** The default maximum estimated size of the cached entries in bytes */
+	public static final long DEFAULT_MAX_SIZE = 32L * 1024 * 1024;
+
+	/** The estimated size of a {@link DLNAMediaInfo} without its tracks or thumbnail */
+	private static final int BASE_SIZE = 1024;
+
+	/** The estimated size of an audio or subtitle track */
+	private static final int TRACK_SIZE = 256;
+
+	private final long maxSize;
+
+	@GuardedBy("entries")
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	@GuardedBy("entries")
+	private long size;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a new empty cache.
+	 *
+	 * @param maxSize the maximum estimated size of the cached entries in
+	 *            bytes.
+	 */
+	public MediaInfoCache(long maxSize) {
+		this.maxSize = Math.max(0, maxSize);
+	}
+
+	/**
+	 * Returns a copy of the cached {@link DLNAMediaInfo} for {@code name} if
+	 * it was cached with the same modification time. An entry with a
+	 * different modification time is removed.
+	 *
+	 * @param name the full path of the media.
+	 * @param modified the current {@code lastModified} value of the media file.
+	 * @return The {@link DLNAMediaInfo} or {@code null} if it isn't cached.
+	 */
+	@Nullable
+	public DLNAMediaInfo get(@Nonnull String name, long modified) {
+		DLNAMediaInfo media = null;
+		synchronized (entries) {
+			Entry entry = entries.get(name);
+			if (entry != null) {
+				if (entry.modified == modified) {
+					media = entry.media;
+				} else {
+					remove(name, entry);
+				}
+			}
+		}
+		if (media == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return copy(media);
+	}
+
+	/**
+	 * Checks if {@code name} is cached with the specified modification time.
+	 * This makes the entry the most recently used one, but isn't counted as a
+	 * lookup in the statistics.
+	 *
+	 * @param name the full path of the media.
+	 * @param modified the current {@code lastModified} value of the media file.
+	 * @return {@code true} if {@code name} is cached with {@code modified},
+	 *         {@code false} otherwise.
+	 */
+	public boolean contains(@Nonnull String name, long modified) {
+		synchronized (entries) {
+			Entry entry = entries.get(name);
+			return entry != null && entry.modified == modified;
+		}
+	}
+
+	/**
+	 * Stores a copy of {@code media} for {@code name}, replacing any cached
+	 * entry for the same name, and evicts the least recently used entries if
+	 * the cache is full. If {@code media} is {@code null} or larger than the
+	 * cache, the cached entry for {@code name} is only removed.
+	 *
+	 * @param name the full path of the media.
+	 * @param modified the {@code lastModified} value of the media file.
+	 * @param media the {@link DLNAMediaInfo} to cache.
+	 */
+	public void put(@Nonnull String name, long modified, @Nullable DLNAMediaInfo media) {
+		if (media == null) {
+			remove(name);
+			return;
+		}
+		long entrySize = estimateSize(media);
+		if (entrySize > maxSize) {
+			remove(name);
+			return;
+		}
+		Entry entry = new Entry(modified, copy(media), entrySize);
+		synchronized (entries) {
+			Entry previous = entries.put(name, entry);
+			if (previous != null) {
+				size -= previous.size;
+			}
+			size += entrySize;
+			if (size > maxSize) {
+				Iterator<Entry> iterator = entries.values().iterator();
+				while (size > maxSize && iterator.hasNext()) {
+					Entry eldest = iterator.next();
+					iterator.remove();
+					size -= eldest.size;
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the cached entry for {@code name}.
+	 *
+	 * @param name the full path of the media.
+	 */
+	public void remove(@Nonnull String name) {
+		synchronized (entries) {
+			Entry entry = entries.remove(name);
+			if (entry != null) {
+				size -= entry.size;
+			}
+		}
+	}
+
+	/**
+	 * Removes the cached entry for {@code name}, its split tracks and, if
+	 * {@code name} is a directory, all entries below it.
+	 *
+	 * @param name the full path of the file or directory.
+	 * @return The number of removed entries.
+	 */
+	public int discard(@Nonnull String name) {
+		String splitTrackPrefix = name + "#SplitTrack";
+		String prefix = name.endsWith(File.separator) ? name : name + File.separator;
+		int result = 0;
+		synchronized (entries) {
+			for (Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext();) {
+				Map.Entry<String, Entry> mapEntry = iterator.next();
+				String key = mapEntry.getKey();
+				if (key.equals(name) || key.startsWith(splitTrackPrefix) || key.startsWith(prefix)) {
+					iterator.remove();
+					size -= mapEntry.getValue().size;
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all cached entries. The statistics are kept.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			size = 0;
+		}
+	}
+
+	/**
+	 * @return The number of cached entries.
+	 */
+	public int getCount() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return The estimated size of the cached entries in bytes.
+	 */
+	public long getSize() {
+		synchronized (entries) {
+			return size;
+		}
+	}
+
+	/**
+	 * @return The maximum estimated size of the cached entries in bytes.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return The number of lookups that found a cached entry.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of lookups that didn't find a cached entry.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return The number of entries that have been evicted because the cache
+	 *         was full.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return The share of lookups that found a cached entry between 0 and 1,
+	 *         or 0 if there have been no lookups.
+	 */
+	public double getHitRate() {
+		long currentHits = hits.get();
+		long lookups = currentHits + misses.get();
+		return lookups == 0 ? 0 : (double) currentHits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			Locale.ROOT,
+			"%s [%d entries, %d of %d kB, %d hits, %d misses (%.1f%% hit rate), %d evictions]",
+			getClass().getSimpleName(),
+			getCount(),
+			getSize() / 1024,
+			maxSize / 1024,
+			getHits(),
+			getMisses(),
+			getHitRate() * 100,
+			getEvictions()
+		);
+	}
+
+	@GuardedBy("entries")
+	private void remove(@Nonnull String name, @Nonnull Entry entry) {
+		entries.remove(name);
+		size -= entry.size;
+	}
+
+	/**
+	 * Estimates the memory used by a {@link DLNAMediaInfo} instance.
+	 *
+	 * @param media the {@link DLNAMediaInfo}.
+	 * @return The estimated size in bytes.
+	 */
+	protected static long estimateSize(@Nonnull DLNAMediaInfo media) {
+		long result = BASE_SIZE;
+		result += (long) TRACK_SIZE * (media.getAudioTracksList().size() + media.getSubtitleTracksList().size());
+		DLNAThumbnail thumbnail = media.getThumb();
+		if (thumbnail != null) {
+			byte[] bytes = thumbnail.getBytes(false);
+			if (bytes != null) {
+				result += bytes.length;
+			}
+		}
+		return result;
+	}
+
+	@Nonnull
+	private static DLNAMediaInfo copy(@Nonnull DLNAMediaInfo media) {
+		try {
+			return media.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError("DLNAMediaInfo must be cloneable", e);
+		}
+	}
+
+	/**
+	 * An immutable cache entry.
+	 */
+	private static class Entry {
+		private final long modified;
+		private final DLNAMediaInfo media;
+		private final long size;
+
+		public Entry(long modified, @Nonnull DLNAMediaInfo media, long size) {
+			this.modified = modified;
+			this.media = media;
+			this.size = size;
+		}
+	}
+}
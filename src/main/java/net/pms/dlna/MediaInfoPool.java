@@ -0,0 +1,196 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of independent {@link MediaInfo} instances. A
+ * {@link MediaInfo} instance can only parse one file at a time, so a thread
+ * must check out an instance with {@link #acquire()} and return it with
+ * {@link #release(MediaInfo)} when it's done. This allows up to
+ * {@link #getMaxSize()} files to be parsed in parallel.
+ * <p>
+ * Instances are created lazily by the {@link Factory} and are never disposed
+ * of, since they live as long as the application. The pool also keeps
+ * statistics about the parse times.
+ */
+@ThreadSafe
+public class MediaInfoPool {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MediaInfoPool.class);
+
+	/**
+	 * Creates and configures new {@link MediaInfo} instances for a
+	 * {@link MediaInfoPool}.
+	 */
+	public interface Factory {
+
+		/**
+		 * @return A new configured {@link MediaInfo} instance.
+		 */
+		@Nonnull
+		MediaInfo createInstance();
+	}
+
+	private final Factory factory;
+	private final int maxSize;
+
+	@GuardedBy("this")
+	private final ArrayDeque<MediaInfo> idle = new ArrayDeque<>();
+
+	@GuardedBy("this")
+	private int created;
+
+	private final AtomicLong parseCount = new AtomicLong();
+	private final AtomicLong parseTime = new AtomicLong();
+	private final AtomicLong maxParseTime = new AtomicLong();
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param factory the {@link Factory} to create new instances with.
+	 * @param maxSize the maximum number of instances.
+	 * @param initial an already created instance to add to the pool or
+	 *            {@code null}.
+	 */
+	public MediaInfoPool(@Nonnull Factory factory, int maxSize, @Nullable MediaInfo initial) {
+		if (factory == null) {
+			throw new IllegalArgumentException("factory cannot be null");
+		}
+		this.factory = factory;
+		this.maxSize = Math.max(1, maxSize);
+		if (initial != null) {
+			idle.add(initial);
+			created = 1;
+		}
+	}
+
+	/**
+	 * @return The maximum number of instances in this pool.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return The number of instances created so far.
+	 */
+	public synchronized int getCreatedCount() {
+		return created;
+	}
+
+	/**
+	 * @return The number of instances currently checked out.
+	 */
+	public synchronized int getActiveCount() {
+		return created - idle.size();
+	}
+
+	/**
+	 * Checks out a {@link MediaInfo} instance, creating a new one if none is
+	 * idle and the pool isn't full, or waiting for one to be returned
+	 * otherwise. The instance must be returned with
+	 * {@link #release(MediaInfo)}.
+	 *
+	 * @return The {@link MediaInfo} instance.
+	 * @throws InterruptedException If the current thread is interrupted while
+	 *             waiting.
+	 */
+	@Nonnull
+	public MediaInfo acquire() throws InterruptedException {
+		synchronized (this) {
+			while (idle.isEmpty() && created >= maxSize) {
+				wait();
+			}
+			MediaInfo instance = idle.poll();
+			if (instance != null) {
+				return instance;
+			}
+			created++;
+		}
+		try {
+			MediaInfo instance = factory.createInstance();
+			LOGGER.trace("Created MediaInfo instance {} of {}", getCreatedCount(), maxSize);
+			return instance;
+		} catch (RuntimeException | Error e) {
+			synchronized (this) {
+				created--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a {@link MediaInfo} instance checked out with
+	 * {@link #acquire()} to the pool.
+	 *
+	 * @param instance the {@link MediaInfo} instance to return.
+	 */
+	public synchronized void release(@Nullable MediaInfo instance) {
+		if (instance != null) {
+			idle.push(instance);
+			notify();
+		}
+	}
+
+	/**
+	 * Registers the duration of a parse for the statistics.
+	 *
+	 * @param nanos the duration in nanoseconds.
+	 */
+	public void recordParseTime(long nanos) {
+		parseCount.incrementAndGet();
+		parseTime.addAndGet(nanos);
+		long max;
+		do {
+			max = maxParseTime.get();
+		} while (nanos > max && !maxParseTime.compareAndSet(max, nanos));
+	}
+
+	/**
+	 * @return The number of parses registered.
+	 */
+	public long getParseCount() {
+		return parseCount.get();
+	}
+
+	/**
+	 * @return The average parse time in milliseconds.
+	 */
+	public double getAverageParseTime() {
+		long count = parseCount.get();
+		return count == 0 ? 0 : (double) parseTime.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return The longest parse time in milliseconds.
+	 */
+	public long getMaxParseTime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxParseTime.get());
+	}
+}
@@ -51,6 +51,19 @@ public class RealFile extends MapFile {
 		useSuperThumb = false;
 	}
 
+	/**
+	 * Creates a {@link RealFile} with a known modification time, so that
+	 * the file isn't accessed.
+	 *
+	 * @param file the {@link File}.
+	 * @param lastModified the modification time of {@code file}.
+	 */
+	protected RealFile(File file, long lastModified) {
+		getConf().getFiles().add(file);
+		setLastModified(lastModified);
+		useSuperThumb = false;
+	}
+
 	@Override
 	// FIXME: this is called repeatedly for invalid files e.g. files MediaInfo can't parse
 	public boolean isValid() {
@@ -230,26 +243,13 @@ public class RealFile extends MapFile {
 
 				if (configuration.getUseCache() && getMedia().isMediaparsed() && !getMedia().isParsing()) {
 					DLNAMediaDatabase database = PMS.get().getDatabase();
-
 					if (database != null) {
-						try {
-							database.insertOrUpdateData(fileName, file.lastModified(), getFormat() == null ? null : getFormat().getType(), getMedia());
-						} catch (SQLException e) {
-							LOGGER.error(
-								"Database error while trying to add parsed information for \"{}\" to the cache: {}",
-								fileName,
-								e.getMessage());
-							if (LOGGER.isTraceEnabled()) {
-								LOGGER.trace("SQL error code: {}", e.getErrorCode());
-								if (
-									e.getCause() instanceof SQLException &&
-									((SQLException) e.getCause()).getErrorCode() != e.getErrorCode()
-								) {
-									LOGGER.trace("Cause SQL error code: {}", ((SQLException) e.getCause()).getErrorCode());
-								}
-								LOGGER.trace("", e);
-							}
-						}
+						database.getWriteQueue().add(
+							fileName,
+							file.lastModified(),
+							getFormat() == null ? null : getFormat().getType(),
+							getMedia()
+						);
 					}
 				}
 			}
@@ -44,6 +44,7 @@ import net.pms.Messages;
 import net.pms.PMS;
 import net.pms.configuration.MapFileConfiguration;
 import net.pms.configuration.RendererConfiguration;
+import net.pms.database.TableManager;
 import net.pms.dlna.virtual.VirtualFolder;
 import net.pms.dlna.virtual.VirtualVideoAction;
 import net.pms.formats.FormatType;
@@ -58,6 +59,7 @@ import net.pms.platform.macos.NSFoundation.NSSearchPathDomainMask;
 import net.pms.platform.windows.CSIDL;
 import net.pms.platform.windows.GUID;
 import net.pms.platform.windows.KnownFolders;
+import net.pms.service.Services;
 import net.pms.util.CodeDb;
 import net.pms.util.FilePermissions;
 import net.pms.util.FilePermissions.FileFlag;
@@ -84,11 +86,13 @@ public class RootFolder extends DLNAResource {
 			FileFlag.READ
 		})
 	);
-	private boolean running;
+	private volatile boolean running;
+	private volatile LibraryScanner scanner;
 	private FolderLimit lim;
 	private MediaMonitor mon;
 	private Playlist last;
 	private ArrayList<DLNAResource> webFolders;
+	private LibrarySearchFolder librarySearchFolder;
 
 	public RootFolder() {
 		setIndexId(0);
@@ -205,6 +209,23 @@ public class RootFolder extends DLNAResource {
 		setDiscovered(true);
 	}
 
+	/**
+	 * Gets the hidden {@link LibrarySearchFolder} used to answer UPnP
+	 * {@code Search} actions from the media database. It isn't listed as a
+	 * child, but is registered so that the search results can be referenced.
+	 *
+	 * @return The {@link LibrarySearchFolder} for this root.
+	 */
+	public synchronized LibrarySearchFolder getLibrarySearchFolder() {
+		if (librarySearchFolder == null) {
+			librarySearchFolder = new LibrarySearchFolder();
+			librarySearchFolder.setParent(this);
+			librarySearchFolder.setDefaultRenderer(getDefaultRenderer());
+			PMS.getGlobalRepo().add(librarySearchFolder);
+		}
+		return librarySearchFolder;
+	}
+
 	public void setFolderLim(DLNAResource r) {
 		if (lim != null) {
 			lim.setStart(r);
@@ -226,13 +247,42 @@ public class RootFolder extends DLNAResource {
 
 			setDefaultRenderer(RendererConfiguration.getDefaultConf());
 			LOGGER.debug("Starting scan of: {}", this.getName());
-			scan(this);
+			TableManager tableManager = Services.tableManager();
+			LibraryScanner libraryScanner = new LibraryScanner(
+				configuration.getLibraryScanThreads(),
+				configuration.getLibraryScanThreadsPerVolume(),
+				PMS.get().getDatabase(),
+				tableManager == null ? null : tableManager.getTableDirectoryFingerprints()
+			) {
+
+				@Override
+				protected void onScanFolder(DLNAResource folder) {
+					// Display and log which folder is being scanned
+					if (folder instanceof RealFile) {
+						String folderName = folder.getName();
+						LOGGER.debug("Scanning folder: " + folderName);
+						frame.setStatusLine(Messages.getString("DLNAMediaDatabase.4") + " " + folderName);
+					}
+				}
+			};
+			scanner = libraryScanner;
+			if (!running) {
+				// Stopped before the scanner was created
+				libraryScanner.stop();
+			}
+			libraryScanner.scan(this);
 
 			// Running might have been set false during scan
 			if (running) {
-				PMS.get().getDatabase().cleanup();
+				Set<String> changedDirectories = libraryScanner.getChangedDirectories();
+				if (changedDirectories == null) {
+					PMS.get().getDatabase().cleanup();
+				} else {
+					PMS.get().getDatabase().cleanup(changedDirectories);
+				}
 			}
 		} finally {
+			scanner = null;
 			frame.setScanLibraryEnabled(true);
 			frame.setStatusLine(null);
 		}
@@ -248,47 +298,23 @@ public class RootFolder extends DLNAResource {
 
 	public void stopScan() {
 		running = false;
+		LibraryScanner libraryScanner = scanner;
+		if (libraryScanner != null) {
+			libraryScanner.stop();
+		}
+		DLNAMediaDatabase database = PMS.get().getDatabase();
+		if (database != null) {
+			database.stopCleanup();
+		}
 	}
 
-	private void scan(DLNAResource resource) {
-		if (running) {
-			for (DLNAResource child : resource.getChildren()) {
-				if (running && child.allowScan()) {
-					child.setDefaultRenderer(resource.getDefaultRenderer());
-
-					// Display and log which folder is being scanned
-					String childName = child.getName();
-					if (child instanceof RealFile) {
-						LOGGER.debug("Scanning folder: " + childName);
-						frame.setStatusLine(Messages.getString("DLNAMediaDatabase.4") + " " + childName);
-					}
-
-					if (child.isDiscovered()) {
-						child.refreshChildren();
-					} else {
-						if (child instanceof DVDISOFile || child instanceof DVDISOTitle) { // ugly hack
-							child.syncResolve();
-						}
-						child.discoverChildren();
-						child.analyzeChildren(-1);
-						child.setDiscovered(true);
-					}
-
-					int count = child.getChildren().size();
-
-					if (count == 0) {
-						continue;
-					}
-
-					scan(child);
-					child.getChildren().clear();
-				} else if (!running){
-					break;
-				}
-			}
-		} else {
-			frame.setScanLibraryEnabled(true);
-		}
+	/**
+	 * @return The {@link LibraryScanner} of the scan in progress or
+	 *         {@code null}.
+	 */
+	@Nullable
+	public LibraryScanner getLibraryScanner() {
+		return scanner;
 	}
 
 	@Nullable
@@ -0,0 +1,675 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static net.pms.database.Tables.sqlLikeEscape;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.apache.commons.text.StringEscapeUtils;
+import net.pms.formats.FormatType;
+
+/**
+ * A parsed UPnP ContentDirectory {@code SearchCriteria} string, which can be
+ * evaluated by the media database using the {@code SEARCHTERMS} index.
+ * <p>
+ * The supported properties are {@code dc:title}, {@code upnp:artist} (and
+ * {@code dc:creator}), {@code upnp:album}, {@code upnp:genre} and
+ * {@code upnp:class}, combined with {@code and}, {@code or} and parentheses.
+ * Text is matched by words: {@code contains} matches items where every word
+ * of the value is the beginning of a word in the property, {@code =} requires
+ * whole words. {@code upnp:class} is matched by media type.
+ */
+@Immutable
+public final class SearchCriteria {
+
+	/** The maximum length of an indexed term */
+	public static final int MAX_TERM_LENGTH = 64;
+
+	/** The number of files above which a term is considered frequent */
+	private static final int ESTIMATE_LIMIT = 1000;
+
+	private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern WORD_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	/**
+	 * The indexed properties.
+	 */
+	public static enum Field {
+
+		/** The file name, the title and the song names */
+		TITLE(0),
+
+		/** The artists */
+		ARTIST(1),
+
+		/** The albums */
+		ALBUM(2),
+
+		/** The genres */
+		GENRE(3);
+
+		private final int value;
+
+		private Field(int value) {
+			this.value = value;
+		}
+
+		/**
+		 * @return The value stored in the database.
+		 */
+		public int getValue() {
+			return value;
+		}
+	}
+
+	@Nullable
+	private final Node root;
+
+	private SearchCriteria(@Nullable Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Parses a {@code SearchCriteria} string. XML entities are decoded first,
+	 * since the string is usually taken directly from the SOAP request.
+	 *
+	 * @param criteria the {@code SearchCriteria} string.
+	 * @return The parsed {@link SearchCriteria}.
+	 * @throws ParseException If {@code criteria} is invalid or uses
+	 *             unsupported properties or operators.
+	 */
+	@Nonnull
+	public static SearchCriteria parse(@Nullable String criteria) throws ParseException {
+		if (criteria == null) {
+			throw new ParseException("Search criteria is null", 0);
+		}
+		criteria = StringEscapeUtils.unescapeXml(criteria).trim();
+		if (criteria.isEmpty() || "*".equals(criteria)) {
+			return new SearchCriteria(null);
+		}
+		Parser parser = new Parser(criteria);
+		Node root = parser.parseOr();
+		if (parser.peek() != null) {
+			throw new ParseException("Unexpected \"" + parser.peek() + "\" in search criteria", parser.position);
+		}
+		return new SearchCriteria(root);
+	}
+
+	/**
+	 * @return {@code true} if these criteria match all items, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isMatchAll() {
+		return root == null;
+	}
+
+	/**
+	 * Creates an SQL condition for these criteria on the {@code FILES} table
+	 * aliased as {@code F}.
+	 * <p>
+	 * Only one term is looked up with {@code IN}, since H2 materializes the
+	 * whole subquery result for every {@code IN} condition it doesn't use as
+	 * the index condition. The number of files having each term is estimated
+	 * first, and the rarest term of each conjunction drives the query while
+	 * the other terms are checked per file with {@code EXISTS}.
+	 *
+	 * @param connection the {@link Connection} used to estimate how many
+	 *            files have each term.
+	 * @param parameters the {@link List} to add the statement parameters to.
+	 * @return The SQL condition.
+	 * @throws SQLException If an SQL error occurs during the estimation.
+	 */
+	@Nonnull
+	public String toSql(@Nonnull Connection connection, @Nonnull List<Object> parameters) throws SQLException {
+		if (root == null) {
+			return "TRUE";
+		}
+		try (PreparedStatement statement = connection.prepareStatement(
+			"SELECT FILEID FROM SEARCHTERMS WHERE FIELD = ? AND TERM LIKE ? LIMIT " + ESTIMATE_LIMIT
+		)) {
+			Context context = new Context(statement, parameters);
+			root.appendSql(context, true);
+			return context.sb.toString();
+		}
+	}
+
+	/**
+	 * Splits a text into the lower case words used as search terms. Accents
+	 * are removed, so that searches don't have to match them.
+	 *
+	 * @param text the text to split.
+	 * @return The distinct terms in {@code text}.
+	 */
+	@Nonnull
+	public static Set<String> tokenize(@Nullable String text) {
+		if (text == null || text.isEmpty()) {
+			return Collections.emptySet();
+		}
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+		normalized = COMBINING_MARKS.matcher(normalized).replaceAll("").toLowerCase(Locale.ROOT);
+		LinkedHashSet<String> result = new LinkedHashSet<>();
+		for (String term : WORD_SEPARATORS.split(normalized)) {
+			if (!term.isEmpty()) {
+				result.add(term.length() > MAX_TERM_LENGTH ? term.substring(0, MAX_TERM_LENGTH) : term);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchCriteria [" + (root == null ? "*" : root.toString()) + "]";
+	}
+
+	/**
+	 * Holds the SQL being built and the estimated number of files for each
+	 * term.
+	 */
+	private static class Context {
+		private final StringBuilder sb = new StringBuilder();
+		private final HashMap<String, Integer> estimates = new HashMap<>();
+		private final PreparedStatement estimateStatement;
+		private final List<Object> parameters;
+
+		public Context(PreparedStatement estimateStatement, List<Object> parameters) {
+			this.estimateStatement = estimateStatement;
+			this.parameters = parameters;
+		}
+
+		/**
+		 * Estimates the number of files having a term, up to
+		 * {@code ESTIMATE_LIMIT}.
+		 */
+		public int estimate(Field field, String term, boolean prefix) throws SQLException {
+			String pattern = prefix ? sqlLikeEscape(term) + "%" : sqlLikeEscape(term);
+			String key = field.getValue() + ":" + pattern;
+			Integer result = estimates.get(key);
+			if (result == null) {
+				estimateStatement.setInt(1, field.getValue());
+				estimateStatement.setString(2, pattern);
+				result = 0;
+				try (ResultSet resultSet = estimateStatement.executeQuery()) {
+					while (resultSet.next()) {
+						result++;
+					}
+				}
+				estimates.put(key, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A node in the expression tree.
+	 */
+	private interface Node {
+
+		/**
+		 * @return The estimated number of matching files or
+		 *         {@link Integer#MAX_VALUE} if this node can't drive the
+		 *         query.
+		 */
+		int estimate(Context context) throws SQLException;
+
+		/**
+		 * Appends the SQL condition for this node.
+		 *
+		 * @param driver whether this node may use {@code IN} to drive the
+		 *            query.
+		 */
+		void appendSql(Context context, boolean driver) throws SQLException;
+	}
+
+	@Immutable
+	private static class Constant implements Node {
+		private final boolean value;
+
+		public Constant(boolean value) {
+			this.value = value;
+		}
+
+		@Override
+		public int estimate(Context context) {
+			return value ? Integer.MAX_VALUE : 0;
+		}
+
+		@Override
+		public void appendSql(Context context, boolean driver) {
+			context.sb.append(value ? "TRUE" : "FALSE");
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(value);
+		}
+	}
+
+	@Immutable
+	private static class Not implements Node {
+		private final Node node;
+
+		public Not(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		public int estimate(Context context) {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public void appendSql(Context context, boolean driver) throws SQLException {
+			context.sb.append("NOT (");
+			node.appendSql(context, false);
+			context.sb.append(')');
+		}
+
+		@Override
+		public String toString() {
+			return "not (" + node + ")";
+		}
+	}
+
+	@Immutable
+	private static class Logical implements Node {
+		private final Node left;
+		private final Node right;
+		private final boolean and;
+
+		public Logical(Node left, Node right, boolean and) {
+			this.left = left;
+			this.right = right;
+			this.and = and;
+		}
+
+		@Override
+		public int estimate(Context context) throws SQLException {
+			int leftEstimate = left.estimate(context);
+			int rightEstimate = right.estimate(context);
+			if (and) {
+				return Math.min(leftEstimate, rightEstimate);
+			}
+			return (int) Math.min((long) leftEstimate + rightEstimate, Integer.MAX_VALUE);
+		}
+
+		@Override
+		public void appendSql(Context context, boolean driver) throws SQLException {
+			// Only the most selective side of a conjunction drives the query
+			boolean leftDriver = driver;
+			boolean rightDriver = driver;
+			if (and && driver) {
+				leftDriver = left.estimate(context) <= right.estimate(context);
+				rightDriver = !leftDriver;
+			}
+			context.sb.append('(');
+			left.appendSql(context, leftDriver);
+			context.sb.append(and ? " AND " : " OR ");
+			right.appendSql(context, rightDriver);
+			context.sb.append(')');
+		}
+
+		@Override
+		public String toString() {
+			return "(" + left + (and ? " and " : " or ") + right + ")";
+		}
+	}
+
+	/**
+	 * Matches items that have all the terms in a field.
+	 */
+	@Immutable
+	private static class Terms implements Node {
+		private final Field field;
+		private final List<String> terms;
+		private final boolean prefix;
+
+		public Terms(Field field, Set<String> terms, boolean prefix) {
+			this.field = field;
+			this.terms = new ArrayList<>(terms);
+			this.prefix = prefix;
+		}
+
+		@Override
+		public int estimate(Context context) throws SQLException {
+			int result = Integer.MAX_VALUE;
+			for (String term : terms) {
+				result = Math.min(result, context.estimate(field, term, prefix));
+			}
+			return result;
+		}
+
+		@Override
+		public void appendSql(Context context, boolean driver) throws SQLException {
+			if (terms.isEmpty()) {
+				context.sb.append("TRUE");
+				return;
+			}
+			int driverIndex = -1;
+			if (driver) {
+				// Prefer the longer term when both are frequent, it's usually more specific
+				int lowest = Integer.MAX_VALUE;
+				for (int i = 0; i < terms.size(); i++) {
+					int estimate = context.estimate(field, terms.get(i), prefix);
+					if (
+						driverIndex < 0 ||
+						estimate < lowest ||
+						estimate == lowest && terms.get(i).length() > terms.get(driverIndex).length()
+					) {
+						driverIndex = i;
+						lowest = estimate;
+					}
+				}
+			}
+			for (int i = 0; i < terms.size(); i++) {
+				if (i > 0) {
+					context.sb.append(" AND ");
+				}
+				if (i == driverIndex) {
+					context.sb.append("F.ID IN (SELECT FILEID FROM SEARCHTERMS WHERE FIELD = ? AND TERM ");
+				} else {
+					context.sb.append("EXISTS (SELECT 1 FROM SEARCHTERMS S WHERE S.FILEID = F.ID AND S.FIELD = ? AND S.TERM ");
+				}
+				context.sb.append(prefix ? "LIKE ?)" : "= ?)");
+				context.parameters.add(field.getValue());
+				context.parameters.add(prefix ? sqlLikeEscape(terms.get(i)) + "%" : terms.get(i));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return field + (prefix ? " starts with " : " = ") + terms;
+		}
+	}
+
+	/**
+	 * Matches items that have any term in a field.
+	 */
+	@Immutable
+	private static class FieldExists implements Node {
+		private final Field field;
+
+		public FieldExists(Field field) {
+			this.field = field;
+		}
+
+		@Override
+		public int estimate(Context context) {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public void appendSql(Context context, boolean driver) {
+			context.sb.append("EXISTS (SELECT 1 FROM SEARCHTERMS S WHERE S.FILEID = F.ID AND S.FIELD = ?)");
+			context.parameters.add(field.getValue());
+		}
+
+		@Override
+		public String toString() {
+			return field + " exists";
+		}
+	}
+
+	/**
+	 * Matches items of a media type.
+	 */
+	@Immutable
+	private static class Type implements Node {
+		private final FormatType type;
+
+		public Type(FormatType type) {
+			this.type = type;
+		}
+
+		@Override
+		public int estimate(Context context) {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public void appendSql(Context context, boolean driver) {
+			context.sb.append("F.TYPE = ?");
+			context.parameters.add(type.getValue());
+		}
+
+		@Override
+		public String toString() {
+			return "type = " + type;
+		}
+	}
+
+	/**
+	 * A recursive descent parser for the {@code SearchCriteria} grammar.
+	 */
+	private static class Parser {
+		private final String criteria;
+		private int position;
+		private String next;
+		private boolean quoted;
+
+		public Parser(String criteria) throws ParseException {
+			this.criteria = criteria;
+			advance();
+		}
+
+		public String peek() {
+			return next;
+		}
+
+		public Node parseOr() throws ParseException {
+			Node result = parseAnd();
+			while (!quoted && "or".equalsIgnoreCase(next)) {
+				advance();
+				result = new Logical(result, parseAnd(), false);
+			}
+			return result;
+		}
+
+		private Node parseAnd() throws ParseException {
+			Node result = parsePrimary();
+			while (!quoted && "and".equalsIgnoreCase(next)) {
+				advance();
+				result = new Logical(result, parsePrimary(), true);
+			}
+			return result;
+		}
+
+		private Node parsePrimary() throws ParseException {
+			if (next == null) {
+				throw new ParseException("Unexpected end of search criteria", position);
+			}
+			if (!quoted && "(".equals(next)) {
+				advance();
+				Node result = parseOr();
+				if (quoted || !")".equals(next)) {
+					throw new ParseException("Missing \")\" in search criteria", position);
+				}
+				advance();
+				return result;
+			}
+			String property = expectWord();
+			String operator = expectWord().toLowerCase(Locale.ROOT);
+			if (next == null) {
+				throw new ParseException("Missing value for \"" + property + "\" in search criteria", position);
+			}
+			String value = next;
+			advance();
+			return createRelation(property.toLowerCase(Locale.ROOT), operator, value);
+		}
+
+		private String expectWord() throws ParseException {
+			if (next == null || quoted || "(".equals(next) || ")".equals(next)) {
+				throw new ParseException("Invalid search criteria", position);
+			}
+			String result = next;
+			advance();
+			return result;
+		}
+
+		private Node createRelation(String property, String operator, String value) throws ParseException {
+			if ("exists".equals(operator)) {
+				boolean exists = Boolean.parseBoolean(value);
+				switch (property) {
+					case "@refid":
+						// Items are never references
+						return new Constant(!exists);
+					case "dc:title":
+					case "upnp:class":
+						return new Constant(exists);
+					default:
+						Field field = getField(property);
+						return exists ? new FieldExists(field) : new Not(new FieldExists(field));
+				}
+			}
+			if ("upnp:class".equals(property)) {
+				switch (operator) {
+					case "derivedfrom":
+						return createClassRelation(value, true);
+					case "=":
+						return createClassRelation(value, false);
+					case "!=":
+						return new Not(createClassRelation(value, false));
+					default:
+						throw new ParseException("Unsupported operator \"" + operator + "\" for upnp:class", position);
+				}
+			}
+			Field field = getField(property);
+			switch (operator) {
+				case "contains":
+				case "startswith":
+					return new Terms(field, tokenize(value), true);
+				case "doesnotcontain":
+					return new Not(new Terms(field, tokenize(value), true));
+				case "=":
+					return new Terms(field, tokenize(value), false);
+				case "!=":
+					return new Not(new Terms(field, tokenize(value), false));
+				default:
+					throw new ParseException("Unsupported operator \"" + operator + "\" for " + property, position);
+			}
+		}
+
+		private Field getField(String property) throws ParseException {
+			switch (property) {
+				case "dc:title":
+					return Field.TITLE;
+				case "upnp:artist":
+				case "dc:creator":
+					return Field.ARTIST;
+				case "upnp:album":
+					return Field.ALBUM;
+				case "upnp:genre":
+					return Field.GENRE;
+				default:
+					throw new ParseException("Unsupported property \"" + property + "\" in search criteria", position);
+			}
+		}
+
+		private static Node createClassRelation(String value, boolean derived) {
+			String upnpClass = value.toLowerCase(Locale.ROOT);
+			if ("object".equals(upnpClass) || "object.item".equals(upnpClass)) {
+				// Only items are indexed
+				return new Constant(derived);
+			}
+			if (upnpClass.startsWith("object.item.audioitem")) {
+				return new Type(FormatType.AUDIO);
+			}
+			if (upnpClass.startsWith("object.item.videoitem")) {
+				return new Type(FormatType.VIDEO);
+			}
+			if (upnpClass.startsWith("object.item.imageitem")) {
+				return new Type(FormatType.IMAGE);
+			}
+			return new Constant(false);
+		}
+
+		/**
+		 * Reads the next token: a parenthesis, a quoted string, an operator
+		 * or a word.
+		 */
+		private void advance() throws ParseException {
+			int length = criteria.length();
+			while (position < length && Character.isWhitespace(criteria.charAt(position))) {
+				position++;
+			}
+			quoted = false;
+			if (position == length) {
+				next = null;
+				return;
+			}
+			char c = criteria.charAt(position);
+			if (c == '(' || c == ')') {
+				next = String.valueOf(c);
+				position++;
+			} else if (c == '"') {
+				StringBuilder sb = new StringBuilder();
+				position++;
+				while (true) {
+					if (position == length) {
+						throw new ParseException("Unterminated string in search criteria", position);
+					}
+					c = criteria.charAt(position++);
+					if (c == '"') {
+						break;
+					}
+					if (c == '\\' && position < length) {
+						c = criteria.charAt(position++);
+					}
+					sb.append(c);
+				}
+				next = sb.toString();
+				quoted = true;
+			} else if (isOperator(c)) {
+				int start = position;
+				while (position < length && isOperator(criteria.charAt(position))) {
+					position++;
+				}
+				next = criteria.substring(start, position);
+			} else {
+				int start = position;
+				while (position < length) {
+					c = criteria.charAt(position);
+					if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '"' || isOperator(c)) {
+						break;
+					}
+					position++;
+				}
+				next = criteria.substring(start, position);
+			}
+		}
+
+		private static boolean isOperator(char c) {
+			return c == '=' || c == '!' || c == '<' || c == '>';
+		}
+	}
+}
@@ -57,10 +57,11 @@ public class MediaLibrary extends VirtualFolder {
 		MediaLibraryFolder mlfAudioDate = new MediaLibraryFolder(
 			Messages.getString("PMS.12"), new String[]{
 
-			"SELECT FORMATDATETIME(MODIFIED, 'MMM yyyy') FROM " +
+			"SELECT FORMATDATETIME(F.MODIFIED, 'MMM yyyy') FROM " +
 				"FILES F, AUDIOTRACKS A " +
 				"WHERE F.ID = A.FILEID AND F.TYPE = 1 " +
-				"ORDER BY F.MODIFIED DESC",
+				"GROUP BY FORMATDATETIME(F.MODIFIED, 'MMM yyyy') " +
+				"ORDER BY MAX(F.MODIFIED) DESC",
 
 			"SELECT FILENAME, MODIFIED FROM " +
 				"FILES F, AUDIOTRACKS A " +
@@ -70,7 +71,7 @@ public class MediaLibrary extends VirtualFolder {
 				new int[]{MediaLibraryFolder.TEXTS, MediaLibraryFolder.FILES}
 		);
 		vfAudio.addChild(mlfAudioDate);
-		MediaLibraryFolder mlf10 = new MediaLibraryFolder(Messages.getString("MediaLibrary.99"), new String[]{"SELECT A.YEAR FROM FILES F, AUDIOTRACKS A WHERE F.ID = A.FILEID AND F.TYPE = 1 ORDER BY A.YEAR ASC", "SELECT FILENAME, MODIFIED from FILES F, AUDIOTRACKS A WHERE F.ID = A.FILEID AND F.TYPE = 1 AND A.YEAR = ${0} ORDER BY F.FILENAME ASC"}, new int[]{MediaLibraryFolder.TEXTS, MediaLibraryFolder.FILES});
+		MediaLibraryFolder mlf10 = new MediaLibraryFolder(Messages.getString("MediaLibrary.99"), new String[]{"SELECT DISTINCT A.YEAR FROM FILES F, AUDIOTRACKS A WHERE F.ID = A.FILEID AND F.TYPE = 1 ORDER BY A.YEAR ASC", "SELECT FILENAME, MODIFIED from FILES F, AUDIOTRACKS A WHERE F.ID = A.FILEID AND F.TYPE = 1 AND A.YEAR = ${0} ORDER BY F.FILENAME ASC"}, new int[]{MediaLibraryFolder.TEXTS, MediaLibraryFolder.FILES});
 		vfAudio.addChild(mlf10);
 
 		MediaLibraryFolder mlf8 = new MediaLibraryFolder(Messages.getString("PMS.28"), new String[]{
@@ -84,14 +85,14 @@ public class MediaLibrary extends VirtualFolder {
 		VirtualFolder vfImage = new VirtualFolder(Messages.getString("PMS.31"), null);
 		MediaLibraryFolder mlfPhoto01 = new MediaLibraryFolder(Messages.getString("PMS.32"), "TYPE = 2 ORDER BY FILENAME ASC", MediaLibraryFolder.FILES);
 		vfImage.addChild(mlfPhoto01);
-		MediaLibraryFolder mlfPhoto02 = new MediaLibraryFolder(Messages.getString("PMS.12"), new String[]{"SELECT FORMATDATETIME(MODIFIED, 'd MMM yyyy') FROM FILES WHERE TYPE = 2 ORDER BY MODIFIED DESC", "TYPE = 2 AND FORMATDATETIME(MODIFIED, 'd MMM yyyy') = '${0}' ORDER BY FILENAME ASC"}, new int[]{MediaLibraryFolder.TEXTS, MediaLibraryFolder.FILES});
+		MediaLibraryFolder mlfPhoto02 = new MediaLibraryFolder(Messages.getString("PMS.12"), new String[]{"SELECT FORMATDATETIME(MODIFIED, 'd MMM yyyy') FROM FILES WHERE TYPE = 2 GROUP BY FORMATDATETIME(MODIFIED, 'd MMM yyyy') ORDER BY MAX(MODIFIED) DESC", "TYPE = 2 AND FORMATDATETIME(MODIFIED, 'd MMM yyyy') = '${0}' ORDER BY FILENAME ASC"}, new int[]{MediaLibraryFolder.TEXTS, MediaLibraryFolder.FILES});
 		vfImage.addChild(mlfPhoto02);
 		addChild(vfImage);
 
 		VirtualFolder vfVideo = new VirtualFolder(Messages.getString("PMS.34"), null);
 		MediaLibraryFolder mlfVideo01 = new MediaLibraryFolder(Messages.getString("PMS.35"), "TYPE = 4 ORDER BY FILENAME ASC", MediaLibraryFolder.FILES);
 		vfVideo.addChild(mlfVideo01);
-		MediaLibraryFolder mlfVideo02 = new MediaLibraryFolder(Messages.getString("PMS.12"), new String[]{"SELECT FORMATDATETIME(MODIFIED, 'd MMM yyyy') FROM FILES WHERE TYPE = 4 ORDER BY MODIFIED DESC", "TYPE = 4 AND FORMATDATETIME(MODIFIED, 'd MMM yyyy') = '${0}' ORDER BY FILENAME ASC"}, new int[]{MediaLibraryFolder.TEXTS, MediaLibraryFolder.FILES});
+		MediaLibraryFolder mlfVideo02 = new MediaLibraryFolder(Messages.getString("PMS.12"), new String[]{"SELECT FORMATDATETIME(MODIFIED, 'd MMM yyyy') FROM FILES WHERE TYPE = 4 GROUP BY FORMATDATETIME(MODIFIED, 'd MMM yyyy') ORDER BY MAX(MODIFIED) DESC", "TYPE = 4 AND FORMATDATETIME(MODIFIED, 'd MMM yyyy') = '${0}' ORDER BY FILENAME ASC"}, new int[]{MediaLibraryFolder.TEXTS, MediaLibraryFolder.FILES});
 		vfVideo.addChild(mlfVideo02);
 		MediaLibraryFolder mlfVideo03 = new MediaLibraryFolder(Messages.getString("PMS.36"), "TYPE = 4 AND (WIDTH >= 1200 OR HEIGHT >= 700) ORDER BY FILENAME ASC", MediaLibraryFolder.FILES);
 		vfVideo.addChild(mlfVideo03);
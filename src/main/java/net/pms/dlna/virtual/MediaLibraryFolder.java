@@ -1,9 +1,17 @@
 package net.pms.dlna.virtual;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import net.pms.PMS;
+import net.pms.configuration.RendererConfiguration;
 import net.pms.dlna.*;
+import net.pms.dlna.DLNAMediaDatabase.LibraryPage;
 import net.pms.util.UMSUtils;
 
 public class MediaLibraryFolder extends VirtualFolder {
@@ -15,6 +23,20 @@ public class MediaLibraryFolder extends VirtualFolder {
 	private int expectedOutputs[];
 	private DLNAMediaDatabase database;
 
+	/** The database change count when the children were last queried */
+	private volatile long changeCount = -1;
+
+	/** The number of rows returned by the query when paging */
+	private volatile int totalMatches;
+
+	/** The start of the current page of children or {@code -1} */
+	@GuardedBy("this")
+	private int pageStart = -1;
+
+	/** The requested size of the current page of children */
+	@GuardedBy("this")
+	private int pageCount;
+
 	public MediaLibraryFolder(String name, String sql, int expectedOutput) {
 		this(name, new String[]{sql}, new int[]{expectedOutput});
 	}
@@ -26,35 +48,118 @@ public class MediaLibraryFolder extends VirtualFolder {
 		this.database = PMS.get().getDatabase();
 	}
 
+	/**
+	 * Files, playlists and ISOs are paged by the query unless they have to be
+	 * sorted in memory.
+	 *
+	 * @return {@code true} if the children are queried one page at a time,
+	 *         {@code false} otherwise.
+	 */
+	private boolean isPaged() {
+		return
+			sqls.length > 0 &&
+			sqls[0] != null &&
+			expectedOutputs[0] != TEXTS &&
+			PMS.getConfiguration().mediaLibrarySort() == UMSUtils.SORT_NO_SORT;
+	}
+
+	/**
+	 * Replaces the children with the specified page of query results.
+	 *
+	 * @return {@code true} if the page was read, {@code false} otherwise.
+	 */
+	private synchronized boolean loadPage(int start, int count) {
+		long newChangeCount = database.getChangeCount();
+		LibraryPage page = database.getFiles(transformSQL(sqls[0]), start, count);
+		if (page == null) {
+			return false;
+		}
+
+		// The items of the previous page only keep their summaries
+		for (DLNAResource child : getChildren()) {
+			if (child instanceof LibraryItem) {
+				((LibraryItem) child).release();
+			}
+		}
+		getChildren().clear();
+		int expectedOutput = expectedOutputs[0];
+		for (File f : page.getFiles()) {
+			if (expectedOutput == FILES) {
+				addFile(f, page.getSummary(f));
+			} else if (expectedOutput == PLAYLISTS) {
+				addChild(new PlaylistFolder(f));
+			} else if (expectedOutput == ISOS) {
+				addChild(new DVDISOFile(f));
+			}
+		}
+		if (changeCount != -1 && changeCount != newChangeCount) {
+			setUpdateId(this.getIntId());
+		}
+		pageStart = start;
+		pageCount = count;
+		totalMatches = page.getTotalMatches();
+		changeCount = newChangeCount;
+		return true;
+	}
+
+	/**
+	 * Queries only the requested rows, so that browsing a large library
+	 * doesn't create a resource for every file in it. The current page is
+	 * reused as long as the same page is requested and the database hasn't
+	 * changed.
+	 */
+	@Override
+	protected synchronized List<DLNAResource> getChildrenPage(int start, int count, RendererConfiguration renderer) {
+		if (!isPaged()) {
+			return null;
+		}
+		if (
+			start != pageStart ||
+			count != pageCount ||
+			isRefreshNeeded() ||
+			!isDiscovered()
+		) {
+			if (!loadPage(start, count)) {
+				return null;
+			}
+			setDiscovered(true);
+		}
+		return new ArrayList<>(getChildren());
+	}
+
+	@Override
+	public synchronized int childrenNumber() {
+		if (pageStart >= 0) {
+			return totalMatches;
+		}
+		return super.childrenNumber();
+	}
+
 	@Override
 	public void discoverChildren() {
+		if (isPaged() && loadPage(0, 0)) {
+			return;
+		}
+		changeCount = database.getChangeCount();
 		if (sqls.length > 0) {
 			String sql = sqls[0];
 			int expectedOutput = expectedOutputs[0];
 			if (sql != null) {
 				sql = transformSQL(sql);
-				if (expectedOutput == FILES) {
-					ArrayList<File> list = database.getFiles(sql);
-					if (list != null) {
-						UMSUtils.sort(list, PMS.getConfiguration().mediaLibrarySort());
-						for (File f : list) {
-							addChild(new RealFile(f));
-						}
-					}
-				} else if (expectedOutput == PLAYLISTS) {
-					ArrayList<File> list = database.getFiles(sql);
-					if (list != null) {
-						UMSUtils.sort(list, PMS.getConfiguration().mediaLibrarySort());
-						for (File f : list) {
-							addChild(new PlaylistFolder(f));
-						}
-					}
-				} else if (expectedOutput == ISOS) {
-					ArrayList<File> list = database.getFiles(sql);
-					if (list != null) {
+				if (expectedOutput == FILES || expectedOutput == PLAYLISTS || expectedOutput == ISOS) {
+					// Sorted in memory, but read with the summaries like a page
+					LibraryPage page = database.getFiles(sql, 0, 0);
+					if (page != null) {
+						List<File> list = new ArrayList<>(page.getFiles());
 						UMSUtils.sort(list, PMS.getConfiguration().mediaLibrarySort());
 						for (File f : list) {
-							addChild(new DVDISOFile(f));
+							if (expectedOutput == FILES) {
+								addFile(f, page.getSummary(f));
+							} else if (expectedOutput == PLAYLISTS) {
+								addChild(new PlaylistFolder(f));
+							} else {
+								addChild(new DVDISOFile(f));
+							}
 						}
 					}
 				} else if (expectedOutput == TEXTS) {
@@ -73,6 +178,22 @@ public class MediaLibraryFolder extends VirtualFolder {
 		}
 	}
 
+	/**
+	 * Adds a file as a {@link LibraryItem} if its summary was read and as a
+	 * {@link RealFile} otherwise. The {@link LibraryItem} is added released,
+	 * so that it's browsed from its summary.
+	 *
+	 * @param file the file to add.
+	 * @param summary the summary of {@code file} or {@code null}.
+	 */
+	private void addFile(File file, @Nullable LibraryItem.Summary summary) {
+		if (summary == null) {
+			addChild(new RealFile(file));
+		} else {
+			addChild(new LibraryItem(summary));
+		}
+	}
+
 	private String transformSQL(String sql) {
 		sql = sql.replace("${0}", transformName(getName()));
 		if (getParent() != null) {
@@ -98,103 +219,111 @@ public class MediaLibraryFolder extends VirtualFolder {
 		return name;
 	}
 
+	/**
+	 * @return {@code true} if the database has changed since the children
+	 *         were queried, {@code false} otherwise.
+	 */
 	@Override
 	public boolean isRefreshNeeded() {
-		return true;
+		return database.getChangeCount() != changeCount;
 	}
 
 	/**
-	 * Removes all children and re-adds them
+	 * Queries the database again and updates the children. Unchanged
+	 * children are kept, children that are no longer returned are removed
+	 * and new results are added.
 	 */
 	@Override
 	public void doRefreshChildren() {
-		ArrayList<File> list = null;
+		synchronized (this) {
+			if (pageStart >= 0) {
+				if (isPaged()) {
+					loadPage(pageStart, pageCount);
+					return;
+				}
+				// The sort order has changed, query all children again
+				pageStart = -1;
+				getChildren().clear();
+			}
+		}
+		LibraryPage page = null;
 		ArrayList<String> strings = null;
 		int expectedOutput = 0;
+		long newChangeCount = database.getChangeCount();
 		if (sqls.length > 0) {
 			String sql = sqls[0];
 			expectedOutput = expectedOutputs[0];
 			if (sql != null) {
 				sql = transformSQL(sql);
 				if (expectedOutput == FILES || expectedOutput == PLAYLISTS || expectedOutput == ISOS) {
-					list = database.getFiles(sql);
+					page = database.getFiles(sql, 0, 0);
 				} else if (expectedOutput == TEXTS) {
 					strings = database.getStrings(sql);
 				}
 			}
 		}
-		ArrayList<File> addedFiles = new ArrayList<>();
-		ArrayList<String> addedString = new ArrayList<>();
-		ArrayList<DLNAResource> removedFiles = new ArrayList<>();
-		ArrayList<DLNAResource> removedString = new ArrayList<>();
-		int i = 0;
-		if (list != null) {
-			for (File file : list) {
-				boolean present = false;
-
-				for (DLNAResource dlna : getChildren()) {
-					if (i == 0 && (!(dlna instanceof VirtualFolder) || (dlna instanceof MediaLibraryFolder))) {
-						removedFiles.add(dlna);
-					}
-
-					String name = dlna.getName();
-					long lm = dlna.getLastModified();
-					boolean videoTSHack = false;
-
-					if (dlna instanceof DVDISOFile) {
-						DVDISOFile dvdISOFile = (DVDISOFile) dlna;
-						// XXX DVDISOFile has inconsistent ideas of what constitutes a VIDEO_TS folder
-						videoTSHack = dvdISOFile.getFileName().equals(file.getName());
-					}
+		if (page == null && strings == null) {
+			// Keep the current children and try again next time
+			return;
+		}
 
-					if ((file.getName().equals(name) || videoTSHack) && file.lastModified() == lm) {
-						removedFiles.remove(dlna);
-						present = true;
-					}
-				}
-				i++;
-				if (!present) {
-					addedFiles.add(file);
+		// Index the children that can be replaced by their name and modification time
+		HashMap<String, ArrayDeque<DLNAResource>> existing = new HashMap<>();
+		for (DLNAResource child : getChildren()) {
+			if (!(child instanceof VirtualFolder) || child instanceof MediaLibraryFolder) {
+				String key = child instanceof DVDISOFile ?
+					// XXX DVDISOFile has inconsistent ideas of what constitutes a VIDEO_TS folder
+					getKey(((DVDISOFile) child).getFileName(), child.getLastModified()) :
+					getKey(child.getName(), strings == null ? child.getLastModified() : 0);
+				ArrayDeque<DLNAResource> children = existing.get(key);
+				if (children == null) {
+					children = new ArrayDeque<>(1);
+					existing.put(key, children);
 				}
+				children.add(child);
 			}
 		}
-		i = 0;
-		if (strings != null) {
-			for (String f : strings) {
-				boolean present = false;
-				for (DLNAResource d : getChildren()) {
-					if (i == 0 && (!(d instanceof VirtualFolder) || (d instanceof MediaLibraryFolder))) {
-						removedString.add(d);
-					}
-					String name = d.getName();
-					if (f.equals(name)) {
-						removedString.remove(d);
-						present = true;
-					}
+
+		ArrayList<File> addedFiles = new ArrayList<>();
+		ArrayList<String> addedStrings = new ArrayList<>();
+		if (page != null) {
+			for (File file : page.getFiles()) {
+				LibraryItem.Summary summary = page.getSummary(file);
+				long modified = summary == null ? file.lastModified() : summary.getModified();
+				if (!isPresent(existing, getKey(file.getName(), modified))) {
+					addedFiles.add(file);
 				}
-				i++;
-				if (!present) {
-					addedString.add(f);
+			}
+		} else {
+			for (String string : strings) {
+				if (!isPresent(existing, getKey(string, 0))) {
+					addedStrings.add(string);
 				}
 			}
 		}
 
-		for (DLNAResource f : removedFiles) {
-			getChildren().remove(f);
-		}
-		for (DLNAResource s : removedString) {
-			getChildren().remove(s);
+		// Whatever is left wasn't returned by the query
+		if (!existing.isEmpty()) {
+			HashSet<DLNAResource> removed = new HashSet<>();
+			for (ArrayDeque<DLNAResource> children : existing.values()) {
+				removed.addAll(children);
+			}
+			for (DLNAResource child : removed) {
+				PMS.getGlobalRepo().remove(child);
+			}
+			getChildren().removeAll(removed);
 		}
+
 		for (File f : addedFiles) {
 			if (expectedOutput == FILES) {
-				addChild(new RealFile(f));
+				addFile(f, page.getSummary(f));
 			} else if (expectedOutput == PLAYLISTS) {
 				addChild(new PlaylistFolder(f));
 			} else if (expectedOutput == ISOS) {
 				addChild(new DVDISOFile(f));
 			}
 		}
-		for (String f : addedString) {
+		for (String f : addedStrings) {
 			if (expectedOutput == TEXTS) {
 				String sqls2[] = new String[sqls.length - 1];
 				int expectedOutputs2[] = new int[expectedOutputs.length - 1];
@@ -204,7 +333,29 @@ public class MediaLibraryFolder extends VirtualFolder {
 			}
 		}
 
+		changeCount = newChangeCount;
 		setUpdateId(this.getIntId());
-		//return removedFiles.size() != 0 || addedFiles.size() != 0 || removedString.size() != 0 || addedString.size() != 0;
+	}
+
+	private static String getKey(String name, long lastModified) {
+		return name + '\u0000' + lastModified;
+	}
+
+	/**
+	 * Takes a child matching {@code key} out of {@code existing}.
+	 *
+	 * @return {@code true} if a matching child was found, {@code false}
+	 *         otherwise.
+	 */
+	private static boolean isPresent(HashMap<String, ArrayDeque<DLNAResource>> existing, String key) {
+		ArrayDeque<DLNAResource> children = existing.get(key);
+		if (children == null) {
+			return false;
+		}
+		children.poll();
+		if (children.isEmpty()) {
+			existing.remove(key);
+		}
+		return true;
 	}
 }
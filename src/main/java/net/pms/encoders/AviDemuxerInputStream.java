@@ -19,12 +19,16 @@
 package net.pms.encoders;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import net.pms.PMS;
 import net.pms.configuration.PmsConfiguration;
 import net.pms.io.*;
-import net.pms.util.H264AnnexBInputStream;
-import net.pms.util.PCMAudioOutputStream;
+import net.pms.io.pipeline.AviDemuxStage;
+import net.pms.io.pipeline.ByteBufferSink;
+import net.pms.io.pipeline.H264AnnexBStage;
+import net.pms.io.pipeline.OutputStreamSink;
+import net.pms.io.pipeline.PCMFramingStage;
 import net.pms.util.ProcessUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,13 +41,9 @@ public class AviDemuxerInputStream extends InputStream {
 	private InputStream stream;
 	private ArrayList<ProcessWrapper> attachedProcesses;
 	private long readCount = -1;
-	private String streamVideoTag;
-	private Track[] track = new Track[2];
-	private int numberOfAudioChannels;
-	private OutputStream aOut;
-	private OutputStream vOut;
-	private long audiosize;
-	private long videosize;
+	private AviDemuxStage demuxer;
+	private volatile long audiosize;
+	private volatile long videosize;
 	private InputStream realIS;
 	private Thread parsing;
 	private OutputParams params;
@@ -63,33 +63,24 @@ public class AviDemuxerInputStream extends InputStream {
 		this.attachedProcesses = at;
 		this.params = params;
 
-		aOut = params.output_pipes[1].getOutputStream();
+		ByteBufferSink audioSink = OutputStreamSink.create(params.output_pipes[1].getOutputStream());
+		ByteBufferSink videoSink = OutputStreamSink.create(params.output_pipes[0].getOutputStream());
 		if (params.no_videoencode && params.forceType != null && params.forceType.equals("V_MPEG4/ISO/AVC") && params.header != null) {
 			// NOT USED RIGHT NOW
-			PipedOutputStream pout = new PipedOutputStream();
-			Runnable r;
-			try (InputStream pin = new H264AnnexBInputStream(new PipedInputStream(pout), params.header)) {
-				final OutputStream out = params.output_pipes[0].getOutputStream();
-				r = new Runnable() {
-					@Override
-					public void run() {
-						try {
-							byte[] b = new byte[512 * 1024];
-							int n;
-							while ((n = pin.read(b)) > -1) {
-								out.write(b, 0, n);
-							}
-						} catch (Exception e) {
-							LOGGER.error(null, e);
-						}
-					}
-				};
-			}
-			vOut = pout;
-			new Thread(r, "Avi Demuxer").start();
-		} else {
-			vOut = params.output_pipes[0].getOutputStream();
+			videoSink = new H264AnnexBStage(videoSink, params.header);
 		}
+		// The id of an AVI audio track is its index among the audio streams
+		int audioTrack = params.aid == null ? -1 : params.aid.getId();
+		demuxer = new AviDemuxStage(videoSink, audioSink, audioTrack) {
+
+			@Override
+			protected ByteBufferSink createAudioSink(ByteBufferSink audio, int nbChannels, int bitsPerSample) {
+				if (params.losslessaudio) {
+					return new PCMFramingStage(audio, nbChannels, 48000, bitsPerSample);
+				}
+				return audio;
+			}
+		};
 
 		Runnable r = new Runnable() {
 			@Override
@@ -149,8 +140,7 @@ public class AviDemuxerInputStream extends InputStream {
 			@Override
 			public void run() {
 				try {
-					//Thread.sleep(500);
-					parseHeader();
+					demux();
 				} catch (IOException e) {
 					LOGGER.debug("Parsing error", e);
 				}
@@ -163,261 +153,24 @@ public class AviDemuxerInputStream extends InputStream {
 		LOGGER.trace("Ready to mux");
 	}
 
-	private void parseHeader() throws IOException {
+	private void demux() throws IOException {
 		LOGGER.trace("Parsing AVI stream");
-		String id = getString(stream, 4);
-		getBytes(stream, 4);
-		String type = getString(stream, 4);
-
-		if (!"RIFF".equalsIgnoreCase(id) || !"AVI ".equalsIgnoreCase(type)) {
-			throw new IOException("Not AVI file");
-		}
-
-		byte[] hdrl = null;
-
-		while (true) {
-			String command = getString(stream, 4);
-			int length = (readBytes(stream, 4) + 1) & ~1;
-
-			if ("LIST".equalsIgnoreCase(command)) {
-				command = getString(stream, 4);
-				length -= 4;
-
-				if ("movi".equalsIgnoreCase(command)) {
-					break;
-				}
-
-				if ("hdrl".equalsIgnoreCase(command)) {
-					hdrl = getBytes(stream, length);
-				}
-
-				if ("idx1".equalsIgnoreCase(command)) {
-					/*idx = */
-					getBytes(stream, length);
-				}
-
-				if ("iddx".equalsIgnoreCase(command)) {
-					/*idx = */
-					getBytes(stream, length);
-				}
-			} else {
-				getBytes(stream, length);
-			}
-		}
-
-		int streamNumber = 0;
-		int lastTagID = 0;
-
-		for (int i = 0; i < hdrl.length;) {
-			String command = new String(hdrl, i, 4);
-			int size = str2ulong(hdrl, i + 4);
-
-			if ("LIST".equalsIgnoreCase(command)) {
-				i += 12;
-				continue;
-			}
-
-			String command2 = new String(hdrl, i + 8, 4);
-
-			if ("strh".equalsIgnoreCase(command)) {
-				lastTagID = 0;
-
-				if ("vids".equalsIgnoreCase(command2)) {
-					String compressor = new String(hdrl, i + 12, 4);
-					int scale = str2ulong(hdrl, i + 28);
-					int rate = str2ulong(hdrl, i + 32);
-					track[0] = new Track(compressor, scale, rate, -1);
-					streamVideoTag = new String(new char[]{
-							(char) ((streamNumber / 10) + '0'),
-							(char) ((streamNumber % 10) + '0'), 'd', 'b'});
-					streamNumber++;
-					lastTagID = 1;
-				}
-
-				if ("auds".equalsIgnoreCase(command2)) {
-					int scale = str2ulong(hdrl, i + 28);
-					int rate = str2ulong(hdrl, i + 32);
-					int sampleSize = str2ulong(hdrl, i + 52);
-					track[1 + numberOfAudioChannels++] = new Track(null, scale, rate, sampleSize);
-
-					streamNumber++;
-					lastTagID = 2;
-				}
-			}
-
-			if ("strf".equalsIgnoreCase(command)) {
-				if (lastTagID == 1) {
-
-					byte[] information = new byte[size]; // formerly size-4
-					System.arraycopy(hdrl, i + 8, information, 0, information.length); // formerly i+4
-					track[0].setBih(information);
-				}
-
-				if (lastTagID == 2) {
-					byte[] information = new byte[size]; // formerly size-4
-					System.arraycopy(hdrl, i + 8, information, 0, information.length); // formerly i+4
-					Track aud = track[1 + numberOfAudioChannels - 1];
-					aud.setBih(information);
-					int bitsPerSample = str2ushort(information, 14);
-					aud.setBitsPerSample(bitsPerSample);
-					int nbAudio = str2ushort(information, 2);
-					aud.setNbAudio(nbAudio);
-					long fileLength = 100;
-
-					if (params.losslessaudio) {
-						aOut = new PCMAudioOutputStream(aOut, nbAudio, 48000, bitsPerSample);
-					}
-
-					if (!params.lossyaudio && params.losslessaudio) {
-						writePCMHeader(aOut, fileLength, nbAudio, aud.getRate(), aud.getSampleSize(), bitsPerSample);
-					}
-				}
-			}
-
-			if (size % 2 != 0) {
-				size++;
-			}
-
-			i += size + 8;
-		}
-
-		LOGGER.trace("Found " + streamNumber + " stream(s)");
-		boolean init = false;
-
-		while (true) {
-			String command;
-
-			try {
-				command = getString(stream, 4);
-			} catch (Exception e) {
-				LOGGER.trace("Error reading stream: " + e.getMessage());
-				break;
-			}
-
-			if (command == null) {
-				break;
-			}
-
-			command = command.toUpperCase();
-			int size = readBytes(stream, 4);
-			boolean framed = false;
-
-			while (
-				"LIST".equals(command) ||
-				"RIFF".equals(command) ||
-				"JUNK".equals(command)
-			) {
-				if (size < 0) {
-					size = 4;
-				}
-
-				getBytes(stream, "RIFF".equals(command) ? 4 : size);
-				command = getString(stream, 4).toUpperCase();
-				size = readBytes(stream, 4);
-
-				if (("LIST".equals(command) || "RIFF".equals(command) || "JUNK".equals(command)) && (size % 2 != 0)) {
-					readByte(stream);
-				}
-			}
-
-			String videoTag = streamVideoTag.substring(0, 3);
-
-			if (command.substring(0, 3).equalsIgnoreCase(videoTag) && (command.charAt(3) == 'B' || command.charAt(3) == 'C')) {
-				byte[] buffer = getBytes(stream, size);
-
-				if (!command.equalsIgnoreCase("IDX1")) {
-					vOut.write(buffer);
-					videosize += size;
-				}
-
-				framed = true;
-			}
-
-			if (!framed) {
-				for (int i = 0; i < numberOfAudioChannels; i++) {
-					byte[] buffer = getBytes(stream, size);
-
-					if (!command.equalsIgnoreCase("IDX1")) {
-						aOut.write(buffer, init ? 4 : 0, init ? (size - 4) : size);
-						init = false;
-						audiosize += size;
-					}
-
-					framed = true;
-				}
-			}
-
-			if (!framed) {
-				throw new IOException("Not header: " + command);
+		ByteBuffer buffer = ByteBufferPool.RELAY_POOL.acquire(false);
+		try {
+			byte[] b = buffer.array();
+			int n;
+			while ((n = stream.read(b)) > -1) {
+				buffer.clear();
+				buffer.limit(n);
+				demuxer.write(buffer);
+				videosize = demuxer.getVideoSize();
+				audiosize = demuxer.getAudioSize();
 			}
-
-			if (size % 2 != 0) {
-				readByte(stream);
-			}
-		}
-
-		LOGGER.trace("output pipes closed");
-		aOut.close();
-		vOut.close();
-	}
-
-	private static String getString(InputStream input, int sz) throws IOException {
-		byte[] bb = getBytes(input, sz);
-		return new String(bb);
-	}
-
-	private static byte[] getBytes(InputStream input, int sz) throws IOException {
-		byte[] bb = new byte[sz];
-		int n = input.read(bb);
-
-		while (n < sz) {
-			int u = input.read(bb, n, sz - n);
-
-			if (u == -1) {
-				break;
-			}
-
-			n += u;
+		} finally {
+			ByteBufferPool.RELAY_POOL.release(buffer);
+			LOGGER.trace("output pipes closed");
+			demuxer.close();
 		}
-
-		return bb;
-	}
-
-	private static int readBytes(InputStream input, int number) throws IOException {
-		byte[] buffer = new byte[number];
-		int read = input.read(buffer);
-
-		if (read < number) {
-			if (read < 0) {
-				throw new IOException("End of stream");
-			}
-
-			for (int i = read; i < number; i++) {
-				buffer[i] = (byte) readByte(input);
-			}
-		}
-
-		/**
-		 * Create integer
-		 */
-		switch (number) {
-			case 1:
-				return (buffer[0] & 0xff);
-			case 2:
-				return (buffer[0] & 0xff) | ((buffer[1] & 0xff) << 8);
-			case 3:
-				return (buffer[0] & 0xff) | ((buffer[1] & 0xff) << 8)
-					| ((buffer[2] & 0xff) << 16);
-			case 4:
-				return (buffer[0] & 0xff) | ((buffer[1] & 0xff) << 8)
-					| ((buffer[2] & 0xff) << 16) | ((buffer[3] & 0xff) << 24);
-			default:
-				throw new IOException("Illegal Read quantity");
-		}
-	}
-
-	private static int readByte(InputStream input) throws IOException {
-		return input.read();
 	}
 
 	public static int str2ulong(byte[] data, int i) {
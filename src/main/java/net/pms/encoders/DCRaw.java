@@ -38,8 +38,8 @@ import net.pms.io.ListProcessWrapperResult;
 import net.pms.io.OutputParams;
 import net.pms.io.ProcessWrapper;
 import net.pms.io.ProcessWrapperImpl;
-import net.pms.io.SimpleProcessWrapper;
 import net.pms.platform.windows.NTStatus;
+import net.pms.service.ProbeCache;
 import net.pms.util.Version;
 
 public class DCRaw extends ImagePlayer {
@@ -394,7 +394,7 @@ public class DCRaw extends ImagePlayer {
 		}
 		ExecutableInfoBuilder result = executableInfo.modify();
 		try {
-			ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+			ListProcessWrapperResult output = ProbeCache.runProbe(
 				30000,
 				1000,
 				executableInfo.getPath().toString()
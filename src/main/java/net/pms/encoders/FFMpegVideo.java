@@ -64,6 +64,10 @@ import net.pms.media.VideoLevel;
 import net.pms.network.HTTPResource;
 import net.pms.newgui.GuiUtil;
 import net.pms.platform.windows.NTStatus;
+import net.pms.service.ProbeCache;
+import net.pms.service.TranscodePriority;
+import net.pms.service.TranscodeScheduler;
+import net.pms.service.TranscodeScheduler.TranscodeSlot;
 import net.pms.util.CodecUtil;
 import net.pms.util.ProcessUtil;
 import net.pms.util.Rational;
@@ -500,6 +504,11 @@ public class FFMpegVideo extends Player {
 				LOGGER.trace("Halving the video bitrate limit to {} kb/s", defaultMaxBitrates[0]);
 			}
 
+			if (params.transcodeSlot != null && params.transcodeSlot.isDegraded()) {
+				defaultMaxBitrates[0] /= 2;
+				LOGGER.trace("Halving the video bitrate limit to {} kb/s because the CPU is oversubscribed", defaultMaxBitrates[0]);
+			}
+
 			int bufSize = 1835;
 			boolean bitrateLevel41Limited = false;
 
@@ -759,6 +768,23 @@ public class FFMpegVideo extends Player {
 		DLNAResource dlna,
 		DLNAMediaInfo media,
 		OutputParams params
+	) throws IOException {
+		try {
+			return launchTranscode0(dlna, media, params);
+		} catch (IOException | RuntimeException e) {
+			// Only a process wrapper that has been run releases the slot
+			if (params.transcodeSlot != null) {
+				params.transcodeSlot.release();
+				params.transcodeSlot = null;
+			}
+			throw e;
+		}
+	}
+
+	private ProcessWrapper launchTranscode0(
+		DLNAResource dlna,
+		DLNAMediaInfo media,
+		OutputParams params
 	) throws IOException {
 		final String filename = dlna.getFileName();
 		InputFile newInput = new InputFile();
@@ -783,17 +809,25 @@ public class FFMpegVideo extends Player {
 
 		/*
 		 * FFmpeg uses multithreading by default, so provided that the
-		 * user has not disabled FFmpeg multithreading and has not
-		 * chosen to use more or less threads than are available, do not
-		 * specify how many cores to use.
+		 * user has not disabled FFmpeg multithreading, has not chosen to
+		 * use more or less threads than are available and the cores don't
+		 * have to be shared with other transcodes, do not specify how many
+		 * cores to use.
 		 */
-		int nThreads = 1;
-		if (configuration.isFfmpegMultithreading()) {
-			if (Runtime.getRuntime().availableProcessors() == configuration.getNumberOfCpuCores()) {
-				nThreads = 0;
-			} else {
-				nThreads = configuration.getNumberOfCpuCores();
-			}
+		int cpuCores = configuration.getNumberOfCpuCores();
+		TranscodeSlot transcodeSlot = TranscodeScheduler.admit(
+			params,
+			dlna.getName(),
+			params.preRollLimit > 0 ? TranscodePriority.BACKGROUND : TranscodePriority.PLAYBACK,
+			configuration.isFfmpegMultithreading() ? cpuCores : 1
+		);
+		int nThreads = transcodeSlot.getThreads();
+		if (
+			configuration.isFfmpegMultithreading() &&
+			nThreads == cpuCores &&
+			Runtime.getRuntime().availableProcessors() == cpuCores
+		) {
+			nThreads = 0;
 		}
 
 		List<String> cmdList = new ArrayList<>();
@@ -1161,13 +1195,7 @@ public class FFMpegVideo extends Player {
 			 */
 			mkfifo_process.runInSameThread();
 			pw.attachProcess(mkfifo_process); // Clean up the mkfifo process when the transcode ends
-
-			// Give the mkfifo process a little time
-			try {
-				Thread.sleep(300);
-			} catch (InterruptedException e) {
-				LOGGER.error("Thread interrupted while waiting for named pipe to be created", e);
-			}
+			awaitPipe(pipe);
 		} else {
 			pipe = new PipeProcess(System.currentTimeMillis() + "tsmuxerout.ts");
 
@@ -1297,24 +1325,16 @@ public class FFMpegVideo extends Player {
 			ProcessWrapper pipe_process = pipe.getPipeProcess();
 			pw.attachProcess(pipe_process);
 			pipe_process.runInNewThread();
-
-			try {
-				wait(50);
-			} catch (InterruptedException e) {
-			}
+			awaitPipe(pipe);
 
 			pipe.deleteLater();
 			params.input_pipes[0] = pipe;
 
 			ProcessWrapper ff_pipe_process = ffAudioPipe.getPipeProcess();
 			pw.attachProcess(ff_pipe_process);
+			// Returns when the IPC pipes have been created
 			ff_pipe_process.runInNewThread();
 
-			try {
-				wait(50);
-			} catch (InterruptedException e) {
-			}
-
 			ffAudioPipe.deleteLater();
 			pw.attachProcess(ffAudio);
 			ffAudio.runInNewThread();
@@ -1549,7 +1569,7 @@ public class FFMpegVideo extends Player {
 		final String arg = "-version";
 		ExecutableInfoBuilder result = executableInfo.modify();
 		try {
-			ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+			ListProcessWrapperResult output = ProbeCache.runProbe(
 				30000,
 				1000,
 				executableInfo.getPath().toString(),
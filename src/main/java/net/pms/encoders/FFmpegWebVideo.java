@@ -235,13 +235,7 @@ public class FFmpegWebVideo extends FFMpegVideo {
 		ProcessWrapperImpl pw = new ProcessWrapperImpl(cmdArray, params);
 		parseMediaInfo(filename, dlna, pw); // Better late than never
 		pw.attachProcess(mkfifo_process); // Clean up the mkfifo process when the transcode ends
-
-		// Give the mkfifo process a little time
-		try {
-			Thread.sleep(300);
-		} catch (InterruptedException e) {
-			LOGGER.error("Thread interrupted while waiting for named pipe to be created", e);
-		}
+		awaitPipe(pipe);
 
 		// Launch the transcode command...
 		pw.runInNewThread();
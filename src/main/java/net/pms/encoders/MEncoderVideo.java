@@ -68,6 +68,10 @@ import net.pms.network.HTTPResource;
 import net.pms.newgui.GuiUtil;
 import net.pms.newgui.components.CustomJButton;
 import net.pms.platform.windows.NTStatus;
+import net.pms.service.ProbeCache;
+import net.pms.service.TranscodePriority;
+import net.pms.service.TranscodeScheduler;
+import net.pms.service.TranscodeScheduler.TranscodeSlot;
 import net.pms.util.*;
 import static net.pms.util.AudioUtils.getLPCMChannelMappingForMencoder;
 import static net.pms.util.StringUtil.quoteArg;
@@ -821,6 +825,23 @@ public class MEncoderVideo extends Player {
 		DLNAResource dlna,
 		DLNAMediaInfo media,
 		OutputParams params
+	) throws IOException {
+		try {
+			return launchTranscode0(dlna, media, params);
+		} catch (IOException | RuntimeException e) {
+			// Only a process wrapper that has been run releases the slot
+			if (params.transcodeSlot != null) {
+				params.transcodeSlot.release();
+				params.transcodeSlot = null;
+			}
+			throw e;
+		}
+	}
+
+	private ProcessWrapper launchTranscode0(
+		DLNAResource dlna,
+		DLNAMediaInfo media,
+		OutputParams params
 	) throws IOException {
 		// Use device-specific DMS conf
 		PmsConfiguration prev = configuration;
@@ -1212,10 +1233,18 @@ public class MEncoderVideo extends Player {
 		// called below) store the renderer-specific (i.e. not global) MEncoder options?
 		overriddenMainArgs = new String[st.countTokens()];
 
+		TranscodeSlot transcodeSlot = TranscodeScheduler.admit(
+			params,
+			dlna.getName(),
+			params.preRollLimit > 0 ? TranscodePriority.BACKGROUND : TranscodePriority.PLAYBACK,
+			configuration.getMencoderMaxThreads()
+		);
+		int maxThreads = transcodeSlot.getThreads();
+
 		{
 			int nThreads = (isDVD || filename.toLowerCase().endsWith("dvr-ms")) ?
 				1 :
-				configuration.getMencoderMaxThreads();
+				maxThreads;
 
 			// MEncoder loses audio/video sync if more than 4 decoder (lavdopts) threads are used.
 			// Multithreading for decoding offers little performance gain anyway so it's not a big deal.
@@ -1380,7 +1409,7 @@ public class MEncoderVideo extends Player {
 				}
 
 				encodeSettings = "-lavcopts " + aspectRatioLavcopts + vcodecString + acodec + abitrate +
-					":threads=" + (wmv && !params.mediaRenderer.isXbox360() ? 1 : configuration.getMencoderMaxThreads()) +
+					":threads=" + (wmv && !params.mediaRenderer.isXbox360() ? 1 : maxThreads) +
 					("".equals(mpeg2Options) ? "" : ":" + mpeg2Options);
 
 				encodeSettings = addMaximumBitrateConstraints(encodeSettings, media, mpeg2Options, params.mediaRenderer, audioType);
@@ -1414,8 +1443,8 @@ public class MEncoderVideo extends Player {
 				}
 
 				encodeSettings = "-lavcopts " + aspectRatioLavcopts + vcodecString + acodec + abitrate +
-					":threads=" + configuration.getMencoderMaxThreads() +
-					":o=preset=superfast,crf=" + x264CRF + ",g=250,i_qfactor=0.71,qcomp=0.6,";
+					":threads=" + maxThreads +
+					":o=preset=" + (transcodeSlot.isDegraded() ? "ultrafast" : "superfast") + ",crf=" + x264CRF + ",g=250,i_qfactor=0.71,qcomp=0.6,";
 				VideoLevel level = params.mediaRenderer.getVideoLevelLimit(VideoCodec.H264);
 				if (level != null) {
 					encodeSettings += "level=" + level.toString(false) + ",";
@@ -2131,7 +2160,7 @@ public class MEncoderVideo extends Player {
 							vcodec,
 							(configuration.isMencoderAc3Fixed() ? "ac3_fixed" : "ac3"),
 							CodecUtil.getAC3Bitrate(configuration, params.aid),
-							configuration.getMencoderMaxThreads(),
+							maxThreads,
 							expertOptions[i + 1]
 						);
 
@@ -2321,9 +2350,8 @@ public class MEncoderVideo extends Player {
 				pw.attachProcess(audioPipeProcess);
 				videoPipeProcess.runInNewThread();
 				audioPipeProcess.runInNewThread();
-				try {
-					Thread.sleep(50);
-				} catch (InterruptedException e) { }
+				awaitPipe(videoPipe);
+				awaitPipe(audioPipe);
 				videoPipe.deleteLater();
 				audioPipe.deleteLater();
 			} else {
@@ -2500,24 +2528,16 @@ public class MEncoderVideo extends Player {
 				ProcessWrapper pipe_process = pipe.getPipeProcess();
 				pw.attachProcess(pipe_process);
 				pipe_process.runInNewThread();
-
-				try {
-					Thread.sleep(50);
-				} catch (InterruptedException e) {
-				}
+				awaitPipe(pipe);
 
 				pipe.deleteLater();
 				params.input_pipes[0] = pipe;
 
 				ProcessWrapper ff_pipe_process = ffAudioPipe.getPipeProcess();
 				pw.attachProcess(ff_pipe_process);
+				// Returns when the IPC pipes have been created
 				ff_pipe_process.runInNewThread();
 
-				try {
-					Thread.sleep(50);
-				} catch (InterruptedException e) {
-				}
-
 				ffAudioPipe.deleteLater();
 				pw.attachProcess(ffAudio);
 				ffAudio.runInNewThread();
@@ -2747,7 +2767,7 @@ public class MEncoderVideo extends Player {
 		final String arg = "-info:help";
 		ExecutableInfoBuilder result = executableInfo.modify();
 		try {
-			ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+			ListProcessWrapperResult output = ProbeCache.runProbe(
 				30000,
 				1000,
 				executableInfo.getPath().toString(),
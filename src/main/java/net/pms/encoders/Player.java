@@ -50,6 +50,7 @@ import net.pms.formats.Format;
 import net.pms.formats.FormatType;
 import net.pms.io.BasicSystemUtils;
 import net.pms.io.OutputParams;
+import net.pms.io.PipeProcess;
 import net.pms.io.ProcessWrapper;
 import net.pms.util.FilePermissions;
 import net.pms.util.FileUtil;
@@ -322,6 +323,29 @@ public abstract class Player {
 	protected static final PmsConfiguration _configuration = PMS.getConfiguration();
 	protected PmsConfiguration configuration = _configuration;
 
+	/**
+	 * The maximum time in milliseconds to wait for a named pipe to be
+	 * created before the transcode is started anyway.
+	 */
+	protected static final long PIPE_READY_TIMEOUT = 5000;
+
+	/**
+	 * Waits until the specified named pipe has been created, instead of
+	 * sleeping for a fixed amount of time.
+	 *
+	 * @param pipe the {@link PipeProcess} to wait for.
+	 */
+	protected static void awaitPipe(@Nonnull PipeProcess pipe) {
+		try {
+			if (!pipe.awaitReady(PIPE_READY_TIMEOUT)) {
+				LOGGER.warn("Timed out waiting for the named pipe \"{}\" to be created", pipe.getInputPipe());
+			}
+		} catch (InterruptedException e) {
+			LOGGER.debug("Interrupted while waiting for the named pipe \"{}\" to be created", pipe.getInputPipe());
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	public boolean avisynth() {
 		return false;
 	}
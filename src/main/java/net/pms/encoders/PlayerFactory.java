@@ -23,9 +23,11 @@ import com.sun.jna.Platform;
 import java.io.Serializable;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -33,12 +35,15 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import net.pms.Messages;
 import net.pms.PMS;
+import net.pms.configuration.ExecutableInfo;
 import net.pms.configuration.ExternalProgramInfo;
 import net.pms.configuration.PmsConfiguration;
 import net.pms.configuration.ProgramExecutableType;
 import net.pms.configuration.ProgramExecutableType.DefaultExecutableType;
 import net.pms.dlna.DLNAResource;
 import net.pms.formats.FormatFactory;
+import net.pms.service.ProbeCache;
+import net.pms.service.Services;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,6 +107,10 @@ public final class PlayerFactory {
 	 */
 	public static void initialize() {
 		registerPlayers();
+		ProbeCache probeCache = Services.probeCache();
+		if (probeCache != null) {
+			probeCache.save();
+		}
 	}
 
 	/**
@@ -593,4 +602,46 @@ public final class PlayerFactory {
 			programInfoLock.writeLock().unlock();
 		}
 	}
+
+	/**
+	 * Tests the specified executables again for all {@link Player}s that use
+	 * them, e.g. when their {@link ProbeCache} output has changed.
+	 *
+	 * @param executables the executables to test again.
+	 */
+	public static void retestExecutables(@Nonnull Collection<Path> executables) {
+		if (executables.isEmpty()) {
+			return;
+		}
+		Set<ExternalProgramInfo> retested = Collections.newSetFromMap(new IdentityHashMap<ExternalProgramInfo, Boolean>());
+		for (Player player : getAllPlayers()) {
+			ExternalProgramInfo programInfo = player.getProgramInfo();
+			if (!retested.add(programInfo)) {
+				// Already tested for all the players that share it
+				continue;
+			}
+			boolean reset = false;
+			ReentrantReadWriteLock programInfoLock = programInfo.getLock();
+			programInfoLock.writeLock().lock();
+			try {
+				for (ProgramExecutableType executableType : programInfo.getExecutableTypes()) {
+					ExecutableInfo executableInfo = programInfo.getExecutableInfo(executableType);
+					if (executableInfo != null && executables.contains(executableInfo.getPath())) {
+						// Forget the previous results so that the executable is tested again
+						programInfo.setExecutableInfo(
+							executableType,
+							executableInfo.modify().available(null).errorType(null).errorText(null).build()
+						);
+						reset = true;
+					}
+				}
+			} finally {
+				programInfoLock.writeLock().unlock();
+			}
+			if (reset) {
+				LOGGER.info("Testing transcoding engine {} again because its executable has changed", player);
+				reEvaluateExecutable(player, null, null);
+			}
+		}
+	}
 }
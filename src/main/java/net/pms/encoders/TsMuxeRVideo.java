@@ -59,6 +59,7 @@ import net.pms.io.*;
 import net.pms.media.VideoLevel;
 import net.pms.newgui.GuiUtil;
 import net.pms.platform.windows.NTStatus;
+import net.pms.service.ProbeCache;
 import net.pms.util.CodecUtil;
 import net.pms.util.FormLayoutUtil;
 import net.pms.util.Version;
@@ -702,38 +703,23 @@ public class TsMuxeRVideo extends Player {
 		ProcessWrapper pipe_process = tsPipe.getPipeProcess();
 		p.attachProcess(pipe_process);
 		pipe_process.runInNewThread();
-
-		try {
-			Thread.sleep(50);
-		} catch (InterruptedException e) {
-		}
+		awaitPipe(tsPipe);
 		tsPipe.deleteLater();
 
+		// The IPC pipes have been created when runInNewThread() returns
 		ProcessWrapper ff_pipe_process = ffVideoPipe.getPipeProcess();
 		p.attachProcess(ff_pipe_process);
 		ff_pipe_process.runInNewThread();
-		try {
-			Thread.sleep(50);
-		} catch (InterruptedException e) {
-		}
 		ffVideoPipe.deleteLater();
 
 		p.attachProcess(ffVideo);
 		ffVideo.runInNewThread();
-		try {
-			Thread.sleep(50);
-		} catch (InterruptedException e) {
-		}
 
 		if (ffAudioPipe != null && params.aid != null) {
 			for (int i = 0; i < ffAudioPipe.length; i++) {
 				ff_pipe_process = ffAudioPipe[i].getPipeProcess();
 				p.attachProcess(ff_pipe_process);
 				ff_pipe_process.runInNewThread();
-				try {
-					Thread.sleep(50);
-				} catch (InterruptedException e) {
-				}
 				ffAudioPipe[i].deleteLater();
 				p.attachProcess(ffAudio[i]);
 				ffAudio[i].runInNewThread();
@@ -904,7 +890,7 @@ public class TsMuxeRVideo extends Player {
 		final String arg = "-v";
 		ExecutableInfoBuilder result = executableInfo.modify();
 		try {
-			ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+			ListProcessWrapperResult output = ProbeCache.runProbe(
 				30000,
 				1000,
 				executableInfo.getPath().toString(),
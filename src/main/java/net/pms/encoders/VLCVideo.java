@@ -51,6 +51,7 @@ import net.pms.media.H264Level;
 import net.pms.media.VideoCodec;
 import net.pms.network.HTTPResource;
 import net.pms.newgui.GuiUtil;
+import net.pms.service.ProbeCache;
 import net.pms.util.*;
 import net.pms.util.Version.WindowsVersionType;
 import org.apache.commons.lang3.StringUtils;
@@ -631,12 +632,7 @@ public class VLCVideo extends Player {
 
 		ProcessWrapperImpl pw = new ProcessWrapperImpl(cmdArray, params);
 		pw.attachProcess(pipe_process);
-
-		// TODO: Why is this here?
-		try {
-			Thread.sleep(150);
-		} catch (InterruptedException e) {
-		}
+		awaitPipe(tsPipe);
 
 		pw.runInNewThread();
 		configuration = prev;
@@ -713,7 +709,7 @@ public class VLCVideo extends Player {
 		} else {
 			final String arg = "--version";
 			try {
-				ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+				ListProcessWrapperResult output = ProbeCache.runProbe(
 					30000,
 					1000,
 					executableInfo.getPath().toString(),
@@ -48,7 +48,7 @@ import net.pms.io.OutputParams;
 import net.pms.io.PipeProcess;
 import net.pms.io.ProcessWrapper;
 import net.pms.io.ProcessWrapperImpl;
-import net.pms.io.SimpleProcessWrapper;
+import net.pms.service.ProbeCache;
 import net.pms.util.Version;
 import net.pms.util.Version.WindowsVersionType;
 
@@ -208,11 +208,7 @@ public class VideoLanVideoStreaming extends Player {
 
 		ProcessWrapperImpl pw = new ProcessWrapperImpl(cmdArray, params);
 		pw.attachProcess(pipe_process);
-
-		try {
-			Thread.sleep(150);
-		} catch (InterruptedException e) {
-		}
+		awaitPipe(tsPipe);
 
 		pw.runInNewThread();
 		configuration = prev;
@@ -256,7 +252,7 @@ public class VideoLanVideoStreaming extends Player {
 		} else {
 			final String arg = "--version";
 			try {
-				ListProcessWrapperResult output = SimpleProcessWrapper.runProcessListOutput(
+				ListProcessWrapperResult output = ProbeCache.runProbe(
 					30000,
 					1000,
 					executableInfo.getPath().toString(),
@@ -0,0 +1,416 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.image;
+
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.drew.imaging.png.PngColorType;
+import com.drew.metadata.jpeg.JpegComponent;
+import net.pms.image.ExifInfo.ExifColorSpace;
+import net.pms.image.ExifInfo.ExifCompression;
+import net.pms.image.ExifInfo.PhotometricInterpretation;
+import net.pms.image.PNGInfo.InterlaceMethod;
+import net.pms.image.PSDInfo.ColorMode;
+
+/**
+ * Writes and reads {@link ImageInfo} instances in a compact binary format
+ * that is used to store them in the database.
+ * <p>
+ * Unlike Java serialization, the format doesn't depend on the structure of
+ * the classes, and enums are stored by name. The caller is responsible for
+ * storing a format version, and {@link #VERSION} must be increased whenever
+ * the format changes.
+ */
+public final class ImageInfoCodec {
+
+	/** The version of the format written by this class */
+	public static final int VERSION = 1;
+
+	private static final int GENERIC = 0;
+	private static final int BMP = 1;
+	private static final int CUR = 2;
+	private static final int GIF = 3;
+	private static final int ICO = 4;
+	private static final int JPEG = 5;
+	private static final int PCX = 6;
+	private static final int PNG = 7;
+	private static final int PSD = 8;
+	private static final int RAW = 9;
+	private static final int TIFF = 10;
+	private static final int WEBP = 11;
+
+	private static final int COLOR_SPACE_NONE = 0;
+	private static final int COLOR_SPACE_STANDARD = 1;
+	private static final int COLOR_SPACE_ICC = 2;
+
+	private static final int[] STANDARD_COLOR_SPACES = {
+		ColorSpace.CS_sRGB,
+		ColorSpace.CS_LINEAR_RGB,
+		ColorSpace.CS_GRAY,
+		ColorSpace.CS_PYCC,
+		ColorSpace.CS_CIEXYZ
+	};
+
+	/**
+	 * Not to be instantiated.
+	 */
+	private ImageInfoCodec() {
+	}
+
+	/**
+	 * Writes {@code imageInfo} to {@code out}.
+	 *
+	 * @param out the {@link DataOutput} to write to.
+	 * @param imageInfo the {@link ImageInfo} to write.
+	 * @throws IOException If an error occurs while writing or if
+	 *             {@code imageInfo} is of an unsupported type.
+	 */
+	public static void write(@Nonnull DataOutput out, @Nonnull ImageInfo imageInfo) throws IOException {
+		out.writeByte(getType(imageInfo));
+		out.writeInt(imageInfo.width);
+		out.writeInt(imageInfo.height);
+		writeEnum(out, imageInfo.format);
+		out.writeLong(imageInfo.size);
+		out.writeInt(imageInfo.bitDepth);
+		out.writeInt(imageInfo.numComponents);
+		writeColorSpace(out, imageInfo.colorSpace);
+		writeEnum(out, imageInfo.colorSpaceType);
+		out.writeBoolean(imageInfo.imageIOSupport);
+
+		if (imageInfo instanceof ExifInfo) {
+			ExifInfo exifInfo = (ExifInfo) imageInfo;
+			writeEnum(out, exifInfo.photometricInterpretation);
+			writeEnum(out, exifInfo.exifOrientation);
+			writeEnum(out, exifInfo.originalExifOrientation);
+			writeInteger(out, exifInfo.exifVersion);
+			writeEnum(out, exifInfo.exifCompression);
+			writeEnum(out, exifInfo.exifColorSpace);
+			writeBoolean(out, exifInfo.hasExifThumbnail);
+		}
+		if (imageInfo instanceof JPEGInfo) {
+			JPEGInfo jpegInfo = (JPEGInfo) imageInfo;
+			writeInteger(out, jpegInfo.jfifVersion);
+			writeEnum(out, jpegInfo.compressionType);
+			if (jpegInfo.components == null) {
+				out.writeShort(-1);
+			} else {
+				out.writeShort(jpegInfo.components.size());
+				for (Entry<Integer, JpegComponent> entry : jpegInfo.components.entrySet()) {
+					JpegComponent component = entry.getValue();
+					out.writeInt(entry.getKey().intValue());
+					out.writeByte(component.getComponentId());
+					out.writeByte(component.getHorizontalSamplingFactor() << 4 | component.getVerticalSamplingFactor());
+					out.writeByte(component.getQuantizationTableNumber());
+				}
+			}
+			writeBoolean(out, jpegInfo.isTypicalHuffman);
+			JPEGSubsamplingNotation chromaSubsampling = jpegInfo.chromaSubsampling;
+			out.writeBoolean(chromaSubsampling != null);
+			if (chromaSubsampling != null) {
+				out.writeDouble(chromaSubsampling.getJ());
+				out.writeDouble(chromaSubsampling.getA());
+				out.writeDouble(chromaSubsampling.getB());
+			}
+		} else if (imageInfo instanceof BMPInfo) {
+			writeEnum(out, ((BMPInfo) imageInfo).compressionType);
+		} else if (imageInfo instanceof GIFInfo) {
+			GIFInfo gifInfo = (GIFInfo) imageInfo;
+			out.writeBoolean(gifInfo.formatVersion != null);
+			if (gifInfo.formatVersion != null) {
+				out.writeUTF(gifInfo.formatVersion);
+			}
+			out.writeBoolean(gifInfo.hasTransparency);
+		} else if (imageInfo instanceof PNGInfo) {
+			PNGInfo pngInfo = (PNGInfo) imageInfo;
+			writeEnum(out, pngInfo.colorType);
+			writeEnum(out, pngInfo.interlaceMethod);
+			out.writeBoolean(pngInfo.hasTransparencyChunk);
+			out.writeBoolean(pngInfo.isModifiedBitDepth);
+		} else if (imageInfo instanceof PSDInfo) {
+			PSDInfo psdInfo = (PSDInfo) imageInfo;
+			writeEnum(out, psdInfo.colorMode);
+			writeInteger(out, psdInfo.channelCount);
+		}
+	}
+
+	/**
+	 * Reads an {@link ImageInfo} written by {@link #write} from {@code in}.
+	 *
+	 * @param in the {@link DataInput} to read from.
+	 * @return The {@link ImageInfo}.
+	 * @throws IOException If an error occurs while reading or if the data is
+	 *             invalid.
+	 */
+	@Nonnull
+	public static ImageInfo read(@Nonnull DataInput in) throws IOException {
+		int type = in.readUnsignedByte();
+		int width = in.readInt();
+		int height = in.readInt();
+		ImageFormat format = readEnum(in, ImageFormat.class);
+		long size = in.readLong();
+		int bitDepth = in.readInt();
+		int numComponents = in.readInt();
+		ColorSpace colorSpace = readColorSpace(in);
+		ColorSpaceType colorSpaceType = readEnum(in, ColorSpaceType.class);
+		boolean imageIOSupport = in.readBoolean();
+
+		switch (type) {
+			case GENERIC:
+				return new GenericImageInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport
+				);
+			case BMP:
+				return new BMPInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport,
+					readEnum(in, BMPInfo.CompressionType.class)
+				);
+			case CUR:
+				return new CURInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport
+				);
+			case GIF:
+				String formatVersion = in.readBoolean() ? in.readUTF() : null;
+				return new GIFInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport,
+					formatVersion,
+					in.readBoolean()
+				);
+			case ICO:
+				return new ICOInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport
+				);
+			case PCX:
+				return new PCXInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport
+				);
+			case PNG:
+				PngColorType colorType = readEnum(in, PngColorType.class);
+				InterlaceMethod interlaceMethod = readEnum(in, InterlaceMethod.class);
+				boolean hasTransparencyChunk = in.readBoolean();
+				return new PNGInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport,
+					colorType,
+					interlaceMethod,
+					hasTransparencyChunk,
+					in.readBoolean()
+				);
+			case PSD:
+				ColorMode colorMode = readEnum(in, ColorMode.class);
+				return new PSDInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport,
+					colorMode,
+					readInteger(in)
+				);
+			case WEBP:
+				return new WebPInfo(
+					width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport
+				);
+			case JPEG:
+			case RAW:
+			case TIFF:
+				break;
+			default:
+				throw new IOException("Unknown image information type " + type);
+		}
+
+		PhotometricInterpretation photometricInterpretation = readEnum(in, PhotometricInterpretation.class);
+		ExifOrientation exifOrientation = readEnum(in, ExifOrientation.class);
+		ExifOrientation originalExifOrientation = readEnum(in, ExifOrientation.class);
+		Integer exifVersion = readInteger(in);
+		ExifCompression exifCompression = readEnum(in, ExifCompression.class);
+		ExifColorSpace exifColorSpace = readEnum(in, ExifColorSpace.class);
+		Boolean hasExifThumbnail = readBoolean(in);
+		if (type == RAW) {
+			return new RAWInfo(
+				width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport,
+				photometricInterpretation,
+				exifOrientation,
+				originalExifOrientation,
+				exifVersion,
+				exifCompression,
+				exifColorSpace,
+				Boolean.TRUE.equals(hasExifThumbnail)
+			);
+		}
+		if (type == TIFF) {
+			return new TIFFInfo(
+				width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport,
+				photometricInterpretation,
+				exifOrientation,
+				originalExifOrientation,
+				exifVersion,
+				exifCompression,
+				exifColorSpace,
+				Boolean.TRUE.equals(hasExifThumbnail)
+			);
+		}
+
+		Integer jfifVersion = readInteger(in);
+		JPEGInfo.CompressionType compressionType = readEnum(in, JPEGInfo.CompressionType.class);
+		Map<Integer, JpegComponent> components = null;
+		int componentCount = in.readShort();
+		if (componentCount >= 0) {
+			components = new HashMap<>(componentCount * 2);
+			for (int i = 0; i < componentCount; i++) {
+				int key = in.readInt();
+				components.put(key, new JpegComponent(in.readUnsignedByte(), in.readUnsignedByte(), in.readUnsignedByte()));
+			}
+		}
+		Boolean isTypicalHuffman = readBoolean(in);
+		JPEGSubsamplingNotation chromaSubsampling = null;
+		if (in.readBoolean()) {
+			chromaSubsampling = new JPEGSubsamplingNotation(in.readDouble(), in.readDouble(), in.readDouble());
+		}
+		return new JPEGInfo(
+			width, height, format, size, bitDepth, numComponents, colorSpace, colorSpaceType, imageIOSupport,
+			photometricInterpretation,
+			exifOrientation,
+			originalExifOrientation,
+			exifVersion,
+			exifCompression,
+			jfifVersion,
+			exifColorSpace,
+			compressionType,
+			components,
+			Boolean.TRUE.equals(hasExifThumbnail),
+			Boolean.TRUE.equals(isTypicalHuffman),
+			chromaSubsampling
+		);
+	}
+
+	private static int getType(ImageInfo imageInfo) throws IOException {
+		// Subclasses must be tested before their superclasses
+		if (imageInfo instanceof JPEGInfo) {
+			return JPEG;
+		} else if (imageInfo instanceof RAWInfo) {
+			return RAW;
+		} else if (imageInfo instanceof TIFFInfo) {
+			return TIFF;
+		} else if (imageInfo instanceof CURInfo) {
+			return CUR;
+		} else if (imageInfo instanceof ICOInfo) {
+			return ICO;
+		} else if (imageInfo instanceof BMPInfo) {
+			return BMP;
+		} else if (imageInfo instanceof GIFInfo) {
+			return GIF;
+		} else if (imageInfo instanceof PCXInfo) {
+			return PCX;
+		} else if (imageInfo instanceof PNGInfo) {
+			return PNG;
+		} else if (imageInfo instanceof PSDInfo) {
+			return PSD;
+		} else if (imageInfo instanceof WebPInfo) {
+			return WEBP;
+		} else if (imageInfo instanceof GenericImageInfo) {
+			return GENERIC;
+		}
+		throw new IOException("Unsupported image information type " + imageInfo.getClass().getName());
+	}
+
+	private static void writeColorSpace(DataOutput out, ColorSpace colorSpace) throws IOException {
+		if (colorSpace != null) {
+			for (int id : STANDARD_COLOR_SPACES) {
+				if (colorSpace == ColorSpace.getInstance(id)) {
+					out.writeByte(COLOR_SPACE_STANDARD);
+					out.writeInt(id);
+					return;
+				}
+			}
+			if (colorSpace instanceof ICC_ColorSpace) {
+				byte[] data = ((ICC_ColorSpace) colorSpace).getProfile().getData();
+				out.writeByte(COLOR_SPACE_ICC);
+				out.writeInt(data.length);
+				out.write(data);
+				return;
+			}
+		}
+		// Other ColorSpace implementations can't be stored
+		out.writeByte(COLOR_SPACE_NONE);
+	}
+
+	private static ColorSpace readColorSpace(DataInput in) throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+			case COLOR_SPACE_NONE:
+				return null;
+			case COLOR_SPACE_STANDARD:
+				try {
+					return ColorSpace.getInstance(in.readInt());
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Invalid color space: " + e.getMessage(), e);
+				}
+			case COLOR_SPACE_ICC:
+				byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+				try {
+					return new ICC_ColorSpace(ICC_Profile.getInstance(data));
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Invalid ICC profile: " + e.getMessage(), e);
+				}
+			default:
+				throw new IOException("Unknown color space type " + type);
+		}
+	}
+
+	private static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+		out.writeUTF(value == null ? "" : value.name());
+	}
+
+	private static <E extends Enum<E>> E readEnum(DataInput in, Class<E> enumClass) throws IOException {
+		String name = in.readUTF();
+		if (name.isEmpty()) {
+			return null;
+		}
+		try {
+			return Enum.valueOf(enumClass, name);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unknown " + enumClass.getSimpleName() + " \"" + name + "\"", e);
+		}
+	}
+
+	private static void writeInteger(DataOutput out, Integer value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeInt(value.intValue());
+		}
+	}
+
+	private static Integer readInteger(DataInput in) throws IOException {
+		return in.readBoolean() ? Integer.valueOf(in.readInt()) : null;
+	}
+
+	private static void writeBoolean(DataOutput out, Boolean value) throws IOException {
+		out.writeByte(value == null ? -1 : value.booleanValue() ? 1 : 0);
+	}
+
+	private static Boolean readBoolean(DataInput in) throws IOException {
+		byte value = in.readByte();
+		return value < 0 ? null : Boolean.valueOf(value != 0);
+	}
+}
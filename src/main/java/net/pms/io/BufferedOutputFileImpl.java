@@ -87,6 +87,12 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 	private long packetpos = 0;
 	private final RendererConfiguration renderer;
 
+	/**
+	 * The {@link OutputParams} holding the number of bytes to buffer before
+	 * stalling until an input stream is attached.
+	 */
+	private final OutputParams params;
+
 	/**
 	 * Try to increase the size of a memory buffer, while retaining its
 	 * contents. The provided new size is considered to be a request, it is
@@ -202,6 +208,7 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 		this.shiftScr = params.shift_scr;
 		this.hidebuffer = params.hidebuffer;
 		this.cleanup = params.cleanup;
+		this.params = params;
 
 		if (maxMemorySize > INITIAL_BUFFER_SIZE) {
 			// Try to limit memory usage a bit.
@@ -251,6 +258,8 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 
 	@Override
 	public InputStream getInputStream(long newReadPosition) {
+		// A pre-rolled transcode is free to continue once it has been adopted
+		params.preRollLimit = 0;
 		if (attachedThread != null) {
 			attachedThread.setReadyToStop(false);
 		}
@@ -306,7 +315,10 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 
 		//LOGGER.trace("write(" + b.length + ", " + off + ", " + len + "), writeCount = " + writeCount + ", readCount = " + (input != null ? input.getReadCount() : "null"));
 
-		while ((input != null && (writeCount - input.getReadCount() > bufferOverflowWarning)) || (input == null && writeCount > bufferOverflowWarning)) {
+		while (
+			(input != null && (writeCount - input.getReadCount() > bufferOverflowWarning)) ||
+			(input == null && (writeCount > bufferOverflowWarning || (params.preRollLimit > 0 && writeCount >= params.preRollLimit)))
+		) {
 			try {
 				Thread.sleep(CHECK_INTERVAL);
 			} catch (InterruptedException e) {
@@ -0,0 +1,110 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A simple pool of equally sized {@link ByteBuffer}s, used to avoid
+ * allocating a new large buffer for every relay or stream transformation.
+ * <p>
+ * Direct and heap buffers are pooled separately. At most {@code maxPooled}
+ * buffers of each kind are retained, surplus buffers are left to the garbage
+ * collector when they are released.
+ */
+@ThreadSafe
+public class ByteBufferPool {
+
+	/** The shared pool used for IPC pipe relays */
+	public static final ByteBufferPool RELAY_POOL = new ByteBufferPool(512 * 1024, 8);
+
+	private final int bufferSize;
+	private final int maxPooled;
+	private final ConcurrentLinkedQueue<ByteBuffer> directBuffers = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<ByteBuffer> heapBuffers = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger directCount = new AtomicInteger();
+	private final AtomicInteger heapCount = new AtomicInteger();
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param bufferSize the capacity of the pooled buffers.
+	 * @param maxPooled the maximum number of buffers of each kind to retain.
+	 */
+	public ByteBufferPool(int bufferSize, int maxPooled) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("bufferSize must be positive");
+		}
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * @return The capacity of the pooled buffers.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Returns a cleared buffer from the pool, or a newly allocated buffer if
+	 * the pool is empty.
+	 *
+	 * @param direct {@code true} for a direct buffer, {@code false} for a
+	 *            heap buffer with an accessible backing array.
+	 * @return The {@link ByteBuffer}.
+	 */
+	@Nonnull
+	public ByteBuffer acquire(boolean direct) {
+		ByteBuffer buffer = direct ? directBuffers.poll() : heapBuffers.poll();
+		if (buffer == null) {
+			return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		}
+		(direct ? directCount : heapCount).decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool. Buffers of a different size than this
+	 * pool's are ignored.
+	 *
+	 * @param buffer the {@link ByteBuffer} to release.
+	 */
+	public void release(@Nullable ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() != bufferSize) {
+			return;
+		}
+		AtomicInteger count = buffer.isDirect() ? directCount : heapCount;
+		if (count.incrementAndGet() > maxPooled) {
+			count.decrementAndGet();
+			return;
+		}
+		if (buffer.isDirect()) {
+			directBuffers.add(buffer);
+		} else {
+			heapBuffers.add(buffer);
+		}
+	}
+}
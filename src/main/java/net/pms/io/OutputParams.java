@@ -26,6 +26,8 @@ import net.pms.configuration.RendererConfiguration;
 import net.pms.dlna.DLNAMediaAudio;
 import net.pms.dlna.DLNAMediaSubtitle;
 import net.pms.dlna.IPushOutput;
+import net.pms.service.TranscodeScheduler;
+import net.pms.service.TranscodeScheduler.TranscodeSlot;
 
 public class OutputParams {
 	@Deprecated
@@ -63,6 +65,18 @@ public class OutputParams {
 	public boolean shift_scr;
 	public boolean cleanup;
 
+	/**
+	 * The maximum number of bytes to buffer before an input stream is
+	 * attached, or {@code 0} for no limit. Used for pre-rolled transcodes.
+	 */
+	public volatile long preRollLimit;
+
+	/**
+	 * The {@link TranscodeSlot} admitted by the {@link TranscodeScheduler} for
+	 * this process, released when the process terminates.
+	 */
+	public volatile TranscodeSlot transcodeSlot;
+
 	public OutputParams(PmsConfiguration configuration) {
 		if (configuration != null) {
 			waitbeforestart = configuration.getVideoTranscodeStartDelay() * 1000;
@@ -116,6 +130,7 @@ public class OutputParams {
 			", outputByteArrayStreamBufferSize= " + outputByteArrayStreamBufferSize +
 			", noexitcheck=" + noexitcheck +
 			", output_pipes=" + Arrays.toString(output_pipes) +
+			", preRollLimit=" + preRollLimit +
 			", secondread_minsize=" + secondread_minsize +
 			", shift_scr=" + shift_scr +
 			", sid=" + sid +
@@ -123,6 +138,7 @@ public class OutputParams {
 			", timeend=" + timeend +
 			", timeseek=" + timeseek +
 			", toFrame=" + toFrame +
+			", transcodeSlot=" + transcodeSlot +
 			", waitbeforestart=" + waitbeforestart +
 			", workDir=" + workDir +
 			", env=" + env + "]";
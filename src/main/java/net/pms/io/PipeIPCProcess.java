@@ -20,23 +20,38 @@ package net.pms.io;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import com.sun.jna.Platform;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import net.pms.util.DTSAudioOutputStream;
-import net.pms.util.H264AnnexBInputStream;
-import net.pms.util.IEC61937AudioOutputStream;
-import net.pms.util.PCMAudioOutputStream;
+import java.util.concurrent.TimeUnit;
+import net.pms.io.pipeline.ByteBufferSink;
+import net.pms.io.pipeline.OutputStreamSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class PipeIPCProcess extends Thread implements ProcessWrapper {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PipeIPCProcess.class);
+
+	/** The maximum time in milliseconds to wait for the pipes to be created */
+	private static final long PIPE_READY_TIMEOUT = 5000;
+
+	/** The maximum number of bytes to transfer per {@link FileChannel#transferTo} call */
+	private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
 	private final PipeProcess mkin;
 	private final PipeProcess mkout;
 	private StreamModifier modifier;
+	private volatile long bytesTransferred;
+	private volatile long startTime;
+	private volatile long endTime;
 
 	public StreamModifier getModifier() {
 		return modifier;
@@ -53,37 +68,34 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 
 	@Override
 	public void run() {
-		byte[] b = new byte[512 * 1024];
-		int n = -1;
 		InputStream in = null;
 		OutputStream out = null;
-		OutputStream debug = null;
+		ByteBuffer buffer = null;
+		startTime = System.nanoTime();
 
 		try {
 			in = mkin.getInputStream();
 			out = mkout.getOutputStream();
 
-			if (modifier != null && modifier.isH264AnnexB()) {
-				in = new H264AnnexBInputStream(in, modifier.getHeader());
-			} else if (modifier != null && modifier.isEncodedAudioPassthrough()) {
-				out = new IEC61937AudioOutputStream(new PCMAudioOutputStream(out, modifier.getNbChannels(), modifier.getSampleFrequency(), modifier.getBitsPerSample()));
-			} else if (modifier != null && modifier.isDtsEmbed()) {
-				out = new DTSAudioOutputStream(new PCMAudioOutputStream(out, modifier.getNbChannels(), modifier.getSampleFrequency(), modifier.getBitsPerSample()));
-			} else if (modifier != null && modifier.isPcm()) {
-				out = new PCMAudioOutputStream(out, modifier.getNbChannels(), modifier.getSampleFrequency(), modifier.getBitsPerSample());
-			}
+			ByteBufferSink sink = OutputStreamSink.create(out);
+			ByteBufferSink pipeline = modifier == null ? sink : modifier.createPipeline(sink);
 
 			if (modifier != null && modifier.getHeader() != null && !modifier.isH264AnnexB()) {
-				out.write(modifier.getHeader());
+				pipeline.write(ByteBuffer.wrap(modifier.getHeader()));
 			}
 
-			while ((n = in.read(b)) > -1) {
-				out.write(b, 0, n);
-
-				if (debug != null) {
-					debug.write(b, 0, n);
+			if (modifier == null && in instanceof FileInputStream) {
+				FileChannel source = ((FileInputStream) in).getChannel();
+				if (!(out instanceof FileOutputStream) || !transfer(source, ((FileOutputStream) out).getChannel())) {
+					// Read directly from the channel without copying to the heap
+					buffer = ByteBufferPool.RELAY_POOL.acquire(true);
+					relay(source, pipeline, buffer);
 				}
+			} else {
+				buffer = ByteBufferPool.RELAY_POOL.acquire(false);
+				relay(in, pipeline, buffer);
 			}
+			pipeline.close();
 		} catch (InterruptedIOException e) {
 			if (LOGGER.isDebugEnabled()) {
 				if (isNotBlank(e.getMessage())) {
@@ -93,10 +105,14 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 				}
 				LOGGER.trace("", e);
 			}
+		} catch (ClosedByInterruptException e) {
+			LOGGER.debug("IPC pipe interrupted after writing {} bytes, shutting down...", bytesTransferred);
+			LOGGER.trace("", e);
 		} catch (IOException e) {
 			LOGGER.warn("An error occurred duing IPC piping: {}", e.getMessage());
 			LOGGER.trace("", e);
 		} finally {
+			endTime = System.nanoTime();
 			try {
 				// in and out may not have been initialized:
 				// http://ps3mediaserver.org/forum/viewtopic.php?f=6&t=9885&view=unread#p45142
@@ -107,15 +123,119 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 				if (out != null) {
 					out.close();
 				}
-
-				if (debug != null) {
-					debug.close();
-				}
 			} catch (IOException e) {
 				LOGGER.debug("Error closing IPC pipe streams: {}" + e.getMessage());
 				LOGGER.trace("", e);
 			}
+			ByteBufferPool.RELAY_POOL.release(buffer);
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(
+					"IPC pipe relayed {} bytes in {} ms ({} kB/s)",
+					bytesTransferred,
+					TimeUnit.NANOSECONDS.toMillis(endTime - startTime),
+					getThroughput() / 1024
+				);
+			}
+		}
+	}
+
+	/**
+	 * Transfers everything from {@code source} to {@code target} with
+	 * {@link FileChannel#transferTo}, so that the data can be copied by the
+	 * operating system. Nothing is transferred if {@code source} can't be
+	 * positioned, which is the case for FIFOs: depending on the JVM,
+	 * {@link FileChannel#transferTo} then fails or transfers nothing.
+	 *
+	 * @param source the {@link FileChannel} to read from.
+	 * @param target the {@link WritableByteChannel} to write to.
+	 * @return {@code true} if the data was transferred, {@code false} if
+	 *         nothing was transferred and the data must be relayed instead.
+	 * @throws IOException If an error occurs after the transfer has started.
+	 */
+	protected boolean transfer(FileChannel source, WritableByteChannel target) throws IOException {
+		long position = 0;
+		long n;
+		try {
+			n = source.transferTo(position, TRANSFER_SIZE, target);
+		} catch (ClosedByInterruptException e) {
+			throw e;
+		} catch (IOException e) {
+			LOGGER.trace("Can't transfer from the IPC pipe, relaying it instead: {}", e.getMessage());
+			return false;
+		}
+		if (n <= 0) {
+			return false;
 		}
+		while (n > 0) {
+			position += n;
+			bytesTransferred += n;
+			n = source.transferTo(position, TRANSFER_SIZE, target);
+		}
+		return true;
+	}
+
+	/**
+	 * Relays everything from {@code source} to {@code sink} using
+	 * {@code buffer} until {@code source} reaches end-of-stream. When
+	 * {@code buffer} is direct, the data is never copied to the Java heap.
+	 *
+	 * @param source the {@link ReadableByteChannel} to read from.
+	 * @param sink the {@link ByteBufferSink} to write to.
+	 * @param buffer the {@link ByteBuffer} to use.
+	 * @throws IOException If an error occurs during the relay.
+	 */
+	protected void relay(ReadableByteChannel source, ByteBufferSink sink, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		while (source.read(buffer) > -1) {
+			buffer.flip();
+			bytesTransferred += buffer.remaining();
+			sink.write(buffer);
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Relays everything from {@code source} to {@code sink} using the array
+	 * of {@code buffer} until {@code source} reaches end-of-stream.
+	 *
+	 * @param source the {@link InputStream} to read from.
+	 * @param sink the {@link ByteBufferSink} to write to.
+	 * @param buffer the heap {@link ByteBuffer} to use.
+	 * @throws IOException If an error occurs during the relay.
+	 */
+	protected void relay(InputStream source, ByteBufferSink sink, ByteBuffer buffer) throws IOException {
+		byte[] b = buffer.array();
+		int n;
+		while ((n = source.read(b)) > -1) {
+			buffer.clear();
+			buffer.limit(n);
+			bytesTransferred += n;
+			sink.write(buffer);
+		}
+	}
+
+	/**
+	 * @return The number of bytes relayed so far.
+	 */
+	public long getBytesTransferred() {
+		return bytesTransferred;
+	}
+
+	/**
+	 * @return The average throughput of the relay in bytes per second, or
+	 *         {@code 0} if it hasn't started.
+	 */
+	public long getThroughput() {
+		long start = startTime;
+		if (start == 0) {
+			return 0;
+		}
+		long end = endTime;
+		long elapsed = (end == 0 ? System.nanoTime() : end) - start;
+		if (elapsed <= 0) {
+			return 0;
+		}
+		return (long) (bytesTransferred * 1000000000.0 / elapsed);
 	}
 
 	public String getInputPipe() {
@@ -163,13 +283,7 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 		if (!Platform.isWindows()) {
 			mkin.getPipeProcess().runInNewThread();
 			mkout.getPipeProcess().runInNewThread();
-
-			// Allow the threads some time to do their work before
-			// starting the main thread
-			try {
-				Thread.sleep(150);
-			} catch (InterruptedException e) {
-			}
+			awaitPipes();
 		}
 
 		start();
@@ -180,18 +294,26 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 		if (!Platform.isWindows()) {
 			mkin.getPipeProcess().runInNewThread();
 			mkout.getPipeProcess().runInNewThread();
-
-			// Allow the threads some time to do their work before
-			// running the main thread
-			try {
-				Thread.sleep(150);
-			} catch (InterruptedException e) {
-			}
+			awaitPipes();
 		}
 
 		run();
 	}
 
+	/**
+	 * Waits until both pipes have been created, instead of sleeping for a
+	 * fixed amount of time.
+	 */
+	private void awaitPipes() {
+		try {
+			if (!mkin.awaitReady(PIPE_READY_TIMEOUT) || !mkout.awaitReady(PIPE_READY_TIMEOUT)) {
+				LOGGER.warn("Timed out waiting for the IPC pipes to be created");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	@Override
 	public boolean isReadyToStop() {
 		return false;
@@ -20,6 +20,7 @@ package net.pms.io;
 
 import com.sun.jna.Platform;
 import java.io.*;
+import java.util.concurrent.TimeUnit;
 import net.pms.PMS;
 import net.pms.configuration.PmsConfiguration;
 import org.slf4j.Logger;
@@ -35,6 +36,7 @@ public class PipeProcess {
 	private PmsConfiguration configuration;
 
 	private String linuxPipeName;
+	private PosixNamedPipe fifo;
 	private WindowsNamedPipe mk;
 	private boolean forcereconnect;
 
@@ -59,7 +61,8 @@ public class PipeProcess {
 		if (Platform.isWindows()) {
 			mk = new WindowsNamedPipe(pipeName, forcereconnect, in, params);
 		} else {
-			linuxPipeName = getPipeName(pipeName);
+			fifo = new PosixNamedPipe(pipeName);
+			linuxPipeName = fifo.getPipeName();
 		}
 	}
 
@@ -67,16 +70,6 @@ public class PipeProcess {
 		this(pipeName, null, extras);
 	}
 
-	private static String getPipeName(String pipeName) {
-		try {
-			return PMS.getConfiguration().getTempFolder() + "/" + pipeName;
-		} catch (IOException e) {
-			LOGGER.error("Pipe may not be in temporary directory: {}", e.getMessage());
-			LOGGER.trace("", e);
-			return pipeName;
-		}
-	}
-
 	public String getInputPipe() {
 		if (!Platform.isWindows()) {
 			return linuxPipeName;
@@ -93,24 +86,29 @@ public class PipeProcess {
 
 	public ProcessWrapper getPipeProcess() {
 		if (!Platform.isWindows()) {
-			OutputParams mkfifo_vid_params = new OutputParams(configuration);
-			mkfifo_vid_params.maxBufferSize = 0.1;
-			mkfifo_vid_params.log = true;
-			String cmdArray[];
-
-			if (Platform.isMac() || Platform.isFreeBSD() || Platform.isSolaris()) {
-				cmdArray = new String[] {"mkfifo", "-m", "777", linuxPipeName};
-			} else {
-				cmdArray = new String[] {"mkfifo", "--mode=777", linuxPipeName};
-			}
-
-			ProcessWrapperImpl mkfifo_vid_process = new ProcessWrapperImpl(cmdArray, mkfifo_vid_params);
-			return mkfifo_vid_process;
+			return fifo;
 		}
 
 		return mk;
 	}
 
+	/**
+	 * Waits until the pipe has been created. Windows named pipes are created
+	 * in the constructor and are always ready.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds.
+	 * @return {@code true} if the pipe is ready, {@code false} if the timeout
+	 *         expired.
+	 * @throws InterruptedException If the current thread is interrupted while
+	 *             waiting.
+	 */
+	public boolean awaitReady(long timeout) throws InterruptedException {
+		if (!Platform.isWindows()) {
+			return fifo.awaitReady(timeout, TimeUnit.MILLISECONDS);
+		}
+		return true;
+	}
+
 	public void deleteLater() {
 		if (!Platform.isWindows()) {
 			File f = new File(linuxPipeName);
@@ -0,0 +1,331 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import net.pms.PMS;
+import net.pms.platform.posix.NixCLibrary;
+import net.pms.util.ProcessUtil;
+
+/**
+ * A POSIX FIFO (named pipe) that is created and removed in-process using
+ * {@link NixCLibrary#mkfifo} and {@link NixCLibrary#unlink} instead of by
+ * spawning {@code mkfifo} processes. The {@code mkfifo} command is only used
+ * as a fallback if the native call fails.
+ * <p>
+ * A small pool of pre-created FIFOs is kept in the temporary folder, so that
+ * most pipes are ready the moment they are requested by renaming a pooled
+ * FIFO. The pool is refilled in the background and the FIFOs left in it are
+ * removed by {@link #closePool()} at shutdown. The FIFO is removed when
+ * {@link #stopProcess()} is called.
+ * <p>
+ * This class implements {@link ProcessWrapper} so that it can be used
+ * wherever the {@code mkfifo} process was used before: "running" it creates
+ * the FIFO if it doesn't already exist, and "stopping" it removes it.
+ */
+@ThreadSafe
+public class PosixNamedPipe implements ProcessWrapper {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PosixNamedPipe.class);
+
+	/** The number of pre-created FIFOs to keep in the pool */
+	protected static final int POOL_SIZE = 4;
+
+	/** The FIFO permissions, {@code 0777} */
+	protected static final int FIFO_MODE = 0777;
+
+	private static final ConcurrentLinkedQueue<String> POOL = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+	private static final AtomicBoolean POOL_REFILLING = new AtomicBoolean();
+	private static volatile boolean poolClosed;
+
+	private final String path;
+	private final CountDownLatch ready = new CountDownLatch(1);
+	private final AtomicBoolean created = new AtomicBoolean();
+	private volatile boolean destroyed;
+
+	/**
+	 * Creates a new instance for a FIFO with the specified name in the
+	 * temporary folder. If a pre-created FIFO is available in the pool, it is
+	 * renamed to {@code pipeName} and is ready immediately, otherwise the FIFO
+	 * is created when this is "run".
+	 *
+	 * @param pipeName the name of the FIFO.
+	 */
+	public PosixNamedPipe(@Nonnull String pipeName) {
+		path = getPipePath(pipeName);
+		String pooled = POOL.poll();
+		if (pooled != null) {
+			// Renaming keeps the requested name, which some encoders use to detect the format
+			File target = new File(path);
+			if (!target.exists() && new File(pooled).renameTo(target)) {
+				created.set(true);
+				ready.countDown();
+				LOGGER.trace("Using pre-created FIFO \"{}\" for \"{}\"", pooled, path);
+			} else {
+				removeFifo(pooled);
+			}
+		}
+		refillPool();
+	}
+
+	/**
+	 * @return The path of this FIFO.
+	 */
+	public String getPipeName() {
+		return path;
+	}
+
+	/**
+	 * @return {@code true} if this FIFO has been created and is ready to be
+	 *         opened, {@code false} otherwise.
+	 */
+	public boolean isReady() {
+		return ready.getCount() == 0;
+	}
+
+	/**
+	 * Waits until this FIFO has been created or the timeout expires.
+	 *
+	 * @param timeout the maximum time to wait.
+	 * @param unit the {@link TimeUnit} of {@code timeout}.
+	 * @return {@code true} if the FIFO is ready, {@code false} if the timeout
+	 *         expired.
+	 * @throws InterruptedException If the current thread is interrupted while
+	 *             waiting.
+	 */
+	public boolean awaitReady(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+		return ready.await(timeout, unit);
+	}
+
+	/**
+	 * Creates the FIFO if it hasn't been created already.
+	 */
+	protected void create() {
+		if (created.compareAndSet(false, true)) {
+			if (createFifo(path)) {
+				LOGGER.trace("Created FIFO \"{}\"", path);
+			} else {
+				LOGGER.error("Failed to create FIFO \"{}\"", path);
+			}
+			ready.countDown();
+		}
+	}
+
+	@Override
+	public void runInNewThread() {
+		// Creating a FIFO is fast enough to not warrant a new thread
+		create();
+	}
+
+	@Override
+	public void runInSameThread() {
+		create();
+	}
+
+	@Override
+	public void stopProcess() {
+		if (destroyed) {
+			return;
+		}
+		destroyed = true;
+		if (created.get()) {
+			removeFifo(path);
+		}
+	}
+
+	@Override
+	public boolean isDestroyed() {
+		return destroyed;
+	}
+
+	@Override
+	public InputStream getInputStream(long seek) throws IOException {
+		return null;
+	}
+
+	@Override
+	public List<String> getResults() {
+		return null;
+	}
+
+	@Override
+	public boolean isReadyToStop() {
+		return false;
+	}
+
+	@Override
+	public void setReadyToStop(boolean nullable) {
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [path=" + path + "]";
+	}
+
+	/**
+	 * Resolves the path of the FIFO in the temporary folder.
+	 *
+	 * @param pipeName the name of the pipe.
+	 * @return The path of the FIFO.
+	 */
+	protected static String getPipePath(String pipeName) {
+		try {
+			return PMS.getConfiguration().getTempFolder() + "/" + pipeName;
+		} catch (IOException e) {
+			LOGGER.error("Pipe may not be in temporary directory: {}", e.getMessage());
+			LOGGER.trace("", e);
+			return pipeName;
+		}
+	}
+
+	/**
+	 * Creates a FIFO at the specified path, first using the native
+	 * {@code mkfifo} function and then the {@code mkfifo} command if that
+	 * fails.
+	 *
+	 * @param path the path of the FIFO to create.
+	 * @return {@code true} if the FIFO was created, {@code false} otherwise.
+	 */
+	protected static boolean createFifo(@Nonnull String path) {
+		try {
+			NixCLibrary library = NixCLibrary.INSTANCE;
+			if (library.mkfifo(path, FIFO_MODE) == 0) {
+				// Bypass the umask like "mkfifo --mode=777" does
+				library.chmod(path, FIFO_MODE);
+				return true;
+			}
+			LOGGER.debug("Native mkfifo failed for \"{}\" with errno {}, using the mkfifo command", path, Native.getLastError());
+		} catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+			LOGGER.debug("Native mkfifo is unavailable, using the mkfifo command: {}", e.getMessage());
+			LOGGER.trace("", e);
+		}
+
+		if (Platform.isMac() || Platform.isFreeBSD() || Platform.isSolaris()) {
+			ProcessUtil.run("mkfifo", "-m", "777", path);
+		} else {
+			ProcessUtil.run("mkfifo", "--mode=777", path);
+		}
+		return new File(path).exists();
+	}
+
+	/**
+	 * Removes the FIFO at the specified path.
+	 *
+	 * @param path the path of the FIFO to remove.
+	 */
+	protected static void removeFifo(@Nonnull String path) {
+		try {
+			if (NixCLibrary.INSTANCE.unlink(path) == 0) {
+				LOGGER.trace("Removed FIFO \"{}\"", path);
+				return;
+			}
+		} catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+			LOGGER.trace("Native unlink is unavailable: {}", e.getMessage());
+		}
+		File file = new File(path);
+		if (file.exists() && !file.delete()) {
+			LOGGER.debug("Failed to remove FIFO \"{}\"", path);
+		}
+	}
+
+	/**
+	 * Removes the pre-created FIFOs in the pool and stops refilling it. Pipes
+	 * that are created after this are created when they are "run".
+	 */
+	public static void closePool() {
+		poolClosed = true;
+		int count = 0;
+		for (String pooledPath = POOL.poll(); pooledPath != null; pooledPath = POOL.poll()) {
+			removeFifo(pooledPath);
+			count++;
+		}
+		if (count > 0) {
+			LOGGER.debug("Removed {} pre-created FIFOs", count);
+		}
+	}
+
+	/**
+	 * Refills the pool of pre-created FIFOs on the refill thread unless a
+	 * refill is already in progress.
+	 */
+	protected static void refillPool() {
+		if (poolClosed || POOL.size() >= POOL_SIZE || !POOL_REFILLING.compareAndSet(false, true)) {
+			return;
+		}
+		RefillExecutorHolder.EXECUTOR.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (!poolClosed && POOL.size() < POOL_SIZE) {
+						String pooledPath = getPipePath("dms-fifo-" + POOL_COUNTER.incrementAndGet());
+						File pooledFile = new File(pooledPath);
+						if (pooledFile.exists() && !pooledFile.delete()) {
+							continue;
+						}
+						if (!createFifo(pooledPath)) {
+							LOGGER.debug("Unable to pre-create FIFO \"{}\", giving up refilling the pool", pooledPath);
+							break;
+						}
+						POOL.add(pooledPath);
+						if (poolClosed && POOL.remove(pooledPath)) {
+							// The pool was closed while this FIFO was created
+							removeFifo(pooledPath);
+						}
+					}
+				} finally {
+					POOL_REFILLING.set(false);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Holds the single daemon thread that refills the pool, which is created
+	 * when the pool is first refilled.
+	 */
+	private static class RefillExecutorHolder {
+		private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "FIFO pool refill");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
@@ -292,6 +292,9 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 				}
 			}
 			PMS.get().currentProcesses.remove(process);
+			if (params.transcodeSlot != null) {
+				params.transcodeSlot.release();
+			}
 		}
 	}
 
@@ -387,6 +390,9 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 			if (stdoutConsumer != null && stdoutConsumer.getBuffer() != null) {
 				stdoutConsumer.getBuffer().reset();
 			}
+			if (params.transcodeSlot != null) {
+				params.transcodeSlot.release();
+			}
 		}
 	}
 
@@ -1,5 +1,12 @@
 package net.pms.io;
 
+import javax.annotation.Nonnull;
+import net.pms.io.pipeline.ByteBufferSink;
+import net.pms.io.pipeline.DTSFramingStage;
+import net.pms.io.pipeline.H264AnnexBStage;
+import net.pms.io.pipeline.IEC61937FramingStage;
+import net.pms.io.pipeline.PCMFramingStage;
+
 public class StreamModifier {
 	private byte header[];
 	private boolean h264AnnexB;
@@ -74,4 +81,31 @@ public class StreamModifier {
 	public void setBitsPerSample(int bitsPerSample) {
 		this.bitsPerSample = bitsPerSample;
 	}
+
+	/**
+	 * Creates a pipeline of {@link net.pms.io.pipeline.ByteBufferStage}s that
+	 * performs the transformations specified by this {@link StreamModifier}
+	 * and writes the result to {@code sink}. The header, if any, isn't
+	 * written by the pipeline unless {@link #isH264AnnexB()} is {@code true}.
+	 *
+	 * @param sink the terminal {@link ByteBufferSink}.
+	 * @return The first {@link ByteBufferSink} of the pipeline, which is
+	 *         {@code sink} itself if no transformation is needed.
+	 */
+	@Nonnull
+	public ByteBufferSink createPipeline(@Nonnull ByteBufferSink sink) {
+		if (h264AnnexB) {
+			return new H264AnnexBStage(sink, header);
+		}
+		if (spdifembed) {
+			return new IEC61937FramingStage(new PCMFramingStage(sink, nbChannels, sampleFrequency, bitsPerSample));
+		}
+		if (dtsEmbed) {
+			return new DTSFramingStage(new PCMFramingStage(sink, nbChannels, sampleFrequency, bitsPerSample));
+		}
+		if (pcm) {
+			return new PCMFramingStage(sink, nbChannels, sampleFrequency, bitsPerSample);
+		}
+		return sink;
+	}
 }
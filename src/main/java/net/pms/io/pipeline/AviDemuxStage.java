@@ -0,0 +1,382 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sink that demultiplexes an AVI (RIFF) stream, writing the chunks of the
+ * first video stream to one {@link ByteBufferSink} and the chunks of the
+ * selected audio stream to another. This is the {@link ByteBuffer} equivalent
+ * of the parser in {@link net.pms.encoders.AviDemuxerInputStream}, but it is
+ * driven by the thread writing to it instead of running its own.
+ * <p>
+ * The parser is incremental, so the stream can be written in buffers of any
+ * size. The chunk payloads are passed on as slices of the incoming buffers,
+ * without being copied. Only the {@code hdrl} list is collected in an array
+ * so that the stream headers can be parsed.
+ */
+public class AviDemuxStage implements ByteBufferSink {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AviDemuxStage.class);
+
+	private static final int STATE_RIFF = 0;
+	private static final int STATE_CHUNK = 1;
+	private static final int STATE_LIST = 2;
+	private static final int STATE_HEADER_LIST = 3;
+	private static final int STATE_SKIP = 4;
+	private static final int STATE_VIDEO = 5;
+	private static final int STATE_AUDIO = 6;
+
+	private final ByteBuffer fields = ByteBuffer.allocate(12);
+	private final ByteBufferSink video;
+	private final int audioTrack;
+	private ByteBufferSink audio;
+	private int state = STATE_RIFF;
+	private boolean movi;
+	private int listLength;
+	private byte[] headerList;
+	private int headerListFill;
+	private long skipRemaining;
+	private int chunkRemaining;
+	private boolean chunkPadded;
+	private int videoStream = -1;
+	private int audioStream = -1;
+	private long videoSize;
+	private long audioSize;
+
+	/**
+	 * Creates a new demuxer for the first audio stream.
+	 *
+	 * @param video the {@link ByteBufferSink} for the video stream.
+	 * @param audio the {@link ByteBufferSink} for the audio stream.
+	 */
+	public AviDemuxStage(@Nonnull ByteBufferSink video, @Nonnull ByteBufferSink audio) {
+		this(video, audio, -1);
+	}
+
+	/**
+	 * Creates a new demuxer for the specified audio stream.
+	 *
+	 * @param video the {@link ByteBufferSink} for the video stream.
+	 * @param audio the {@link ByteBufferSink} for the audio stream.
+	 * @param audioTrack the index of the audio stream to demultiplex among
+	 *            the audio streams, or {@code -1} for the first. The first
+	 *            audio stream is used if the index doesn't exist.
+	 */
+	public AviDemuxStage(@Nonnull ByteBufferSink video, @Nonnull ByteBufferSink audio, int audioTrack) {
+		if (video == null || audio == null) {
+			throw new IllegalArgumentException("Sinks cannot be null");
+		}
+		this.video = video;
+		this.audio = audio;
+		this.audioTrack = audioTrack;
+	}
+
+	/**
+	 * Called when the format of the audio stream has been parsed. This can be
+	 * overridden to insert stages in front of the audio
+	 * {@link ByteBufferSink}, the default implementation returns
+	 * {@code audio} unchanged.
+	 *
+	 * @param audio the current audio {@link ByteBufferSink}.
+	 * @param nbChannels the number of audio channels.
+	 * @param bitsPerSample the number of bits per sample.
+	 * @return The {@link ByteBufferSink} to write the audio stream to.
+	 */
+	@Nonnull
+	protected ByteBufferSink createAudioSink(@Nonnull ByteBufferSink audio, int nbChannels, int bitsPerSample) {
+		return audio;
+	}
+
+	/**
+	 * @return The number of video bytes written so far.
+	 */
+	public long getVideoSize() {
+		return videoSize;
+	}
+
+	/**
+	 * @return The number of audio bytes written so far.
+	 */
+	public long getAudioSize() {
+		return audioSize;
+	}
+
+	@Override
+	public void write(@Nonnull ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			switch (state) {
+				case STATE_RIFF:
+					if (fill(source)) {
+						if (!isFourCC(0, "RIFF") || !isFourCC(8, "AVI ")) {
+							throw new IOException("Not AVI file");
+						}
+						expectChunk();
+					}
+					break;
+				case STATE_CHUNK:
+					if (fill(source)) {
+						chunk();
+					}
+					break;
+				case STATE_LIST:
+					if (fill(source)) {
+						list();
+					}
+					break;
+				case STATE_HEADER_LIST:
+					int length = Math.min(headerList.length - headerListFill, source.remaining());
+					source.get(headerList, headerListFill, length);
+					headerListFill += length;
+					if (headerListFill == headerList.length) {
+						parseHeaderList();
+						expectChunk();
+					}
+					break;
+				case STATE_SKIP:
+					int skip = (int) Math.min(skipRemaining, source.remaining());
+					source.position(source.position() + skip);
+					skipRemaining -= skip;
+					if (skipRemaining == 0) {
+						expectChunk();
+					}
+					break;
+				case STATE_VIDEO:
+					videoSize += forward(source, video);
+					break;
+				case STATE_AUDIO:
+					audioSize += forward(source, audio);
+					break;
+				default:
+					throw new IllegalStateException("Invalid state " + state);
+			}
+		}
+	}
+
+	/**
+	 * Collects bytes from {@code source} until the field buffer is full.
+	 *
+	 * @param source the {@link ByteBuffer} to read from.
+	 * @return {@code true} if the field buffer is full, {@code false} if more
+	 *         data is needed.
+	 */
+	private boolean fill(ByteBuffer source) {
+		while (fields.hasRemaining() && source.hasRemaining()) {
+			fields.put(source.get());
+		}
+		return !fields.hasRemaining();
+	}
+
+	private void expect(int newState, int length) {
+		state = newState;
+		fields.clear();
+		fields.limit(length);
+	}
+
+	private void expectChunk() {
+		expect(STATE_CHUNK, 8);
+	}
+
+	private void skip(long length) {
+		if (length <= 0) {
+			expectChunk();
+		} else {
+			skipRemaining = length;
+			state = STATE_SKIP;
+		}
+	}
+
+	private int forward(ByteBuffer source, ByteBufferSink sink) throws IOException {
+		int length = Math.min(chunkRemaining, source.remaining());
+		int limit = source.limit();
+		source.limit(source.position() + length);
+		sink.write(source);
+		source.limit(limit);
+		chunkRemaining -= length;
+		if (chunkRemaining == 0) {
+			skip(chunkPadded ? 1 : 0);
+		}
+		return length;
+	}
+
+	private void chunk() throws IOException {
+		int size = readLE32(fields.array(), 4);
+		if (size < 0) {
+			throw new IOException("Invalid AVI chunk size " + size);
+		}
+		if (isFourCC(0, "LIST") || isFourCC(0, "RIFF")) {
+			listLength = size - 4;
+			expect(STATE_LIST, 4);
+		} else if (movi && isStreamChunk(videoStream, 'd', 'b', 'c')) {
+			startPayload(STATE_VIDEO, size);
+		} else if (movi && isStreamChunk(audioStream, 'w', 'b', 'b')) {
+			startPayload(STATE_AUDIO, size);
+		} else {
+			skip((size + 1) & ~1);
+		}
+	}
+
+	private void startPayload(int newState, int size) {
+		if (size == 0) {
+			expectChunk();
+			return;
+		}
+		chunkRemaining = size;
+		chunkPadded = size % 2 != 0;
+		state = newState;
+	}
+
+	private void list() throws IOException {
+		if (isFourCC(0, "movi")) {
+			if (videoStream < 0) {
+				throw new IOException("No video stream found in the AVI header");
+			}
+			if (!movi) {
+				LOGGER.trace("Found {} AVI stream(s)", Math.max(videoStream, audioStream) + 1);
+			}
+			// Parse the chunks in the list
+			movi = true;
+			expectChunk();
+		} else if (isFourCC(0, "hdrl") && headerList == null && listLength > 0) {
+			headerList = new byte[listLength];
+			headerListFill = 0;
+			state = STATE_HEADER_LIST;
+		} else if (isFourCC(0, "AVIX") || isFourCC(0, "rec ")) {
+			// Parse the chunks in the list
+			expectChunk();
+		} else {
+			skip((listLength + 1) & ~1);
+		}
+	}
+
+	private void parseHeaderList() {
+		int streamNumber = 0;
+		int audioNumber = 0;
+		int firstAudioStream = -1;
+		int firstChannels = -1;
+		int firstBitsPerSample = -1;
+		int selectedChannels = -1;
+		int selectedBitsPerSample = -1;
+		boolean lastVideo = false;
+		boolean lastAudio = false;
+		for (int i = 0; i + 8 <= headerList.length;) {
+			String command = new String(headerList, i, 4, StandardCharsets.US_ASCII);
+			int size = readLE32(headerList, i + 4);
+
+			if ("LIST".equalsIgnoreCase(command)) {
+				i += 12;
+				continue;
+			}
+
+			if ("strh".equalsIgnoreCase(command) && i + 12 <= headerList.length) {
+				String type = new String(headerList, i + 8, 4, StandardCharsets.US_ASCII);
+				lastVideo = "vids".equalsIgnoreCase(type);
+				lastAudio = "auds".equalsIgnoreCase(type);
+				if (lastVideo && videoStream < 0) {
+					videoStream = streamNumber;
+				} else if (lastAudio) {
+					if (firstAudioStream < 0) {
+						firstAudioStream = streamNumber;
+					}
+					if (audioNumber == audioTrack) {
+						audioStream = streamNumber;
+					}
+					audioNumber++;
+				}
+				streamNumber++;
+			}
+
+			if ("strf".equalsIgnoreCase(command) && lastAudio && i + 24 <= headerList.length) {
+				if (streamNumber - 1 == firstAudioStream) {
+					firstChannels = readLE16(headerList, i + 10);
+					firstBitsPerSample = readLE16(headerList, i + 22);
+				}
+				if (streamNumber - 1 == audioStream) {
+					selectedChannels = readLE16(headerList, i + 10);
+					selectedBitsPerSample = readLE16(headerList, i + 22);
+				}
+			}
+
+			if (size < 0) {
+				break;
+			}
+			if (size % 2 != 0) {
+				size++;
+			}
+			i += size + 8;
+		}
+
+		if (audioStream < 0 && firstAudioStream >= 0) {
+			if (audioTrack > 0) {
+				LOGGER.debug("AVI audio stream {} not found, using the first of {} audio stream(s)", audioTrack, audioNumber);
+			}
+			audioStream = firstAudioStream;
+			selectedChannels = firstChannels;
+			selectedBitsPerSample = firstBitsPerSample;
+		}
+		if (selectedChannels >= 0) {
+			audio = createAudioSink(audio, selectedChannels, selectedBitsPerSample);
+		}
+	}
+
+	private boolean isStreamChunk(int stream, char type, char suffix1, char suffix2) {
+		if (stream < 0) {
+			return false;
+		}
+		byte[] array = fields.array();
+		return
+			array[0] == '0' + stream / 10 &&
+			array[1] == '0' + stream % 10 &&
+			Character.toLowerCase((char) array[2]) == type &&
+			(Character.toLowerCase((char) array[3]) == suffix1 || Character.toLowerCase((char) array[3]) == suffix2);
+	}
+
+	private boolean isFourCC(int offset, String fourCC) {
+		byte[] array = fields.array();
+		for (int i = 0; i < 4; i++) {
+			if (array[offset + i] != fourCC.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int readLE32(byte[] data, int i) {
+		return (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8) | ((data[i + 2] & 0xff) << 16) | ((data[i + 3] & 0xff) << 24);
+	}
+
+	private static int readLE16(byte[] data, int i) {
+		return (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		LOGGER.trace("AVI demuxing finished, {} video bytes and {} audio bytes written", videoSize, audioSize);
+		try {
+			audio.close();
+		} finally {
+			video.close();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * A destination for data held in {@link ByteBuffer}s. This is the common
+ * interface of the stages in a {@link ByteBufferStage} pipeline and of the
+ * terminal sinks that write the result somewhere.
+ */
+public interface ByteBufferSink extends Closeable {
+
+	/**
+	 * Consumes all the remaining bytes of {@code source}. When this method
+	 * returns, the position of {@code source} equals its limit. Implementations
+	 * must not keep a reference to {@code source} after returning, since the
+	 * caller is free to reuse it.
+	 *
+	 * @param source the {@link ByteBuffer} to consume.
+	 * @throws IOException If an error occurs while consuming the data.
+	 */
+	void write(@Nonnull ByteBuffer source) throws IOException;
+
+	/**
+	 * Flushes any pending data and closes this sink and all sinks downstream
+	 * of it.
+	 *
+	 * @throws IOException If an error occurs while flushing or closing.
+	 */
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,77 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.IOException;
+import javax.annotation.Nonnull;
+
+/**
+ * The base class for a transforming stage in a pipeline of
+ * {@link ByteBufferSink}s. A stage transforms the data written to it and
+ * writes the result to the next {@link ByteBufferSink}, which can be another
+ * stage or a terminal sink like {@link ChannelSink}.
+ * <p>
+ * Stages are meant to work on reusable buffers using bulk operations, and
+ * shouldn't allocate anything per write once they are set up. Stages aren't
+ * thread-safe, a pipeline is driven by a single thread.
+ */
+public abstract class ByteBufferStage implements ByteBufferSink {
+
+	/** The next {@link ByteBufferSink} in the pipeline */
+	protected final ByteBufferSink next;
+
+	/**
+	 * Creates a new stage that writes to {@code next}.
+	 *
+	 * @param next the next {@link ByteBufferSink} in the pipeline.
+	 */
+	protected ByteBufferStage(@Nonnull ByteBufferSink next) {
+		if (next == null) {
+			throw new IllegalArgumentException("next cannot be null");
+		}
+		this.next = next;
+	}
+
+	/**
+	 * @return The next {@link ByteBufferSink} in the pipeline.
+	 */
+	@Nonnull
+	public ByteBufferSink getNext() {
+		return next;
+	}
+
+	/**
+	 * Writes any data held back by this stage to the next
+	 * {@link ByteBufferSink}. This is called by {@link #close()}, the default
+	 * implementation does nothing.
+	 *
+	 * @throws IOException If an error occurs while writing.
+	 */
+	protected void finish() throws IOException {
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			next.close();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import javax.annotation.Nonnull;
+
+/**
+ * A terminal {@link ByteBufferSink} that writes to a
+ * {@link WritableByteChannel}. Direct buffers are written without being
+ * copied to the Java heap.
+ */
+public class ChannelSink implements ByteBufferSink {
+
+	private final WritableByteChannel channel;
+
+	/**
+	 * Creates a new sink that writes to {@code channel}.
+	 *
+	 * @param channel the {@link WritableByteChannel} to write to.
+	 */
+	public ChannelSink(@Nonnull WritableByteChannel channel) {
+		if (channel == null) {
+			throw new IllegalArgumentException("channel cannot be null");
+		}
+		this.channel = channel;
+	}
+
+	@Override
+	public void write(@Nonnull ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			channel.write(source);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
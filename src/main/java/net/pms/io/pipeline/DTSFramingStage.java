@@ -0,0 +1,117 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A stage that wraps DTS frames in 2048 byte PCM frames, so that the DTS
+ * stream can be sent as LPCM. The next stage must be a
+ * {@link PCMFramingStage}. This is the {@link java.nio.ByteBuffer}
+ * equivalent of {@link net.pms.util.DTSAudioOutputStream}.
+ */
+public class DTSFramingStage extends FramingStage {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DTSFramingStage.class);
+	private static final int[] BITS = new int[] {16, 16, 20, 20, 0, 24, 24};
+
+	private final PCMFramingStage pcm;
+	private boolean dts;
+	private boolean dtsHD;
+	private int framesize;
+	private int padding;
+
+	/**
+	 * Creates a new stage.
+	 *
+	 * @param next the {@link PCMFramingStage} to write to.
+	 */
+	public DTSFramingStage(@Nonnull PCMFramingStage next) {
+		super(next, PCMFramingStage.BUFFER_SIZE);
+		pcm = next;
+		pcm.setSwapBytes(false);
+		neededByteNumber = 15;
+	}
+
+	@Override
+	protected void afterChunkSend() throws IOException {
+		padWithZeros(padding);
+	}
+
+	@Override
+	protected void analyzeBuffer(byte[] data, int off, int len) {
+		if (data[off + 0] == 100 && data[off + 1] == 88 && data[off + 2] == 32 && data[off + 3] == 37) {
+			dtsHD = true;
+			streamableByteNumber = ((data[off + 6] & 0x0f) << 11) + ((data[off + 7] & 0xff) << 3) + ((data[off + 8] & 0xf0) >> 5) + 1;
+			discard = true;
+		} else if (data[off + 0] == 127 && data[off + 1] == -2 && data[off + 2] == -128 && data[off + 3] == 1) {
+			discard = false;
+			dts = true;
+			streamableByteNumber = framesize;
+			if (framesize == 0) {
+				framesize = ((data[off + 5] & 0x03) << 12) + ((data[off + 6] & 0xff) << 4) + ((data[off + 7] & 0xf0) >> 4) + 1;
+				int bitsPerSample = ((data[off + 11] & 0x01) << 2) + ((data[off + 12] & 0xfc) >> 6);
+				streamableByteNumber = framesize;
+				// Reset to the default values
+				int pcmWrappedFrameSize = 2048;
+				pcm.configure(2, 48000, 16);
+				padding = pcmWrappedFrameSize - framesize;
+				if (bitsPerSample < 7 && LOGGER.isTraceEnabled()) {
+					LOGGER.trace("DTS bits per sample: " + BITS[bitsPerSample]);
+				}
+				LOGGER.trace("DTS framesize: {}", framesize);
+			}
+		} else {
+			// DTS wrongly extracted ?... searching for start of the frame
+			for (int i = 3; i < 2020; i++) {
+				if (data.length > off + i && data[off + i - 3] == 127 && data[off + i - 2] == -2 && data[off + i - 1] == -128 && data[off + i] == 1) {
+					// skip DTS first frame as it's incomplete
+					discard = true;
+					streamableByteNumber = i - 3;
+					break;
+				} else if (data.length > off + i && data[off + i - 3] == 100 && data[off + i - 2] == 88 && data[off + i - 1] == 32 && data[off + i] == 37) {
+					// skip DTS-HD first frame
+					discard = true;
+					streamableByteNumber = i - 3;
+					break;
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void beforeChunkSend() throws IOException {
+	}
+
+	/**
+	 * @return Whether a DTS frame has been found.
+	 */
+	public boolean isDts() {
+		return dts;
+	}
+
+	/**
+	 * @return Whether a DTS-HD frame has been found.
+	 */
+	public boolean isDtsHD() {
+		return dtsHD;
+	}
+}
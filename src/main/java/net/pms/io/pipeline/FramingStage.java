@@ -0,0 +1,300 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * The base class for stages that cut a stream into frames, and that may
+ * write a payload before and padding after each frame. This is the
+ * {@link ByteBuffer} equivalent of {@link net.pms.util.FlowParserOutputStream}.
+ * <p>
+ * Incoming data is collected in an internal buffer that is allocated once.
+ * When more than {@link #neededByteNumber} bytes are available and no frame
+ * is in progress, {@link #analyzeBuffer} is called to determine the size of
+ * the next frame, which it must store in {@link #streamableByteNumber}. The
+ * frame is then written to the next stage directly from the internal buffer,
+ * surrounded by {@link #beforeChunkSend()} and {@link #afterChunkSend()}
+ * unless {@link #discard} is set.
+ * <p>
+ * If {@link #swapBytes} is set, the byte order of every 16-bit word is
+ * swapped as the data is collected.
+ */
+public abstract class FramingStage extends ByteBufferStage {
+
+	/** The size of the zero buffer used for padding */
+	private static final int ZERO_BUFFER_SIZE = 15000;
+
+	/** The largest payload that can be written by {@link #writePayload} */
+	private static final int MAX_PAYLOAD_SIZE = 64;
+
+	private final ByteBuffer buffer;
+	private final ByteBuffer view;
+	private final ByteBuffer zeros;
+	private final ByteBuffer payloadBuffer;
+
+	/** The number of bytes needed before {@link #analyzeBuffer} is called */
+	protected int neededByteNumber;
+
+	/** The number of bytes left of the current frame */
+	protected int streamableByteNumber;
+
+	/** Whether the current frame should be discarded */
+	protected boolean discard;
+
+	/** The start of the unprocessed data in the internal buffer */
+	protected int internalMark;
+
+	/** Whether to swap the byte order of every 16-bit word */
+	protected boolean swapBytes;
+
+	/** The first byte of an incomplete 16-bit word, or {@code -1} */
+	private int pendingByte = -1;
+
+	/**
+	 * Creates a new stage.
+	 *
+	 * @param next the next {@link ByteBufferSink} in the pipeline.
+	 * @param maxBufferSize the size of the internal buffer, which must be
+	 *            larger than the largest frame.
+	 */
+	protected FramingStage(@Nonnull ByteBufferSink next, int maxBufferSize) {
+		super(next);
+		buffer = ByteBuffer.allocate(maxBufferSize);
+		view = buffer.duplicate();
+		zeros = ByteBuffer.allocate(ZERO_BUFFER_SIZE);
+		payloadBuffer = ByteBuffer.allocate(MAX_PAYLOAD_SIZE);
+	}
+
+	/**
+	 * @return Whether the byte order of every 16-bit word is swapped.
+	 */
+	public boolean isSwapBytes() {
+		return swapBytes;
+	}
+
+	/**
+	 * Sets whether the byte order of every 16-bit word should be swapped.
+	 *
+	 * @param swapBytes {@code true} to swap, {@code false} otherwise.
+	 */
+	public void setSwapBytes(boolean swapBytes) {
+		this.swapBytes = swapBytes;
+	}
+
+	@Override
+	public void write(@Nonnull ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			if (!buffer.hasRemaining() || (swapBytes && pendingByte >= 0 && buffer.remaining() < 2)) {
+				compact();
+				if (!buffer.hasRemaining() || (swapBytes && pendingByte >= 0 && buffer.remaining() < 2)) {
+					throw new IOException("Frame is larger than the buffer size " + buffer.capacity());
+				}
+			}
+			if (swapBytes) {
+				appendSwapped(source);
+			} else {
+				int length = Math.min(source.remaining(), buffer.remaining());
+				int limit = source.limit();
+				source.limit(source.position() + length);
+				buffer.put(source);
+				source.limit(limit);
+			}
+			process();
+		}
+	}
+
+	/**
+	 * Appends as much of {@code source} as there is room for to the internal
+	 * buffer while swapping the byte order of every 16-bit word. An odd byte
+	 * at the end is held back until the next write.
+	 *
+	 * @param source the {@link ByteBuffer} to append from.
+	 */
+	private void appendSwapped(ByteBuffer source) {
+		byte[] target = buffer.array();
+		int position = buffer.position();
+		int length = Math.min(source.remaining(), buffer.remaining() - (pendingByte >= 0 ? 1 : 0));
+		if (pendingByte >= 0 && length > 0) {
+			target[position++] = source.get();
+			target[position++] = (byte) pendingByte;
+			pendingByte = -1;
+			length--;
+		}
+		int words = length & ~1;
+		source.get(target, position, words);
+		for (int end = position + words; position < end; position += 2) {
+			byte first = target[position];
+			target[position] = target[position + 1];
+			target[position + 1] = first;
+		}
+		if (length - words == 1) {
+			pendingByte = source.get() & 0xff;
+		}
+		buffer.position(position);
+	}
+
+	/**
+	 * Moves the unprocessed data to the start of the internal buffer.
+	 */
+	private void compact() {
+		int remains = buffer.position() - internalMark;
+		if (internalMark > 0) {
+			if (remains > 0) {
+				System.arraycopy(buffer.array(), internalMark, buffer.array(), 0, remains);
+			}
+			buffer.position(remains);
+			internalMark = 0;
+		}
+	}
+
+	/**
+	 * Analyzes and writes the collected data as long as possible.
+	 *
+	 * @throws IOException If an error occurs while writing.
+	 */
+	private void process() throws IOException {
+		int remains = buffer.position() - internalMark;
+
+		while (remains > streamableByteNumber || remains > neededByteNumber) {
+			if (streamableByteNumber == 0) {
+				// Time to analyze
+				if (remains > neededByteNumber) {
+					analyzeBuffer(buffer.array(), internalMark, neededByteNumber);
+					if (streamableByteNumber == 0) {
+						throw new IOException("Packet size cannot be Null !");
+					}
+					if (!discard) {
+						beforeChunkSend();
+					}
+				} else {
+					// Wait for more data
+					compact();
+					return;
+				}
+			}
+
+			if (streamableByteNumber > 0) {
+				if (remains >= streamableByteNumber) {
+					// The whole frame is available
+					if (!discard) {
+						writeBuffer(internalMark, streamableByteNumber);
+					}
+					internalMark += streamableByteNumber;
+					remains -= streamableByteNumber;
+					streamableByteNumber = 0;
+					if (!discard) {
+						afterChunkSend();
+					}
+					if (remains == 0) {
+						buffer.position(0);
+						internalMark = 0;
+					}
+				} else {
+					// Write what we have of the frame
+					if (!discard) {
+						writeBuffer(internalMark, remains);
+					}
+					streamableByteNumber -= remains;
+					buffer.position(0);
+					internalMark = 0;
+					remains = 0;
+				}
+			}
+		}
+	}
+
+	private void writeBuffer(int offset, int length) throws IOException {
+		view.clear();
+		view.position(offset);
+		view.limit(offset + length);
+		next.write(view);
+	}
+
+	/**
+	 * Writes {@code payload} to the next stage.
+	 *
+	 * @param payload the payload to write, which can be at most 64 bytes.
+	 * @throws IOException If an error occurs while writing.
+	 */
+	protected void writePayload(@Nonnull byte[] payload) throws IOException {
+		payloadBuffer.clear();
+		payloadBuffer.put(payload);
+		payloadBuffer.flip();
+		next.write(payloadBuffer);
+	}
+
+	/**
+	 * Writes {@code numberOfZeros} zero bytes to the next stage.
+	 *
+	 * @param numberOfZeros the number of bytes to write.
+	 * @throws IOException If an error occurs while writing.
+	 */
+	protected void padWithZeros(int numberOfZeros) throws IOException {
+		while (numberOfZeros > 0) {
+			zeros.clear();
+			zeros.limit(Math.min(numberOfZeros, zeros.capacity()));
+			numberOfZeros -= zeros.remaining();
+			next.write(zeros);
+		}
+	}
+
+	/**
+	 * Analyzes the collected data and sets {@link #streamableByteNumber} to
+	 * the size of the next frame. {@link #discard} can be set if the frame
+	 * should be skipped.
+	 *
+	 * @param data the internal buffer array.
+	 * @param off the offset of the frame in {@code data}.
+	 * @param len the number of bytes available for analysis.
+	 */
+	protected abstract void analyzeBuffer(byte[] data, int off, int len);
+
+	/**
+	 * Called before a frame is written.
+	 *
+	 * @throws IOException If an error occurs while writing.
+	 */
+	protected abstract void beforeChunkSend() throws IOException;
+
+	/**
+	 * Called after a frame has been written.
+	 *
+	 * @throws IOException If an error occurs while writing.
+	 */
+	protected abstract void afterChunkSend() throws IOException;
+
+	/**
+	 * Writes the remainder of an incomplete last frame padded to its full
+	 * size.
+	 */
+	@Override
+	protected void finish() throws IOException {
+		int remains = buffer.position() - internalMark;
+		if (remains > 0 && streamableByteNumber > remains && !discard) {
+			writeBuffer(internalMark, remains);
+			padWithZeros(streamableByteNumber - remains);
+		}
+		buffer.position(0);
+		internalMark = 0;
+		streamableByteNumber = 0;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A stage that converts H.264 NAL units with 4-byte length prefixes to the
+ * Annex B byte stream format, inserting the codec header (SPS/PPS) where
+ * needed. This is the {@link ByteBuffer} equivalent of
+ * {@link net.pms.util.H264AnnexBInputStream}.
+ * <p>
+ * The NAL unit payloads are passed on to the next stage as slices of the
+ * incoming buffers, without being copied.
+ */
+public class H264AnnexBStage extends ByteBufferStage {
+
+	private static final int STATE_LENGTH = 0;
+	private static final int STATE_PREFIX = 1;
+	private static final int STATE_PAYLOAD = 2;
+
+	private final byte[] header;
+	private final byte[] prefix = new byte[3];
+	private final ByteBuffer scratch;
+	private boolean firstHeader = true;
+	private int state = STATE_LENGTH;
+	private int count;
+	private int nalLength;
+	private int remaining;
+
+	/**
+	 * Creates a new stage.
+	 *
+	 * @param next the next {@link ByteBufferSink} in the pipeline.
+	 * @param header the codec header to insert or {@code null}.
+	 */
+	public H264AnnexBStage(@Nonnull ByteBufferSink next, @Nullable byte[] header) {
+		super(next);
+		this.header = header;
+		scratch = ByteBuffer.allocate((header == null ? 0 : header.length) + 8);
+	}
+
+	@Override
+	public void write(@Nonnull ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			switch (state) {
+				case STATE_LENGTH:
+					nalLength = (nalLength << 8) | (source.get() & 0xff);
+					if (++count == 4) {
+						if (nalLength < 3) {
+							throw new IOException("Invalid NAL unit length " + nalLength);
+						}
+						count = 0;
+						state = STATE_PREFIX;
+					}
+					break;
+				case STATE_PREFIX:
+					prefix[count++] = source.get();
+					if (count == 3) {
+						writeStart();
+						count = 0;
+						remaining = nalLength - 3;
+						nalLength = 0;
+						state = remaining > 0 ? STATE_PAYLOAD : STATE_LENGTH;
+					}
+					break;
+				default:
+					int length = Math.min(remaining, source.remaining());
+					int limit = source.limit();
+					source.limit(source.position() + length);
+					next.write(source);
+					source.limit(limit);
+					remaining -= length;
+					if (remaining == 0) {
+						state = STATE_LENGTH;
+					}
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Writes the start code or the header followed by the first bytes of the
+	 * NAL unit.
+	 *
+	 * @throws IOException If an error occurs while writing.
+	 */
+	private void writeStart() throws IOException {
+		scratch.clear();
+		boolean insertHeader = (prefix[0] & 37) == 37 && (prefix[1] & -120) == -120;
+		if (insertHeader && header != null && header.length > 0) {
+			if (firstHeader) {
+				scratch.put(header);
+				firstHeader = false;
+			} else {
+				scratch.put(header, 0, header.length - 1);
+				scratch.put((byte) 0);
+				scratch.put((byte) 1);
+			}
+		} else {
+			scratch.put((byte) 0).put((byte) 0).put((byte) 0).put((byte) 1);
+		}
+		scratch.put(prefix);
+		scratch.flip();
+		next.write(scratch);
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A stage that embeds AC-3 and DTS frames in an LPCM stream according to
+ * IEC 61937, as used by S/PDIF. The next stage must be a
+ * {@link PCMFramingStage}. This is the {@link java.nio.ByteBuffer}
+ * equivalent of {@link net.pms.util.IEC61937AudioOutputStream}, see that
+ * class for the limitations regarding DTS-HD.
+ */
+public class IEC61937FramingStage extends FramingStage {
+	private static final Logger LOGGER = LoggerFactory.getLogger(IEC61937FramingStage.class);
+	private static final int[] BITS = new int[] {16, 16, 20, 20, 0, 24, 24};
+	private static final int[] SAMPLE_RATES = new int[] {
+		0,
+		8000,
+		16000,
+		32000,
+		0,
+		0,
+		11025,
+		22050,
+		44100,
+		0,
+		0,
+		12000,
+		24000,
+		48000,
+		96000,
+		192000
+	};
+
+	private final PCMFramingStage pcm;
+	private boolean ac3;
+	private boolean dts;
+	private boolean dtsHD;
+	private int framesize;
+	private int blocks;
+	private int sampleRate;
+	private int padding;
+	private byte[] preamble;
+	private final boolean usePreamble;
+	private byte[] dtsHDPreamble;
+	private int period;
+
+	/**
+	 * Creates a new stage.
+	 *
+	 * @param next the {@link PCMFramingStage} to write to.
+	 */
+	public IEC61937FramingStage(@Nonnull PCMFramingStage next) {
+		super(next, PCMFramingStage.BUFFER_SIZE);
+		pcm = next;
+		pcm.setSwapBytes(false);
+		neededByteNumber = 5000;
+		usePreamble = true;
+	}
+
+	@Override
+	protected void afterChunkSend() throws IOException {
+		padWithZeros(padding);
+	}
+
+	@Override
+	protected void analyzeBuffer(byte[] data, int off, int len) {
+		if (data[off + 0] == 100 && data[off + 1] == 88 && data[off + 2] == 32 && data[off + 3] == 37) {
+			LOGGER.trace("DTS-HD stray frame, skipping this one...");
+			streamableByteNumber = ((data[off + 6] & 0x0f) << 11) + ((data[off + 7] & 0xff) << 3) + ((data[off + 8] & 0xf0) >> 5) + 1;
+			discard = true;
+		} else if (data[off + 0] == 127 && data[off + 1] == -2 && data[off + 2] == -128 && data[off + 3] == 1) {
+			discard = false;
+			dts = true;
+			streamableByteNumber = framesize;
+			if (framesize == 0 || dtsHD) {
+				analyzeDTS(data, off);
+			}
+		} else if (data[off + 0] == 11 && data[off + 1] == 119) {
+			ac3 = true;
+			discard = false;
+			streamableByteNumber = framesize;
+			if (framesize == 0) {
+				analyzeAC3(data, off, len);
+			}
+		} else {
+			// DTS wrongly extracted ?... searching for start of the frame
+			for (int i = 3; i < 2020; i++) {
+				if (data.length > off + i && data[off + i - 3] == 127 && data[off + i - 2] == -2 && data[off + i - 1] == -128 && data[off + i] == 1) {
+					// skip DTS first frame as it's incomplete
+					discard = true;
+					streamableByteNumber = i - 3;
+					break;
+				} else if (data.length > off + i && data[off + i - 3] == 100 && data[off + i - 2] == 88 && data[off + i - 1] == 32 && data[off + i] == 37) {
+					// skip DTS-HD first frame, stray HD frame ?
+					discard = true;
+					streamableByteNumber = i - 3;
+					break;
+				}
+			}
+		}
+	}
+
+	private void analyzeDTS(byte[] data, int off) {
+		blocks = ((data[off + 4] & 0x01) << 6) + ((data[off + 5] & 0xfc) >> 2);
+		sampleRate = SAMPLE_RATES[((data[off + 8] >> 2) & 0x0f)];
+		framesize = ((data[off + 5] & 0x03) << 12) + ((data[off + 6] & 0xff) << 4) + ((data[off + 7] & 0xf0) >> 4) + 1;
+		int framesizeSup = 0;
+		int dtsRate = 48000;
+		// DTS-HD is disabled, see IEC61937AudioOutputStream
+		boolean skipDTSHD = true;
+		if (
+			!skipDTSHD &&
+			off + framesize + 3 < data.length &&
+			data[off + framesize] == 100 &&
+			data[off + framesize + 1] == 88 &&
+			data[off + framesize + 2] == 32 &&
+			data[off + framesize + 3] == 37
+		) {
+			dtsHD = true;
+			dtsRate = 192000;
+			framesizeSup = ((data[off + framesize + 6] & 0x0f) << 11) + ((data[off + framesize + 7] & 0xff) << 3) + ((data[off + framesize + 8] & 0xf0) >> 5) + 1;
+			framesize += framesizeSup;
+		}
+		blocks++;
+
+		int pcmWrappedFrameSize = blocks << 7;
+		if (usePreamble && preamble == null) {
+			int bitsPerSample = ((data[off + 11] & 0x01) << 2) + ((data[off + 12] & 0xfc) >> 6);
+			if (bitsPerSample < 7 && LOGGER.isTraceEnabled()) {
+				LOGGER.trace("DTS bits per sample: " + BITS[bitsPerSample]);
+			}
+			preamble = new byte[8];
+			preamble[1] = 114; // syncword1
+			preamble[0] = -8;
+			preamble[3] = 31; // syncword2
+			preamble[2] = 78;
+			if (dtsHD) {
+				preamble[4] = 0;
+				preamble[5] = 17; // DTS type IV = DTS-HD
+			} else {
+				preamble[4] = 0;
+				switch (blocks) {
+					case 512 >> 5:
+						preamble[5] = 11;
+						break;
+					case 1024 >> 5:
+						preamble[5] = 12;
+						break;
+					case 2048 >> 5:
+						preamble[5] = 13;
+						break;
+					default:
+						break;
+				}
+			}
+			if (dtsHD) {
+				period = dtsRate * (blocks << 5) / sampleRate;
+				byte subtype = 0x0;
+				switch (period) {
+					case 512:
+						subtype = 0x0;
+						break;
+					case 1024:
+						subtype = 0x1;
+						break;
+					case 2048:
+						subtype = 0x2;
+						break;
+					case 4096:
+						subtype = 0x3;
+						break;
+					case 8192:
+						subtype = 0x4;
+						break;
+					case 16384:
+						subtype = 0x5;
+						break;
+					default:
+						break;
+				}
+				preamble[4] = subtype;
+				dtsHDPreamble = new byte[12];
+				dtsHDPreamble[0] = 1;
+				dtsHDPreamble[8] = -2;
+				dtsHDPreamble[9] = -2;
+			}
+		}
+		if (pcm.getSampleFrequency() != dtsRate || pcm.getNbChannels() != 2 || pcm.getBitsPerSample() != 16) {
+			pcm.configure(2, dtsRate, 16);
+		}
+		if (dtsHD) {
+			pcmWrappedFrameSize = period * 4;
+		}
+		if (framesize > pcmWrappedFrameSize) {
+			framesize -= framesizeSup;
+		}
+		streamableByteNumber = framesize;
+		if (dtsHDPreamble != null) {
+			dtsHDPreamble[11] = (byte) (framesize & 0xff);
+			dtsHDPreamble[10] = (byte) ((framesize >> 8) & 0xff);
+			framesize += dtsHDPreamble.length;
+		}
+		if (preamble != null) {
+			int framesizeBits = framesize * 8;
+			preamble[7] = (byte) (framesizeBits & 0xff);
+			preamble[6] = (byte) ((framesizeBits >> 8) & 0xff);
+		}
+
+		padding = pcmWrappedFrameSize - framesize - (preamble != null ? preamble.length : 0);
+	}
+
+	private void analyzeAC3(byte[] data, int off, int len) {
+		// Find the next frame
+		discard = true;
+		int a0 = data[off + 0];
+		int a1 = data[off + 1];
+		LOGGER.debug("Looking for AC3 framesize");
+		for (int i = 4; i < len - 4; i++) {
+			if (data[off + i] == a0 && data[off + i + 1] == a1) {
+				framesize = i;
+				streamableByteNumber = framesize;
+				// padding_bytes = number_of_samples_in_the_audio_frame * 4 - frame_size
+				int pcmWrappedFrameSize = 6144;
+				pcm.configure(2, 48000, 16);
+				if (usePreamble) {
+					preamble = new byte[8];
+					padding = pcmWrappedFrameSize - framesize - preamble.length;
+					preamble[1] = 114; // syncword1
+					preamble[0] = -8;
+					preamble[3] = 31; // syncword2
+					preamble[2] = 78;
+					preamble[5] = 1; // ac3
+					preamble[4] = 0;
+					int framesizeBits = framesize * 8;
+					preamble[7] = (byte) (framesizeBits % 256);
+					preamble[6] = (byte) (framesizeBits / 256);
+				} else {
+					padding = pcmWrappedFrameSize - framesize;
+				}
+				LOGGER.debug("AC3 spdif framesize: {} / padding: {}", framesize, padding);
+				discard = false;
+				break;
+			}
+		}
+	}
+
+	@Override
+	protected void beforeChunkSend() throws IOException {
+		if (preamble != null) {
+			writePayload(preamble);
+		}
+		if (dtsHDPreamble != null) {
+			writePayload(dtsHDPreamble);
+		}
+	}
+
+	/**
+	 * @return Whether an AC-3 frame has been found.
+	 */
+	public boolean isAc3() {
+		return ac3;
+	}
+
+	/**
+	 * @return Whether a DTS frame has been found.
+	 */
+	public boolean isDts() {
+		return dts;
+	}
+
+	/**
+	 * @return Whether a DTS-HD frame has been found.
+	 */
+	public boolean isDtsHD() {
+		return dtsHD;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import javax.annotation.Nonnull;
+
+/**
+ * A terminal {@link ByteBufferSink} that writes to an {@link OutputStream}.
+ * Heap buffers are written directly from their backing array, other buffers
+ * are copied through a scratch array that is allocated once.
+ */
+public class OutputStreamSink implements ByteBufferSink {
+
+	private static final int SCRATCH_SIZE = 64 * 1024;
+
+	private final OutputStream out;
+	private byte[] scratch;
+
+	/**
+	 * Creates a new sink that writes to {@code out}.
+	 *
+	 * @param out the {@link OutputStream} to write to.
+	 */
+	public OutputStreamSink(@Nonnull OutputStream out) {
+		if (out == null) {
+			throw new IllegalArgumentException("out cannot be null");
+		}
+		this.out = out;
+	}
+
+	/**
+	 * Creates the most efficient {@link ByteBufferSink} for {@code out}. A
+	 * {@link ChannelSink} is used for {@link FileOutputStream}s, which means
+	 * that direct buffers can be written without copying, and an
+	 * {@link OutputStreamSink} is used for anything else.
+	 *
+	 * @param out the {@link OutputStream} to write to.
+	 * @return The new {@link ByteBufferSink}.
+	 */
+	@Nonnull
+	public static ByteBufferSink create(@Nonnull OutputStream out) {
+		if (out instanceof FileOutputStream) {
+			return new ChannelSink(((FileOutputStream) out).getChannel());
+		}
+		return new OutputStreamSink(out);
+	}
+
+	@Override
+	public void write(@Nonnull ByteBuffer source) throws IOException {
+		if (source.hasArray()) {
+			out.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+			source.position(source.limit());
+			return;
+		}
+		if (scratch == null) {
+			scratch = new byte[SCRATCH_SIZE];
+		}
+		while (source.hasRemaining()) {
+			int length = Math.min(scratch.length, source.remaining());
+			source.get(scratch, 0, length);
+			out.write(scratch, 0, length);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import java.io.IOException;
+import javax.annotation.Nonnull;
+
+/**
+ * A stage that converts little-endian PCM audio to the big-endian LPCM
+ * format used in MPEG streams, with a 4-byte header before each block. This
+ * is the {@link java.nio.ByteBuffer} equivalent of
+ * {@link net.pms.util.PCMAudioOutputStream}.
+ */
+public class PCMFramingStage extends FramingStage {
+
+	/** The size of the internal buffer */
+	protected static final int BUFFER_SIZE = 600000;
+
+	private final byte[] payload = new byte[4];
+	private int nbChannels;
+	private int sampleFrequency;
+	private int bitsPerSample;
+	private int blockSize;
+
+	/**
+	 * Creates a new stage.
+	 *
+	 * @param next the next {@link ByteBufferSink} in the pipeline.
+	 * @param nbChannels the number of audio channels.
+	 * @param sampleFrequency the sample frequency.
+	 * @param bitsPerSample the number of bits per sample.
+	 */
+	public PCMFramingStage(@Nonnull ByteBufferSink next, int nbChannels, int sampleFrequency, int bitsPerSample) {
+		super(next, BUFFER_SIZE);
+		swapBytes = true; // swap endian
+		configure(nbChannels, sampleFrequency, bitsPerSample);
+	}
+
+	/**
+	 * Changes the audio format and recalculates the block size and header.
+	 *
+	 * @param nbChannels the number of audio channels.
+	 * @param sampleFrequency the sample frequency.
+	 * @param bitsPerSample the number of bits per sample.
+	 */
+	public void configure(int nbChannels, int sampleFrequency, int bitsPerSample) {
+		this.nbChannels = nbChannels;
+		this.sampleFrequency = sampleFrequency;
+		this.bitsPerSample = bitsPerSample;
+		blockSize = (2 * ((nbChannels + 1) / 2)) * sampleFrequency * bitsPerSample / 1600;
+		switch (nbChannels) {
+			case 1:
+				payload[2] = 17;
+				break;
+			case 2:
+				payload[2] = 49;
+				break;
+			case 3:
+				payload[2] = 65;
+				break;
+			case 4:
+				payload[2] = 113;
+				break;
+			case 5:
+				payload[2] = -127;
+				break;
+			case 6:
+				payload[2] = -111;
+				break;
+			case 7:
+				payload[2] = -95;
+				break;
+			case 8:
+				payload[2] = -79;
+				break;
+			default:
+				payload[2] = 0;
+				break;
+		}
+		payload[0] = (byte) ((blockSize >> 8) & 0xff);
+		payload[1] = (byte) ((blockSize + 256) % 256);
+		if (sampleFrequency == 96000) {
+			payload[2] = (byte) (payload[2] + 3);
+		}
+		if (sampleFrequency == 192000) {
+			payload[2] = (byte) (payload[2] + 4);
+		}
+		payload[3] = (byte) (16 * (bitsPerSample - 12));
+	}
+
+	/**
+	 * @return The number of audio channels.
+	 */
+	public int getNbChannels() {
+		return nbChannels;
+	}
+
+	/**
+	 * @return The sample frequency.
+	 */
+	public int getSampleFrequency() {
+		return sampleFrequency;
+	}
+
+	/**
+	 * @return The number of bits per sample.
+	 */
+	public int getBitsPerSample() {
+		return bitsPerSample;
+	}
+
+	@Override
+	protected void analyzeBuffer(byte[] data, int off, int len) {
+		streamableByteNumber = blockSize;
+	}
+
+	@Override
+	protected void beforeChunkSend() throws IOException {
+		writePayload(payload);
+	}
+
+	@Override
+	protected void afterChunkSend() throws IOException {
+	}
+}
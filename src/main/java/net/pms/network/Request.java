@@ -23,6 +23,7 @@ import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -43,9 +44,11 @@ import net.pms.dlna.DLNAMediaInfo;
 import net.pms.dlna.DLNAMediaSubtitle;
 import net.pms.dlna.DLNAResource;
 import net.pms.dlna.DLNAThumbnailInputStream;
+import net.pms.dlna.LibrarySearchFolder;
 import net.pms.dlna.MediaType;
 import net.pms.dlna.Range;
 import net.pms.dlna.RealFile;
+import net.pms.dlna.SearchCriteria;
 import net.pms.encoders.ImagePlayer;
 import net.pms.external.StartStopListenerDelegate;
 import net.pms.formats.v2.SubtitleType;
@@ -767,20 +770,38 @@ public class Request extends HTTPResource {
 					searchCriteria = getEnclosingValue(content, "<SearchCriteria", "</SearchCriteria>");
 				}
 
-				List<DLNAResource> files = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(
-					objectID,
-					browseDirectChildren,
-					startingIndex,
-					requestCount,
-					mediaRenderer,
-					searchCriteria
-				);
+				List<DLNAResource> files = null;
+				LibrarySearchFolder searchFolder = null;
+				if (!xbox360 && searchCriteria != null && "0".equals(objectID) && configuration.getUseCache()) {
+					// Answer library wide searches from the media database if the criteria are supported
+					try {
+						SearchCriteria criteria = SearchCriteria.parse(searchCriteria);
+						searchFolder = PMS.get().getRootFolder(mediaRenderer).getLibrarySearchFolder();
+						files = searchFolder.search(criteria, startingIndex, Math.max(requestCount, 0), mediaRenderer);
+						if (files == null) {
+							searchFolder = null;
+						}
+					} catch (ParseException e) {
+						LOGGER.debug("Searching without the media database: {}", e.getMessage());
+					}
+				}
+
+				if (files == null) {
+					files = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(
+						objectID,
+						browseDirectChildren,
+						startingIndex,
+						requestCount,
+						mediaRenderer,
+						searchCriteria
+					);
 
-				if (searchCriteria != null && files != null) {
-					UMSUtils.postSearch(files, searchCriteria);
-					if (xbox360) {
-						if (files.size() > 0) {
-							files = files.get(0).getChildren();
+					if (searchCriteria != null && files != null) {
+						UMSUtils.postSearch(files, searchCriteria);
+						if (xbox360) {
+							if (files.size() > 0) {
+								files = files.get(0).getChildren();
+							}
 						}
 					}
 				}
@@ -812,13 +833,15 @@ public class Request extends HTTPResource {
 				response.append(CRLF);
 				DLNAResource parentFolder = null;
 
-				if (files != null && filessize > 0) {
+				if (searchFolder != null) {
+					parentFolder = searchFolder;
+				} else if (files != null && filessize > 0) {
 					parentFolder = files.get(0).getParent();
 				} else {
 					parentFolder = PMS.get().getRootFolder(mediaRenderer).getDLNAResource(objectID, mediaRenderer);
 				}
 
-				if (browseDirectChildren && mediaRenderer.isUseMediaInfo() && mediaRenderer.isDLNATreeHack()) {
+				if (searchFolder == null && browseDirectChildren && mediaRenderer.isUseMediaInfo() && mediaRenderer.isDLNATreeHack()) {
 					// with the new parser, files are parsed and analyzed *before*
 					// creating the DLNA tree, every 10 items (the ps3 asks 10 by 10),
 					// so we do not know exactly the total number of items in the DLNA folder to send
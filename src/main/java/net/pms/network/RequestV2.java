@@ -26,6 +26,7 @@ import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
@@ -804,20 +805,38 @@ public class RequestV2 extends HTTPResource {
 					searchCriteria = getEnclosingValue(content, "<SearchCriteria", "</SearchCriteria>");
 				}
 
-				List<DLNAResource> files = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(
-					objectID,
-					browseDirectChildren,
-					startingIndex,
-					requestCount,
-					mediaRenderer,
-					searchCriteria
-				);
+				List<DLNAResource> files = null;
+				LibrarySearchFolder searchFolder = null;
+				if (!xbox360 && searchCriteria != null && "0".equals(objectID) && configuration.getUseCache()) {
+					// Answer library wide searches from the media database if the criteria are supported
+					try {
+						SearchCriteria criteria = SearchCriteria.parse(searchCriteria);
+						searchFolder = PMS.get().getRootFolder(mediaRenderer).getLibrarySearchFolder();
+						files = searchFolder.search(criteria, startingIndex, Math.max(requestCount, 0), mediaRenderer);
+						if (files == null) {
+							searchFolder = null;
+						}
+					} catch (ParseException e) {
+						LOGGER.debug("Searching without the media database: {}", e.getMessage());
+					}
+				}
+
+				if (files == null) {
+					files = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(
+						objectID,
+						browseDirectChildren,
+						startingIndex,
+						requestCount,
+						mediaRenderer,
+						searchCriteria
+					);
 
-				if (searchCriteria != null && files != null) {
-					UMSUtils.postSearch(files, searchCriteria);
-					if (xbox360) {
-						if (files.size() > 0) {
-							files = files.get(0).getChildren();
+					if (searchCriteria != null && files != null) {
+						UMSUtils.postSearch(files, searchCriteria);
+						if (xbox360) {
+							if (files.size() > 0) {
+								files = files.get(0).getChildren();
+							}
 						}
 					}
 				}
@@ -850,13 +869,15 @@ public class RequestV2 extends HTTPResource {
 				response.append(CRLF);
 				DLNAResource parentFolder = null;
 
-				if (files != null && filessize > 0) {
+				if (searchFolder != null) {
+					parentFolder = searchFolder;
+				} else if (files != null && filessize > 0) {
 					parentFolder = files.get(0).getParent();
 				} else {
 					parentFolder = PMS.get().getRootFolder(mediaRenderer).getDLNAResource(objectID, mediaRenderer);
 				}
 
-				if (browseDirectChildren && mediaRenderer.isUseMediaInfo() && mediaRenderer.isDLNATreeHack()) {
+				if (searchFolder == null && browseDirectChildren && mediaRenderer.isUseMediaInfo() && mediaRenderer.isDLNATreeHack()) {
 					// with the new parser, files are parsed and analyzed *before*
 					// creating the DLNA tree, every 10 items (the ps3 asks 10 by 10),
 					// so we do not know exactly the total number of items in the DLNA folder to send
@@ -46,4 +46,39 @@ public interface NixCLibrary extends Library {
 	 * @return {@code 0} on success, {@code -1} on error.
 	 */
 	public int gethostname(byte[] hostname, int bufferSize);
+
+	/**
+	 * Creates a FIFO special file (a named pipe) with name {@code pathname}.
+	 * {@code mode} specifies the FIFO's permissions. It is modified by the
+	 * process's umask in the usual way: the permissions of the created file
+	 * are {@code (mode & ~umask)}.
+	 *
+	 * @param pathname the path of the FIFO to create.
+	 * @param mode the permissions of the FIFO.
+	 * @return {@code 0} on success, {@code -1} on error in which case
+	 *         {@code errno} is set appropriately.
+	 */
+	public int mkfifo(String pathname, int mode);
+
+	/**
+	 * Changes the permissions of the file specified by {@code pathname}.
+	 *
+	 * @param pathname the path of the file.
+	 * @param mode the new permissions.
+	 * @return {@code 0} on success, {@code -1} on error in which case
+	 *         {@code errno} is set appropriately.
+	 */
+	public int chmod(String pathname, int mode);
+
+	/**
+	 * Deletes a name from the filesystem. If that name was the last link to a
+	 * file and no processes have the file open, the file is deleted. If any
+	 * processes still have the file open, the file will remain in existence
+	 * until the last file descriptor referring to it is closed.
+	 *
+	 * @param pathname the path to delete.
+	 * @return {@code 0} on success, {@code -1} on error in which case
+	 *         {@code errno} is set appropriately.
+	 */
+	public int unlink(String pathname);
 }
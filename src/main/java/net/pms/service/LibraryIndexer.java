@@ -0,0 +1,613 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.service;
+
+import static java.nio.file.FileVisitOption.FOLLOW_LINKS;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.dlna.DLNAMediaDatabase;
+import net.pms.dlna.MapFile;
+import net.pms.dlna.RealFile;
+import net.pms.formats.FormatType;
+import net.pms.util.DirectorySnapshot;
+import net.pms.util.FileWatcher;
+import net.pms.util.FolderRelevanceCache;
+
+/**
+ * This class keeps the cache and the folder tree up to date with the shared
+ * folders as they change, based on {@link FileWatcher} notifications.
+ * <p>
+ * Events are debounced per path: a changed file is only processed when no
+ * new events have arrived for it for the configured delay and its size and
+ * modification time are unchanged, so that files that are being copied
+ * aren't parsed repeatedly. Only the changed files are parsed or removed
+ * from the cache, and only the {@link MapFile}s that list the changed
+ * directories are invalidated. If the {@link FileWatcher} reports that
+ * events for a directory were lost, removed entries are found by checking
+ * the cached files of that directory.
+ * <p>
+ * The {@link FileWatcher} notification thread only records the changed path
+ * and the kind of change, the file system is checked by the indexer thread.
+ * Changes are applied to the {@link FolderRelevanceCache} as soon as the
+ * indexer thread has checked them, and the folders showing directories whose
+ * relevance changed are invalidated.
+ * <p>
+ * {@link MapFile}s register themselves with {@link #register(MapFile)} when
+ * they discover their children. Registered folders whose directories are all
+ * watched don't have to check the file system for changes when browsed.
+ */
+@ThreadSafe
+public class LibraryIndexer implements Service {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LibraryIndexer.class);
+
+	/** Whether the shared folders are watched when started */
+	protected final boolean watchSharedFolders;
+
+	/** The debounce delay in milliseconds */
+	protected final long delay;
+
+	/** The {@link FileWatcher} callback, must be strongly referenced */
+	private final FileWatcher.BatchListener listener = new FileWatcher.BatchListener() {
+
+		@Override
+		public void notify(List<FileWatcher.Event> events, FileWatcher.Watch watch) {
+			synchronized (LibraryIndexer.this) {
+				for (FileWatcher.Event event : events) {
+					enqueue(event);
+				}
+			}
+		}
+
+		@Override
+		public void notify(String filename, String event, FileWatcher.Watch watch, boolean isDir) {
+			enqueue(new FileWatcher.Event(filename, event, isDir));
+		}
+	};
+
+	@GuardedBy("this")
+	private final HashMap<Path, PendingChange> pendingChanges = new HashMap<>();
+
+	@GuardedBy("this")
+	private final ArrayList<FileWatcher.Watch> watches = new ArrayList<>();
+
+	@GuardedBy("this")
+	private final ArrayList<Path> watchedRoots = new ArrayList<>();
+
+	@GuardedBy("folders")
+	private final Set<MapFile> folders = Collections.newSetFromMap(new WeakHashMap<MapFile, Boolean>());
+
+	@GuardedBy("this")
+	private ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * Creates and starts a new {@link LibraryIndexer} instance using the
+	 * configured settings.
+	 */
+	public LibraryIndexer() {
+		this(PMS.getConfiguration().isLibraryLiveIndex(), PMS.getConfiguration().getLibraryLiveIndexDelay());
+	}
+
+	/**
+	 * Creates and starts a new {@link LibraryIndexer} instance.
+	 *
+	 * @param watchSharedFolders whether to watch the shared folders.
+	 * @param delay the debounce delay in milliseconds.
+	 */
+	LibraryIndexer(boolean watchSharedFolders, long delay) {
+		this.watchSharedFolders = watchSharedFolders;
+		this.delay = delay;
+		start();
+	}
+
+	@Override
+	public synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+		LOGGER.debug("Starting LibraryIndexer");
+		executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Library Indexer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		if (watchSharedFolders) {
+			// Registering recursive watches walks the whole tree
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					PmsConfiguration configuration = PMS.getConfiguration();
+					List<Path> ignored = configuration.getIgnoredFolders();
+					for (Path folder : configuration.getSharedFolders()) {
+						if (!ignored.contains(folder)) {
+							watch(folder);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	@Override
+	public void stop() {
+		ArrayList<FileWatcher.Watch> removed;
+		synchronized (this) {
+			if (executor == null) {
+				return;
+			}
+			LOGGER.debug("Stopping LibraryIndexer");
+			executor.shutdownNow();
+			executor = null;
+			pendingChanges.clear();
+			watchedRoots.clear();
+			removed = new ArrayList<>(watches);
+			watches.clear();
+		}
+		for (FileWatcher.Watch watch : removed) {
+			FileWatcher.remove(watch);
+		}
+	}
+
+	@Override
+	public synchronized boolean isAlive() {
+		return executor != null;
+	}
+
+	/**
+	 * Starts watching the specified directory and everything below it.
+	 *
+	 * @param directory the directory to watch.
+	 */
+	public void watch(@Nonnull Path directory) {
+		directory = directory.toAbsolutePath().normalize();
+		if (!Files.isDirectory(directory)) {
+			LOGGER.debug("Not watching \"{}\" since it isn't a directory", directory);
+			return;
+		}
+		FileWatcher.Watch watch = new FileWatcher.Watch(directory.resolve("**").toString(), listener);
+		synchronized (this) {
+			if (executor == null || watchedRoots.contains(directory)) {
+				return;
+			}
+			watches.add(watch);
+		}
+		FileWatcher.add(watch);
+		synchronized (this) {
+			watchedRoots.add(directory);
+		}
+		// Cached folder relevance is only trusted without checks if it was determined while watched
+		FolderRelevanceCache.clearCache();
+		LOGGER.debug("Watching \"{}\" for changes", directory);
+	}
+
+	/**
+	 * Returns whether changes to all the specified directories are reported
+	 * by this {@link LibraryIndexer}.
+	 *
+	 * @param directories the directories to check.
+	 * @return {@code true} if {@code directories} isn't empty and every
+	 *         directory is at or below a watched directory, {@code false}
+	 *         otherwise.
+	 */
+	public synchronized boolean isWatched(@Nullable List<File> directories) {
+		if (directories == null || directories.isEmpty() || watchedRoots.isEmpty()) {
+			return false;
+		}
+		for (File directory : directories) {
+			boolean watched = false;
+			Path path = directory.toPath().toAbsolutePath();
+			for (Path root : watchedRoots) {
+				if (path.startsWith(root)) {
+					watched = true;
+					break;
+				}
+			}
+			if (!watched) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Registers a {@link MapFile} for invalidation when the directories it
+	 * lists change. The {@link MapFile} is held by a weak reference.
+	 *
+	 * @param folder the {@link MapFile} to register.
+	 */
+	public void register(@Nonnull MapFile folder) {
+		synchronized (folders) {
+			folders.add(folder);
+		}
+	}
+
+	/**
+	 * @return The number of changes that haven't been processed yet.
+	 */
+	public synchronized int getPendingCount() {
+		return pendingChanges.size();
+	}
+
+	private void enqueue(@Nonnull FileWatcher.Event event) {
+		boolean overflow = FileWatcher.EVENT_OVERFLOW.equals(event.getKind());
+		enqueue(
+			Paths.get(event.getFilename()),
+			StandardWatchEventKinds.ENTRY_CREATE.name().equals(event.getKind()),
+			overflow
+		);
+	}
+
+	/**
+	 * Schedules the processing of a changed path, replacing any scheduled
+	 * processing of the same path. This only records the change, the file
+	 * system is checked by the scheduled task.
+	 *
+	 * @param path the changed path.
+	 * @param created whether the path was created.
+	 * @param overflow whether changes to the entries of the directory
+	 *            {@code path} may have been lost.
+	 */
+	protected synchronized void enqueue(@Nonnull Path path, boolean created, boolean overflow) {
+		if (executor == null) {
+			return;
+		}
+		FileState state = null;
+		PendingChange previous = pendingChanges.get(path);
+		if (previous != null) {
+			previous.future.cancel(false);
+			created |= previous.created;
+			overflow |= previous.overflow;
+			state = previous.state;
+		}
+		schedule(new PendingChange(path, created, overflow, state));
+	}
+
+	/**
+	 * Schedules a {@link PendingChange}, immediately if its
+	 * {@link FileState} hasn't been read yet and after the debounce delay
+	 * otherwise.
+	 *
+	 * @param pending the {@link PendingChange} to schedule.
+	 */
+	@GuardedBy("this")
+	private void schedule(@Nonnull PendingChange pending) {
+		pending.future = executor.schedule(pending, pending.state == null ? 0 : delay, TimeUnit.MILLISECONDS);
+		pendingChanges.put(pending.path, pending);
+	}
+
+	/**
+	 * Applies a change to the {@link FolderRelevanceCache} and invalidates
+	 * the folders showing directories whose relevance changed. Hidden empty
+	 * folders depend on changes anywhere below them, so this is done before
+	 * the change is stable.
+	 *
+	 * @param path the changed path.
+	 * @param overflow whether changes to the entries of the directory
+	 *            {@code path} may have been lost.
+	 * @param state the current {@link FileState}.
+	 */
+	protected void updateRelevance(@Nonnull Path path, boolean overflow, @Nonnull FileState state) {
+		List<File> changed = overflow ?
+			FolderRelevanceCache.invalidate(path.toFile()) :
+			FolderRelevanceCache.update(path.toFile(), state.exists, state.directory, PMS.getConfiguration());
+		for (File directory : changed) {
+			File parent = directory.getParentFile();
+			if (parent != null) {
+				invalidate(parent);
+			}
+		}
+	}
+
+	/**
+	 * Processes a change that has been stable for the debounce delay.
+	 *
+	 * @param path the changed path.
+	 * @param created whether the path was created.
+	 * @param overflow whether changes to the entries of the directory
+	 *            {@code path} may have been lost.
+	 * @param state the current {@link FileState}.
+	 */
+	protected void process(@Nonnull Path path, boolean created, boolean overflow, @Nonnull FileState state) {
+		if (isIgnored(path)) {
+			return;
+		}
+		File file = path.toFile();
+		if (!state.exists) {
+			LOGGER.trace("Live indexing: \"{}\" was removed", path);
+			remove(file);
+		} else if (state.directory) {
+			if (created) {
+				enqueueFiles(path);
+			}
+			if (overflow) {
+				// Changed and new entries are reported by the rescan, but removed ones must be found here
+				cleanup(file);
+			}
+			invalidate(file);
+		} else {
+			LOGGER.trace("Live indexing: \"{}\" was changed", path);
+			index(file);
+		}
+		File parent = file.getParentFile();
+		if (parent != null) {
+			invalidate(parent);
+		}
+		FolderRelevanceCache.flush();
+	}
+
+	/**
+	 * Parses the specified file and stores the result in the cache, unless
+	 * the cache already has up to date information about it.
+	 *
+	 * @param file the file to parse.
+	 */
+	protected void index(@Nonnull File file) {
+		if (!PMS.getConfiguration().getUseCache()) {
+			return;
+		}
+		DLNAMediaDatabase database = PMS.get().getDatabase();
+		if (database == null || database.isDataExists(file.getAbsolutePath(), file.lastModified())) {
+			return;
+		}
+		RealFile resource = new RealFile(file);
+		// isValid() resolves the format
+		if (resource.isValid() && resource.getFormat() != null && resource.getFormat().getType() != FormatType.SUBTITLES) {
+			resource.resolve();
+		}
+	}
+
+	/**
+	 * Removes the specified file, or all files below the specified directory,
+	 * from the cache.
+	 *
+	 * @param file the removed file or directory.
+	 */
+	protected void remove(@Nonnull File file) {
+		if (!PMS.getConfiguration().getUseCache()) {
+			return;
+		}
+		DLNAMediaDatabase database = PMS.get().getDatabase();
+		if (database != null) {
+			int removed = database.removeData(file.getAbsolutePath());
+			if (removed > 0) {
+				LOGGER.debug("Live indexing removed {} cached entries for \"{}\"", removed, file);
+			}
+		}
+	}
+
+	/**
+	 * Removes the cached files directly in the specified directory that no
+	 * longer exist, and the cached files in removed sub-directories.
+	 *
+	 * @param directory the directory whose events were lost.
+	 */
+	protected void cleanup(@Nonnull File directory) {
+		if (!PMS.getConfiguration().getUseCache()) {
+			return;
+		}
+		DLNAMediaDatabase database = PMS.get().getDatabase();
+		if (database != null) {
+			database.cleanup(Collections.singletonList(directory.getAbsolutePath()));
+		}
+	}
+
+	/**
+	 * Invalidates the cached {@link DirectorySnapshot} and the registered
+	 * {@link MapFile}s affected by a change to the entries of the specified
+	 * directory.
+	 *
+	 * @param directory the changed directory.
+	 */
+	protected void invalidate(@Nonnull File directory) {
+		DirectorySnapshot.invalidate(directory);
+		ArrayList<MapFile> affected = new ArrayList<>();
+		synchronized (folders) {
+			for (MapFile folder : folders) {
+				if (folder.isAffectedBy(directory)) {
+					affected.add(folder);
+				}
+			}
+		}
+		for (MapFile folder : affected) {
+			folder.invalidate();
+		}
+		if (!affected.isEmpty()) {
+			LOGGER.trace("Live indexing invalidated {} folders for \"{}\"", affected.size(), directory);
+		}
+	}
+
+	/**
+	 * Queues the files below a new directory, since files added before the
+	 * directory was watched aren't reported.
+	 */
+	private void enqueueFiles(@Nonnull Path directory) {
+		try {
+			Files.walkFileTree(directory, EnumSet.of(FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (attrs.isRegularFile()) {
+						enqueue(file, true, false);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			LOGGER.debug("Live indexing couldn't list \"{}\": {}", directory, e.getMessage());
+			LOGGER.trace("", e);
+		}
+	}
+
+	private static boolean isIgnored(@Nonnull Path path) {
+		for (Path ignored : PMS.getConfiguration().getIgnoredFolders()) {
+			if (path.startsWith(ignored)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A scheduled change. The first run reads the {@link FileState}, the
+	 * change is processed when a later run finds it unchanged.
+	 */
+	private class PendingChange implements Runnable {
+		private final Path path;
+		private final boolean created;
+		private final boolean overflow;
+		private final FileState state;
+		private ScheduledFuture<?> future;
+
+		public PendingChange(@Nonnull Path path, boolean created, boolean overflow, @Nullable FileState state) {
+			this.path = path;
+			this.created = created;
+			this.overflow = overflow;
+			this.state = state;
+		}
+
+		@Override
+		public void run() {
+			FileState current = FileState.read(path);
+			if (!current.equals(state)) {
+				// New or still being written, wait for another period
+				updateRelevance(path, overflow, current);
+				synchronized (LibraryIndexer.this) {
+					if (executor != null && pendingChanges.get(path) == this) {
+						schedule(new PendingChange(path, created, overflow, current));
+					}
+				}
+				return;
+			}
+			synchronized (LibraryIndexer.this) {
+				if (pendingChanges.get(path) != this) {
+					// Superseded
+					return;
+				}
+			}
+			try {
+				process(path, created, overflow, current);
+			} catch (RuntimeException e) {
+				LOGGER.error("Live indexing of \"{}\" failed: {}", path, e.getMessage());
+				LOGGER.trace("", e);
+			} finally {
+				synchronized (LibraryIndexer.this) {
+					if (pendingChanges.get(path) == this) {
+						pendingChanges.remove(path);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The size and modification time of a path at a given time.
+	 */
+	@Immutable
+	protected static class FileState {
+		protected final boolean exists;
+		protected final boolean directory;
+		protected final long size;
+		protected final long modified;
+
+		private FileState(boolean exists, boolean directory, long size, long modified) {
+			this.exists = exists;
+			this.directory = directory;
+			this.size = size;
+			this.modified = modified;
+		}
+
+		@Nonnull
+		protected static FileState read(@Nonnull Path path) {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				return new FileState(
+					true,
+					attributes.isDirectory(),
+					attributes.isDirectory() ? 0 : attributes.size(),
+					attributes.lastModifiedTime().toMillis()
+				);
+			} catch (IOException e) {
+				return new FileState(false, false, 0, 0);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			int result = exists ? 1231 : 1237;
+			result = 31 * result + (directory ? 1231 : 1237);
+			result = 31 * result + (int) (size ^ (size >>> 32));
+			result = 31 * result + (int) (modified ^ (modified >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof FileState)) {
+				return false;
+			}
+			FileState other = (FileState) obj;
+			return
+				exists == other.exists &&
+				directory == other.directory &&
+				size == other.size &&
+				modified == other.modified;
+		}
+	}
+}
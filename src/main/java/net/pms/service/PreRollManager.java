@@ -0,0 +1,420 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.configuration.RendererConfiguration;
+import net.pms.dlna.CueFolder;
+import net.pms.dlna.DLNAResource;
+import net.pms.dlna.MapFile;
+import net.pms.dlna.PlaylistFolder;
+import net.pms.io.ProcessWrapper;
+import net.pms.util.BasicThreadFactory;
+
+/**
+ * This class manages "pre-rolling" of transcodes. When a transcoded item from
+ * a {@link MapFile}, {@link PlaylistFolder} or {@link CueFolder} has played
+ * for a configurable part of its duration, the transcode of the next sibling
+ * is started in the background. The transcoding process is stalled once it
+ * has produced the configured amount of data, so that the next item can start
+ * playing without waiting for the transcoding engine to spin up.
+ * <p>
+ * A pre-rolled transcode is adopted by the next item if that is what the
+ * renderer plays next. If the renderer starts playing something else, or
+ * doesn't request the pre-rolled item within {@link #ADOPTION_TIMEOUT}
+ * milliseconds after playback has stopped, the pre-rolled transcode is
+ * stopped.
+ * <p>
+ * The number of simultaneous pre-rolls and the amount of memory they can
+ * occupy is limited by {@link PmsConfiguration#getPreRollMaxConcurrent()} and
+ * {@link PmsConfiguration#getPreRollBufferSize()}.
+ */
+@ThreadSafe
+public class PreRollManager implements Service {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PreRollManager.class);
+
+	/**
+	 * The time in milliseconds to keep a pre-rolled transcode alive after
+	 * playback of the previous item has stopped.
+	 */
+	public static final long ADOPTION_TIMEOUT = 30000;
+
+	/** The currently pending or running pre-rolls per renderer */
+	@GuardedBy("this")
+	protected final HashMap<RendererConfiguration, PreRollTicket> tickets = new HashMap<>();
+
+	/** The {@link ScheduledExecutorService} used to run the pre-rolls */
+	@GuardedBy("this")
+	protected ScheduledExecutorService executor;
+
+	/**
+	 * Creates and starts a new {@link PreRollManager} instance.
+	 */
+	public PreRollManager() {
+		start();
+	}
+
+	@Override
+	public synchronized void start() {
+		if (executor == null) {
+			LOGGER.debug("Starting PreRollManager");
+			executor = Executors.newSingleThreadScheduledExecutor(
+				new BasicThreadFactory("Transcode pre-roll", Thread.MIN_PRIORITY)
+			);
+		} else if (LOGGER.isDebugEnabled()) {
+			LOGGER.warn("PreRollManager is already running, start attempt failed");
+		}
+	}
+
+	@Override
+	public void stop() {
+		List<PreRollTicket> cancelled;
+		synchronized (this) {
+			if (executor == null) {
+				return;
+			}
+			LOGGER.debug("Stopping PreRollManager");
+			executor.shutdownNow();
+			executor = null;
+			cancelled = new ArrayList<>(tickets.values());
+			tickets.clear();
+		}
+		for (PreRollTicket ticket : cancelled) {
+			ticket.cancel();
+		}
+	}
+
+	@Override
+	public synchronized boolean isAlive() {
+		return executor != null;
+	}
+
+	/**
+	 * @return The number of pre-rolled transcodes that are currently running
+	 *         and hasn't been adopted.
+	 */
+	public synchronized int getActiveCount() {
+		int result = 0;
+		for (PreRollTicket ticket : tickets.values()) {
+			if (ticket.process != null) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Registers that playback of {@code resource} has started on
+	 * {@code renderer}. Any pre-roll for this renderer that doesn't match
+	 * {@code resource} is cancelled, and a new pre-roll of the next sibling is
+	 * scheduled if applicable.
+	 *
+	 * @param resource the {@link DLNAResource} that has started playing.
+	 * @param renderer the {@link RendererConfiguration} playing
+	 *            {@code resource}.
+	 */
+	public void playbackStarted(@Nonnull DLNAResource resource, @Nullable RendererConfiguration renderer) {
+		if (renderer == null) {
+			return;
+		}
+		PreRollTicket previous;
+		ProcessWrapper adopted = null;
+		synchronized (this) {
+			previous = tickets.remove(renderer);
+			if (previous != null && previous.next == resource && previous.process != null) {
+				LOGGER.debug("Renderer \"{}\" adopted pre-rolled transcode of \"{}\"", renderer.getRendererName(), resource.getName());
+				previous.cancelSchedule();
+				adopted = previous.process;
+				previous = null;
+			}
+		}
+		if (adopted != null) {
+			// Normally done already when the stream was requested
+			resource.adoptPreRoll(adopted);
+		}
+		if (previous != null) {
+			LOGGER.trace("Cancelling pre-roll of \"{}\" since \"{}\" started playing", previous.next.getName(), resource.getName());
+			previous.cancel();
+		}
+
+		PmsConfiguration configuration = PMS.getConfiguration(renderer);
+		if (!configuration.isPreRollEnabled() || resource.getPlayer() == null || resource.getMedia() == null) {
+			return;
+		}
+		double duration = resource.getMedia().getDurationInSeconds();
+		if (duration <= 0) {
+			return;
+		}
+		DLNAResource next = getNextSibling(resource);
+		if (next == null) {
+			return;
+		}
+
+		long delay = Math.max(
+			0,
+			(long) (duration * configuration.getPreRollStartPercent() * 10) - (long) (resource.getLastStartPosition() * 1000)
+		);
+		synchronized (this) {
+			if (executor == null) {
+				return;
+			}
+			PreRollTicket ticket = new PreRollTicket(resource, next, renderer);
+			ticket.future = executor.schedule(new PreRollTask(ticket), delay, TimeUnit.MILLISECONDS);
+			tickets.put(renderer, ticket);
+			LOGGER.trace("Scheduled pre-roll of \"{}\" in {} ms", next.getName(), delay);
+		}
+	}
+
+	/**
+	 * Registers that playback of {@code resource} has stopped on
+	 * {@code renderer}. A pending pre-roll is cancelled, while a running
+	 * pre-roll is given {@link #ADOPTION_TIMEOUT} milliseconds to be adopted.
+	 *
+	 * @param resource the {@link DLNAResource} that has stopped playing.
+	 * @param renderer the {@link RendererConfiguration} that played
+	 *            {@code resource}.
+	 */
+	public void playbackStopped(@Nonnull DLNAResource resource, @Nullable RendererConfiguration renderer) {
+		if (renderer == null) {
+			return;
+		}
+		PreRollTicket cancelled = null;
+		synchronized (this) {
+			final PreRollTicket ticket = tickets.get(renderer);
+			if (ticket == null || ticket.current != resource) {
+				return;
+			}
+			ticket.cancelSchedule();
+			if (ticket.process == null || executor == null) {
+				tickets.remove(renderer);
+				cancelled = ticket;
+			} else {
+				ticket.future = executor.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						boolean expired;
+						synchronized (PreRollManager.this) {
+							expired = tickets.get(ticket.renderer) == ticket;
+							if (expired) {
+								tickets.remove(ticket.renderer);
+							}
+						}
+						if (expired) {
+							LOGGER.debug("Pre-rolled transcode of \"{}\" wasn't adopted, stopping it", ticket.next.getName());
+							ticket.cancel();
+						}
+					}
+				}, ADOPTION_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (cancelled != null) {
+			cancelled.cancel();
+		}
+	}
+
+	/**
+	 * Finds the next sibling of {@code resource} that is a transcoded item if
+	 * the parent is a folder or playlist that is played in sequence.
+	 *
+	 * @param resource the {@link DLNAResource} whose sibling to find.
+	 * @return The next sibling or {@code null}.
+	 */
+	@Nullable
+	protected static DLNAResource getNextSibling(@Nonnull DLNAResource resource) {
+		DLNAResource parent = resource.getParent();
+		if (
+			parent == null ||
+			!parent.isFolder() ||
+			!(parent instanceof MapFile || parent instanceof PlaylistFolder || parent instanceof CueFolder)
+		) {
+			return null;
+		}
+		List<DLNAResource> children = parent.getChildren();
+		DLNAResource result = null;
+		synchronized (children) {
+			int idx = children.indexOf(resource);
+			if (idx >= 0 && idx < children.size() - 1) {
+				result = children.get(idx + 1);
+			}
+		}
+		if (result == null || result.isFolder() || result.getPlayer() == null || result.isResume()) {
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether there is room for another pre-roll within the configured
+	 * budget, and whether the {@link TranscodeScheduler} has capacity for it
+	 * as background work.
+	 *
+	 * @param configuration the {@link PmsConfiguration} to use.
+	 * @return {@code true} if a new pre-roll can be started, {@code false}
+	 *         otherwise.
+	 */
+	@GuardedBy("this")
+	protected boolean isWithinBudget(@Nonnull PmsConfiguration configuration) {
+		int active = 0;
+		for (PreRollTicket ticket : tickets.values()) {
+			if (ticket.process != null) {
+				active++;
+			}
+		}
+		if (active >= configuration.getPreRollMaxConcurrent()) {
+			return false;
+		}
+		TranscodeScheduler scheduler = Services.transcodeScheduler();
+		if (scheduler != null && !scheduler.hasBackgroundCapacity()) {
+			return false;
+		}
+		Runtime runtime = Runtime.getRuntime();
+		long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		return available > 2L * configuration.getPreRollBufferSize() * 1048576L;
+	}
+
+	/**
+	 * The {@link Runnable} starting the pre-roll transcode.
+	 */
+	protected class PreRollTask implements Runnable {
+
+		private final PreRollTicket ticket;
+
+		/**
+		 * Creates a new instance for the specified {@link PreRollTicket}.
+		 *
+		 * @param ticket the {@link PreRollTicket}.
+		 */
+		public PreRollTask(@Nonnull PreRollTicket ticket) {
+			this.ticket = ticket;
+		}
+
+		@Override
+		public void run() {
+			PmsConfiguration configuration = PMS.getConfiguration(ticket.renderer);
+			synchronized (PreRollManager.this) {
+				if (tickets.get(ticket.renderer) != ticket) {
+					return;
+				}
+				if (!isWithinBudget(configuration)) {
+					LOGGER.debug("Skipping pre-roll of \"{}\" since the pre-roll budget is exhausted", ticket.next.getName());
+					tickets.remove(ticket.renderer);
+					return;
+				}
+			}
+
+			ticket.next.syncResolve();
+			ProcessWrapper process = ticket.next.startPreRoll(ticket.renderer, configuration.getPreRollBufferSize());
+			if (process == null) {
+				synchronized (PreRollManager.this) {
+					if (tickets.get(ticket.renderer) == ticket) {
+						tickets.remove(ticket.renderer);
+					}
+				}
+				return;
+			}
+
+			boolean cancelled;
+			synchronized (PreRollManager.this) {
+				cancelled = tickets.get(ticket.renderer) != ticket;
+				ticket.process = process;
+			}
+			if (cancelled) {
+				ticket.cancel();
+			}
+		}
+	}
+
+	/**
+	 * This class represents a scheduled or running pre-roll.
+	 */
+	protected static class PreRollTicket {
+
+		/** The currently playing {@link DLNAResource} */
+		protected final DLNAResource current;
+
+		/** The {@link DLNAResource} to pre-roll */
+		protected final DLNAResource next;
+
+		/** The {@link RendererConfiguration} */
+		protected final RendererConfiguration renderer;
+
+		/** The pre-rolling {@link ProcessWrapper} */
+		@GuardedBy("PreRollManager.this")
+		protected ProcessWrapper process;
+
+		/** The currently scheduled {@link ScheduledFuture} */
+		@GuardedBy("PreRollManager.this")
+		protected ScheduledFuture<?> future;
+
+		/**
+		 * Creates a new instance using the specified parameters.
+		 *
+		 * @param current the currently playing {@link DLNAResource}.
+		 * @param next the {@link DLNAResource} to pre-roll.
+		 * @param renderer the {@link RendererConfiguration}.
+		 */
+		public PreRollTicket(
+			@Nonnull DLNAResource current,
+			@Nonnull DLNAResource next,
+			@Nonnull RendererConfiguration renderer
+		) {
+			this.current = current;
+			this.next = next;
+			this.renderer = renderer;
+		}
+
+		/**
+		 * Cancels any scheduled task for this ticket.
+		 */
+		protected void cancelSchedule() {
+			if (future != null) {
+				future.cancel(false);
+				future = null;
+			}
+		}
+
+		/**
+		 * Cancels any scheduled task and stops the pre-rolled transcode if it
+		 * has been started.
+		 */
+		protected void cancel() {
+			cancelSchedule();
+			if (process != null) {
+				next.cancelPreRoll(process);
+				process = null;
+			}
+		}
+	}
+}
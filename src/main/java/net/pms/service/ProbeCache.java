@@ -0,0 +1,578 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.pms.PMS;
+import net.pms.io.ListProcessWrapperResult;
+import net.pms.io.SimpleProcessWrapper;
+
+/**
+ * This class keeps the output of the processes that are run to find the
+ * versions and capabilities of the transcoding engines, so that they don't
+ * have to be run again on every start.
+ * <p>
+ * The output is stored by command line together with the size, modification
+ * time and a checksum of the executable, and is only used as long as they
+ * match. Output that is older than the maximum age is still used, but the
+ * command is recorded so that it can be run again with {@link #reprobe()}
+ * once the server is up. Entries for commands that weren't run since the
+ * cache was read are dropped when it's saved.
+ */
+@ThreadSafe
+public class ProbeCache implements Service {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProbeCache.class);
+
+	/** The name of the cache file in the profile folder */
+	public static final String FILENAME = "engines.cache";
+
+	/** The default maximum age of cached output in milliseconds */
+	public static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(7);
+
+	/** The version of the cache file format */
+	private static final int VERSION = 1;
+
+	/** The number of bytes read from each end of an executable for the checksum */
+	private static final int SAMPLE_SIZE = 1024 * 1024;
+
+	/** The cache file or {@code null} if the cache isn't persisted */
+	@Nullable
+	protected final Path file;
+
+	/** The maximum age of cached output in milliseconds */
+	protected final long maxAge;
+
+	@GuardedBy("this")
+	private final HashMap<String, Entry> entries = new HashMap<>();
+
+	/** The fingerprints of the executables that have been checked */
+	@GuardedBy("this")
+	private final HashMap<Path, Fingerprint> fingerprints = new HashMap<>();
+
+	/** The commands that have been run or answered since the cache was read */
+	@GuardedBy("this")
+	private final HashSet<String> used = new HashSet<>();
+
+	/** The commands whose cached output should be refreshed */
+	@GuardedBy("this")
+	private final LinkedHashMap<String, Probe> staleProbes = new LinkedHashMap<>();
+
+	@GuardedBy("this")
+	private boolean started;
+
+	@GuardedBy("this")
+	private boolean dirty;
+
+	@GuardedBy("this")
+	private long hits;
+
+	/**
+	 * Creates and starts a new {@link ProbeCache} instance stored in the
+	 * profile folder.
+	 */
+	public ProbeCache() {
+		this(Paths.get(PMS.getConfiguration().getProfileFolder(), FILENAME), DEFAULT_MAX_AGE);
+	}
+
+	/**
+	 * Creates and starts a new {@link ProbeCache} instance.
+	 *
+	 * @param file the cache file or {@code null} to not persist the cache.
+	 * @param maxAge the maximum age of cached output in milliseconds.
+	 */
+	ProbeCache(@Nullable Path file, long maxAge) {
+		this.file = file;
+		this.maxAge = maxAge;
+		start();
+	}
+
+	@Override
+	public synchronized void start() {
+		if (started) {
+			return;
+		}
+		LOGGER.debug("Starting ProbeCache");
+		started = true;
+		load();
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (!started) {
+			return;
+		}
+		LOGGER.debug("Stopping ProbeCache");
+		save();
+		started = false;
+	}
+
+	@Override
+	public synchronized boolean isAlive() {
+		return started;
+	}
+
+	/**
+	 * Runs the specified probe through the {@link ProbeCache} service if it
+	 * exists, or directly otherwise.
+	 *
+	 * @param timeoutMS the process timeout in milliseconds.
+	 * @param terminateTimeoutMS the timeout in milliseconds for each
+	 *            termination attempt before a new attempt is made.
+	 * @param command the command(s) used to create the {@link Process}.
+	 * @return The process result as a {@link ListProcessWrapperResult}.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *             {@link Process} to finish.
+	 */
+	@Nonnull
+	public static ListProcessWrapperResult runProbe(
+		long timeoutMS,
+		long terminateTimeoutMS,
+		@Nonnull String... command
+	) throws InterruptedException {
+		ProbeCache probeCache = Services.probeCache();
+		if (probeCache == null) {
+			return SimpleProcessWrapper.runProcessListOutput(timeoutMS, terminateTimeoutMS, command);
+		}
+		return probeCache.run(timeoutMS, terminateTimeoutMS, command);
+	}
+
+	/**
+	 * Returns the cached output of the specified command if the executable
+	 * is unchanged, or runs the command and caches its output otherwise. The
+	 * first element of {@code command} must be the executable.
+	 *
+	 * @param timeoutMS the process timeout in milliseconds.
+	 * @param terminateTimeoutMS the timeout in milliseconds for each
+	 *            termination attempt before a new attempt is made.
+	 * @param command the command(s) used to create the {@link Process}.
+	 * @return The process result as a {@link ListProcessWrapperResult}.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *             {@link Process} to finish.
+	 */
+	@Nonnull
+	public ListProcessWrapperResult run(
+		long timeoutMS,
+		long terminateTimeoutMS,
+		@Nonnull String... command
+	) throws InterruptedException {
+		String key = toKey(command);
+		Path executable = Paths.get(command[0]);
+		Fingerprint fingerprint = getFingerprint(executable);
+		if (fingerprint != null) {
+			synchronized (this) {
+				Entry entry = entries.get(key);
+				if (entry != null && entry.fingerprint.equals(fingerprint)) {
+					if (System.currentTimeMillis() - entry.probed > maxAge) {
+						staleProbes.put(key, new Probe(command, timeoutMS, terminateTimeoutMS));
+					}
+					used.add(key);
+					hits++;
+					LOGGER.trace("Using the cached output of \"{}\"", key);
+					return new ListProcessWrapperResult(new ArrayList<>(entry.output), entry.exitCode, null);
+				}
+			}
+		}
+		ListProcessWrapperResult result = SimpleProcessWrapper.runProcessListOutput(timeoutMS, terminateTimeoutMS, command);
+		store(key, executable, fingerprint, result);
+		return result;
+	}
+
+	/**
+	 * @return {@code true} if cached output older than the maximum age has
+	 *         been used since the last {@link #reprobe()}, {@code false}
+	 *         otherwise.
+	 */
+	public synchronized boolean hasStaleProbes() {
+		return !staleProbes.isEmpty();
+	}
+
+	/**
+	 * Runs the commands whose cached output was older than the maximum age
+	 * again, updates the cache and saves it.
+	 *
+	 * @return The executables whose output has changed.
+	 * @throws InterruptedException If interrupted while waiting for a
+	 *             {@link Process} to finish.
+	 */
+	@Nonnull
+	public Set<Path> reprobe() throws InterruptedException {
+		ArrayList<Probe> probes;
+		synchronized (this) {
+			probes = new ArrayList<>(staleProbes.values());
+			staleProbes.clear();
+		}
+		HashSet<Path> changed = new HashSet<>();
+		for (Probe probe : probes) {
+			String key = toKey(probe.command);
+			Path executable = Paths.get(probe.command[0]);
+			Fingerprint fingerprint = getFingerprint(executable);
+			ListProcessWrapperResult result = SimpleProcessWrapper.runProcessListOutput(
+				probe.timeoutMS,
+				probe.terminateTimeoutMS,
+				probe.command
+			);
+			if (result.getError() != null) {
+				LOGGER.debug("Failed to probe \"{}\" again: {}", key, result.getError().getMessage());
+				continue;
+			}
+			synchronized (this) {
+				Entry previous = entries.get(key);
+				if (
+					previous == null ||
+					previous.exitCode != result.getExitCode() ||
+					!previous.output.equals(result.getOutput())
+				) {
+					changed.add(executable);
+				}
+			}
+			store(key, executable, fingerprint, result);
+		}
+		if (!probes.isEmpty()) {
+			LOGGER.debug("Probed {} commands again, the output of {} executables changed", probes.size(), changed.size());
+		}
+		save();
+		return changed;
+	}
+
+	/**
+	 * @return The number of cached commands.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The number of times cached output has been used.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Writes the cache file if an entry has been stored or has become unused
+	 * since the cache was read.
+	 */
+	public synchronized void save() {
+		if (entries.keySet().retainAll(used)) {
+			dirty = true;
+		}
+		if (file == null || !dirty) {
+			return;
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				output.writeInt(VERSION);
+				output.writeInt(entries.size());
+				for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+					Entry entry = mapEntry.getValue();
+					writeString(output, mapEntry.getKey());
+					output.writeLong(entry.fingerprint.size);
+					output.writeLong(entry.fingerprint.modified);
+					output.writeLong(entry.fingerprint.checksum);
+					output.writeLong(entry.probed);
+					output.writeInt(entry.exitCode);
+					output.writeInt(entry.output.size());
+					for (String line : entry.output) {
+						writeString(output, line);
+					}
+				}
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			dirty = false;
+			LOGGER.debug("Saved the output of {} engine probes to \"{}\"", entries.size(), file);
+		} catch (IOException e) {
+			LOGGER.warn("Couldn't save the engine probe cache to \"{}\": {}", file, e.getMessage());
+			LOGGER.trace("", e);
+		}
+	}
+
+	@GuardedBy("this")
+	private void load() {
+		entries.clear();
+		if (file == null) {
+			return;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != VERSION) {
+				LOGGER.debug("Ignoring the engine probe cache \"{}\" because it's from another version", file);
+				return;
+			}
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				String key = readString(input);
+				Fingerprint fingerprint = new Fingerprint(input.readLong(), input.readLong(), input.readLong());
+				long probed = input.readLong();
+				int exitCode = input.readInt();
+				int lines = input.readInt();
+				ArrayList<String> output = new ArrayList<>(lines);
+				for (int j = 0; j < lines; j++) {
+					output.add(readString(input));
+				}
+				entries.put(key, new Entry(fingerprint, probed, exitCode, output));
+			}
+			LOGGER.debug("Read the output of {} engine probes from \"{}\"", entries.size(), file);
+		} catch (NoSuchFileException e) {
+			LOGGER.trace("The engine probe cache \"{}\" doesn't exist", file);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.debug("Ignoring the engine probe cache \"{}\" because it couldn't be read: {}", file, e.getMessage());
+			LOGGER.trace("", e);
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Stores the output of a command that has just been run, unless the
+	 * executable has changed while it ran.
+	 *
+	 * @param key the key of the command.
+	 * @param executable the executable.
+	 * @param fingerprint the {@link Fingerprint} of {@code executable} before
+	 *            the command was run.
+	 * @param result the result of the command.
+	 */
+	private void store(
+		@Nonnull String key,
+		@Nonnull Path executable,
+		@Nullable Fingerprint fingerprint,
+		@Nonnull ListProcessWrapperResult result
+	) {
+		if (fingerprint == null || result.getError() != null) {
+			// Failures are probed again on the next start
+			return;
+		}
+		if (!fingerprint.equals(getFingerprint(executable))) {
+			LOGGER.debug("Not caching the output of \"{}\" because the executable changed while it ran", key);
+			return;
+		}
+		synchronized (this) {
+			entries.put(key, new Entry(fingerprint, System.currentTimeMillis(), result.getExitCode(), result.getOutput()));
+			used.add(key);
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Returns the {@link Fingerprint} of the specified executable. The
+	 * checksum is only calculated again if the size or modification time
+	 * has changed since it was last calculated.
+	 *
+	 * @param executable the executable.
+	 * @return The {@link Fingerprint} or {@code null} if the executable
+	 *         can't be read.
+	 */
+	@Nullable
+	private Fingerprint getFingerprint(@Nonnull Path executable) {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(executable, BasicFileAttributes.class);
+		} catch (IOException e) {
+			return null;
+		}
+		if (!attributes.isRegularFile()) {
+			return null;
+		}
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		synchronized (this) {
+			Fingerprint fingerprint = fingerprints.get(executable);
+			if (fingerprint != null && fingerprint.size == size && fingerprint.modified == modified) {
+				return fingerprint;
+			}
+		}
+		try {
+			Fingerprint fingerprint = new Fingerprint(size, modified, calculateChecksum(executable, size));
+			synchronized (this) {
+				fingerprints.put(executable, fingerprint);
+			}
+			return fingerprint;
+		} catch (IOException e) {
+			LOGGER.debug("Couldn't read \"{}\" to calculate its checksum: {}", executable, e.getMessage());
+			LOGGER.trace("", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Calculates a checksum of the beginning and the end of the specified
+	 * file, which is enough to tell different builds apart without reading
+	 * all of a large executable.
+	 *
+	 * @param path the file.
+	 * @param size the size of the file.
+	 * @return The checksum.
+	 * @throws IOException If an error occurs while reading.
+	 */
+	static long calculateChecksum(@Nonnull Path path, long size) throws IOException {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(SAMPLE_SIZE, size));
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			read(channel, buffer, 0);
+			crc.update(buffer.array(), 0, buffer.position());
+			if (size > SAMPLE_SIZE) {
+				buffer.clear();
+				read(channel, buffer, Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE));
+				crc.update(buffer.array(), 0, buffer.position());
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				return;
+			}
+			position += read;
+		}
+	}
+
+	private static String toKey(String... command) {
+		StringBuilder sb = new StringBuilder();
+		for (String element : command) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(element);
+		}
+		return sb.toString();
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The properties of an executable that must be unchanged for its cached
+	 * output to be used.
+	 */
+	@Immutable
+	private static class Fingerprint {
+		private final long size;
+		private final long modified;
+		private final long checksum;
+
+		public Fingerprint(long size, long modified, long checksum) {
+			this.size = size;
+			this.modified = modified;
+			this.checksum = checksum;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (int) (checksum ^ (checksum >>> 32));
+			result = prime * result + (int) (modified ^ (modified >>> 32));
+			result = prime * result + (int) (size ^ (size >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Fingerprint)) {
+				return false;
+			}
+			Fingerprint other = (Fingerprint) obj;
+			return checksum == other.checksum && modified == other.modified && size == other.size;
+		}
+	}
+
+	/**
+	 * The cached output of a command.
+	 */
+	@Immutable
+	private static class Entry {
+		private final Fingerprint fingerprint;
+		private final long probed;
+		private final int exitCode;
+		private final List<String> output;
+
+		public Entry(Fingerprint fingerprint, long probed, int exitCode, List<String> output) {
+			this.fingerprint = fingerprint;
+			this.probed = probed;
+			this.exitCode = exitCode;
+			this.output = Collections.unmodifiableList(new ArrayList<>(output));
+		}
+	}
+
+	/**
+	 * A command to run again.
+	 */
+	@Immutable
+	private static class Probe {
+		private final String[] command;
+		private final long timeoutMS;
+		private final long terminateTimeoutMS;
+
+		public Probe(String[] command, long timeoutMS, long terminateTimeoutMS) {
+			this.command = command.clone();
+			this.timeoutMS = timeoutMS;
+			this.terminateTimeoutMS = terminateTimeoutMS;
+		}
+	}
+}
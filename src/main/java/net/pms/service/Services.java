@@ -73,8 +73,16 @@ public class Services {
 
 	private ProcessManager processManager;
 
+	private PreRollManager preRollManager;
+
 	private SleepManager sleepManager;
 
+	private TranscodeScheduler transcodeScheduler;
+
+	private LibraryIndexer libraryIndexer;
+
+	private ProbeCache probeCache;
+
 	private TableManager tableManager;
 
 	/**
@@ -118,6 +126,14 @@ public class Services {
 		return instance == null ? null : instance.getProcessManager();
 	}
 
+	/**
+	 * @return The {@link PreRollManager} instance.
+	 */
+	@Nullable
+	public static PreRollManager preRollManager() {
+		return instance == null ? null : instance.getPreRollManager();
+	}
+
 	/**
 	 * @return The {@link SleepManager} instance.
 	 */
@@ -126,6 +142,30 @@ public class Services {
 		return instance == null ? null : instance.getSleepManager();
 	}
 
+	/**
+	 * @return The {@link TranscodeScheduler} instance.
+	 */
+	@Nullable
+	public static TranscodeScheduler transcodeScheduler() {
+		return instance == null ? null : instance.getTranscodeScheduler();
+	}
+
+	/**
+	 * @return The {@link LibraryIndexer} instance.
+	 */
+	@Nullable
+	public static LibraryIndexer libraryIndexer() {
+		return instance == null ? null : instance.getLibraryIndexer();
+	}
+
+	/**
+	 * @return The {@link ProbeCache} instance.
+	 */
+	@Nullable
+	public static ProbeCache probeCache() {
+		return instance == null ? null : instance.getProbeCache();
+	}
+
 	/**
 	 * @return The {@link TableManager} instance.
 	 */
@@ -159,13 +199,24 @@ public class Services {
 	 * @throws IllegalStateException If the services have already been started.
 	 */
 	public void start() {
-		if (processManager != null || sleepManager != null) {
+		if (
+			processManager != null ||
+			preRollManager != null ||
+			sleepManager != null ||
+			transcodeScheduler != null ||
+			libraryIndexer != null ||
+			probeCache != null
+		) {
 			throw new IllegalStateException("Services have already been started");
 		}
 		LOGGER.debug("Starting services");
 
 		processManager = new ProcessManager();
+		preRollManager = new PreRollManager();
 		sleepManager = new SleepManager();
+		transcodeScheduler = new TranscodeScheduler();
+		libraryIndexer = new LibraryIndexer();
+		probeCache = new ProbeCache();
 	}
 
 	/**
@@ -226,6 +277,11 @@ public class Services {
 	public void stop() {
 		LOGGER.debug("Stopping services");
 
+		if (preRollManager != null) {
+			preRollManager.stop();
+			preRollManager = null;
+		}
+
 		if (processManager != null) {
 			processManager.stop();
 			processManager = null;
@@ -236,6 +292,21 @@ public class Services {
 			sleepManager = null;
 		}
 
+		if (transcodeScheduler != null) {
+			transcodeScheduler.stop();
+			transcodeScheduler = null;
+		}
+
+		if (libraryIndexer != null) {
+			libraryIndexer.stop();
+			libraryIndexer = null;
+		}
+
+		if (probeCache != null) {
+			probeCache.stop();
+			probeCache = null;
+		}
+
 		if (tableManager != null) {
 			tableManager.stop();
 		}
@@ -251,6 +322,16 @@ public class Services {
 		return processManager;
 	}
 
+	/**
+	 * Isn't normally needed, use {@link Services#preRollManager()} instead.
+	 *
+	 * @return The {@link PreRollManager} instance.
+	 */
+	@Nullable
+	public PreRollManager getPreRollManager() {
+		return preRollManager;
+	}
+
 	/**
 	 * Isn't normally needed, use {@link Services#sleepManager()} instead.
 	 *
@@ -261,6 +342,36 @@ public class Services {
 		return sleepManager;
 	}
 
+	/**
+	 * Isn't normally needed, use {@link Services#transcodeScheduler()} instead.
+	 *
+	 * @return The {@link TranscodeScheduler} instance.
+	 */
+	@Nullable
+	public TranscodeScheduler getTranscodeScheduler() {
+		return transcodeScheduler;
+	}
+
+	/**
+	 * Isn't normally needed, use {@link Services#libraryIndexer()} instead.
+	 *
+	 * @return The {@link LibraryIndexer} instance.
+	 */
+	@Nullable
+	public LibraryIndexer getLibraryIndexer() {
+		return libraryIndexer;
+	}
+
+	/**
+	 * Isn't normally needed, use {@link Services#probeCache()} instead.
+	 *
+	 * @return The {@link ProbeCache} instance.
+	 */
+	@Nullable
+	public ProbeCache getProbeCache() {
+		return probeCache;
+	}
+
 	/**
 	 * Isn't normally needed, use {@link Services#tableManager()} instead.
 	 *
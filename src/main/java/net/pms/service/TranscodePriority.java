@@ -0,0 +1,38 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.service;
+
+/**
+ * This {@code enum} represents the priority of an encoder process admitted by
+ * the {@link TranscodeScheduler}.
+ */
+public enum TranscodePriority {
+
+	/**
+	 * A transcode that is being watched. These are always admitted
+	 * immediately, but might be downgraded when the CPU is oversubscribed.
+	 */
+	PLAYBACK,
+
+	/**
+	 * Background work like thumbnail generation. These are queued while the
+	 * CPU is saturated by {@link #PLAYBACK} transcodes.
+	 */
+	BACKGROUND;
+}
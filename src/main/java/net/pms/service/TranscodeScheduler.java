@@ -0,0 +1,458 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.service;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.pms.PMS;
+import net.pms.io.OutputParams;
+
+/**
+ * This class does admission control for encoder processes. It keeps track of
+ * the running encoder processes and divides the configured number of CPU
+ * cores between them, so that concurrent transcodes don't oversubscribe the
+ * CPU.
+ * <p>
+ * {@link TranscodePriority#PLAYBACK} transcodes are always admitted
+ * immediately, since a renderer waiting for a stream would otherwise time out.
+ * When there are too many of them to give each
+ * {@link #MIN_FULL_QUALITY_THREADS} threads, new transcodes are admitted as
+ * "degraded" so that the encoders can use faster settings or lower bitrates.
+ * {@link TranscodePriority#BACKGROUND} work is queued while the CPU is
+ * saturated by playback transcodes, but for no longer than
+ * {@link #BACKGROUND_WAIT_TIMEOUT} milliseconds.
+ * <p>
+ * The thread count of an encoder process can't be changed once it has been
+ * started, so the division is done at admission time only.
+ */
+@ThreadSafe
+public class TranscodeScheduler implements Service {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TranscodeScheduler.class);
+
+	/**
+	 * The minimum number of threads a playback transcode should have to run
+	 * without being degraded.
+	 */
+	public static final int MIN_FULL_QUALITY_THREADS = 2;
+
+	/**
+	 * The maximum time in milliseconds background work is queued before it
+	 * is admitted regardless of the load.
+	 */
+	public static final long BACKGROUND_WAIT_TIMEOUT = 60000;
+
+	/** The currently admitted {@link TranscodeSlot}s */
+	@GuardedBy("this")
+	protected final ArrayList<TranscodeSlot> slots = new ArrayList<>();
+
+	@GuardedBy("this")
+	private boolean started;
+
+	/**
+	 * Creates and starts a new {@link TranscodeScheduler} instance.
+	 */
+	public TranscodeScheduler() {
+		start();
+	}
+
+	@Override
+	public synchronized void start() {
+		LOGGER.debug("Starting TranscodeScheduler");
+		started = true;
+	}
+
+	@Override
+	public synchronized void stop() {
+		LOGGER.debug("Stopping TranscodeScheduler");
+		started = false;
+		slots.clear();
+		notifyAll();
+	}
+
+	@Override
+	public synchronized boolean isAlive() {
+		return started;
+	}
+
+	/**
+	 * @return The number of CPU cores available for encoder processes.
+	 */
+	protected int getCapacity() {
+		return Math.max(1, PMS.getConfiguration().getNumberOfCpuCores());
+	}
+
+	/**
+	 * @return The number of admitted {@link TranscodePriority#PLAYBACK}
+	 *         transcodes.
+	 */
+	public synchronized int getPlaybackCount() {
+		return count(TranscodePriority.PLAYBACK);
+	}
+
+	/**
+	 * @return The number of admitted {@link TranscodePriority#BACKGROUND}
+	 *         processes.
+	 */
+	public synchronized int getBackgroundCount() {
+		return count(TranscodePriority.BACKGROUND);
+	}
+
+	@GuardedBy("this")
+	private int count(TranscodePriority priority) {
+		int result = 0;
+		for (TranscodeSlot slot : slots) {
+			if (slot.priority == priority) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether the current playback transcodes use all the available
+	 * capacity.
+	 *
+	 * @param capacity the number of available CPU cores.
+	 * @return {@code true} if background work should wait, {@code false}
+	 *         otherwise.
+	 */
+	@GuardedBy("this")
+	protected boolean isSaturated(int capacity) {
+		return
+			count(TranscodePriority.PLAYBACK) * MIN_FULL_QUALITY_THREADS >= capacity ||
+			count(TranscodePriority.BACKGROUND) >= Math.max(1, capacity / 2);
+	}
+
+	/**
+	 * @return {@code true} if {@link TranscodePriority#BACKGROUND} work would
+	 *         be admitted without waiting, {@code false} if the CPU is
+	 *         saturated.
+	 */
+	public synchronized boolean hasBackgroundCapacity() {
+		return !started || !isSaturated(getCapacity());
+	}
+
+	/**
+	 * Admits a new encoder process and returns its {@link TranscodeSlot}. This
+	 * will block for up to {@link #BACKGROUND_WAIT_TIMEOUT} milliseconds for
+	 * {@link TranscodePriority#BACKGROUND} work if the CPU is saturated.
+	 * <p>
+	 * The returned {@link TranscodeSlot} must be released with
+	 * {@link #release(TranscodeSlot)} when the process has terminated.
+	 *
+	 * @param name the name of the process used for logging.
+	 * @param priority the {@link TranscodePriority}.
+	 * @param requestedThreads the maximum number of threads the process can
+	 *            use.
+	 * @return The new {@link TranscodeSlot}.
+	 */
+	@Nonnull
+	public synchronized TranscodeSlot acquire(
+		@Nullable String name,
+		@Nonnull TranscodePriority priority,
+		int requestedThreads
+	) {
+		int capacity = getCapacity();
+		requestedThreads = Math.max(1, requestedThreads);
+		TranscodeSlot slot;
+		if (priority == TranscodePriority.BACKGROUND) {
+			if (started && isSaturated(capacity)) {
+				LOGGER.trace("Queuing background process \"{}\" since the CPU is saturated", name);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BACKGROUND_WAIT_TIMEOUT);
+				try {
+					long remaining;
+					while (started && isSaturated(capacity) && (remaining = deadline - System.nanoTime()) > 0) {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				} catch (InterruptedException e) {
+					LOGGER.debug("Interrupted while queuing \"{}\", admitting it", name);
+					Thread.currentThread().interrupt();
+				}
+			}
+			slot = new TranscodeSlot(this, name, priority, 1, false);
+		} else {
+			int sessions = count(TranscodePriority.PLAYBACK) + 1;
+			int share = capacity / sessions;
+			slot = new TranscodeSlot(
+				this,
+				name,
+				priority,
+				Math.max(1, Math.min(requestedThreads, share)),
+				sessions > 1 && share < MIN_FULL_QUALITY_THREADS
+			);
+		}
+		if (started) {
+			slots.add(slot);
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(
+				"Admitted {} process \"{}\" with {} thread{}{}",
+				priority == TranscodePriority.PLAYBACK ? "playback" : "background",
+				name,
+				slot.threads,
+				slot.threads == 1 ? "" : "s",
+				slot.degraded ? " (degraded)" : ""
+			);
+		}
+		return slot;
+	}
+
+	/**
+	 * Admits a new encoder process like {@link #acquire} unless it is
+	 * {@link TranscodePriority#BACKGROUND} work and the CPU is saturated, in
+	 * which case {@code null} is returned immediately instead of waiting.
+	 *
+	 * @param name the name of the process used for logging.
+	 * @param priority the {@link TranscodePriority}.
+	 * @param requestedThreads the maximum number of threads the process can
+	 *            use.
+	 * @return The new {@link TranscodeSlot} or {@code null} if there is no
+	 *         capacity for background work.
+	 */
+	@Nullable
+	public synchronized TranscodeSlot tryAcquire(
+		@Nullable String name,
+		@Nonnull TranscodePriority priority,
+		int requestedThreads
+	) {
+		if (priority == TranscodePriority.BACKGROUND && started && isSaturated(getCapacity())) {
+			LOGGER.trace("Not admitting background process \"{}\" since the CPU is saturated", name);
+			return null;
+		}
+		return acquire(name, priority, requestedThreads);
+	}
+
+	/**
+	 * Releases a {@link TranscodeSlot} previously acquired with
+	 * {@link #acquire}. Releasing a {@link TranscodeSlot} more than once is
+	 * harmless.
+	 *
+	 * @param slot the {@link TranscodeSlot} to release.
+	 */
+	public synchronized void release(@Nullable TranscodeSlot slot) {
+		if (slot != null && slots.remove(slot)) {
+			LOGGER.trace("Released transcode slot for \"{}\"", slot.name);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Changes the {@link TranscodePriority} of an admitted
+	 * {@link TranscodeSlot}. The number of threads isn't changed, since the
+	 * process is already running.
+	 *
+	 * @param slot the {@link TranscodeSlot} to change.
+	 * @param priority the new {@link TranscodePriority}.
+	 */
+	public synchronized void setPriority(@Nonnull TranscodeSlot slot, @Nonnull TranscodePriority priority) {
+		if (slot.priority == priority) {
+			return;
+		}
+		LOGGER.debug("Changing priority of process \"{}\" from {} to {}", slot.name, slot.priority, priority);
+		slot.priority = priority;
+		notifyAll();
+	}
+
+	/**
+	 * Hands a pre-rolled encoder process over to playback. The
+	 * {@link OutputParams#preRollLimit} is cleared so that the process is no
+	 * longer stalled, and its {@link TranscodeSlot} is changed to
+	 * {@link TranscodePriority#PLAYBACK} so that it's no longer counted as
+	 * background work.
+	 *
+	 * @param params the {@link OutputParams} of the pre-rolled process.
+	 */
+	public static void adoptPreRoll(@Nonnull OutputParams params) {
+		params.preRollLimit = 0;
+		TranscodeSlot slot = params.transcodeSlot;
+		if (slot != null) {
+			slot.setPriority(TranscodePriority.PLAYBACK);
+		}
+	}
+
+	/**
+	 * Admits the encoder process described by {@code params} using
+	 * {@link Services#transcodeScheduler()} unless it has already been
+	 * admitted, in which case the existing {@link TranscodeSlot} is returned.
+	 * The {@link TranscodeSlot} is stored in {@link OutputParams#transcodeSlot}
+	 * and is released when the process terminates.
+	 *
+	 * @param params the {@link OutputParams} for the process.
+	 * @param name the name of the process used for logging.
+	 * @param priority the {@link TranscodePriority}.
+	 * @param requestedThreads the maximum number of threads the process can
+	 *            use.
+	 * @return The {@link TranscodeSlot}.
+	 */
+	@Nonnull
+	public static TranscodeSlot admit(
+		@Nonnull OutputParams params,
+		@Nullable String name,
+		@Nonnull TranscodePriority priority,
+		int requestedThreads
+	) {
+		if (params.transcodeSlot == null) {
+			TranscodeScheduler scheduler = Services.transcodeScheduler();
+			if (scheduler == null) {
+				params.transcodeSlot = new TranscodeSlot(null, name, priority, Math.max(1, requestedThreads), false);
+			} else {
+				params.transcodeSlot = scheduler.acquire(name, priority, requestedThreads);
+			}
+		}
+		return params.transcodeSlot;
+	}
+
+	/**
+	 * Admits the encoder process described by {@code params} like
+	 * {@link #admit}, but returns {@code null} instead of waiting if it is
+	 * {@link TranscodePriority#BACKGROUND} work and the CPU is saturated. This
+	 * is meant for work that can be skipped or done later, and that runs on
+	 * threads that must not block.
+	 *
+	 * @param params the {@link OutputParams} for the process.
+	 * @param name the name of the process used for logging.
+	 * @param priority the {@link TranscodePriority}.
+	 * @param requestedThreads the maximum number of threads the process can
+	 *            use.
+	 * @return The {@link TranscodeSlot} or {@code null} if there is no
+	 *         capacity for background work.
+	 */
+	@Nullable
+	public static TranscodeSlot tryAdmit(
+		@Nonnull OutputParams params,
+		@Nullable String name,
+		@Nonnull TranscodePriority priority,
+		int requestedThreads
+	) {
+		if (params.transcodeSlot == null) {
+			TranscodeScheduler scheduler = Services.transcodeScheduler();
+			if (scheduler == null) {
+				params.transcodeSlot = new TranscodeSlot(null, name, priority, Math.max(1, requestedThreads), false);
+			} else {
+				params.transcodeSlot = scheduler.tryAcquire(name, priority, requestedThreads);
+			}
+		}
+		return params.transcodeSlot;
+	}
+
+	/**
+	 * This class represents an admitted encoder process.
+	 */
+	public static class TranscodeSlot {
+
+		/** The {@link TranscodeScheduler} that admitted this slot */
+		protected final TranscodeScheduler scheduler;
+
+		/** The process name used for logging */
+		protected final String name;
+
+		/** The {@link TranscodePriority} */
+		protected volatile TranscodePriority priority;
+
+		/** The number of threads allocated */
+		protected final int threads;
+
+		/** Whether the process should use degraded settings */
+		protected final boolean degraded;
+
+		/**
+		 * Creates a new instance using the specified parameters.
+		 *
+		 * @param scheduler the {@link TranscodeScheduler} or {@code null}.
+		 * @param name the process name used for logging.
+		 * @param priority the {@link TranscodePriority}.
+		 * @param threads the number of threads allocated.
+		 * @param degraded whether the process should use degraded settings.
+		 */
+		protected TranscodeSlot(
+			@Nullable TranscodeScheduler scheduler,
+			@Nullable String name,
+			@Nonnull TranscodePriority priority,
+			int threads,
+			boolean degraded
+		) {
+			this.scheduler = scheduler;
+			this.name = name;
+			this.priority = priority;
+			this.threads = threads;
+			this.degraded = degraded;
+		}
+
+		/**
+		 * @return The {@link TranscodePriority}.
+		 */
+		@Nonnull
+		public TranscodePriority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Changes the {@link TranscodePriority} of this slot.
+		 *
+		 * @param priority the new {@link TranscodePriority}.
+		 * @see TranscodeScheduler#setPriority(TranscodeSlot, TranscodePriority)
+		 */
+		public void setPriority(@Nonnull TranscodePriority priority) {
+			if (scheduler == null) {
+				this.priority = priority;
+			} else {
+				scheduler.setPriority(this, priority);
+			}
+		}
+
+		/**
+		 * @return The number of threads the process should use.
+		 */
+		public int getThreads() {
+			return threads;
+		}
+
+		/**
+		 * @return {@code true} if the process should use faster or lower
+		 *         quality settings to reduce the CPU load, {@code false}
+		 *         otherwise.
+		 */
+		public boolean isDegraded() {
+			return degraded;
+		}
+
+		/**
+		 * Releases this slot.
+		 */
+		public void release() {
+			if (scheduler != null) {
+				scheduler.release(this);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return
+				"TranscodeSlot [name=" + name + ", priority=" + priority +
+				", threads=" + threads + ", degraded=" + degraded + "]";
+		}
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.sun.jna.Platform;
+import net.pms.formats.Format;
+import net.pms.formats.FormatFactory;
+import net.pms.formats.FormatType;
+
+/**
+ * A listing of a directory where the attributes of every entry are read once,
+ * using a single {@link DirectoryStream} and one attribute read per entry.
+ * Classifying, sorting and grouping the entries doesn't require any further
+ * file system access, which matters on network shares where every
+ * {@link File#isFile()} or {@link File#lastModified()} is a round trip.
+ * <p>
+ * Snapshots obtained with {@link #get(File)} are cached and shared by all
+ * renderers until the modification time of the directory changes or the
+ * directory is {@link #invalidate(File) invalidated}. Since modifying a file
+ * in place doesn't change the modification time of its directory, the sizes
+ * and modification times of cached entries can be outdated.
+ */
+@Immutable
+public final class DirectorySnapshot {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DirectorySnapshot.class);
+
+	/** The maximum number of cached snapshots */
+	public static final int MAX_CACHED = 1000;
+
+	/**
+	 * The coarsest modification time resolution of the supported file
+	 * systems in milliseconds. A snapshot is only reused if it was created
+	 * after this time had passed since the directory was last modified,
+	 * since a later change could otherwise leave the modification time
+	 * unchanged.
+	 */
+	private static final long MODIFIED_RESOLUTION = 2000;
+
+	@GuardedBy("CACHE")
+	private static final LinkedHashMap<File, DirectorySnapshot> CACHE = new LinkedHashMap<File, DirectorySnapshot>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, DirectorySnapshot> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	private final File directory;
+	private final long modified;
+	private final long created;
+	private final List<Entry> entries;
+
+	private DirectorySnapshot(@Nonnull File directory, long modified, long created, @Nonnull List<Entry> entries) {
+		this.directory = directory;
+		this.modified = modified;
+		this.created = created;
+		this.entries = Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Returns a snapshot of the specified directory, reusing a cached
+	 * snapshot if the directory hasn't changed since it was created.
+	 *
+	 * @param directory the directory to list.
+	 * @return The {@link DirectorySnapshot} or {@code null} if
+	 *         {@code directory} can't be read.
+	 */
+	@Nullable
+	public static DirectorySnapshot get(@Nonnull File directory) {
+		long modified = directory.lastModified();
+		DirectorySnapshot snapshot;
+		synchronized (CACHE) {
+			snapshot = CACHE.get(directory);
+		}
+		if (snapshot != null && snapshot.modified == modified && snapshot.created - modified >= MODIFIED_RESOLUTION) {
+			return snapshot;
+		}
+		snapshot = create(directory);
+		if (snapshot != null) {
+			synchronized (CACHE) {
+				CACHE.put(directory, snapshot);
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Lists the specified directory without using the cache.
+	 *
+	 * @param directory the directory to list.
+	 * @return The new {@link DirectorySnapshot} or {@code null} if
+	 *         {@code directory} can't be read.
+	 */
+	@Nullable
+	public static DirectorySnapshot create(@Nonnull File directory) {
+		long created = System.currentTimeMillis();
+		long modified = directory.lastModified();
+		ArrayList<Entry> entries = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+			for (Path path : stream) {
+				entries.add(Entry.read(path));
+			}
+		} catch (IOException | DirectoryIteratorException | SecurityException e) {
+			LOGGER.warn("Can't read files from directory \"{}\": {}", directory.getAbsolutePath(), e.getMessage());
+			LOGGER.trace("", e);
+			return null;
+		}
+		return new DirectorySnapshot(directory, modified, created, entries);
+	}
+
+	/**
+	 * Removes the cached snapshot of the specified directory.
+	 *
+	 * @param directory the changed directory.
+	 */
+	public static void invalidate(@Nonnull File directory) {
+		synchronized (CACHE) {
+			CACHE.remove(directory);
+		}
+	}
+
+	/**
+	 * Removes all cached snapshots.
+	 */
+	public static void clearCache() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	/**
+	 * @return The listed directory.
+	 */
+	@Nonnull
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return The modification time of the directory when it was listed.
+	 */
+	public long getModified() {
+		return modified;
+	}
+
+	/**
+	 * @return The unmodifiable {@link List} of {@link Entry}s in listing
+	 *         order.
+	 */
+	@Nonnull
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	@Override
+	public String toString() {
+		return "DirectorySnapshot [directory=" + directory + ", modified=" + modified + ", entries=" + entries.size() + "]";
+	}
+
+	/**
+	 * A directory entry and its attributes at the time it was listed.
+	 */
+	@ThreadSafe
+	public static final class Entry {
+		private final File file;
+		private final String name;
+		private final boolean isFile;
+		private final boolean isDirectory;
+		private final boolean isHidden;
+		private final long size;
+		private final long lastModified;
+
+		/** The resolved {@link FormatType}, set on first access */
+		private volatile FormatType formatType;
+
+		private volatile boolean formatTypeResolved;
+
+		private Entry(
+			@Nonnull File file,
+			boolean isFile,
+			boolean isDirectory,
+			boolean isHidden,
+			long size,
+			long lastModified
+		) {
+			this.file = file;
+			this.name = file.getName();
+			this.isFile = isFile;
+			this.isDirectory = isDirectory;
+			this.isHidden = isHidden;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Reads the attributes of the specified file.
+		 *
+		 * @param file the file.
+		 * @return The new {@link Entry}.
+		 */
+		@Nonnull
+		public static Entry of(@Nonnull File file) {
+			return read(file.toPath());
+		}
+
+		@Nonnull
+		static Entry read(@Nonnull Path path) {
+			File file = path.toFile();
+			try {
+				BasicFileAttributes attributes;
+				boolean hidden;
+				if (Platform.isWindows()) {
+					DosFileAttributes dosAttributes = Files.readAttributes(path, DosFileAttributes.class);
+					hidden = dosAttributes.isHidden();
+					attributes = dosAttributes;
+				} else {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class);
+					hidden = file.getName().startsWith(".");
+				}
+				return new Entry(
+					file,
+					attributes.isRegularFile(),
+					attributes.isDirectory(),
+					hidden,
+					attributes.size(),
+					attributes.lastModifiedTime().toMillis()
+				);
+			} catch (IOException | SecurityException e) {
+				// Broken links and the like are neither files nor directories
+				LOGGER.trace("Couldn't read the attributes of \"{}\": {}", file, e.getMessage());
+				return new Entry(file, false, false, false, 0, 0);
+			}
+		}
+
+		/**
+		 * @return The {@link File}.
+		 */
+		@Nonnull
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return The file name.
+		 */
+		@Nonnull
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Whether this is a regular file.
+		 */
+		public boolean isFile() {
+			return isFile;
+		}
+
+		/**
+		 * @return Whether this is a directory.
+		 */
+		public boolean isDirectory() {
+			return isDirectory;
+		}
+
+		/**
+		 * @return Whether this is hidden.
+		 */
+		public boolean isHidden() {
+			return isHidden;
+		}
+
+		/**
+		 * @return The size in bytes.
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return The modification time.
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return The {@link FormatType} of the associated {@link Format} or
+		 *         {@code null} if this isn't a file or has no associated
+		 *         {@link Format}.
+		 */
+		@Nullable
+		public FormatType getFormatType() {
+			if (!isFile) {
+				return null;
+			}
+			if (!formatTypeResolved) {
+				// Resolving the same value twice is harmless, no need to lock
+				Format format = FormatFactory.getAssociatedFormat(file.getAbsolutePath());
+				formatType = format == null ? null : format.getType();
+				formatTypeResolved = true;
+			}
+			return formatType;
+		}
+
+		@Override
+		public String toString() {
+			return file.toString();
+		}
+	}
+}
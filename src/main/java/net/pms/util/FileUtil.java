@@ -20,7 +20,6 @@ import java.nio.file.attribute.PosixFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -553,15 +552,16 @@ public class FileUtil {
 	/**
 	 * Remove group name from the beginning of the filename
 	 */
+	private static final Pattern GROUP_NAME_PATTERN = Pattern.compile("^\\[[^\\]]{0,20}\\][^\\w]*(\\w.*?)\\s*$");
+	private static final Pattern BRACKETED_NAME_PATTERN = Pattern.compile("^\\[([^\\[\\]]+)\\]\\s*$");
+
 	private static String removeGroupNameFromBeginning(String formattedName) {
 		if (!"".equals(formattedName) && formattedName.startsWith("[")) {
-			Pattern pattern = Pattern.compile("^\\[[^\\]]{0,20}\\][^\\w]*(\\w.*?)\\s*$");
-			Matcher matcher = pattern.matcher(formattedName);
+			Matcher matcher = GROUP_NAME_PATTERN.matcher(formattedName);
 			if (matcher.find()) {
 				formattedName = matcher.group(1);
 			} else if (formattedName.endsWith("]")) {
-				pattern = Pattern.compile("^\\[([^\\[\\]]+)\\]\\s*$");
-				matcher = pattern.matcher(formattedName);
+				matcher = BRACKETED_NAME_PATTERN.matcher(formattedName);
 				if (matcher.find()) {
 					formattedName = matcher.group(1);
 				}
@@ -1616,8 +1616,21 @@ public class FileUtil {
 		return false;
 	}
 
+	/**
+	 * Returns whether the specified directory contains anything that can be
+	 * shown when empty folders are hidden. The result is cached by
+	 * {@link FolderRelevanceCache}.
+	 *
+	 * @param f the directory.
+	 * @param configuration the {@link PmsConfiguration} to use.
+	 * @return {@code true} if empty folders are hidden and {@code f} is a
+	 *         relevant directory, {@code false} otherwise.
+	 */
 	public static boolean isFolderRelevant(File f, PmsConfiguration configuration) {
-		return isFolderRelevant(f, configuration, Collections.<String>emptySet());
+		if (f.isDirectory() && configuration.isHideEmptyFolders()) {
+			return FolderRelevanceCache.isRelevant(f, configuration);
+		}
+		return false;
 	}
 
 	public static boolean isFolderRelevant(File f, PmsConfiguration configuration, Set<String> ignoreFiles) {
@@ -1653,21 +1666,33 @@ public class FileUtil {
 		return false;
 	}
 
+	private static final Pattern SORTING_SEPARATORS_PATTERN = Pattern.compile("\\.|_");
+	private static final Pattern SORTING_ARTICLES_PATTERN = Pattern.compile("^(?i)A[ .]|The[ .]");
+	private static final Pattern SORTING_WHITESPACE_PATTERN = Pattern.compile("\\s{2,}");
+
+	/**
+	 * Renames a filename for sorting according to the prettifying and "ignore
+	 * the word a and the" settings. Sorts should use {@link FilenameSortKey}
+	 * instead of calling this for every comparison.
+	 *
+	 * @param filename the filename.
+	 * @return The name to sort by.
+	 */
 	public static String renameForSorting(String filename) {
 		if (PMS.getConfiguration().isPrettifyFilenames()) {
 			// This makes anime sort properly
 			filename = removeGroupNameFromBeginning(filename);
 
 			// Replace periods and underscores with spaces
-			filename = filename.replaceAll("\\.|_", " ");
+			filename = SORTING_SEPARATORS_PATTERN.matcher(filename).replaceAll(" ");
 		}
 
 		if (PMS.getConfiguration().isIgnoreTheWordAandThe()) {
 			// Remove "a" and "the" from filename
-			filename = filename.replaceAll("^(?i)A[ .]|The[ .]", "");
+			filename = SORTING_ARTICLES_PATTERN.matcher(filename).replaceAll("");
 
 			// Replace multiple whitespaces with space
-			filename = filename.replaceAll("\\s{2,}"," ");
+			filename = SORTING_WHITESPACE_PATTERN.matcher(filename).replaceAll(" ");
 		}
 
 		return filename;
@@ -3,40 +3,136 @@ package net.pms.util;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.nio.file.*;
-import static java.nio.file.FileVisitOption.*;
 import static java.nio.file.StandardWatchEventKinds.*;
 import java.nio.file.attribute.*;
 import java.util.ArrayList;
-import java.util.EnumSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.concurrent.ScheduledFuture;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * An abstraction of the Java 7 nio WatchService api, which monitors native system
  * file-change notifications as opposed to directly polling or examining files.
+ * <p>
+ * Events are collected per watched directory and dispatched in batches once
+ * the directory has been quiet for {@link #QUIET_PERIOD} milliseconds, or at
+ * the latest after {@link #MAX_DELAY} milliseconds. Repeated events for the
+ * same file within a batch are coalesced. If the operating system reports
+ * that events were lost, the affected directory is rescanned and its entries
+ * reported as modified.
  */
 public class FileWatcher {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FileWatcher.class);
 
+	/**
+	 * The event sent to recursive watches when events for a directory were
+	 * lost. The directory's entries are reported as modified, but removed
+	 * entries can't be detected.
+	 */
+	public static final String EVENT_OVERFLOW = "OVERFLOW";
+
+	/**
+	 * The number of milliseconds without new events after which the events
+	 * of a directory are dispatched.
+	 */
+	public static final long QUIET_PERIOD = 200;
+
+	/**
+	 * The maximum number of milliseconds events are held back while a
+	 * directory keeps changing.
+	 */
+	public static final long MAX_DELAY = 2000;
+
 	public static interface Listener {
 		/**
 		 * A user-defined callback for receiving file change notifications.
 		 *
 		 * @param filename The changed filepath, relative or absolute depending on the original filespec.
-		 * @param event The change itself: 'ENTRY_CREATE' 'ENTRY_MODIFY' or 'ENTRY_DELETE'.
+		 * @param event The change itself: 'ENTRY_CREATE' 'ENTRY_MODIFY' 'ENTRY_DELETE' or 'OVERFLOW'.
 		 * @param watch The original user-supplied watch object that triggered the match.
 		 * @param isDir Whether the changed file is a directory.
 		 */
 		public void notify(String filename, String event, FileWatcher.Watch watch, boolean isDir);
 	}
 
+	/**
+	 * A {@link Listener} that receives all the events of a batch in one call.
+	 * If implemented, {@link Listener#notify(String, String, Watch, boolean)}
+	 * isn't called.
+	 */
+	public static interface BatchListener extends Listener {
+		/**
+		 * A user-defined callback for receiving a batch of file change
+		 * notifications.
+		 *
+		 * @param events The changes in the order they first occurred.
+		 * @param watch The original user-supplied watch object that triggered the match.
+		 */
+		public void notify(List<Event> events, FileWatcher.Watch watch);
+	}
+
+	/**
+	 * A file change notification.
+	 */
+	@Immutable
+	public static class Event {
+		private final String filename;
+		private final String kind;
+		private final boolean isDir;
+
+		public Event(String filename, String kind, boolean isDir) {
+			this.filename = filename;
+			this.kind = kind;
+			this.isDir = isDir;
+		}
+
+		/**
+		 * @return The changed filepath.
+		 */
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * @return The change itself: 'ENTRY_CREATE' 'ENTRY_MODIFY' 'ENTRY_DELETE' or 'OVERFLOW'.
+		 */
+		public String getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return Whether the changed file is a directory.
+		 */
+		public boolean isDir() {
+			return isDir;
+		}
+
+		@Override
+		public String toString() {
+			return kind + ": " + filename;
+		}
+	}
+
 	/**
 	 * A file watchpoint.
 	 */
@@ -46,6 +142,7 @@ public class FileWatcher {
 		private WeakReference<Object> item;
 		public int flag;
 		private PathMatcher matcher;
+		private Path root;
 
 		// Convenience constructors
 
@@ -93,6 +190,30 @@ public class FileWatcher {
 			// Assume glob pattern if no prefix
 			String match = (fspec.startsWith("glob:") || fspec.startsWith("regex:")) ? fspec : ("glob:" + fspec);
 			matcher = dir.getFileSystem().getPathMatcher(match);
+
+			// "dir/**" matches everything below dir, which doesn't need the glob matcher
+			String glob = fspec.startsWith("glob:") ? fspec.substring(5) : fspec;
+			if (!fspec.startsWith("regex:") && glob.endsWith("**")) {
+				String base = glob.substring(0, glob.length() - 2).replace("\\\\", "\\");
+				if (base.length() > 0 && !StringUtils.containsAny(base, "*?[]{}")) {
+					try {
+						root = dir.getFileSystem().getPath(base).toAbsolutePath();
+					} catch (InvalidPathException e) {
+						root = null;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @param path the changed file.
+		 * @return {@code true} if this watchpoint matches {@code path}.
+		 */
+		public boolean matches(Path path) {
+			if (root != null) {
+				return path.startsWith(root) && !path.equals(root);
+			}
+			return matcher != null && matcher.matches(path);
 		}
 
 		public Object getItem() {
@@ -155,6 +276,54 @@ public class FileWatcher {
 		return keys.remove(w);
 	}
 
+	/**
+	 * @return The number of directories currently registered with the
+	 *         operating system.
+	 */
+	public static int getRegisteredKeyCount() {
+		return keys.size();
+	}
+
+	/**
+	 * @return The number of events dispatched to listeners.
+	 */
+	public static long getDispatchedEventCount() {
+		return dispatchedEvents.get();
+	}
+
+	/**
+	 * @return The number of events that were merged with an earlier event
+	 *         for the same file.
+	 */
+	public static long getCoalescedEventCount() {
+		return coalescedEvents.get();
+	}
+
+	/**
+	 * @return The number of times events were lost and a directory was
+	 *         rescanned.
+	 */
+	public static long getOverflowCount() {
+		return overflows.get();
+	}
+
+	/**
+	 * @return The average number of milliseconds from when an event was
+	 *         received until it was dispatched.
+	 */
+	public static double getAverageEventLag() {
+		long count = dispatchedEvents.get();
+		return count == 0 ? 0 : (double) totalLag.get() / count;
+	}
+
+	/**
+	 * @return The maximum number of milliseconds from when an event was
+	 *         received until it was dispatched.
+	 */
+	public static long getMaxEventLag() {
+		return maxLag.get();
+	}
+
 	// Internals
 
 	/**
@@ -162,15 +331,19 @@ public class FileWatcher {
 	 */
 	static class WatchMap extends HashMap<WatchKey, ArrayList<Watch>> {
 		private static final long serialVersionUID = 66052264663459389L;
+		private final HashMap<Path, WatchKey> directories = new HashMap<>();
 
-		public void put(WatchKey k, Watch w) {
+		public synchronized void put(WatchKey k, Watch w) {
 			if (!containsKey(k)) {
 				put(k, new ArrayList<Watch>());
+				directories.put((Path) k.watchable(), k);
+			}
+			if (!get(k).contains(w)) {
+				get(k).add(w);
 			}
-			get(k).add(w);
 		}
 
-		public boolean contains(Watch w) {
+		public synchronized boolean contains(Watch w) {
 			for (ArrayList<Watch> a : values()) {
 				if (a.contains(w)) {
 					return true;
@@ -179,19 +352,67 @@ public class FileWatcher {
 			return false;
 		}
 
-		public boolean remove(Watch w) {
-			for (WatchKey k : keySet()) {
-				ArrayList<Watch> a = get(k);
-				if (a.contains(w)) {
-					return a.remove(w);
+		public synchronized boolean contains(Path dir, Watch w) {
+			WatchKey k = directories.get(dir);
+			return k != null && get(k).contains(w);
+		}
+
+		public synchronized boolean remove(Watch w) {
+			boolean removed = false;
+			for (Iterator<Entry<WatchKey, ArrayList<Watch>>> iterator = entrySet().iterator(); iterator.hasNext();) {
+				Entry<WatchKey, ArrayList<Watch>> entry = iterator.next();
+				if (entry.getValue().remove(w)) {
+					removed = true;
+					if (entry.getValue().isEmpty()) {
+						entry.getKey().cancel();
+						directories.remove(entry.getKey().watchable());
+						iterator.remove();
+					}
 				}
 			}
-			return false;
+			return removed;
+		}
+
+		@Override
+		public synchronized ArrayList<Watch> remove(Object k) {
+			if (k instanceof WatchKey) {
+				directories.remove(((WatchKey) k).watchable());
+			}
+			return super.remove(k);
+		}
+
+		@Override
+		public synchronized int size() {
+			return super.size();
+		}
+
+		/**
+		 * Returns a copy of the valid watches of a key, removing the expired
+		 * ones.
+		 */
+		public synchronized List<Watch> getValid(WatchKey k) {
+			ArrayList<Watch> a = get(k);
+			if (a == null) {
+				return Collections.emptyList();
+			}
+			for (Iterator<Watch> iterator = a.iterator(); iterator.hasNext();) {
+				Watch w = iterator.next();
+				if (!Watch.isValid(w)) {
+					LOGGER.debug("Deleting expired file watch at {}: {}", k.watchable(), w.fspec);
+					iterator.remove();
+				}
+			}
+			return new ArrayList<>(a);
 		}
 	}
 
-	private static WatchMap keys = new WatchMap();
-	private static WatchService watchService = null;
+	private static final WatchMap keys = new WatchMap();
+	private static volatile WatchService watchService = null;
+	private static final AtomicLong dispatchedEvents = new AtomicLong();
+	private static final AtomicLong coalescedEvents = new AtomicLong();
+	private static final AtomicLong overflows = new AtomicLong();
+	private static final AtomicLong totalLag = new AtomicLong();
+	private static final AtomicLong maxLag = new AtomicLong();
 
 	public static void add(Watch w, Path dir) {
 		if (watchService == null) {
@@ -200,166 +421,369 @@ public class FileWatcher {
 		try {
 			WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
 			keys.put(key, w);
-			LOGGER.debug("Added file watch at {}: {}", dir, w.fspec);
+			LOGGER.trace("Added file watch at {}: {}", dir, w.fspec);
 		} catch (Exception e) {
 			LOGGER.debug("Register error: " + e);
-			e.printStackTrace();
+			LOGGER.trace("", e);
 		}
 	}
 
+	/**
+	 * Registers a directory and all directories below it. The tree is
+	 * traversed by the threads of a shared pool, since listing directories
+	 * dominates the registration time on large trees.
+	 *
+	 * @param w The watch object.
+	 * @param dir The top directory.
+	 */
 	public static void addRecursive(final Watch w, Path dir) {
+		long start = System.currentTimeMillis();
+		int before = keys.size();
+		Set<Object> visited = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
 		try {
-			Files.walkFileTree(dir, EnumSet.of(FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
-				@Override
-				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-					add(w, dir);
-					return FileVisitResult.CONTINUE;
-				}
-			});
+			registrationPool.invoke(new RegistrationTask(w, dir, visited));
 		} catch (Exception e) {
 			LOGGER.debug("Recursion error: " + e);
-			e.printStackTrace();
+			LOGGER.trace("", e);
+		}
+		LOGGER.debug(
+			"Added recursive file watch at {} for {} directories in {} ms",
+			dir,
+			keys.size() - before,
+			System.currentTimeMillis() - start
+		);
+	}
+
+	private static final int REGISTRATION_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+	/** The pool traversing directory trees for all recursive registrations, its idle threads expire */
+	private static final ForkJoinPool registrationPool = new ForkJoinPool(
+		REGISTRATION_THREADS,
+		new RegistrationThreadFactory(),
+		null,
+		false
+	);
+
+	/**
+	 * Registers a directory and forks a task for each sub-directory.
+	 */
+	@SuppressWarnings("serial")
+	static class RegistrationTask extends RecursiveAction {
+		private final Watch watch;
+		private final Path dir;
+		private final Set<Object> visited;
+
+		public RegistrationTask(Watch watch, Path dir, Set<Object> visited) {
+			this.watch = watch;
+			this.dir = dir;
+			this.visited = visited;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				// Symbolic links are followed, so guard against cycles
+				BasicFileAttributes attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+				Object id = attrs.fileKey() != null ? attrs.fileKey() : dir.toRealPath();
+				if (!visited.add(id)) {
+					return;
+				}
+			} catch (IOException e) {
+				LOGGER.debug("Couldn't read {}: {}", dir, e.getMessage());
+				return;
+			}
+			add(watch, dir);
+			ArrayList<RegistrationTask> tasks = new ArrayList<>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path entry : stream) {
+					if (Files.isDirectory(entry)) {
+						tasks.add(new RegistrationTask(watch, entry, visited));
+					}
+				}
+			} catch (IOException | DirectoryIteratorException e) {
+				LOGGER.debug("Couldn't list {}: {}", dir, e.getMessage());
+			}
+			invokeAll(tasks);
 		}
+	}
+
+	static class RegistrationThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+		private static final AtomicLong THREAD_COUNTER = new AtomicLong();
 
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("File watch registration-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
 	}
 
-	private static void start(Path dir) {
+	private static synchronized void start(Path dir) {
+		if (watchService != null) {
+			return;
+		}
 		// Start the service
 		try {
 			watchService = dir.getFileSystem().newWatchService();
 		} catch (Exception e) {
 			LOGGER.debug("Error creating WatchService: " + e);
-			e.printStackTrace();
+			LOGGER.trace("", e);
+			return;
 		}
 
 		// Watch for subscribed file events
-		new Thread(new Runnable() {
+		Thread thread = new Thread(new Runnable() {
 			@Override
 			public void run() {
 				try {
-					do {
+					while (true) {
 						// take() will block until events occur in our subscribed directories
 						WatchKey key = watchService.take();
-						try {
-							// Wait a bit in case there are a few repeats
-							Thread.sleep(100);
-						} catch (InterruptedException e) { }
-						// Filter the received directory event(s)
-						for (WatchEvent<?> e : key.pollEvents()) {
-							final WatchEvent.Kind<?> kind = e.kind();
-							if (kind != OVERFLOW) {
-								WatchEvent<Path> event = (WatchEvent<Path>) e;
-								// Determine the actual file
-								Path dir = (Path) key.watchable();
-								final Path filename = dir.resolve(event.context());
-								final boolean isDir = Files.isDirectory(filename/*, NOFOLLOW_LINKS*/);
-								// See if we're watching for this specific file
-								for (Iterator<Watch> iterator = keys.get(key).iterator(); iterator.hasNext();) {
-									final Watch w = iterator.next();
-									if (!Watch.isValid(w)) {
-										LOGGER.debug("Deleting expired file watch at {}: {}", dir, w.fspec);
-										iterator.remove();
-										continue;
-									}
-									if (w.matcher.matches(filename)) {
-										// We have an event of interest
-										LOGGER.debug("{} (ct={}): {}", kind, event.count(), filename);
-										if (isDir && kind == ENTRY_CREATE && Watch.isRecursive(w)) {
-											// It's a new directory in a recursive scope,
-											// traverse it to include any subdirs
-											addRecursive(w, filename);
-										} else {
-											// It's a regular event, schedule a notice
-											notifier.schedule(new Notice(filename.toString(), kind.toString(), w, isDir),
-												kind == ENTRY_MODIFY ? 500 : 0);
-										}
-									}
-								}
+						long received = System.currentTimeMillis();
+						List<WatchEvent<?>> events = key.pollEvents();
+						synchronized (batches) {
+							DirectoryBatch batch = batches.get(key);
+							if (batch == null) {
+								batch = new DirectoryBatch(key, received);
+								batches.put(key, batch);
+								notifier.schedule(batch, QUIET_PERIOD, TimeUnit.MILLISECONDS);
 							}
+							batch.add(events, received);
 						}
 						// Reset and clean up
 						if (!key.reset()) {
 							keys.remove(key);
 						}
-					} while (!keys.isEmpty());
+					}
+				} catch (InterruptedException | ClosedWatchServiceException e) {
+					LOGGER.debug("File watcher stopped");
 				} catch (Exception e) {
 					LOGGER.debug("Event process error: " + e);
-					e.printStackTrace();
+					LOGGER.trace("", e);
 				}
 			}
-		}, "File watcher").start();
+		}, "File watcher");
+		thread.setDaemon(true);
+		thread.start();
 	}
 
+	@GuardedBy("batches")
+	private static final HashMap<WatchKey, DirectoryBatch> batches = new HashMap<>();
+
 	/**
-	 * A runnable self-removing file event notice.
+	 * A received event waiting to be dispatched.
 	 */
-	static class Notice implements Runnable {
-		String filename, kind;
-		Watch watch;
-		boolean isDir;
-		HashMap notifierQueue = null;
+	static class PendingEvent {
+		String kind;
+		final long received;
 
-		public Notice(String filename, String kind, Watch watch, boolean isDir) {
-			this.filename = filename;
+		public PendingEvent(String kind, long received) {
 			this.kind = kind;
-			this.watch = watch;
-			this.isDir = isDir;
+			this.received = received;
+		}
+	}
+
+	/**
+	 * The pending events of a watched directory.
+	 */
+	static class DirectoryBatch implements Runnable {
+		final WatchKey key;
+		final Path dir;
+		final long firstEvent;
+
+		@GuardedBy("batches")
+		long lastEvent;
+
+		@GuardedBy("batches")
+		boolean overflow;
+
+		@GuardedBy("batches")
+		final LinkedHashMap<Path, PendingEvent> events = new LinkedHashMap<>();
+
+		public DirectoryBatch(WatchKey key, long firstEvent) {
+			this.key = key;
+			this.dir = (Path) key.watchable();
+			this.firstEvent = firstEvent;
+		}
+
+		/**
+		 * Adds received events, coalescing them with pending events for the
+		 * same file.
+		 */
+		@SuppressWarnings("unchecked")
+		void add(List<WatchEvent<?>> received, long time) {
+			lastEvent = time;
+			for (WatchEvent<?> e : received) {
+				if (e.kind() == OVERFLOW) {
+					overflow = true;
+					continue;
+				}
+				Path filename = dir.resolve(((WatchEvent<Path>) e).context());
+				String kind = e.kind().name();
+				PendingEvent pending = events.get(filename);
+				if (pending == null) {
+					events.put(filename, new PendingEvent(kind, time));
+					continue;
+				}
+				coalescedEvents.incrementAndGet();
+				String merged = coalesce(pending.kind, kind);
+				if (merged == null) {
+					events.remove(filename);
+				} else {
+					pending.kind = merged;
+				}
+			}
 		}
 
 		@Override
 		public void run() {
-			watch.listener.get().notify(filename, kind, watch, isDir);
-			notifierQueue.remove(this);
+			long now = System.currentTimeMillis();
+			synchronized (batches) {
+				long wait = Math.min(lastEvent + QUIET_PERIOD, firstEvent + MAX_DELAY) - now;
+				if (wait > 0) {
+					notifier.schedule(this, wait, TimeUnit.MILLISECONDS);
+					return;
+				}
+				batches.remove(key);
+			}
+			try {
+				dispatch(now);
+			} catch (Exception e) {
+				LOGGER.debug("Event dispatch error for {}: {}", dir, e);
+				LOGGER.trace("", e);
+			}
 		}
 
-		@Override
-		public boolean equals(Object o) {
-			if (o == null || !(o instanceof Notice)) {
-				return false;
+		private void dispatch(long now) {
+			List<Watch> watches = keys.getValid(key);
+			if (watches.isEmpty()) {
+				return;
+			}
+			LinkedHashMap<Path, PendingEvent> pending;
+			boolean lostEvents;
+			synchronized (batches) {
+				pending = new LinkedHashMap<>(events);
+				lostEvents = overflow;
+			}
+			if (lostEvents) {
+				// Events were lost, report everything in the directory as modified
+				overflows.incrementAndGet();
+				LOGGER.debug("File events lost for {}, rescanning", dir);
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+					for (Path entry : stream) {
+						if (!pending.containsKey(entry)) {
+							pending.put(entry, new PendingEvent(ENTRY_MODIFY.name(), firstEvent));
+						}
+					}
+				} catch (IOException | DirectoryIteratorException e) {
+					LOGGER.debug("Couldn't rescan {}: {}", dir, e.getMessage());
+				}
+			}
+
+			ArrayList<Event> dispatched = new ArrayList<>(pending.size());
+			for (Entry<Path, PendingEvent> entry : pending.entrySet()) {
+				Path filename = entry.getKey();
+				String kind = entry.getValue().kind;
+				// A deleted file can't be examined
+				boolean isDir = !ENTRY_DELETE.name().equals(kind) && Files.isDirectory(filename/*, NOFOLLOW_LINKS*/);
+				if (isDir) {
+					// Register new directories in a recursive scope, including those whose creation was lost
+					for (Watch w : watches) {
+						if (Watch.isRecursive(w) && w.matches(filename) && !keys.contains(filename, w)) {
+							addRecursive(w, filename);
+						}
+					}
+				}
+				dispatched.add(new Event(filename.toString(), kind, isDir));
+				long lag = now - entry.getValue().received;
+				totalLag.addAndGet(lag);
+				updateMaxLag(lag);
+			}
+			dispatchedEvents.addAndGet(dispatched.size());
+
+			for (Watch w : watches) {
+				ArrayList<Event> matched = new ArrayList<>();
+				if (lostEvents && Watch.isRecursive(w)) {
+					matched.add(new Event(dir.toString(), EVENT_OVERFLOW, true));
+				}
+				for (Event event : dispatched) {
+					if (w.matches(Paths.get(event.getFilename()))) {
+						matched.add(event);
+					}
+				}
+				if (matched.isEmpty()) {
+					continue;
+				}
+				Listener listener = w.listener.get();
+				if (listener == null) {
+					continue;
+				}
+				try {
+					if (listener instanceof BatchListener) {
+						((BatchListener) listener).notify(matched, w);
+					} else {
+						for (Event event : matched) {
+							LOGGER.debug("{}: {}", event.getKind(), event.getFilename());
+							listener.notify(event.getFilename(), event.getKind(), w, event.isDir());
+						}
+					}
+				} catch (RuntimeException e) {
+					LOGGER.error("File watch listener for \"{}\" failed: {}", w.fspec, e.getMessage());
+					LOGGER.trace("", e);
+				}
 			}
-			Notice other = (Notice) o;
-			return filename.equals(other.filename) && kind.equals(other.kind) && watch.equals(other.watch);
 		}
+	}
 
-		@Override
-		public int hashCode() {
-			return (filename + kind).hashCode();
+	/**
+	 * Combines two consecutive events for the same file.
+	 *
+	 * @param previous the earlier event kind.
+	 * @param next the later event kind.
+	 * @return The combined event kind or {@code null} if the events cancel
+	 *         each other out.
+	 */
+	@Nullable
+	static String coalesce(@Nonnull String previous, @Nonnull String next) {
+		boolean created = ENTRY_CREATE.name().equals(previous);
+		if (ENTRY_DELETE.name().equals(next)) {
+			// A file that was created and deleted within the batch never existed
+			return created ? null : next;
+		}
+		if (created) {
+			return previous;
+		}
+		if (ENTRY_DELETE.name().equals(previous)) {
+			// Deleted and recreated
+			return ENTRY_MODIFY.name();
 		}
+		return next;
+	}
+
+	private static void updateMaxLag(long lag) {
+		long max;
+		do {
+			max = maxLag.get();
+		} while (lag > max && !maxLag.compareAndSet(max, lag));
 	}
 
 	/**
-	 * A delayed file event notice scheduler.
+	 * The dispatcher of delayed event batches.
 	 */
 	static class Notifier extends ScheduledThreadPoolExecutor {
-		HashMap<Notice, ScheduledFuture<?>> queue = new HashMap<>();
 
 		public Notifier(final String name) {
 			super(5, new ThreadFactory() {
 				@Override
 				public Thread newThread(Runnable r) {
-					return new Thread(r, name);
+					Thread thread = new Thread(r, name);
+					thread.setDaemon(true);
+					return thread;
 				}
 			});
 			setRemoveOnCancelPolicy(true);
 		}
-
-		/**
-		 * Notices can be delayed slightly to allow ongoing file events to catch-up and cancel
-		 * earlier in-progress notifications until the event is completed. This prevents
-		 * sending 1000s of ENTRY_MODIFY notices during a file copy in linux, for instance.
-		 *
-		 * @param notice The notice.
-		 * @param delay The delay in milliseconds.
-		 */
-		public void schedule(Notice notice, long delay) {
-			// Put the notice in the queue
-			notice.notifierQueue = queue;
-			ScheduledFuture<?> superceded = queue.put(notice, schedule(notice, delay, TimeUnit.MILLISECONDS));
-			// And cancel its previous instance, if any
-			if (superceded != null) {
-				superceded.cancel(false);
-			}
-		}
 	}
 
 	static private Notifier notifier = new Notifier("File event");
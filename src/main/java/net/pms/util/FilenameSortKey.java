@@ -0,0 +1,295 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+/**
+ * The precomputed sort key of a filename. The name is
+ * {@link FileUtil#renameForSorting(String) renamed} once, and the
+ * {@link CollationKey} for locale-sensitive sorting and the tokens for natural
+ * sorting are created the first time they are needed, so that a sort only
+ * compares precomputed values instead of running the renaming regular
+ * expressions and the {@link Collator} for every comparison.
+ * <p>
+ * Keys obtained with {@link #get(String)} are cached by filename and reused
+ * across folder refreshes until the sorting related settings change.
+ */
+@ThreadSafe
+public final class FilenameSortKey {
+
+	/** The maximum number of cached keys */
+	public static final int MAX_CACHED = 20000;
+
+	private static final Collator COLLATOR;
+
+	static {
+		COLLATOR = Collator.getInstance();
+		COLLATOR.setStrength(Collator.PRIMARY);
+	}
+
+	@GuardedBy("CACHE")
+	private static final LinkedHashMap<String, FilenameSortKey> CACHE = new LinkedHashMap<String, FilenameSortKey>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FilenameSortKey> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	@GuardedBy("CACHE")
+	private static boolean cachedPrettify;
+
+	@GuardedBy("CACHE")
+	private static boolean cachedIgnoreTheWordAandThe;
+
+	/**
+	 * Compares keys like {@link Collator#compare(String, String)} compares
+	 * the renamed filenames.
+	 */
+	public static final Comparator<FilenameSortKey> LOCALE_SENSITIVE_COMPARATOR = new Comparator<FilenameSortKey>() {
+		@Override
+		public int compare(FilenameSortKey o1, FilenameSortKey o2) {
+			return o1.getCollationKey().compareTo(o2.getCollationKey());
+		}
+	};
+
+	/**
+	 * Compares keys like
+	 * {@link NaturalComparator#compareNatural(Collator, String, String)}
+	 * compares the renamed filenames.
+	 */
+	public static final Comparator<FilenameSortKey> NATURAL_COMPARATOR = new Comparator<FilenameSortKey>() {
+		@Override
+		public int compare(FilenameSortKey o1, FilenameSortKey o2) {
+			return compareNatural(o1, o2);
+		}
+	};
+
+	/**
+	 * Compares keys like {@link String#compareToIgnoreCase(String)} compares
+	 * the renamed filenames.
+	 */
+	public static final Comparator<FilenameSortKey> IGNORE_CASE_COMPARATOR = new Comparator<FilenameSortKey>() {
+		@Override
+		public int compare(FilenameSortKey o1, FilenameSortKey o2) {
+			return o1.sortName.compareToIgnoreCase(o2.sortName);
+		}
+	};
+
+	private final String sortName;
+
+	private volatile CollationKey collationKey;
+
+	private volatile Object[] tokens;
+
+	/**
+	 * Creates a new key for a name that has already been renamed for sorting.
+	 *
+	 * @param sortName the renamed filename.
+	 */
+	public FilenameSortKey(@Nonnull String sortName) {
+		if (sortName == null) {
+			throw new IllegalArgumentException("sortName cannot be null");
+		}
+		this.sortName = sortName;
+	}
+
+	/**
+	 * Returns the cached key for the specified filename, or creates one using
+	 * {@link FileUtil#renameForSorting(String)}.
+	 *
+	 * @param filename the filename.
+	 * @return The {@link FilenameSortKey}.
+	 */
+	@Nonnull
+	public static FilenameSortKey get(@Nonnull String filename) {
+		PmsConfiguration configuration = PMS.getConfiguration();
+		boolean prettify = configuration.isPrettifyFilenames();
+		boolean ignoreTheWordAandThe = configuration.isIgnoreTheWordAandThe();
+		FilenameSortKey result;
+		synchronized (CACHE) {
+			if (prettify != cachedPrettify || ignoreTheWordAandThe != cachedIgnoreTheWordAandThe) {
+				CACHE.clear();
+				cachedPrettify = prettify;
+				cachedIgnoreTheWordAandThe = ignoreTheWordAandThe;
+			}
+			result = CACHE.get(filename);
+		}
+		if (result == null) {
+			result = new FilenameSortKey(FileUtil.renameForSorting(filename));
+			synchronized (CACHE) {
+				if (prettify == cachedPrettify && ignoreTheWordAandThe == cachedIgnoreTheWordAandThe) {
+					CACHE.put(filename, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all cached keys.
+	 */
+	public static void clearCache() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	/**
+	 * @return The filename renamed for sorting.
+	 */
+	@Nonnull
+	public String getSortName() {
+		return sortName;
+	}
+
+	/**
+	 * @return The {@link CollationKey} of the renamed filename.
+	 */
+	@Nonnull
+	public CollationKey getCollationKey() {
+		CollationKey result = collationKey;
+		if (result == null) {
+			result = COLLATOR.getCollationKey(sortName);
+			collationKey = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the renamed filename split into alternating runs of digits and
+	 * other characters. Digit runs are {@link NumberToken}s and other runs
+	 * are {@link CollationKey}s.
+	 *
+	 * @return The tokens.
+	 */
+	private Object[] getTokens() {
+		Object[] result = tokens;
+		if (result == null) {
+			List<Object> list = new ArrayList<>();
+			int length = sortName.length();
+			int start = 0;
+			while (start < length) {
+				boolean digit = Character.isDigit(sortName.charAt(start));
+				int end = start + 1;
+				while (end < length && Character.isDigit(sortName.charAt(end)) == digit) {
+					end++;
+				}
+				String token = sortName.substring(start, end);
+				list.add(digit ? new NumberToken(token) : COLLATOR.getCollationKey(token));
+				start = end;
+			}
+			result = list.toArray();
+			tokens = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Compares the tokens the same way
+	 * {@link NaturalComparator#compareNatural(Collator, String, String)}
+	 * compares the subwords. If a number is compared to a word, the strings
+	 * are compared with {@link NaturalComparator} itself, since its result
+	 * then depends on characters beyond the subwords.
+	 */
+	private static int compareNatural(FilenameSortKey key1, FilenameSortKey key2) {
+		Object[] tokens1 = key1.getTokens();
+		Object[] tokens2 = key2.getTokens();
+		for (int i = 0;; i++) {
+			if (i == tokens1.length && i == tokens2.length) {
+				return 0;
+			}
+			if (i == tokens1.length) {
+				return -1;
+			}
+			if (i == tokens2.length) {
+				return 1;
+			}
+			Object token1 = tokens1[i];
+			Object token2 = tokens2[i];
+			if (token1 instanceof NumberToken && token2 instanceof NumberToken) {
+				NumberToken number1 = (NumberToken) token1;
+				NumberToken number2 = (NumberToken) token2;
+				int result = number1.compareTo(number2);
+				if (result != 0) {
+					return result;
+				}
+				if (
+					!number1.digits.isEmpty() &&
+					i + 1 == tokens1.length &&
+					i + 1 == tokens2.length
+				) {
+					return number1.leadingZeros - number2.leadingZeros;
+				}
+			} else if (token1 instanceof CollationKey && token2 instanceof CollationKey) {
+				int result = ((CollationKey) token1).compareTo((CollationKey) token2);
+				if (result != 0) {
+					return result;
+				}
+			} else {
+				return NaturalComparator.compareNatural(COLLATOR, key1.sortName, key2.sortName);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return sortName;
+	}
+
+	/**
+	 * A run of digits without its leading zeros.
+	 */
+	@Immutable
+	private static final class NumberToken implements Comparable<NumberToken> {
+		private final String digits;
+		private final int leadingZeros;
+
+		public NumberToken(String token) {
+			int zeros = 0;
+			while (zeros < token.length() && token.charAt(zeros) == '0') {
+				zeros++;
+			}
+			digits = token.substring(zeros);
+			leadingZeros = zeros;
+		}
+
+		@Override
+		public int compareTo(NumberToken other) {
+			if (digits.length() != other.digits.length()) {
+				return digits.length() < other.digits.length() ? -1 : 1;
+			}
+			return digits.compareTo(other.digits);
+		}
+	}
+}
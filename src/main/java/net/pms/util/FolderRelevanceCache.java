@@ -0,0 +1,466 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.database.TableFolderRelevance;
+import net.pms.database.TableFolderRelevance.FolderRelevance;
+import net.pms.database.TableManager;
+import net.pms.formats.FormatFactory;
+import net.pms.service.LibraryIndexer;
+import net.pms.service.Services;
+
+/**
+ * Caches whether directories contain anything that can be shown when empty
+ * folders are hidden, keyed by path and modification time.
+ * <p>
+ * A directory is relevant if it contains a relevant file or a relevant
+ * sub-directory. A cached result is reused while the modification time of
+ * the directory is unchanged and the result it depends on is still valid:
+ * the relevant child of a relevant directory, or all sub-directories of an
+ * irrelevant one. Checking this only reads the modification times of the
+ * directories involved instead of listing the whole tree.
+ * <p>
+ * Directories watched by the {@link LibraryIndexer} are kept up to date by
+ * {@link #update(File, boolean, boolean)}, which moves a change up the tree
+ * only as far as it affects the cached results, so their cached results are
+ * used without any checks. Results are persisted in
+ * {@link TableFolderRelevance} when {@link #flush()} is called, and are
+ * checked before they are used after a restart.
+ */
+@ThreadSafe
+public final class FolderRelevanceCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FolderRelevanceCache.class);
+
+	/** The maximum number of cached results */
+	public static final int MAX_CACHED = 50000;
+
+	/**
+	 * The coarsest modification time resolution of the supported file
+	 * systems in milliseconds. Results for directories modified more recently
+	 * than this aren't cached, since a later change could leave the
+	 * modification time unchanged.
+	 */
+	private static final long MODIFIED_RESOLUTION = 2000;
+
+	@GuardedBy("CACHE")
+	private static final LinkedHashMap<String, FolderRelevance> CACHE = new LinkedHashMap<String, FolderRelevance>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FolderRelevance> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	/** Results that haven't been persisted yet */
+	@GuardedBy("CACHE")
+	private static final LinkedHashMap<String, FolderRelevance> PENDING_STORES = new LinkedHashMap<>();
+
+	/** Directories whose persisted results must be removed */
+	@GuardedBy("CACHE")
+	private static final Set<String> PENDING_REMOVALS = new HashSet<>();
+
+	@GuardedBy("CACHE")
+	private static boolean archiveBrowsing;
+
+	/**
+	 * Not to be instantiated.
+	 */
+	private FolderRelevanceCache() {
+	}
+
+	/**
+	 * Returns whether the specified directory or any directory below it
+	 * contains a file with a known format or a relevant file.
+	 *
+	 * @param directory the directory.
+	 * @param configuration the {@link PmsConfiguration} to use.
+	 * @return {@code true} if {@code directory} is relevant, {@code false}
+	 *         otherwise.
+	 *
+	 * @see FileUtil#isFileRelevant(File, PmsConfiguration)
+	 */
+	public static boolean isRelevant(@Nonnull File directory, @Nonnull PmsConfiguration configuration) {
+		boolean archives = configuration.isArchiveBrowsing();
+		synchronized (CACHE) {
+			if (archives != archiveBrowsing) {
+				CACHE.clear();
+				PENDING_STORES.clear();
+				archiveBrowsing = archives;
+			}
+		}
+		boolean result = new Lookup(configuration, archives).isRelevant(directory.getAbsoluteFile());
+		flush();
+		return result;
+	}
+
+	/**
+	 * Applies a change reported by the file system to the cached results.
+	 * The new relevance of a relevant file is moved up the tree until a
+	 * directory that was already relevant is reached, and a removed entry
+	 * only drops the cached results that depended on it.
+	 *
+	 * @param file the changed file or directory.
+	 * @param exists whether {@code file} exists after the change.
+	 * @param directory whether {@code file} is a directory.
+	 * @param configuration the {@link PmsConfiguration} to use.
+	 * @return The directories whose relevance has changed or is no longer
+	 *         known.
+	 */
+	@Nonnull
+	public static List<File> update(
+		@Nonnull File file,
+		boolean exists,
+		boolean directory,
+		@Nonnull PmsConfiguration configuration
+	) {
+		file = file.getAbsoluteFile();
+		File parent = file.getParentFile();
+		if (parent == null) {
+			return Collections.emptyList();
+		}
+		long parentModified = parent.lastModified();
+		boolean relevantFile = exists && !directory && isRelevantFile(file, configuration);
+		List<File> changed = new ArrayList<>();
+		synchronized (CACHE) {
+			if (!exists && CACHE.remove(file.getPath()) != null) {
+				PENDING_STORES.remove(file.getPath());
+				PENDING_REMOVALS.add(file.getPath());
+			}
+			FolderRelevance entry = CACHE.get(parent.getPath());
+			if (entry != null) {
+				if (relevantFile && !entry.isRelevant()) {
+					put(new FolderRelevance(entry.getPath(), parentModified, true, Collections.singletonList(file.getName())));
+					changed.add(parent);
+					bubbleRelevant(parent, changed);
+				} else if (!exists && entry.isRelevant() && entry.getNames().contains(file.getName())) {
+					remove(parent);
+					changed.add(parent);
+					bubbleUnknown(parent, changed);
+				} else {
+					List<String> names = entry.getNames();
+					if (!entry.isRelevant()) {
+						names = new ArrayList<>(names);
+						names.remove(file.getName());
+						if (exists && directory) {
+							names.add(file.getName());
+						}
+					}
+					put(new FolderRelevance(entry.getPath(), parentModified, entry.isRelevant(), names));
+				}
+			} else if (relevantFile) {
+				bubbleRelevant(parent, changed);
+			} else if (!exists) {
+				bubbleUnknown(parent, changed);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Drops the cached results for a directory whose changes may have been
+	 * lost, and for the directories above it that depend on it.
+	 *
+	 * @param directory the directory.
+	 * @return The directories whose relevance is no longer known.
+	 */
+	@Nonnull
+	public static List<File> invalidate(@Nonnull File directory) {
+		directory = directory.getAbsoluteFile();
+		List<File> changed = new ArrayList<>();
+		synchronized (CACHE) {
+			if (CACHE.containsKey(directory.getPath())) {
+				remove(directory);
+				changed.add(directory);
+			}
+			File child = directory;
+			File parent = directory.getParentFile();
+			while (parent != null) {
+				FolderRelevance entry = CACHE.get(parent.getPath());
+				if (entry != null) {
+					if (entry.isRelevant() && !entry.getNames().contains(child.getName())) {
+						break;
+					}
+					remove(parent);
+					changed.add(parent);
+				}
+				child = parent;
+				parent = parent.getParentFile();
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Removes all cached results from memory. Persisted results are kept, but
+	 * are checked again before they are used.
+	 */
+	public static void clearCache() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	/**
+	 * Persists the results that have changed since the last call, if the
+	 * database is available.
+	 */
+	public static void flush() {
+		ArrayList<FolderRelevance> stores;
+		ArrayList<String> removals;
+		boolean archives;
+		synchronized (CACHE) {
+			if (PENDING_STORES.isEmpty() && PENDING_REMOVALS.isEmpty()) {
+				return;
+			}
+			stores = new ArrayList<>(PENDING_STORES.values());
+			removals = new ArrayList<>(PENDING_REMOVALS);
+			archives = archiveBrowsing;
+			PENDING_STORES.clear();
+			PENDING_REMOVALS.clear();
+		}
+		TableFolderRelevance table = getTable();
+		if (table == null) {
+			return;
+		}
+		try {
+			for (String path : removals) {
+				table.remove(path);
+			}
+			table.store(stores, archives);
+		} catch (SQLException e) {
+			LOGGER.debug("Couldn't store folder relevance: {}", e.getMessage());
+			LOGGER.trace("", e);
+		}
+	}
+
+	/**
+	 * Marks the cached irrelevant directories above a relevant directory as
+	 * relevant, until a directory that is already relevant is found.
+	 */
+	@GuardedBy("CACHE")
+	private static void bubbleRelevant(@Nonnull File directory, @Nonnull List<File> changed) {
+		File child = directory;
+		File parent = directory.getParentFile();
+		while (parent != null) {
+			FolderRelevance entry = CACHE.get(parent.getPath());
+			if (entry != null) {
+				if (entry.isRelevant()) {
+					break;
+				}
+				put(new FolderRelevance(entry.getPath(), entry.getModified(), true, Collections.singletonList(child.getName())));
+				changed.add(parent);
+			}
+			child = parent;
+			parent = parent.getParentFile();
+		}
+	}
+
+	/**
+	 * Drops the cached results above a directory whose relevance is no longer
+	 * known, until a directory that is relevant because of another child is
+	 * found.
+	 */
+	@GuardedBy("CACHE")
+	private static void bubbleUnknown(@Nonnull File directory, @Nonnull List<File> changed) {
+		File child = directory;
+		File parent = directory.getParentFile();
+		while (parent != null) {
+			FolderRelevance entry = CACHE.get(parent.getPath());
+			if (entry != null) {
+				if (!entry.isRelevant() || !entry.getNames().contains(child.getName())) {
+					break;
+				}
+				remove(parent);
+				changed.add(parent);
+			}
+			child = parent;
+			parent = parent.getParentFile();
+		}
+	}
+
+	@GuardedBy("CACHE")
+	private static void put(@Nonnull FolderRelevance entry) {
+		CACHE.put(entry.getPath(), entry);
+		PENDING_STORES.put(entry.getPath(), entry);
+	}
+
+	@GuardedBy("CACHE")
+	private static void remove(@Nonnull File directory) {
+		CACHE.remove(directory.getPath());
+		PENDING_STORES.remove(directory.getPath());
+	}
+
+	private static boolean isRelevantFile(@Nonnull File file, @Nonnull PmsConfiguration configuration) {
+		return FormatFactory.getAssociatedFormat(file.getName()) != null || FileUtil.isFileRelevant(file, configuration);
+	}
+
+	@Nullable
+	private static TableFolderRelevance getTable() {
+		TableManager tableManager = Services.tableManager();
+		return tableManager == null ? null : tableManager.getTableFolderRelevance();
+	}
+
+	/**
+	 * The state of a single {@link FolderRelevanceCache#isRelevant} call.
+	 */
+	private static class Lookup {
+		private final PmsConfiguration configuration;
+		private final boolean archives;
+		private final TableFolderRelevance table;
+		private final LibraryIndexer indexer;
+		private final Set<String> visiting = new HashSet<>();
+
+		public Lookup(@Nonnull PmsConfiguration configuration, boolean archives) {
+			this.configuration = configuration;
+			this.archives = archives;
+			this.table = getTable();
+			this.indexer = Services.libraryIndexer();
+		}
+
+		public boolean isRelevant(@Nonnull File directory) {
+			String path = directory.getPath();
+			long modified = directory.lastModified();
+			if (modified == 0 && !directory.isDirectory()) {
+				return false;
+			}
+			// Symbolic links can create cycles
+			if (!visiting.add(path)) {
+				return false;
+			}
+			try {
+				FolderRelevance entry;
+				synchronized (CACHE) {
+					entry = CACHE.get(path);
+				}
+				boolean persisted = false;
+				if (entry == null) {
+					entry = find(path);
+					persisted = entry != null;
+				}
+				if (entry != null && entry.getModified() == modified) {
+					if (!persisted && indexer != null && indexer.isWatched(Collections.singletonList(directory))) {
+						return entry.isRelevant();
+					}
+					if (isValid(directory, entry)) {
+						if (persisted) {
+							synchronized (CACHE) {
+								CACHE.put(path, entry);
+							}
+						}
+						return entry.isRelevant();
+					}
+				}
+				entry = create(directory);
+				if (entry == null) {
+					return false;
+				}
+				if (System.currentTimeMillis() - entry.getModified() >= MODIFIED_RESOLUTION) {
+					synchronized (CACHE) {
+						put(entry);
+					}
+				}
+				return entry.isRelevant();
+			} finally {
+				visiting.remove(path);
+			}
+		}
+
+		/**
+		 * Checks that the result a cached entry depends on is unchanged.
+		 */
+		private boolean isValid(@Nonnull File directory, @Nonnull FolderRelevance entry) {
+			if (entry.isRelevant()) {
+				if (entry.getNames().isEmpty()) {
+					return false;
+				}
+				File child = new File(directory, entry.getNames().get(0));
+				return child.isFile() || child.isDirectory() && isRelevant(child);
+			}
+			for (String name : entry.getNames()) {
+				if (isRelevant(new File(directory, name))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Lists the directory and determines its relevance.
+		 */
+		@Nullable
+		private FolderRelevance create(@Nonnull File directory) {
+			DirectorySnapshot snapshot = DirectorySnapshot.create(directory);
+			if (snapshot == null) {
+				return null;
+			}
+			ArrayList<String> subdirectories = new ArrayList<>();
+			for (DirectorySnapshot.Entry child : snapshot.getEntries()) {
+				if (child.isFile()) {
+					if (isRelevantFile(child.getFile(), configuration)) {
+						return new FolderRelevance(
+							directory.getPath(),
+							snapshot.getModified(),
+							true,
+							Collections.singletonList(child.getName())
+						);
+					}
+				} else if (child.isDirectory()) {
+					subdirectories.add(child.getName());
+				}
+			}
+			for (String name : subdirectories) {
+				if (isRelevant(new File(directory, name))) {
+					return new FolderRelevance(directory.getPath(), snapshot.getModified(), true, Collections.singletonList(name));
+				}
+			}
+			return new FolderRelevance(directory.getPath(), snapshot.getModified(), false, subdirectories);
+		}
+
+		@Nullable
+		private FolderRelevance find(@Nonnull String path) {
+			if (table == null) {
+				return null;
+			}
+			try {
+				return table.find(path, archives);
+			} catch (SQLException e) {
+				LOGGER.trace("Couldn't look up the relevance of \"{}\": {}", path, e.getMessage());
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the stages of the server startup and records how long each of them
+ * took. Stages that don't depend on each other are started in the background
+ * with {@link #start}, and the stages that need their results wait for them
+ * with {@link #await}. Stages that run in the calling thread are timed with
+ * {@link #record}.
+ */
+@ThreadSafe
+public class StartupStages {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StartupStages.class);
+
+	/** The {@link System#nanoTime()} when this instance was created */
+	private final long startTime = System.nanoTime();
+
+	@GuardedBy("this")
+	private final LinkedHashMap<String, FutureTask<Void>> stages = new LinkedHashMap<>();
+
+	/** The durations of the completed stages in nanoseconds, in completion order */
+	@GuardedBy("this")
+	private final LinkedHashMap<String, Long> durations = new LinkedHashMap<>();
+
+	/**
+	 * Starts a stage in a new background thread.
+	 *
+	 * @param name the name of the stage.
+	 * @param stage the stage to run.
+	 * @throws IllegalStateException If a stage with the same name exists.
+	 */
+	public synchronized void start(@Nonnull final String name, @Nonnull final Runnable stage) {
+		if (stages.containsKey(name) || durations.containsKey(name)) {
+			throw new IllegalStateException("Startup stage \"" + name + "\" already exists");
+		}
+		FutureTask<Void> task = new FutureTask<>(new Runnable() {
+
+			@Override
+			public void run() {
+				long stageStart = System.nanoTime();
+				stage.run();
+				record(name, stageStart);
+			}
+		}, null);
+		stages.put(name, task);
+		Thread thread = new Thread(task, "Startup " + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Waits for a stage started with {@link #start} to complete. Stages that
+	 * were only recorded have already completed.
+	 *
+	 * @param name the name of the stage.
+	 * @throws InterruptedException If interrupted while waiting.
+	 * @throws StageFailedException If the stage threw an {@link Exception}.
+	 */
+	public void await(@Nonnull String name) throws InterruptedException {
+		FutureTask<Void> task;
+		synchronized (this) {
+			task = stages.get(name);
+		}
+		if (task == null) {
+			return;
+		}
+		try {
+			task.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			if (cause instanceof StageFailedException) {
+				throw (StageFailedException) cause;
+			}
+			throw new StageFailedException("Startup stage \"" + name + "\" failed: " + cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Records the duration of a stage that ran in the calling thread.
+	 *
+	 * @param name the name of the stage.
+	 * @param stageStart the {@link System#nanoTime()} when the stage started.
+	 */
+	public void record(@Nonnull String name, long stageStart) {
+		long duration = System.nanoTime() - stageStart;
+		synchronized (this) {
+			durations.put(name, duration);
+		}
+		LOGGER.debug("Startup stage \"{}\" completed in {} ms", name, TimeUnit.NANOSECONDS.toMillis(duration));
+	}
+
+	/**
+	 * @param name the name of the stage.
+	 * @return The duration of the completed stage in milliseconds or
+	 *         {@code -1} if it hasn't completed.
+	 */
+	public synchronized long getDuration(@Nonnull String name) {
+		Long duration = durations.get(name);
+		return duration == null ? -1 : TimeUnit.NANOSECONDS.toMillis(duration);
+	}
+
+	/**
+	 * @return The names of the completed stages in the order they completed.
+	 */
+	@Nonnull
+	public synchronized List<String> getCompleted() {
+		return new ArrayList<>(durations.keySet());
+	}
+
+	/**
+	 * @return The number of milliseconds since this instance was created.
+	 */
+	public long getElapsed() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Logs the durations of the completed stages and the time since this
+	 * instance was created.
+	 *
+	 * @param milestone a description of what has been reached.
+	 */
+	public void logTimings(@Nonnull String milestone) {
+		StringBuilder sb = new StringBuilder();
+		synchronized (this) {
+			for (Entry<String, Long> entry : durations.entrySet()) {
+				if (sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append(entry.getKey()).append(": ").append(TimeUnit.NANOSECONDS.toMillis(entry.getValue())).append(" ms");
+			}
+		}
+		LOGGER.info("{} {} ms after startup began ({})", milestone, getElapsed(), sb);
+	}
+
+	/**
+	 * Thrown by {@link StartupStages#await} when a stage failed.
+	 */
+	public static class StageFailedException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public StageFailedException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
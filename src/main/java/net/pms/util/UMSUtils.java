@@ -22,7 +22,6 @@ package net.pms.util;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.text.Collator;
 import java.util.*;
 import java.util.List;
 import net.pms.PMS;
@@ -37,14 +36,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class UMSUtils {
-	private static final Collator collator;
 	private static final Logger LOGGER = LoggerFactory.getLogger(UMSUtils.class);
 
-	static {
-		collator = Collator.getInstance();
-		collator.setStrength(Collator.PRIMARY);
-	}
-
 	public static void postSearch(List<DLNAResource> files, String searchCriteria) {
 		if (files == null || searchCriteria == null) {
 			return;
@@ -98,44 +91,79 @@ public class UMSUtils {
 	 * @see #sort(java.util.ArrayList, int)
 	 */
 	public static void sort(List<File> files, int method) {
+		sort(files, method, FILE_SORT_KEY);
+	}
+
+	/**
+	 * Sorts a list of {@link DirectorySnapshot.Entry}s using a custom method.
+	 * Unlike {@link #sort(List, int)}, sorting by modification time doesn't
+	 * access the file system.
+	 *
+	 * @param entries the {@link List} to sort.
+	 * @param method the sort method constant.
+	 */
+	public static void sortEntries(List<DirectorySnapshot.Entry> entries, int method) {
+		sort(entries, method, ENTRY_SORT_KEY);
+	}
+
+	/**
+	 * Provides the name and modification time to sort by.
+	 */
+	private interface SortKey<T> {
+		String getName(T t);
+
+		long getLastModified(T t);
+	}
+
+	private static final SortKey<File> FILE_SORT_KEY = new SortKey<File>() {
+
+		@Override
+		public String getName(File file) {
+			return file.getName();
+		}
+
+		@Override
+		public long getLastModified(File file) {
+			return file.lastModified();
+		}
+	};
+
+	private static final SortKey<DirectorySnapshot.Entry> ENTRY_SORT_KEY = new SortKey<DirectorySnapshot.Entry>() {
+
+		@Override
+		public String getName(DirectorySnapshot.Entry entry) {
+			return entry.getName();
+		}
+
+		@Override
+		public long getLastModified(DirectorySnapshot.Entry entry) {
+			return entry.getLastModified();
+		}
+	};
+
+	private static <T> void sort(List<T> files, int method, final SortKey<T> key) {
 		switch (method) {
 			case SORT_NO_SORT: // no sorting
 				break;
 			case SORT_LOC_NAT: // Locale-sensitive natural sort
-				Collections.sort(files, new Comparator<File>() {
-					@Override
-					public int compare(File f1, File f2) {
-						String filename1ToSort = FileUtil.renameForSorting(f1.getName());
-						String filename2ToSort = FileUtil.renameForSorting(f2.getName());
-
-						return NaturalComparator.compareNatural(collator, filename1ToSort, filename2ToSort);
-					}
-				});
+				sortByName(files, key, FilenameSortKey.NATURAL_COMPARATOR);
 				break;
 			case SORT_INS_ASCII: // Case-insensitive ASCIIbetical sort
-				Collections.sort(files, new Comparator<File>() {
-					@Override
-					public int compare(File f1, File f2) {
-						String filename1ToSort = FileUtil.renameForSorting(f1.getName());
-						String filename2ToSort = FileUtil.renameForSorting(f2.getName());
-
-						return filename1ToSort.compareToIgnoreCase(filename2ToSort);
-					}
-				});
+				sortByName(files, key, FilenameSortKey.IGNORE_CASE_COMPARATOR);
 				break;
 			case SORT_MOD_OLD: // Sort by modified date, oldest first
-				Collections.sort(files, new Comparator<File>() {
+				Collections.sort(files, new Comparator<T>() {
 					@Override
-					public int compare(File f1, File f2) {
-						return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+					public int compare(T f1, T f2) {
+						return Long.valueOf(key.getLastModified(f1)).compareTo(key.getLastModified(f2));
 					}
 				});
 				break;
 			case SORT_MOD_NEW: // Sort by modified date, newest first
-				Collections.sort(files, new Comparator<File>() {
+				Collections.sort(files, new Comparator<T>() {
 					@Override
-					public int compare(File f1, File f2) {
-						return Long.valueOf(f2.lastModified()).compareTo(f1.lastModified());
+					public int compare(T f1, T f2) {
+						return Long.valueOf(key.getLastModified(f2)).compareTo(key.getLastModified(f1));
 					}
 				});
 				break;
@@ -144,19 +172,46 @@ public class UMSUtils {
 				break;
 			case SORT_LOC_SENS: // Same as default
 			default: // Locale-sensitive A-Z
-				Collections.sort(files, new Comparator<File>() {
-					@Override
-					public int compare(File f1, File f2) {
-						String filename1ToSort = FileUtil.renameForSorting(f1.getName());
-						String filename2ToSort = FileUtil.renameForSorting(f2.getName());
-
-						return collator.compare(filename1ToSort, filename2ToSort);
-					}
-				});
+				sortByName(files, key, FilenameSortKey.LOCALE_SENSITIVE_COMPARATOR);
 				break;
 		}
 	}
 
+	/**
+	 * Sorts by name using the {@link FilenameSortKey} of every element, which
+	 * is looked up once before sorting instead of for every comparison.
+	 */
+	private static <T> void sortByName(List<T> files, SortKey<T> key, final Comparator<FilenameSortKey> comparator) {
+		if (files.size() < 2) {
+			return;
+		}
+		List<KeyedElement<T>> keyed = new ArrayList<>(files.size());
+		for (T file : files) {
+			keyed.add(new KeyedElement<>(file, FilenameSortKey.get(key.getName(file))));
+		}
+		Collections.sort(keyed, new Comparator<KeyedElement<T>>() {
+			@Override
+			public int compare(KeyedElement<T> o1, KeyedElement<T> o2) {
+				return comparator.compare(o1.sortKey, o2.sortKey);
+			}
+		});
+		ListIterator<T> iterator = files.listIterator();
+		for (KeyedElement<T> element : keyed) {
+			iterator.next();
+			iterator.set(element.element);
+		}
+	}
+
+	private static final class KeyedElement<T> {
+		private final T element;
+		private final FilenameSortKey sortKey;
+
+		public KeyedElement(T element, FilenameSortKey sortKey) {
+			this.element = element;
+			this.sortKey = sortKey;
+		}
+	}
+
 	public static String playedDurationStr(String current, String duration) {
 		String pos = StringUtil.shortTime(current, 4);
 		String dur = StringUtil.shortTime(duration, 4);
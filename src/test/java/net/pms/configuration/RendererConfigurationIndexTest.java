@@ -0,0 +1,114 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.configuration;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+
+public class RendererConfigurationIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+	}
+
+	@Test
+	public void testRestoredPropertiesMatchParsedProperties() throws Exception {
+		Path file = folder.getRoot().toPath().resolve(RendererConfigurationIndex.FILENAME);
+		File[] confs = new File("src/main/external-resources/renderers").listFiles();
+		assertNotNull(confs);
+		RendererConfigurationIndex index = new RendererConfigurationIndex(file);
+		for (File conf : confs) {
+			if (conf.getName().endsWith(".conf")) {
+				PropertiesConfiguration configuration = RendererConfiguration.createPropertiesConfiguration();
+				assertFalse(index.restore(conf, configuration));
+				configuration.load(conf);
+				index.store(conf, configuration);
+			}
+		}
+		index.save();
+
+		index = new RendererConfigurationIndex(file);
+		assertTrue(index.getSize() > 0);
+		for (File conf : confs) {
+			if (conf.getName().endsWith(".conf")) {
+				PropertiesConfiguration parsed = RendererConfiguration.createPropertiesConfiguration();
+				parsed.load(conf);
+				PropertiesConfiguration restored = RendererConfiguration.createPropertiesConfiguration();
+				assertTrue(index.restore(conf, restored));
+				for (Iterator<String> keys = parsed.getKeys(); keys.hasNext();) {
+					String key = keys.next();
+					assertEquals(conf.getName() + ": " + key, parsed.getList(key), restored.getList(key));
+				}
+				assertEquals(parsed.getProperty("RendererName"), restored.getProperty("RendererName"));
+			}
+		}
+		assertEquals(index.getSize(), index.getHits());
+	}
+
+	@Test
+	public void testChangedAndUnusedFiles() throws Exception {
+		Path file = folder.getRoot().toPath().resolve(RendererConfigurationIndex.FILENAME);
+		File a = folder.newFile("a.conf");
+		File b = folder.newFile("b.conf");
+		Files.write(a.toPath(), Arrays.asList("RendererName = A", "UserAgentSearch = A.\\\\d{2}"), StandardCharsets.ISO_8859_1);
+		Files.write(b.toPath(), Arrays.asList("RendererName = B"), StandardCharsets.ISO_8859_1);
+		RendererConfigurationIndex index = new RendererConfigurationIndex(file);
+		for (File conf : new File[] {a, b}) {
+			PropertiesConfiguration configuration = RendererConfiguration.createPropertiesConfiguration();
+			configuration.load(conf);
+			index.store(conf, configuration);
+		}
+		index.save();
+
+		// Only a is used, so b is dropped when the index is saved
+		index = new RendererConfigurationIndex(file);
+		PropertiesConfiguration configuration = RendererConfiguration.createPropertiesConfiguration();
+		assertTrue(index.restore(a, configuration));
+		assertEquals("A.\\d{2}", configuration.getString("UserAgentSearch"));
+		index.save();
+		index = new RendererConfigurationIndex(file);
+		assertEquals(1, index.getSize());
+
+		// A changed file must be parsed again
+		Files.write(a.toPath(), Arrays.asList("RendererName = Changed A"), StandardCharsets.ISO_8859_1);
+		assertTrue(a.setLastModified(a.lastModified() + 2000));
+		assertFalse(index.restore(a, RendererConfiguration.createPropertiesConfiguration()));
+		assertEquals(0, index.getHits());
+	}
+}
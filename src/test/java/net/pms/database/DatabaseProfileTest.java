@@ -0,0 +1,193 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.database;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import org.h2.engine.Constants;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+
+/**
+ * Tests {@link DatabaseProfile} and {@link DatabaseStatistics}.
+ */
+public class DatabaseProfileTest {
+
+	private static final int ROWS = 5000;
+	private static final int BATCH_SIZE = 100;
+	private static final int PAGE_SIZE = 50;
+	private static final int FOLDERS = 6;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() throws ClassNotFoundException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		Class.forName("org.h2.Driver");
+	}
+
+	@Test
+	public void testBuildURL() {
+		DatabaseProfile profile = new DatabaseProfile(1024, 3, 2000, 10000, 64, true);
+		assertEquals(
+			"jdbc:h2:nio:/db/DMS;MULTI_THREADED=1;CACHE_SIZE=1024;LOCK_MODE=3;WRITE_DELAY=2000;" +
+				"RETENTION_TIME=10000;QUERY_CACHE_SIZE=64;TRACE_LEVEL_FILE=4",
+			profile.buildURL("/db/DMS")
+		);
+		profile = DatabaseProfile.create(null);
+		assertEquals(
+			"jdbc:h2:nio:/db/DMS;MULTI_THREADED=1;QUERY_CACHE_SIZE=" + DatabaseProfile.DEFAULT_STATEMENT_CACHE_SIZE,
+			profile.buildURL("/db/DMS")
+		);
+		profile = new DatabaseProfile(0, -1, -1, -1, -1, false);
+		assertEquals("jdbc:h2:nio:/db/DMS;MULTI_THREADED=1", profile.buildURL("/db/DMS"));
+	}
+
+	@Test
+	public void testStatistics() throws SQLException {
+		String filename = new File(folder.getRoot(), "statistics").getAbsolutePath();
+		File file = new File(filename + Constants.SUFFIX_MV_FILE);
+		assertNull(DatabaseStatistics.read(file));
+
+		String url = DatabaseProfile.create(null).buildURL(filename);
+		try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+			createTable(connection);
+			insertRows(connection);
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("DELETE FROM FILES WHERE ID >= " + ROWS / 10);
+				statement.execute("SHUTDOWN");
+			}
+		}
+		DatabaseStatistics statistics = DatabaseStatistics.read(file);
+		assertNotNull(statistics);
+		assertEquals(file.length(), statistics.getFileSize());
+		assertTrue(statistics.getUnusedPercent() > 50);
+
+		try (
+			Connection connection = DriverManager.getConnection(url, "sa", "");
+			Statement statement = connection.createStatement();
+		) {
+			statement.execute("SHUTDOWN COMPACT");
+		}
+		DatabaseStatistics compacted = DatabaseStatistics.read(file);
+		assertNotNull(compacted);
+		assertTrue(compacted.getFileSize() < statistics.getFileSize());
+		assertTrue(compacted.getUnusedPercent() < statistics.getUnusedPercent());
+	}
+
+	@Test
+	public void testWorkload() throws SQLException {
+		// The same scan-like and browse-like workload must work with the H2 defaults and the profile
+		runWorkload(new DatabaseProfile(0, -1, -1, -1, -1, false), "defaults");
+		runWorkload(DatabaseProfile.create(null), "profile");
+	}
+
+	/**
+	 * Inserts {@link #ROWS} rows in transactions of {@link #BATCH_SIZE} rows
+	 * and then browses {@link #FOLDERS} library folders in pages of
+	 * {@link #PAGE_SIZE} rows, counting the rows of a folder before every
+	 * page. In both cases the statements are prepared for every row or page
+	 * like the table classes do.
+	 */
+	private void runWorkload(DatabaseProfile profile, String name) throws SQLException {
+		String url = profile.buildURL(new File(folder.getRoot(), name).getAbsolutePath());
+		try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+			createTable(connection);
+
+			insertRows(connection);
+
+			int count = 0;
+			for (int i = 0; i < ROWS / FOLDERS; i += PAGE_SIZE) {
+				for (int type = 0; type < FOLDERS; type++) {
+					String condition = "FROM FILES WHERE TYPE = ? AND ID % " + (type + 1) + " = 0";
+					try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) " + condition)) {
+						statement.setInt(1, 4);
+						try (ResultSet resultSet = statement.executeQuery()) {
+							assertTrue(resultSet.next());
+						}
+					}
+					try (PreparedStatement statement = connection.prepareStatement(
+						"SELECT FILENAME, MODIFIED " + condition + " ORDER BY FILENAME LIMIT ? OFFSET ?"
+					)) {
+						statement.setInt(1, 4);
+						statement.setInt(2, PAGE_SIZE);
+						statement.setInt(3, i);
+						try (ResultSet resultSet = statement.executeQuery()) {
+							while (resultSet.next()) {
+								count++;
+							}
+						}
+					}
+				}
+			}
+			assertTrue(count > 0);
+
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("SHUTDOWN");
+			}
+		}
+	}
+
+	private static void createTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(
+				"CREATE TABLE FILES (ID INT NOT NULL, FILENAME VARCHAR2(1024) NOT NULL, " +
+				"MODIFIED TIMESTAMP NOT NULL, TYPE INT, TITLE VARCHAR2(255), PRIMARY KEY (ID))"
+			);
+			statement.execute("CREATE INDEX IDXFILENAME ON FILES (FILENAME)");
+		}
+	}
+
+	private static void insertRows(Connection connection) throws SQLException {
+		connection.setAutoCommit(false);
+		for (int i = 0; i < ROWS; i++) {
+			try (PreparedStatement statement = connection.prepareStatement(
+				"MERGE INTO FILES (ID, FILENAME, MODIFIED, TYPE, TITLE) KEY (ID) VALUES (?, ?, ?, ?, ?)"
+			)) {
+				statement.setInt(1, i);
+				statement.setString(2, String.format("/media/folder%03d/file%05d.mkv", i / 100, i));
+				statement.setTimestamp(3, new Timestamp(1500000000000L + i));
+				statement.setInt(4, 4);
+				statement.setString(5, "A title that takes some space in the row " + i);
+				statement.executeUpdate();
+			}
+			if ((i + 1) % BATCH_SIZE == 0) {
+				connection.commit();
+			}
+		}
+		connection.commit();
+		connection.setAutoCommit(true);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.database;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import net.pms.database.TableDirectoryFingerprints.DirectoryFingerprint;
+
+public class DirectoryFingerprintTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testUnchangedDirectoryMatches() throws IOException {
+		Path directory = createDirectory();
+		DirectoryFingerprint first = DirectoryFingerprint.create(directory);
+		DirectoryFingerprint second = DirectoryFingerprint.create(directory);
+		assertTrue(first.matches(second));
+		assertEquals(3, first.getEntries());
+		assertEquals(1, first.getSubdirectories().size());
+
+		DirectoryFingerprint stored = new DirectoryFingerprint(
+			first.getPath(),
+			first.getModified(),
+			first.getEntries(),
+			first.getNamesHash(),
+			null
+		);
+		assertTrue(stored.matches(first));
+		assertNull(stored.getSubdirectories());
+	}
+
+	@Test
+	public void testChangesAreDetected() throws IOException {
+		Path directory = createDirectory();
+		DirectoryFingerprint original = DirectoryFingerprint.create(directory);
+
+		// A file modified in place doesn't change the directory modification time
+		File file = directory.resolve("a.mkv").toFile();
+		assertTrue(file.setLastModified(file.lastModified() - 60000));
+		DirectoryFingerprint modified = DirectoryFingerprint.create(directory);
+		assertFalse(original.matches(modified));
+
+		assertTrue(new File(directory.toFile(), "c.mp3").createNewFile());
+		assertFalse(modified.matches(DirectoryFingerprint.create(directory)));
+	}
+
+	@Test
+	public void testSubdirectoryContentIsIgnored() throws IOException {
+		Path directory = createDirectory();
+		DirectoryFingerprint original = DirectoryFingerprint.create(directory);
+		File subdirectory = directory.resolve("sub").toFile();
+		long modified = directory.toFile().lastModified();
+		assertTrue(new File(subdirectory, "d.mp3").createNewFile());
+		assertTrue(directory.toFile().setLastModified(modified));
+		assertTrue(original.matches(DirectoryFingerprint.create(directory)));
+		assertFalse(DirectoryFingerprint.create(subdirectory.toPath()).getEntries() == 0);
+	}
+
+	private Path createDirectory() throws IOException {
+		File directory = folder.newFolder();
+		try (FileOutputStream out = new FileOutputStream(new File(directory, "a.mkv"))) {
+			out.write(new byte[] {1, 2, 3});
+		}
+		assertTrue(new File(directory, "b.jpg").createNewFile());
+		assertTrue(new File(directory, "sub").mkdir());
+		return directory.toPath();
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+
+public class DatabaseCleanerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+	}
+
+	@Test
+	public void testCheckDirectory() throws IOException {
+		File directory = folder.newFolder("media");
+		File existing = new File(directory, "a.mkv");
+		assertTrue(existing.createNewFile());
+		File modified = new File(directory, "b.mkv");
+		assertTrue(modified.createNewFile());
+		String missing = new File(directory, "c.mkv").getPath();
+
+		DatabaseCleaner.Row existingRow = new DatabaseCleaner.Row(1, existing.getPath(), existing.lastModified());
+		DatabaseCleaner.Row modifiedRow = new DatabaseCleaner.Row(2, modified.getPath(), modified.lastModified() - 5000);
+		DatabaseCleaner.Row missingRow = new DatabaseCleaner.Row(3, missing, 1000);
+		List<DatabaseCleaner.Row> obsolete = DatabaseCleaner.checkDirectory(
+			directory.getPath(),
+			Arrays.asList(existingRow, modifiedRow, missingRow)
+		);
+		assertEquals(Arrays.asList(modifiedRow, missingRow), obsolete);
+
+		// Everything in a missing directory is obsolete
+		String gone = new File(directory, "gone").getPath();
+		DatabaseCleaner.Row goneRow = new DatabaseCleaner.Row(4, gone + File.separator + "d.mkv", 1000);
+		assertEquals(Arrays.asList(goneRow), DatabaseCleaner.checkDirectory(gone, Arrays.asList(goneRow)));
+	}
+
+	@Test
+	public void testCleanupInPages() throws IOException {
+		FakeDatabase database = new FakeDatabase();
+		for (int i = 0; i < 10; i++) {
+			File directory = folder.newFolder("folder" + i);
+			for (int j = 0; j < 3; j++) {
+				File file = new File(directory, "file" + j + ".mp3");
+				assertTrue(file.createNewFile());
+				// The second file of every folder has been modified
+				database.add(file.getPath(), j == 1 ? file.lastModified() - 5000 : file.lastModified());
+			}
+		}
+		database.add(folder.getRoot().getPath() + File.separator + "missing" + File.separator + "a.mp3", 1000);
+
+		DatabaseCleaner cleaner = new DatabaseCleaner(database, 4);
+		assertTrue(cleaner.run(3));
+		assertFalse(cleaner.isResumable());
+		assertEquals(20, database.rows.size());
+		assertEquals(9, database.pagesRead);
+		for (DatabaseCleaner.Row row : database.rows) {
+			assertFalse(row.getFilename().endsWith("file1.mp3"));
+		}
+	}
+
+	@Test
+	public void testStopAndResume() throws IOException {
+		final FakeDatabase database = new FakeDatabase();
+		File directory = folder.newFolder("media");
+		for (int i = 0; i < 10; i++) {
+			database.add(new File(directory, "missing" + i + ".mp3").getPath(), 1000);
+		}
+
+		DatabaseCleaner cleaner = new DatabaseCleaner(database, 3) {
+			private boolean first = true;
+
+			@Override
+			protected void onProgress(int percent) {
+				if (percent > 0 && first) {
+					// Stops the first run after its first page
+					first = false;
+					stop();
+				}
+			}
+		};
+		assertFalse(cleaner.run(2));
+		assertTrue(cleaner.isResumable());
+		assertEquals(7, database.rows.size());
+
+		assertTrue(cleaner.run(2));
+		assertFalse(cleaner.isResumable());
+		assertTrue(database.rows.isEmpty());
+	}
+
+	private static class FakeDatabase extends DLNAMediaDatabase {
+		final List<DatabaseCleaner.Row> rows = new ArrayList<>();
+		int pagesRead;
+
+		void add(String filename, long modified) {
+			rows.add(new DatabaseCleaner.Row(rows.size() + 1, filename, modified));
+		}
+
+		@Override
+		synchronized int getCleanupRowCount(@Nullable DatabaseCleaner.Row after) {
+			return rows.size() - (after == null ? 0 : indexAfter(after));
+		}
+
+		@Override
+		synchronized List<DatabaseCleaner.Row> getCleanupRows(@Nullable DatabaseCleaner.Row after, int count) {
+			pagesRead++;
+			int start = after == null ? 0 : indexAfter(after);
+			return new ArrayList<>(rows.subList(start, Math.min(start + count, rows.size())));
+		}
+
+		@Override
+		synchronized int removeCleanupRows(@Nonnull List<DatabaseCleaner.Row> obsolete) {
+			rows.removeAll(obsolete);
+			return obsolete.size();
+		}
+
+		private int indexAfter(DatabaseCleaner.Row after) {
+			int i = 0;
+			while (i < rows.size() && rows.get(i).getFilename().compareTo(after.getFilename()) <= 0) {
+				i++;
+			}
+			return i;
+		}
+	}
+}
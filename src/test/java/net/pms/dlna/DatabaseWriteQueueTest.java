@@ -0,0 +1,153 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+
+public class DatabaseWriteQueueTest {
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+	}
+
+	@Test
+	public void testPendingEntriesAreCopies() {
+		RecordingDatabase database = new RecordingDatabase();
+		DatabaseWriteQueue queue = new DatabaseWriteQueue(database, 10, 60000);
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		media.setWidth(1920);
+		queue.add("a.mkv", 1000, null, media);
+		media.setWidth(1280);
+
+		DatabaseWriteQueue.Entry entry = queue.get("a.mkv");
+		assertNotNull(entry);
+		assertEquals(1000, entry.getModified());
+		assertEquals(1920, entry.getMedia().getWidth());
+		entry.getMedia().setWidth(640);
+		assertEquals(1920, queue.get("a.mkv").getMedia().getWidth());
+		assertTrue(database.batches.isEmpty());
+		queue.shutdown();
+	}
+
+	@Test
+	public void testFlushWhenFull() throws InterruptedException {
+		RecordingDatabase database = new RecordingDatabase();
+		DatabaseWriteQueue queue = new DatabaseWriteQueue(database, 3, 60000);
+		queue.add("a.mkv", 1, null, null);
+		queue.add("b.mkv", 1, null, null);
+		// Replaces the pending entry instead of adding a new one
+		queue.add("b.mkv", 2, null, null);
+		assertEquals(0, database.awaitWritten(1, 200));
+		queue.add("c.mkv", 1, null, null);
+		assertEquals(3, database.awaitWritten(3, 5000));
+		assertTrue(queue.isEmpty());
+		assertNull(queue.get("b.mkv"));
+		assertEquals(3, queue.getWrittenCount());
+		queue.shutdown();
+	}
+
+	@Test
+	public void testFlushAfterDelay() throws InterruptedException {
+		RecordingDatabase database = new RecordingDatabase();
+		DatabaseWriteQueue queue = new DatabaseWriteQueue(database, 100, 50);
+		queue.add("a.mkv", 1, null, null);
+		assertEquals(1, database.awaitWritten(1, 5000));
+		assertTrue(queue.isEmpty());
+		queue.shutdown();
+	}
+
+	@Test
+	public void testFlushWritesBatches() {
+		RecordingDatabase database = new RecordingDatabase();
+		DatabaseWriteQueue queue = new DatabaseWriteQueue(database, 4, 60000);
+		queue.shutdown();
+		// Entries added after shutdown are written immediately
+		queue.add("a.mkv", 1, null, null);
+		assertEquals(1, database.batches.size());
+
+		database = new RecordingDatabase();
+		queue = new DatabaseWriteQueue(database, 1000, 60000);
+		for (int i = 0; i < 10; i++) {
+			queue.add("file" + i + ".mkv", 1, null, null);
+		}
+		queue.shutdown();
+		assertEquals(1, database.batches.size());
+		assertEquals(10, database.batches.get(0).size());
+	}
+
+	@Test
+	public void testDiscard() {
+		RecordingDatabase database = new RecordingDatabase();
+		DatabaseWriteQueue queue = new DatabaseWriteQueue(database, 100, 60000);
+		String folder = File.separator + "media" + File.separator + "folder";
+		queue.add(folder + File.separator + "a.mp3", 1, null, null);
+		queue.add(folder + File.separator + "sub" + File.separator + "b.mp3", 1, null, null);
+		queue.add(folder + ".cue#SplitTrack1", 1, null, null);
+		queue.add(folder + "2" + File.separator + "c.mp3", 1, null, null);
+		assertEquals(2, queue.discard(folder));
+		assertEquals(1, queue.discard(folder + ".cue"));
+		assertNotNull(queue.get(folder + "2" + File.separator + "c.mp3"));
+		assertTrue(queue.remove(folder + "2" + File.separator + "c.mp3"));
+		assertTrue(queue.isEmpty());
+		queue.shutdown();
+		assertTrue(database.batches.isEmpty());
+	}
+
+	private static class RecordingDatabase extends DLNAMediaDatabase {
+		final List<List<String>> batches = new ArrayList<>();
+		int written;
+
+		@Override
+		public synchronized void insertOrUpdateData(@Nonnull List<DatabaseWriteQueue.Entry> entries) {
+			List<String> names = new ArrayList<>();
+			for (DatabaseWriteQueue.Entry entry : entries) {
+				names.add(entry.getName());
+			}
+			batches.add(names);
+			written += entries.size();
+			notifyAll();
+		}
+
+		synchronized int awaitWritten(int count, long timeout) throws InterruptedException {
+			long end = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (written < count && remaining > 0) {
+				wait(remaining);
+				remaining = end - System.currentTimeMillis();
+			}
+			return written;
+		}
+	}
+}
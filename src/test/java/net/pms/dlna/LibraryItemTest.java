@@ -0,0 +1,115 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.formats.FormatType;
+
+public class LibraryItemTest {
+
+	@BeforeClass
+	public static void setUpClass() {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+	}
+
+	@Test
+	public void testSummary() {
+		LibraryItem item = new LibraryItem(createSummary());
+		assertEquals(1000, item.getLastModified());
+		assertEquals("test.mp3", item.getName());
+		assertFalse(item.isFolder());
+		assertEquals(FormatType.AUDIO, item.getSummary().getType());
+		assertEquals(12.5, item.getSummary().getDuration(), 0);
+		assertEquals("Song", item.getSummary().getTitle());
+	}
+
+	@Test
+	public void testNewItemIsReleased() {
+		LibraryItem item = new LibraryItem(createSummary());
+		assertTrue(item.isReleased());
+
+		// A released item isn't checked on disk, the file doesn't exist
+		assertTrue(item.isValid());
+		assertEquals(2048, item.getMedia().getSize());
+		assertTrue(item.isReleased());
+	}
+
+	@Test
+	public void testRelease() {
+		LibraryItem item = new LibraryItem(createSummary());
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		media.setSize(4096);
+		media.setMimeType("audio/flac");
+		media.setMediaparsed(true);
+		item.setMedia(media);
+		assertEquals(4096, item.length());
+
+		item.release();
+		assertTrue(item.isReleased());
+		assertEquals(2048, item.length());
+
+		// Information that is still being parsed isn't released
+		media = new DLNAMediaInfo();
+		media.setParsing(true);
+		item.setMedia(media);
+		assertFalse(item.isReleased());
+		item.release();
+		assertFalse(item.isReleased());
+		assertSame(media, item.getMedia());
+	}
+
+	@Test
+	public void testSummaryMedia() {
+		LibraryItem item = new LibraryItem(createSummary());
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		media.setSize(4096);
+		media.setMimeType("audio/flac");
+		media.setMediaparsed(true);
+		item.setMedia(media);
+		item.release();
+
+		// Browsing a released item is served from the summary
+		item.resolve();
+		assertTrue(item.isReleased());
+		DLNAMediaInfo summaryMedia = item.getMedia();
+		assertNotSame(media, summaryMedia);
+		assertTrue(summaryMedia.isMediaparsed());
+		assertEquals("audio/flac", summaryMedia.getMimeType());
+		assertEquals(2048, summaryMedia.getSize());
+		assertEquals(12.5, summaryMedia.getDuration(), 0);
+		assertTrue(summaryMedia.isAudio());
+		assertEquals("Song", summaryMedia.getFirstAudioTrack().getSongname());
+		assertEquals("Artist", summaryMedia.getFirstAudioTrack().getArtist());
+		assertEquals("Album", summaryMedia.getFirstAudioTrack().getAlbum());
+	}
+
+	private static LibraryItem.Summary createSummary() {
+		File file = new File("no-such-folder" + File.separator + "test.mp3").getAbsoluteFile();
+		return new LibraryItem.Summary(file.getPath(), 1000, FormatType.AUDIO, 2048, 12.5, "Song", "Artist", "Album");
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+import net.pms.dlna.virtual.VirtualFolder;
+
+/**
+ * Tests {@link LibraryScanner} on a generated directory tree. Folder discovery
+ * has an artificial delay to simulate slow storage.
+ */
+public class LibraryScannerTest {
+
+	private static final int DEPTH = 3;
+	private static final int FOLDERS_PER_FOLDER = 5;
+	private static final int FILES_PER_FOLDER = 10;
+	private static final long DISCOVERY_DELAY = 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+	}
+
+	@Test
+	public void testScanVisitsAllFolders() throws Exception {
+		File root = generateTree();
+		TestScanner scanner = new TestScanner(4, 2);
+		assertTrue(scanner.scan(createRoot(root)));
+
+		int expectedFolders = countFolders();
+		assertEquals(expectedFolders, scanner.getFoldersScanned());
+		assertEquals(expectedFolders, scanner.processed.size());
+		assertEquals(expectedFolders * FILES_PER_FOLDER, scanner.getFilesScanned());
+		assertTrue(scanner.maxConcurrent.get() <= 2);
+		assertFalse(scanner.isRunning());
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		File root = generateTree();
+		final TestScanner scanner = new TestScanner(4, 4) {
+
+			@Override
+			protected void processFolder(DLNAResource folder) {
+				super.processFolder(folder);
+				if (getFoldersScanned() >= 5) {
+					stop();
+				}
+			}
+		};
+		assertFalse(scanner.scan(createRoot(root)));
+		assertTrue(scanner.getFoldersScanned() < countFolders());
+	}
+
+	@Test
+	public void testThreadCounts() throws Exception {
+		File root = generateTree();
+		for (int threads : new int[] {1, 8}) {
+			TestScanner scanner = new TestScanner(threads, threads);
+			assertTrue(scanner.scan(createRoot(root)));
+			assertEquals(countFolders(), scanner.getFoldersScanned());
+			assertEquals(countFolders() * FILES_PER_FOLDER, scanner.getFilesScanned());
+			assertTrue(scanner.maxConcurrent.get() <= threads);
+		}
+	}
+
+	private static int countFolders() {
+		int result = 0;
+		int level = 1;
+		for (int i = 0; i < DEPTH; i++) {
+			level *= FOLDERS_PER_FOLDER;
+			result += level;
+		}
+		return result;
+	}
+
+	private File generateTree() throws IOException {
+		File root = folder.newFolder("library");
+		generateFolders(root, DEPTH);
+		return root;
+	}
+
+	private static void generateFolders(File parent, int depth) throws IOException {
+		if (depth == 0) {
+			return;
+		}
+		for (int i = 0; i < FOLDERS_PER_FOLDER; i++) {
+			File child = new File(parent, "folder" + i);
+			assertTrue(child.mkdir());
+			for (int j = 0; j < FILES_PER_FOLDER; j++) {
+				assertTrue(new File(child, "file" + j + ".mp3").createNewFile());
+			}
+			generateFolders(child, depth - 1);
+		}
+	}
+
+	private static DLNAResource createRoot(File root) {
+		VirtualFolder result = new VirtualFolder("root", null);
+		result.getChildren().addAll(new DirectoryResource(root).listChildren());
+		return result;
+	}
+
+	private static class TestScanner extends LibraryScanner {
+		final Set<String> processed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		public TestScanner(int parallelism, int threadsPerVolume) {
+			super(parallelism, threadsPerVolume, null, null);
+		}
+
+		@Override
+		protected void processFolder(DLNAResource folder) {
+			int current = concurrent.incrementAndGet();
+			int max;
+			do {
+				max = maxConcurrent.get();
+			} while (current > max && !maxConcurrent.compareAndSet(max, current));
+			try {
+				assertTrue("Folder processed twice", processed.add(((DirectoryResource) folder).directory.getPath()));
+				super.processFolder(folder);
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		}
+
+		@Override
+		protected String getVolume(DLNAResource resource) {
+			if (resource instanceof DirectoryResource) {
+				return getVolume(((DirectoryResource) resource).directory.toPath());
+			}
+			return super.getVolume(resource);
+		}
+	}
+
+	/**
+	 * A minimal folder that lists a directory with a delay.
+	 */
+	private static class DirectoryResource extends VirtualFolder {
+		final File directory;
+
+		public DirectoryResource(File directory) {
+			super(directory.getName(), null);
+			this.directory = directory;
+		}
+
+		@Override
+		public boolean allowScan() {
+			return true;
+		}
+
+		@Override
+		public void discoverChildren() {
+			try {
+				Thread.sleep(DISCOVERY_DELAY);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			getChildren().addAll(listChildren());
+		}
+
+		List<DLNAResource> listChildren() {
+			File[] files = directory.listFiles();
+			assertNotNull(files);
+			Arrays.sort(files);
+			List<DLNAResource> result = new ArrayList<>(files.length);
+			for (File file : files) {
+				if (file.isDirectory()) {
+					result.add(new DirectoryResource(file));
+				} else {
+					result.add(new VirtualFolder(file.getName(), null) {
+
+						@Override
+						public boolean isFolder() {
+							return false;
+						}
+					});
+				}
+			}
+			return result;
+		}
+	}
+}
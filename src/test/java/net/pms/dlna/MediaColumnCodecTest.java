@@ -0,0 +1,160 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.dlna.DLNAMediaInfo.RateMode;
+import net.pms.dlna.DLNAMediaInfo.ScanOrder;
+import net.pms.image.Image;
+import net.pms.image.ImageInfo;
+import net.pms.media.H264Level;
+import net.pms.media.H265Level;
+import net.pms.media.VideoLevel;
+import net.pms.util.Rational;
+
+/**
+ * Tests {@link MediaColumnCodec}.
+ */
+public class MediaColumnCodecTest {
+
+	@BeforeClass
+	public static void setUpClass() {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+	}
+
+	@Test
+	public void testEnums() {
+		assertNull(MediaColumnCodec.encodeEnum(null));
+		assertEquals("VARIABLE", MediaColumnCodec.encodeEnum(RateMode.VARIABLE));
+		assertEquals(RateMode.VARIABLE, MediaColumnCodec.decodeEnum("VARIABLE", RateMode.class));
+		assertEquals(
+			ScanOrder.PULLDOWN_2_3,
+			MediaColumnCodec.decodeEnum(MediaColumnCodec.encodeEnum(ScanOrder.PULLDOWN_2_3), ScanOrder.class)
+		);
+		assertNull(MediaColumnCodec.decodeEnum("REMOVED", RateMode.class));
+		assertNull(MediaColumnCodec.decodeEnum(null, RateMode.class));
+	}
+
+	@Test
+	public void testVideoLevels() {
+		for (VideoLevel level : new VideoLevel[] {H264Level.L4_1, H265Level.L5}) {
+			assertEquals(level, MediaColumnCodec.decodeVideoLevel(MediaColumnCodec.encodeVideoLevel(level)));
+		}
+		assertNull(MediaColumnCodec.encodeVideoLevel(null));
+		assertNull(MediaColumnCodec.decodeVideoLevel(null));
+		assertNull(MediaColumnCodec.decodeVideoLevel("H264Level:L99"));
+		assertNull(MediaColumnCodec.decodeVideoLevel("UnknownLevel:L1"));
+		assertNull(MediaColumnCodec.decodeVideoLevel("L1"));
+	}
+
+	@Test
+	public void testRationals() throws IOException {
+		Rational[] rationals = {
+			Rational.valueOf(BigInteger.valueOf(16), BigInteger.valueOf(9)),
+			Rational.valueOf(BigInteger.valueOf(1920), BigInteger.valueOf(1080)),
+			Rational.valueOf(BigInteger.valueOf(-24000), BigInteger.valueOf(1001)),
+			Rational.valueOf(BigInteger.ZERO, BigInteger.ONE),
+			Rational.valueOf(BigInteger.TEN.pow(40), BigInteger.valueOf(3))
+		};
+		for (Rational rational : rationals) {
+			Rational decoded = MediaColumnCodec.decodeRational(MediaColumnCodec.encodeRational(rational));
+			assertEquals(rational.getNumerator(), decoded.getNumerator());
+			assertEquals(rational.getDenominator(), decoded.getDenominator());
+		}
+		assertTrue(MediaColumnCodec.decodeRational(MediaColumnCodec.encodeRational(Rational.NaN)).isNaN());
+		assertTrue(
+			MediaColumnCodec.decodeRational(MediaColumnCodec.encodeRational(Rational.POSITIVE_INFINITY)).isInfinitePositive()
+		);
+		assertTrue(
+			MediaColumnCodec.decodeRational(MediaColumnCodec.encodeRational(Rational.NEGATIVE_INFINITY)).isInfiniteNegative()
+		);
+		assertNull(MediaColumnCodec.encodeRational(null));
+		assertNull(MediaColumnCodec.decodeRational(null));
+		try {
+			MediaColumnCodec.decodeRational(new byte[] {0, 1, 1, 1, 1});
+			fail("Expected IOException");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testImageInfo() throws IOException {
+		for (String format : new String[] {"jpg", "png", "bmp", "gif"}) {
+			ImageInfo imageInfo = Image.toImage(createImage(format)).getImageInfo();
+			assertNotNull(imageInfo);
+			ImageInfo decoded = MediaColumnCodec.decodeImageInfo(MediaColumnCodec.encodeImageInfo(imageInfo));
+			assertEquals(imageInfo.getClass(), decoded.getClass());
+			assertEquals(imageInfo.toString(), decoded.toString());
+		}
+		assertNull(MediaColumnCodec.encodeImageInfo(null));
+		assertNull(MediaColumnCodec.decodeImageInfo(null));
+		try {
+			MediaColumnCodec.decodeImageInfo(new byte[] {99, 0});
+			fail("Expected IOException");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testThumbnail() throws IOException {
+		DLNABinaryThumbnail thumbnail = DLNABinaryThumbnail.toThumbnail(createImage("jpg"));
+		DLNAThumbnail decoded = MediaColumnCodec.decodeThumbnail(MediaColumnCodec.encodeThumbnail(thumbnail));
+		assertTrue(decoded instanceof DLNABinaryThumbnail);
+		DLNABinaryThumbnail binaryDecoded = (DLNABinaryThumbnail) decoded;
+		assertEquals(thumbnail.getDLNAImageProfile(), binaryDecoded.getDLNAImageProfile());
+		assertEquals(thumbnail.getImageInfo().toString(), binaryDecoded.getImageInfo().toString());
+		assertTrue(Arrays.equals(thumbnail.getBytes(false), binaryDecoded.getBytes(false)));
+		assertNull(MediaColumnCodec.encodeThumbnail(null));
+		assertNull(MediaColumnCodec.decodeThumbnail(null));
+	}
+
+	private static byte[] createImage(String format) throws IOException {
+		BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setColor(Color.ORANGE);
+			graphics.fillRect(0, 0, 64, 48);
+			graphics.setColor(Color.BLUE);
+			graphics.fillOval(8, 8, 32, 24);
+		} finally {
+			graphics.dispose();
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		assertTrue(ImageIO.write(image, format, bytes));
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+
+public class MediaInfoCacheTest {
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+	}
+
+	@Test
+	public void testEntriesAreCopies() {
+		MediaInfoCache cache = new MediaInfoCache(MediaInfoCache.DEFAULT_MAX_SIZE);
+		DLNAMediaInfo media = createMedia(1920, 0);
+		cache.put("a.mkv", 1000, media);
+		media.setWidth(1280);
+
+		DLNAMediaInfo cached = cache.get("a.mkv", 1000);
+		assertNotNull(cached);
+		assertEquals(1920, cached.getWidth());
+		cached.setWidth(640);
+		assertEquals(1920, cache.get("a.mkv", 1000).getWidth());
+	}
+
+	@Test
+	public void testModifiedTimeMismatch() {
+		MediaInfoCache cache = new MediaInfoCache(MediaInfoCache.DEFAULT_MAX_SIZE);
+		cache.put("a.mkv", 1000, createMedia(1920, 0));
+		assertTrue(cache.contains("a.mkv", 1000));
+		assertFalse(cache.contains("a.mkv", 2000));
+		assertNull(cache.get("a.mkv", 2000));
+		// The outdated entry is dropped
+		assertNull(cache.get("a.mkv", 1000));
+		assertEquals(0, cache.getCount());
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+
+		cache.put("b.mkv", 1000, createMedia(1920, 0));
+		cache.put("b.mkv", 1000, null);
+		assertNull(cache.get("b.mkv", 1000));
+	}
+
+	@Test
+	public void testSizeAwareEviction() {
+		long small = MediaInfoCache.estimateSize(createMedia(1, 0));
+		long large = MediaInfoCache.estimateSize(createMedia(1, 8));
+		assertTrue(large > small);
+		MediaInfoCache cache = new MediaInfoCache(2 * small + large);
+		cache.put("a.mkv", 1, createMedia(1, 0));
+		cache.put("b.mkv", 1, createMedia(2, 0));
+		cache.put("c.mkv", 1, createMedia(3, 8));
+		assertEquals(3, cache.getCount());
+		assertEquals(2 * small + large, cache.getSize());
+
+		// Makes b the least recently used entry
+		assertNotNull(cache.get("a.mkv", 1));
+		cache.put("d.mkv", 1, createMedia(4, 0));
+		assertEquals(1, cache.getEvictions());
+		assertFalse(cache.contains("b.mkv", 1));
+		assertTrue(cache.contains("a.mkv", 1));
+
+		// A large entry evicts as many entries as needed
+		cache.put("e.mkv", 1, createMedia(5, 12));
+		assertTrue(cache.getSize() <= cache.getMaxSize());
+		assertFalse(cache.contains("c.mkv", 1));
+		assertFalse(cache.contains("d.mkv", 1));
+		assertTrue(cache.contains("a.mkv", 1));
+		assertTrue(cache.contains("e.mkv", 1));
+		assertEquals(3, cache.getEvictions());
+
+		// Entries larger than the cache aren't stored
+		MediaInfoCache tiny = new MediaInfoCache(small);
+		tiny.put("f.mkv", 1, createMedia(6, 8));
+		assertEquals(0, tiny.getCount());
+	}
+
+	@Test
+	public void testDiscard() {
+		MediaInfoCache cache = new MediaInfoCache(MediaInfoCache.DEFAULT_MAX_SIZE);
+		String directory = new File("media").getAbsolutePath();
+		String file = directory + File.separator + "a.cue";
+		cache.put(file, 1, createMedia(1, 0));
+		cache.put(file + "#SplitTrack1", 1, createMedia(1, 0));
+		cache.put(directory + File.separator + "sub" + File.separator + "b.mkv", 1, createMedia(1, 0));
+		cache.put(directory + "2" + File.separator + "c.mkv", 1, createMedia(1, 0));
+
+		assertEquals(2, cache.discard(file));
+		assertEquals(1, cache.discard(directory));
+		assertEquals(1, cache.getCount());
+		assertTrue(cache.contains(directory + "2" + File.separator + "c.mkv", 1));
+		cache.clear();
+		assertEquals(0, cache.getCount());
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testHitRate() {
+		MediaInfoCache cache = new MediaInfoCache(MediaInfoCache.DEFAULT_MAX_SIZE);
+		assertEquals(0, cache.getHitRate(), 0);
+		cache.put("a.mkv", 1, createMedia(1, 0));
+		for (int i = 0; i < 3; i++) {
+			assertNotNull(cache.get("a.mkv", 1));
+		}
+		assertNull(cache.get("b.mkv", 1));
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.75, cache.getHitRate(), 0.0001);
+	}
+
+	private static DLNAMediaInfo createMedia(int width, int audioTracks) {
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		media.setWidth(width);
+		for (int i = 0; i < audioTracks; i++) {
+			DLNAMediaAudio audio = new DLNAMediaAudio();
+			audio.setId(i);
+			media.getAudioTracksList().add(audio);
+		}
+		return media;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.configuration.RendererConfiguration;
+import net.pms.formats.FormatType;
+
+public class MediaInfoPoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException, InterruptedException {
+		PMS.configureJNA();
+
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.reset();
+
+		RendererConfiguration.loadRendererConfigurations(new PmsConfiguration(false));
+	}
+
+	@Test
+	public void testPoolBounds() throws Exception {
+		final AtomicInteger factoryCalls = new AtomicInteger();
+		final MediaInfoPool pool = new MediaInfoPool(new MediaInfoPool.Factory() {
+
+			@Override
+			public MediaInfo createInstance() {
+				factoryCalls.incrementAndGet();
+				return new MediaInfo();
+			}
+		}, 3, null);
+
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws InterruptedException {
+						for (int j = 0; j < 200; j++) {
+							MediaInfo instance = pool.acquire();
+							try {
+								int current = concurrent.incrementAndGet();
+								int max;
+								do {
+									max = maxConcurrent.get();
+								} while (current > max && !maxConcurrent.compareAndSet(max, current));
+								Thread.yield();
+							} finally {
+								concurrent.decrementAndGet();
+								pool.release(instance);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertTrue(maxConcurrent.get() <= 3);
+		assertTrue(factoryCalls.get() <= 3);
+		assertEquals(factoryCalls.get(), pool.getCreatedCount());
+		assertEquals(0, pool.getActiveCount());
+	}
+
+	@Test
+	public void testInitialInstanceIsReused() throws Exception {
+		final AtomicInteger factoryCalls = new AtomicInteger();
+		MediaInfo initial = new MediaInfo();
+		MediaInfoPool pool = new MediaInfoPool(new MediaInfoPool.Factory() {
+
+			@Override
+			public MediaInfo createInstance() {
+				factoryCalls.incrementAndGet();
+				return new MediaInfo();
+			}
+		}, 2, initial);
+
+		MediaInfo first = pool.acquire();
+		assertSame(initial, first);
+		MediaInfo second = pool.acquire();
+		assertNotSame(initial, second);
+		assertEquals(1, factoryCalls.get());
+		assertEquals(2, pool.getActiveCount());
+		pool.release(second);
+		pool.release(first);
+		assertSame(first, pool.acquire());
+		assertEquals(1, factoryCalls.get());
+	}
+
+	@Test
+	public void testParseStatistics() {
+		MediaInfoPool pool = new MediaInfoPool(new MediaInfoPool.Factory() {
+
+			@Override
+			public MediaInfo createInstance() {
+				return new MediaInfo();
+			}
+		}, 1, null);
+		assertEquals(0, pool.getParseCount());
+		assertEquals(0, pool.getAverageParseTime(), 0);
+		pool.recordParseTime(TimeUnit.MILLISECONDS.toNanos(10));
+		pool.recordParseTime(TimeUnit.MILLISECONDS.toNanos(30));
+		assertEquals(2, pool.getParseCount());
+		assertEquals(20, pool.getAverageParseTime(), 0.001);
+		assertEquals(30, pool.getMaxParseTime());
+	}
+
+	/**
+	 * Parses a synthetic corpus of WAV files sequentially and concurrently and
+	 * verifies that the results are identical.
+	 */
+	@Test
+	public void testConcurrentParse() throws Exception {
+		// This test is only useful if the MediaInfo library is available
+		assumeTrue(LibMediaInfoParser.isValid());
+
+		final RendererConfiguration renderer = RendererConfiguration.getDefaultConf();
+		int[] sampleRates = {8000, 22050, 44100, 48000, 96000};
+		int[] channels = {1, 2, 6};
+		int[] bitDepths = {16, 24};
+		final List<File> corpus = new ArrayList<>();
+		int n = 0;
+		for (int sampleRate : sampleRates) {
+			for (int nbChannels : channels) {
+				for (int bits : bitDepths) {
+					corpus.add(createWav(folder.newFile("corpus" + n++ + ".wav"), sampleRate, nbChannels, bits, 1 + n % 4));
+				}
+			}
+		}
+
+		List<String> sequential = new ArrayList<>();
+		for (File file : corpus) {
+			sequential.add(parse(file, renderer));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				for (final File file : corpus) {
+					futures.add(executor.submit(new Callable<String>() {
+
+						@Override
+						public String call() {
+							return parse(file, renderer);
+						}
+					}));
+				}
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				assertEquals(sequential.get(i % corpus.size()), futures.get(i).get(60, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(0, LibMediaInfoParser.getPool().getActiveCount());
+		assertTrue(LibMediaInfoParser.getPool().getParseCount() >= corpus.size() * 5);
+	}
+
+	private static String parse(File file, RendererConfiguration renderer) {
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		InputFile inputFile = new InputFile();
+		inputFile.setFile(file);
+		LibMediaInfoParser.parse(media, inputFile, FormatType.AUDIO, renderer);
+		assertTrue(media.isMediaparsed());
+		return media.toString();
+	}
+
+	private static File createWav(File file, int sampleRate, int nbChannels, int bits, int seconds) throws IOException {
+		int blockAlign = nbChannels * bits / 8;
+		int dataSize = sampleRate * blockAlign * seconds;
+		ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+		header.put("RIFF".getBytes("US-ASCII")).putInt(36 + dataSize).put("WAVE".getBytes("US-ASCII"));
+		header.put("fmt ".getBytes("US-ASCII")).putInt(16).putShort((short) 1).putShort((short) nbChannels);
+		header.putInt(sampleRate).putInt(sampleRate * blockAlign).putShort((short) blockAlign).putShort((short) bits);
+		header.put("data".getBytes("US-ASCII")).putInt(dataSize);
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(header.array());
+			out.write(new byte[dataSize]);
+		}
+		return file;
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.dlna;
+
+import static org.junit.Assert.*;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.pms.dlna.SearchCriteria.Field;
+import net.pms.formats.FormatType;
+
+/**
+ * Tests {@link SearchCriteria} parsing and evaluates the generated SQL on an
+ * in-memory database with the same {@code SEARCHTERMS} layout as
+ * {@link DLNAMediaDatabase}.
+ */
+public class SearchCriteriaTest {
+
+	private static final int LIBRARY_FILES = 2000;
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE FILES (ID INT AUTO_INCREMENT, FILENAME VARCHAR2(1024) NOT NULL, TYPE INT)");
+			statement.execute("CREATE UNIQUE INDEX IDXFILEID on FILES (ID)");
+			statement.execute(
+				"CREATE TABLE SEARCHTERMS (TERM VARCHAR2(64) NOT NULL, FIELD INT NOT NULL, FILEID INT NOT NULL, " +
+				"constraint PKSEARCH primary key (FIELD, TERM, FILEID), " +
+				"constraint FKSEARCHFILE foreign key (FILEID) references FILES (ID) on delete cascade)"
+			);
+			statement.execute("CREATE INDEX IDXSEARCHFILEID on SEARCHTERMS (FILEID asc, FIELD asc, TERM asc)");
+		}
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Test
+	public void testTokenize() {
+		assertEquals(Arrays.asList("beyonce", "crazy", "in", "love"), new ArrayList<>(SearchCriteria.tokenize("Beyoncé - Crazy in Love")));
+		assertEquals(Arrays.asList("track", "01"), new ArrayList<>(SearchCriteria.tokenize("Track_01 (track)")));
+		assertTrue(SearchCriteria.tokenize(" - ").isEmpty());
+		assertTrue(SearchCriteria.tokenize(null).isEmpty());
+	}
+
+	@Test
+	public void testParse() throws ParseException {
+		assertTrue(SearchCriteria.parse("*").isMatchAll());
+		assertFalse(SearchCriteria.parse("dc:title contains \"love\"").isMatchAll());
+		SearchCriteria.parse(
+			"(upnp:class derivedfrom &quot;object.item.audioItem&quot; and @refID exists false) and " +
+			"(dc:title contains &quot;Bach&quot; or dc:creator contains &quot;Bach&quot;)"
+		);
+		SearchCriteria.parse("upnp:class = \"object.container.album.musicAlbum\"");
+		SearchCriteria.parse("dc:title = \"say \\\"hello\\\"\"");
+
+		for (String invalid : new String[] {
+			"dc:title",
+			"dc:title contains",
+			"dc:title contains \"unterminated",
+			"(dc:title contains \"a\"",
+			"dc:title contains \"a\" dc:title",
+			"dc:date > \"2010\"",
+			"dc:title < \"a\""
+		}) {
+			try {
+				SearchCriteria.parse(invalid);
+				fail("Parsed invalid criteria: " + invalid);
+			} catch (ParseException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		addFile("/music/Crazy in Love.mp3", FormatType.AUDIO, "Beyoncé", "Dangerously in Love", "R&B");
+		addFile("/music/Toccata and Fugue.flac", FormatType.AUDIO, "Johann Sebastian Bach", "Organ Works", "Classical");
+		addFile("/music/Love Me Do.mp3", FormatType.AUDIO, "The Beatles", "Please Please Me", "Rock");
+		addFile("/video/Love Actually.mkv", FormatType.VIDEO, null, null, null);
+		addFile("/pictures/Bach memorial.jpg", FormatType.IMAGE, null, null, null);
+
+		assertEquals(5, search("*").size());
+		assertEquals(
+			Arrays.asList("/music/Crazy in Love.mp3", "/music/Love Me Do.mp3", "/video/Love Actually.mkv"),
+			search("dc:title contains \"love\"")
+		);
+		assertEquals(Arrays.asList("/video/Love Actually.mkv"), search("dc:title contains \"lov act\""));
+		assertEquals(Arrays.asList("/music/Crazy in Love.mp3"), search("upnp:artist contains \"beyonce\""));
+		assertEquals(
+			Arrays.asList("/music/Crazy in Love.mp3", "/music/Love Me Do.mp3"),
+			search("upnp:class derivedfrom \"object.item.audioItem\" and dc:title contains \"love\"")
+		);
+		assertEquals(
+			Arrays.asList("/music/Toccata and Fugue.flac", "/pictures/Bach memorial.jpg"),
+			search("dc:title contains \"bach\" or dc:creator contains \"bach\"")
+		);
+		assertEquals(Arrays.asList("/music/Love Me Do.mp3"), search("upnp:album = \"please please me\""));
+		assertTrue(search("upnp:album = \"plea\"").isEmpty());
+		assertEquals(
+			Arrays.asList("/pictures/Bach memorial.jpg", "/video/Love Actually.mkv"),
+			search("upnp:artist exists false")
+		);
+		assertEquals(
+			Arrays.asList("/music/Crazy in Love.mp3", "/video/Love Actually.mkv"),
+			search("dc:title contains \"love\" and dc:title doesNotContain \"me\"")
+		);
+		assertTrue(search("upnp:class derivedfrom \"object.container\"").isEmpty());
+		assertEquals(Arrays.asList("/music/Toccata and Fugue.flac"), search("upnp:genre contains \"class\""));
+		assertTrue(search("dc:title contains \"100%\"").isEmpty());
+
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DELETE FROM FILES WHERE FILENAME = '/music/Love Me Do.mp3'");
+		}
+		assertEquals(
+			Arrays.asList("/music/Crazy in Love.mp3", "/video/Love Actually.mkv"),
+			search("dc:title contains \"love\"")
+		);
+	}
+
+	@Test
+	public void testPaging() throws Exception {
+		String[] words = {
+			"love", "night", "blue", "dance", "river", "summer", "heart", "light", "rain", "gold",
+			"fire", "dream", "city", "moon", "road", "home", "stone", "wild", "time", "sky"
+		};
+		connection.setAutoCommit(false);
+		for (int i = 0; i < LIBRARY_FILES; i++) {
+			String title = words[i % words.length] + " " + words[(i / 7) % words.length] + " " + i;
+			addFile(
+				"/library/artist" + (i % 500) + "/" + title + ".mp3",
+				FormatType.AUDIO,
+				"Artist " + (i % 500),
+				"Album " + (i % 2000),
+				words[i % 13]
+			);
+		}
+		connection.commit();
+
+		String[] criteria = {
+			"dc:title contains \"love\"",
+			"dc:title contains \"love nig\"",
+			"upnp:artist = \"artist 42\"",
+			"upnp:class derivedfrom \"object.item.audioItem\" and (dc:title contains \"riv\" or upnp:artist contains \"riv\")"
+		};
+		for (String criterion : criteria) {
+			SearchCriteria parsed = SearchCriteria.parse(criterion);
+			int matches = count(parsed);
+			assertTrue(criterion, matches > 0);
+			assertEquals(criterion, Math.min(matches, 50), search(parsed, 0, 50).size());
+			assertEquals(criterion, Math.max(0, Math.min(matches - 10, 20)), search(parsed, 10, 20).size());
+		}
+	}
+
+	private void addFile(String filename, FormatType type, String artist, String album, String genre) throws SQLException {
+		int id;
+		try (PreparedStatement statement = connection.prepareStatement(
+			"INSERT INTO FILES (FILENAME, TYPE) VALUES (?, ?)",
+			Statement.RETURN_GENERATED_KEYS
+		)) {
+			statement.setString(1, filename);
+			statement.setInt(2, type.getValue());
+			statement.executeUpdate();
+			try (ResultSet resultSet = statement.getGeneratedKeys()) {
+				assertTrue(resultSet.next());
+				id = resultSet.getInt(1);
+			}
+		}
+		String name = filename.substring(filename.lastIndexOf('/') + 1, filename.lastIndexOf('.'));
+		try (PreparedStatement statement = connection.prepareStatement(
+			"INSERT INTO SEARCHTERMS (TERM, FIELD, FILEID) VALUES (?, ?, ?)"
+		)) {
+			addTerms(statement, id, Field.TITLE, name);
+			addTerms(statement, id, Field.ARTIST, artist);
+			addTerms(statement, id, Field.ALBUM, album);
+			addTerms(statement, id, Field.GENRE, genre);
+			statement.executeBatch();
+		}
+	}
+
+	private static void addTerms(PreparedStatement statement, int id, Field field, String text) throws SQLException {
+		for (String term : SearchCriteria.tokenize(text)) {
+			statement.setString(1, term);
+			statement.setInt(2, field.getValue());
+			statement.setInt(3, id);
+			statement.addBatch();
+		}
+	}
+
+	private List<String> search(String criteria) throws Exception {
+		return search(SearchCriteria.parse(criteria), 0, 0);
+	}
+
+	private List<String> search(SearchCriteria criteria, int start, int count) throws SQLException {
+		ArrayList<Object> parameters = new ArrayList<>();
+		StringBuilder sql = new StringBuilder("SELECT F.FILENAME FROM FILES F WHERE ");
+		sql.append(criteria.toSql(connection, parameters)).append(" ORDER BY F.FILENAME");
+		if (count > 0) {
+			sql.append(" LIMIT ").append(count);
+		}
+		if (start > 0) {
+			sql.append(" OFFSET ").append(start);
+		}
+		ArrayList<String> result = new ArrayList<>();
+		try (PreparedStatement statement = prepare(sql.toString(), parameters)) {
+			try (ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					result.add(resultSet.getString(1));
+				}
+			}
+		}
+		return result;
+	}
+
+	private int count(SearchCriteria criteria) throws SQLException {
+		ArrayList<Object> parameters = new ArrayList<>();
+		String sql = "SELECT COUNT(*) FROM FILES F WHERE " + criteria.toSql(connection, parameters);
+		try (
+			PreparedStatement statement = prepare(sql, parameters);
+			ResultSet resultSet = statement.executeQuery()
+		) {
+			assertTrue(resultSet.next());
+			return resultSet.getInt(1);
+		}
+	}
+
+	private PreparedStatement prepare(String sql, List<Object> parameters) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql);
+		for (int i = 0; i < parameters.size(); i++) {
+			statement.setObject(i + 1, parameters.get(i));
+		}
+		return statement;
+	}
+}
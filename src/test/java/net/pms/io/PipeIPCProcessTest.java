@@ -0,0 +1,164 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import com.sun.jna.Platform;
+import net.pms.PMS;
+
+/**
+ * Relays data through real FIFOs, which means that these tests only run on
+ * Linux.
+ */
+public class PipeIPCProcessTest {
+
+	private static final int DATA_SIZE = 8 * 1024 * 1024;
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+	}
+
+	@Test
+	public void testDirectRelay() throws Exception {
+		assumeTrue(Platform.isLinux());
+		PipeIPCProcess process = relay(null);
+		assertEquals(DATA_SIZE, process.getBytesTransferred());
+		assertTrue(process.getThroughput() > 0);
+	}
+
+	@Test
+	public void testCopyingRelay() throws Exception {
+		assumeTrue(Platform.isLinux());
+		StreamModifier modifier = new StreamModifier();
+		modifier.setHeader(new byte[] {1, 2, 3, 4});
+		PipeIPCProcess process = relay(modifier);
+		assertEquals(DATA_SIZE, process.getBytesTransferred());
+	}
+
+	@Test
+	public void testTransfer() throws Exception {
+		assumeTrue(Platform.isLinux());
+		byte[] data = new byte[1024 * 1024];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		File file = File.createTempFile("relaytest", ".bin");
+		try {
+			try (OutputStream out = new FileOutputStream(file)) {
+				out.write(data);
+			}
+			PipeIPCProcess process = new PipeIPCProcess("transfertest_in", "transfertest_out", false, false);
+			ByteArrayOutputStream target = new ByteArrayOutputStream();
+			try (FileChannel source = new FileInputStream(file).getChannel()) {
+				assertTrue(process.transfer(source, Channels.newChannel(target)));
+			}
+			assertArrayEquals(data, target.toByteArray());
+			assertEquals(data.length, process.getBytesTransferred());
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static PipeIPCProcess relay(StreamModifier modifier) throws Exception {
+		long time = System.nanoTime();
+		final PipeIPCProcess process = new PipeIPCProcess("relaytest_in_" + time, "relaytest_out_" + time, false, false);
+		process.setModifier(modifier);
+		final byte[] header = modifier == null ? new byte[0] : modifier.getHeader();
+		final byte[] chunk = new byte[64 * 1024];
+		for (int i = 0; i < chunk.length; i++) {
+			chunk[i] = (byte) i;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			process.runInNewThread();
+			Future<Void> writer = executor.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws IOException {
+					try (OutputStream out = new FileOutputStream(process.getInputPipe())) {
+						for (int written = 0; written < DATA_SIZE; written += chunk.length) {
+							out.write(chunk);
+						}
+					}
+					return null;
+				}
+			});
+			Future<Long> reader = executor.submit(new Callable<Long>() {
+
+				@Override
+				public Long call() throws IOException {
+					long total = 0;
+					byte[] buffer = new byte[chunk.length];
+					try (InputStream in = new FileInputStream(process.getOutputPipe())) {
+						byte[] readHeader = new byte[header.length];
+						int n = 0;
+						while (n < header.length) {
+							n += in.read(readHeader, n, header.length - n);
+						}
+						assertArrayEquals(header, readHeader);
+						while ((n = in.read(buffer)) > -1) {
+							for (int i = 0; i < n; i++) {
+								if (buffer[i] != chunk[(int) ((total + i) % chunk.length)]) {
+									fail("Relayed data differs at position " + (total + i) + ": " + Arrays.toString(Arrays.copyOf(buffer, 8)));
+								}
+							}
+							total += n;
+						}
+					}
+					return total;
+				}
+			});
+			writer.get(60, TimeUnit.SECONDS);
+			assertEquals(Long.valueOf(DATA_SIZE), reader.get(60, TimeUnit.SECONDS));
+			process.join(10000);
+		} finally {
+			executor.shutdownNow();
+			process.stopProcess();
+		}
+		return process;
+	}
+}
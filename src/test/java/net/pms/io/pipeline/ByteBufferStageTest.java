@@ -0,0 +1,351 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.io.pipeline;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.util.DTSAudioOutputStream;
+import net.pms.util.H264AnnexBInputStream;
+import net.pms.util.IEC61937AudioOutputStream;
+import net.pms.util.PCMAudioOutputStream;
+
+/**
+ * Verifies that the {@link ByteBufferStage}s produce the same output as the
+ * stream implementations they replace.
+ */
+public class ByteBufferStageTest {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	@BeforeClass
+	public static void setUpClass() {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+	}
+
+	@Test
+	public void testPCMFraming() throws IOException {
+		byte[] input = new byte[8 * 1024 * 1024];
+		new Random(1).nextBytes(input);
+		ByteArrayOutputStream streamOut = new ByteArrayOutputStream(input.length * 2);
+		writeToStream(new PCMAudioOutputStream(streamOut, 6, 48000, 16), input);
+		byte[] expected = streamOut.toByteArray();
+
+		ByteArrayOutputStream stageOut = new ByteArrayOutputStream(input.length * 2);
+		writeToStage(new PCMFramingStage(new OutputStreamSink(stageOut), 6, 48000, 16), input);
+		byte[] actual = stageOut.toByteArray();
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testPCMFramingOddWrites() throws IOException {
+		byte[] input = new byte[10000];
+		new Random(2).nextBytes(input);
+		ByteArrayOutputStream evenOut = new ByteArrayOutputStream();
+		ByteBufferSink stage = new PCMFramingStage(new OutputStreamSink(evenOut), 2, 48000, 16);
+		stage.write(ByteBuffer.wrap(input));
+		stage.close();
+
+		ByteArrayOutputStream oddOut = new ByteArrayOutputStream();
+		stage = new PCMFramingStage(new OutputStreamSink(oddOut), 2, 48000, 16);
+		for (int i = 0; i < input.length; i += 333) {
+			stage.write(ByteBuffer.wrap(input, i, Math.min(333, input.length - i)));
+		}
+		stage.close();
+		assertArrayEquals(evenOut.toByteArray(), oddOut.toByteArray());
+	}
+
+	@Test
+	public void testDTSFraming() throws IOException {
+		// Frame size 1024: ((0 & 3) << 12) + (0x3f << 4) + (0xf0 >> 4) + 1
+		byte[] frame = new byte[1024];
+		Arrays.fill(frame, (byte) 0x55);
+		frame[0] = 127;
+		frame[1] = -2;
+		frame[2] = -128;
+		frame[3] = 1;
+		frame[5] = 0;
+		frame[6] = 0x3f;
+		frame[7] = (byte) 0xf0;
+		byte[] input = repeat(frame, 2000);
+		ByteArrayOutputStream streamOut = new ByteArrayOutputStream(input.length * 3);
+		writeToStream(new DTSAudioOutputStream(new PCMAudioOutputStream(streamOut, 2, 48000, 16)), input);
+		byte[] expected = streamOut.toByteArray();
+
+		ByteArrayOutputStream stageOut = new ByteArrayOutputStream(input.length * 3);
+		writeToStage(new DTSFramingStage(new PCMFramingStage(new OutputStreamSink(stageOut), 2, 48000, 16)), input);
+		byte[] actual = stageOut.toByteArray();
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testIEC61937AC3Framing() throws IOException {
+		byte[] frame = new byte[1536];
+		Arrays.fill(frame, (byte) 0x55);
+		frame[0] = 11;
+		frame[1] = 119;
+		byte[] input = repeat(frame, 2000);
+		ByteArrayOutputStream streamOut = new ByteArrayOutputStream(input.length * 5);
+		writeToStream(new IEC61937AudioOutputStream(new PCMAudioOutputStream(streamOut, 2, 48000, 16)), input);
+		byte[] expected = streamOut.toByteArray();
+
+		ByteArrayOutputStream stageOut = new ByteArrayOutputStream(input.length * 5);
+		writeToStage(new IEC61937FramingStage(new PCMFramingStage(new OutputStreamSink(stageOut), 2, 48000, 16)), input);
+		byte[] actual = stageOut.toByteArray();
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testH264AnnexB() throws IOException {
+		byte[] header = new byte[] {0, 0, 0, 1, 0x67, 0x42, 0, 0x1e, 0, 0, 0, 1, 0x68, (byte) 0xce, 0x38, (byte) 0x80};
+		Random random = new Random(3);
+		ByteArrayOutputStream inputStream = new ByteArrayOutputStream();
+		for (int i = 0; i < 5000; i++) {
+			byte[] nal = new byte[100 + random.nextInt(4000)];
+			random.nextBytes(nal);
+			if (i % 30 == 0) {
+				// Triggers header insertion
+				nal[0] = 0x25;
+				nal[1] = (byte) 0x88;
+			} else {
+				nal[0] = 0x41;
+				nal[1] = 0;
+			}
+			inputStream.write(nal.length >>> 24);
+			inputStream.write(nal.length >>> 16);
+			inputStream.write(nal.length >>> 8);
+			inputStream.write(nal.length);
+			inputStream.write(nal);
+		}
+		byte[] input = inputStream.toByteArray();
+		ByteArrayOutputStream streamOut = new ByteArrayOutputStream(input.length * 2);
+		try (InputStream in = new H264AnnexBInputStream(new ByteArrayInputStream(input), header)) {
+			byte[] b = new byte[512 * 1024];
+			int n;
+			while ((n = in.read(b)) > -1) {
+				streamOut.write(b, 0, n);
+			}
+		}
+		byte[] expected = streamOut.toByteArray();
+
+		ByteArrayOutputStream stageOut = new ByteArrayOutputStream(input.length * 2);
+		writeToStage(new H264AnnexBStage(new OutputStreamSink(stageOut), header), input);
+		byte[] actual = stageOut.toByteArray();
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testAviDemux() throws IOException {
+		ByteArrayOutputStream expectedVideo = new ByteArrayOutputStream();
+		ByteArrayOutputStream expectedAudio = new ByteArrayOutputStream();
+		byte[] input = createAvi(new Random(4), expectedVideo, expectedAudio);
+
+		ByteArrayOutputStream video = new ByteArrayOutputStream();
+		ByteArrayOutputStream audio = new ByteArrayOutputStream();
+		int[] format = demuxAvi(input, -1, video, audio);
+		assertEquals(2, format[0]);
+		assertEquals(16, format[1]);
+		assertArrayEquals(expectedVideo.toByteArray(), video.toByteArray());
+		assertArrayEquals(expectedAudio.toByteArray(), audio.toByteArray());
+
+		// A missing audio stream falls back to the first
+		video.reset();
+		audio.reset();
+		format = demuxAvi(input, 3, video, audio);
+		assertEquals(2, format[0]);
+		assertArrayEquals(expectedVideo.toByteArray(), video.toByteArray());
+		assertArrayEquals(expectedAudio.toByteArray(), audio.toByteArray());
+	}
+
+	@Test
+	public void testAviDemuxSelectedAudio() throws IOException {
+		ByteArrayOutputStream expectedVideo = new ByteArrayOutputStream();
+		ByteArrayOutputStream expectedFirstAudio = new ByteArrayOutputStream();
+		ByteArrayOutputStream expectedSecondAudio = new ByteArrayOutputStream();
+		byte[] input = createAvi(new Random(5), expectedVideo, expectedFirstAudio, expectedSecondAudio);
+
+		ByteArrayOutputStream video = new ByteArrayOutputStream();
+		ByteArrayOutputStream audio = new ByteArrayOutputStream();
+		int[] format = demuxAvi(input, 1, video, audio);
+		assertEquals(6, format[0]);
+		assertEquals(24, format[1]);
+		assertArrayEquals(expectedVideo.toByteArray(), video.toByteArray());
+		assertArrayEquals(expectedSecondAudio.toByteArray(), audio.toByteArray());
+
+		video.reset();
+		audio.reset();
+		format = demuxAvi(input, 0, video, audio);
+		assertEquals(2, format[0]);
+		assertEquals(16, format[1]);
+		assertArrayEquals(expectedVideo.toByteArray(), video.toByteArray());
+		assertArrayEquals(expectedFirstAudio.toByteArray(), audio.toByteArray());
+	}
+
+	/**
+	 * Creates an AVI stream with one video stream and the specified number of
+	 * audio streams. The first audio stream has 2 channels of 16 bits, the
+	 * second has 6 channels of 24 bits.
+	 */
+	private static byte[] createAvi(
+		Random random,
+		ByteArrayOutputStream expectedVideo,
+		ByteArrayOutputStream... expectedAudio
+	) throws IOException {
+		ByteArrayOutputStream hdrl = new ByteArrayOutputStream();
+		writeFourCC(hdrl, "hdrl");
+		writeChunk(hdrl, "avih", new byte[56]);
+		ByteArrayOutputStream strl = new ByteArrayOutputStream();
+		writeFourCC(strl, "strl");
+		byte[] strh = new byte[56];
+		System.arraycopy("vids".getBytes("US-ASCII"), 0, strh, 0, 4);
+		writeChunk(strl, "strh", strh);
+		writeChunk(strl, "strf", new byte[40]);
+		writeChunk(hdrl, "LIST", strl.toByteArray());
+		for (int stream = 0; stream < expectedAudio.length; stream++) {
+			strl = new ByteArrayOutputStream();
+			writeFourCC(strl, "strl");
+			strh = new byte[56];
+			System.arraycopy("auds".getBytes("US-ASCII"), 0, strh, 0, 4);
+			writeChunk(strl, "strh", strh);
+			byte[] strf = new byte[18];
+			strf[2] = (byte) (stream == 0 ? 2 : 6); // Channels
+			strf[14] = (byte) (stream == 0 ? 16 : 24); // Bits per sample
+			writeChunk(strl, "strf", strf);
+			writeChunk(hdrl, "LIST", strl.toByteArray());
+		}
+
+		ByteArrayOutputStream movi = new ByteArrayOutputStream();
+		writeFourCC(movi, "movi");
+		for (int i = 0; i < 500; i++) {
+			byte[] data = new byte[1 + random.nextInt(20000)];
+			random.nextBytes(data);
+			writeChunk(movi, "00dc", data);
+			expectedVideo.write(data);
+			for (int stream = 0; stream < expectedAudio.length; stream++) {
+				data = new byte[1 + random.nextInt(3000)];
+				random.nextBytes(data);
+				writeChunk(movi, "0" + (stream + 1) + "wb", data);
+				expectedAudio[stream].write(data);
+			}
+			if (i % 50 == 0) {
+				writeChunk(movi, "JUNK", new byte[7]);
+			}
+		}
+
+		ByteArrayOutputStream riff = new ByteArrayOutputStream();
+		writeFourCC(riff, "AVI ");
+		writeChunk(riff, "LIST", hdrl.toByteArray());
+		writeChunk(riff, "LIST", movi.toByteArray());
+		writeChunk(riff, "idx1", new byte[160]);
+		ByteArrayOutputStream avi = new ByteArrayOutputStream();
+		writeChunk(avi, "RIFF", riff.toByteArray());
+		return avi.toByteArray();
+	}
+
+	/**
+	 * Demultiplexes an AVI stream and returns the number of channels and bits
+	 * per sample of the audio stream.
+	 */
+	private static int[] demuxAvi(
+		byte[] input,
+		int audioTrack,
+		ByteArrayOutputStream video,
+		ByteArrayOutputStream audio
+	) throws IOException {
+		final int[] format = new int[2];
+		AviDemuxStage demuxer = new AviDemuxStage(new OutputStreamSink(video), new OutputStreamSink(audio), audioTrack) {
+
+			@Override
+			protected ByteBufferSink createAudioSink(ByteBufferSink audioSink, int nbChannels, int bitsPerSample) {
+				format[0] = nbChannels;
+				format[1] = bitsPerSample;
+				return audioSink;
+			}
+		};
+		// Use an odd write size so that headers are split between writes
+		for (int i = 0; i < input.length; i += 1001) {
+			demuxer.write(ByteBuffer.wrap(input, i, Math.min(1001, input.length - i)));
+		}
+		demuxer.close();
+		return format;
+	}
+
+	private static void writeToStream(OutputStream out, byte[] input) throws IOException {
+		try {
+			for (int i = 0; i < input.length; i += CHUNK_SIZE) {
+				// The streams modify the written array
+				out.write(Arrays.copyOfRange(input, i, Math.min(i + CHUNK_SIZE, input.length)));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeToStage(ByteBufferSink sink, byte[] input) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+		try {
+			for (int i = 0; i < input.length; i += CHUNK_SIZE) {
+				buffer.clear();
+				buffer.put(input, i, Math.min(CHUNK_SIZE, input.length - i));
+				buffer.flip();
+				sink.write(buffer);
+			}
+		} finally {
+			sink.close();
+		}
+	}
+
+	private static byte[] repeat(byte[] frame, int count) {
+		byte[] result = new byte[frame.length * count];
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(frame, 0, result, i * frame.length, frame.length);
+		}
+		return result;
+	}
+
+	private static void writeFourCC(OutputStream out, String fourCC) throws IOException {
+		out.write(fourCC.getBytes("US-ASCII"));
+	}
+
+	private static void writeChunk(OutputStream out, String fourCC, byte[] data) throws IOException {
+		writeFourCC(out, fourCC);
+		out.write(data.length);
+		out.write(data.length >>> 8);
+		out.write(data.length >>> 16);
+		out.write(data.length >>> 24);
+		out.write(data);
+		if (data.length % 2 != 0) {
+			out.write(0);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.service;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+
+public class LibraryIndexerTest {
+
+	private static final long DELAY = 200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+	}
+
+	@Test
+	public void testFileBeingWrittenIsProcessedOnce() throws Exception {
+		TestIndexer indexer = new TestIndexer();
+		try {
+			File file = folder.newFile("video.mkv");
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				for (int i = 0; i < 5; i++) {
+					out.write(new byte[1024]);
+					out.flush();
+					indexer.enqueue(file.toPath(), i == 0, false);
+					Thread.sleep(DELAY / 2);
+				}
+			}
+			indexer.enqueue(file.toPath(), false, false);
+			waitForIdle(indexer);
+
+			assertEquals(Collections.singletonList(file.toPath()), indexer.getProcessed());
+			assertTrue(indexer.created);
+			assertTrue(indexer.lastState.exists);
+			assertEquals(5 * 1024, indexer.lastState.size);
+		} finally {
+			indexer.stop();
+		}
+	}
+
+	@Test
+	public void testRemovedFile() throws Exception {
+		TestIndexer indexer = new TestIndexer();
+		try {
+			File file = folder.newFile("song.mp3");
+			indexer.enqueue(file.toPath(), false, false);
+			assertTrue(file.delete());
+			waitForIdle(indexer);
+
+			assertEquals(Collections.singletonList(file.toPath()), indexer.getProcessed());
+			assertFalse(indexer.lastState.exists);
+		} finally {
+			indexer.stop();
+		}
+	}
+
+	@Test
+	public void testIsWatched() throws IOException {
+		LibraryIndexer indexer = new LibraryIndexer(false, DELAY);
+		try {
+			File root = folder.newFolder("library");
+			File child = new File(root, "child");
+			assertTrue(child.mkdir());
+			File other = folder.newFolder("other");
+
+			assertFalse(indexer.isWatched(Arrays.asList(child)));
+			indexer.watch(root.toPath());
+			assertTrue(indexer.isWatched(Arrays.asList(root, child)));
+			assertFalse(indexer.isWatched(Arrays.asList(child, other)));
+			assertFalse(indexer.isWatched(new ArrayList<File>()));
+
+			indexer.stop();
+			assertFalse(indexer.isWatched(Arrays.asList(child)));
+		} finally {
+			indexer.stop();
+		}
+	}
+
+	private static void waitForIdle(LibraryIndexer indexer) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 20 * DELAY;
+		while (indexer.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(DELAY / 4);
+		}
+		assertEquals(0, indexer.getPendingCount());
+	}
+
+	private static class TestIndexer extends LibraryIndexer {
+		private final List<Path> processed = new ArrayList<>();
+		volatile boolean created;
+		volatile FileState lastState;
+
+		public TestIndexer() {
+			super(false, DELAY);
+		}
+
+		@Override
+		protected void process(Path path, boolean created, boolean overflow, FileState state) {
+			synchronized (processed) {
+				processed.add(path);
+			}
+			this.created = created;
+			lastState = state;
+		}
+
+		List<Path> getProcessed() {
+			synchronized (processed) {
+				return new ArrayList<>(processed);
+			}
+		}
+	}
+}
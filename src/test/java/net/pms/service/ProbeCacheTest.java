@@ -0,0 +1,144 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.service;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import com.sun.jna.Platform;
+import net.pms.io.ListProcessWrapperResult;
+
+public class ProbeCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+	}
+
+	@Test
+	public void testCachedOutputIsPersisted() throws Exception {
+		Path file = folder.getRoot().toPath().resolve(ProbeCache.FILENAME);
+		ProbeCache cache = new ProbeCache(file, ProbeCache.DEFAULT_MAX_AGE);
+		ListProcessWrapperResult first = cache.run(30000, 1000, getJava(), "-version");
+		assertNull(first.getError());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getSize());
+
+		ListProcessWrapperResult second = cache.run(30000, 1000, getJava(), "-version");
+		assertEquals(1, cache.getHits());
+		assertEquals(first.getExitCode(), second.getExitCode());
+		assertEquals(first.getOutput(), second.getOutput());
+		assertFalse(cache.hasStaleProbes());
+		cache.stop();
+		assertTrue(Files.exists(file));
+
+		cache = new ProbeCache(file, ProbeCache.DEFAULT_MAX_AGE);
+		assertEquals(1, cache.getSize());
+		ListProcessWrapperResult loaded = cache.run(30000, 1000, getJava(), "-version");
+		assertEquals(1, cache.getHits());
+		assertEquals(first.getOutput(), loaded.getOutput());
+
+		// Different arguments are probed separately
+		cache.run(30000, 1000, getJava(), "-help");
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getSize());
+		cache.stop();
+	}
+
+	@Test
+	public void testUnusedOutputIsDropped() throws Exception {
+		Path file = folder.getRoot().toPath().resolve(ProbeCache.FILENAME);
+		ProbeCache cache = new ProbeCache(file, ProbeCache.DEFAULT_MAX_AGE);
+		cache.run(30000, 1000, getJava(), "-version");
+		cache.run(30000, 1000, getJava(), "-help");
+		assertEquals(2, cache.getSize());
+		cache.stop();
+
+		cache = new ProbeCache(file, ProbeCache.DEFAULT_MAX_AGE);
+		cache.run(30000, 1000, getJava(), "-version");
+		assertEquals(1, cache.getHits());
+		cache.stop();
+		assertEquals(1, cache.getSize());
+
+		cache = new ProbeCache(file, ProbeCache.DEFAULT_MAX_AGE);
+		assertEquals(1, cache.getSize());
+		cache.stop();
+	}
+
+	@Test
+	public void testStaleOutput() throws Exception {
+		ProbeCache cache = new ProbeCache(null, -1);
+		cache.run(30000, 1000, getJava(), "-version");
+		assertFalse(cache.hasStaleProbes());
+		cache.run(30000, 1000, getJava(), "-version");
+		assertEquals(1, cache.getHits());
+		assertTrue(cache.hasStaleProbes());
+
+		assertTrue(cache.reprobe().isEmpty());
+		assertFalse(cache.hasStaleProbes());
+		assertEquals(1, cache.getSize());
+	}
+
+	@Test
+	public void testMissingExecutable() throws Exception {
+		ProbeCache cache = new ProbeCache(null, ProbeCache.DEFAULT_MAX_AGE);
+		String missing = new File(folder.getRoot(), "missing").getAbsolutePath();
+		assertNotNull(cache.run(30000, 1000, missing, "-version").getError());
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testChecksum() throws IOException {
+		File file = folder.newFile("executable");
+		byte[] bytes = new byte[3 * 1024 * 1024];
+		Files.write(file.toPath(), bytes);
+		long checksum = ProbeCache.calculateChecksum(file.toPath(), bytes.length);
+
+		// Changes in the middle aren't sampled
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.seek(bytes.length / 2);
+			randomAccessFile.write(1);
+			assertEquals(checksum, ProbeCache.calculateChecksum(file.toPath(), bytes.length));
+			randomAccessFile.seek(bytes.length - 1);
+			randomAccessFile.write(1);
+			assertNotEquals(checksum, ProbeCache.calculateChecksum(file.toPath(), bytes.length));
+		}
+	}
+
+	private static String getJava() {
+		return Paths.get(System.getProperty("java.home"), "bin", Platform.isWindows() ? "java.exe" : "java").toString();
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.service;
+
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.io.OutputParams;
+import net.pms.service.TranscodeScheduler.TranscodeSlot;
+
+public class TranscodeSchedulerTest {
+
+	@BeforeClass
+	public static void setUpClass() {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+	}
+
+	@Test
+	public void testAdoptPreRoll() {
+		TranscodeScheduler scheduler = new TestScheduler(4);
+		OutputParams params = new OutputParams(null);
+		params.preRollLimit = 1048576L;
+		params.transcodeSlot = scheduler.acquire("pre-roll", TranscodePriority.BACKGROUND, 4);
+		assertEquals(1, scheduler.getBackgroundCount());
+		assertEquals(0, scheduler.getPlaybackCount());
+
+		TranscodeScheduler.adoptPreRoll(params);
+		assertEquals(0, params.preRollLimit);
+		assertEquals(TranscodePriority.PLAYBACK, params.transcodeSlot.getPriority());
+		assertEquals(0, scheduler.getBackgroundCount());
+		assertEquals(1, scheduler.getPlaybackCount());
+
+		// Adopting again is harmless
+		TranscodeScheduler.adoptPreRoll(params);
+		assertEquals(1, scheduler.getPlaybackCount());
+
+		params.transcodeSlot.release();
+		assertEquals(0, scheduler.getPlaybackCount());
+	}
+
+	@Test
+	public void testAdmission() {
+		TranscodeScheduler scheduler = new TestScheduler(4);
+		TranscodeSlot first = scheduler.acquire("first", TranscodePriority.PLAYBACK, 4);
+		assertEquals(4, first.getThreads());
+		assertFalse(first.isDegraded());
+		TranscodeSlot second = scheduler.acquire("second", TranscodePriority.PLAYBACK, 4);
+		assertEquals(2, second.getThreads());
+		assertFalse(second.isDegraded());
+		assertFalse(scheduler.hasBackgroundCapacity());
+		assertNull(scheduler.tryAcquire("background", TranscodePriority.BACKGROUND, 1));
+
+		first.release();
+		first.release();
+		assertEquals(1, scheduler.getPlaybackCount());
+		assertTrue(scheduler.hasBackgroundCapacity());
+		second.release();
+		assertEquals(0, scheduler.getPlaybackCount());
+	}
+
+	private static class TestScheduler extends TranscodeScheduler {
+
+		private final int capacity;
+
+		public TestScheduler(int capacity) {
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected int getCapacity() {
+			return capacity;
+		}
+	}
+}
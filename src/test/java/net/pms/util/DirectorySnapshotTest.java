@@ -0,0 +1,119 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+import net.pms.formats.FormatType;
+
+public class DirectorySnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+	}
+
+	@Test
+	public void testEntryAttributes() throws IOException {
+		File directory = folder.newFolder();
+		File video = new File(directory, "video.mkv");
+		try (FileOutputStream out = new FileOutputStream(video)) {
+			out.write(new byte[10]);
+		}
+		assertTrue(video.setLastModified(1000000000000L));
+		assertTrue(new File(directory, "sub").mkdir());
+		assertTrue(new File(directory, ".hidden").createNewFile());
+
+		DirectorySnapshot snapshot = DirectorySnapshot.create(directory);
+		assertNotNull(snapshot);
+		assertEquals(3, snapshot.getEntries().size());
+		for (DirectorySnapshot.Entry entry : snapshot.getEntries()) {
+			switch (entry.getName()) {
+				case "video.mkv":
+					assertTrue(entry.isFile());
+					assertFalse(entry.isDirectory());
+					assertEquals(10, entry.getSize());
+					assertEquals(1000000000000L, entry.getLastModified());
+					assertEquals(FormatType.VIDEO, entry.getFormatType());
+					break;
+				case "sub":
+					assertFalse(entry.isFile());
+					assertTrue(entry.isDirectory());
+					assertNull(entry.getFormatType());
+					break;
+				case ".hidden":
+					assertTrue(entry.isFile());
+					assertEquals(new File(directory, ".hidden").isHidden(), entry.isHidden());
+					break;
+				default:
+					fail("Unexpected entry " + entry);
+			}
+		}
+		assertNull(DirectorySnapshot.create(new File(directory, "missing")));
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		File directory = folder.newFolder();
+		assertTrue(new File(directory, "a.mp3").createNewFile());
+		long modified = (System.currentTimeMillis() - 60000) / 1000 * 1000;
+		assertTrue(directory.setLastModified(modified));
+
+		DirectorySnapshot first = DirectorySnapshot.get(directory);
+		assertNotNull(first);
+		assertSame(first, DirectorySnapshot.get(directory));
+
+		// A changed directory is listed again
+		assertTrue(new File(directory, "b.mp3").createNewFile());
+		assertTrue(directory.setLastModified(modified - 10000));
+		DirectorySnapshot second = DirectorySnapshot.get(directory);
+		assertNotSame(first, second);
+		assertEquals(2, second.getEntries().size());
+
+		DirectorySnapshot.invalidate(directory);
+		assertNotSame(second, DirectorySnapshot.get(directory));
+	}
+
+	@Test
+	public void testRecentlyModifiedDirectoryIsNotReused() throws IOException {
+		File directory = folder.newFolder();
+		assertTrue(directory.setLastModified(System.currentTimeMillis()));
+		DirectorySnapshot first = DirectorySnapshot.get(directory);
+		assertNotNull(first);
+		assertNotSame(first, DirectorySnapshot.get(directory));
+	}
+}
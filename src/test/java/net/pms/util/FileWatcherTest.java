@@ -0,0 +1,138 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+
+public class FileWatcherTest {
+
+	private static final String CREATE = ENTRY_CREATE.name();
+	private static final String MODIFY = ENTRY_MODIFY.name();
+	private static final String DELETE = ENTRY_DELETE.name();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+	}
+
+	@Test
+	public void testCoalesce() {
+		assertEquals(CREATE, FileWatcher.coalesce(CREATE, MODIFY));
+		assertNull(FileWatcher.coalesce(CREATE, DELETE));
+		assertEquals(MODIFY, FileWatcher.coalesce(DELETE, CREATE));
+		assertEquals(DELETE, FileWatcher.coalesce(MODIFY, DELETE));
+		assertEquals(MODIFY, FileWatcher.coalesce(MODIFY, MODIFY));
+	}
+
+	@Test
+	public void testRecursiveWatchDispatchesBatches() throws Exception {
+		File root = folder.newFolder("root");
+		File existing = new File(root, "existing");
+		assertTrue(existing.mkdir());
+
+		RecordingListener listener = new RecordingListener();
+		FileWatcher.Watch watch = new FileWatcher.Watch(new File(root, "**").getPath(), listener);
+		int keys = FileWatcher.getRegisteredKeyCount();
+		FileWatcher.add(watch);
+		try {
+			assertEquals(keys + 2, FileWatcher.getRegisteredKeyCount());
+
+			File file = new File(existing, "file.mkv");
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				for (int i = 0; i < 10; i++) {
+					out.write(new byte[1024]);
+					out.flush();
+				}
+			}
+			File created = new File(root, "created");
+			assertTrue(created.mkdir());
+
+			List<FileWatcher.Event> events = listener.await(2);
+			assertTrue(listener.singleEvents == 0);
+			assertEquals(1, count(events, file, CREATE));
+			assertEquals(0, count(events, file, MODIFY));
+			assertEquals(1, count(events, created, CREATE));
+			assertTrue(FileWatcher.getMaxEventLag() >= FileWatcher.QUIET_PERIOD);
+
+			// New directories are watched too
+			assertEquals(keys + 3, FileWatcher.getRegisteredKeyCount());
+			File nested = new File(created, "nested.mp3");
+			assertTrue(nested.createNewFile());
+			events = listener.await(3);
+			assertEquals(1, count(events, nested, CREATE));
+		} finally {
+			assertTrue(FileWatcher.remove(watch));
+		}
+		assertEquals(keys, FileWatcher.getRegisteredKeyCount());
+	}
+
+	private static int count(List<FileWatcher.Event> events, File file, String kind) {
+		int result = 0;
+		for (FileWatcher.Event event : events) {
+			if (event.getFilename().equals(file.getPath()) && event.getKind().equals(kind)) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	private static class RecordingListener implements FileWatcher.BatchListener {
+		private final List<FileWatcher.Event> events = new ArrayList<>();
+		volatile int singleEvents;
+
+		@Override
+		public void notify(String filename, String event, FileWatcher.Watch watch, boolean isDir) {
+			singleEvents++;
+		}
+
+		@Override
+		public synchronized void notify(List<FileWatcher.Event> batch, FileWatcher.Watch watch) {
+			events.addAll(batch);
+			notifyAll();
+		}
+
+		public synchronized List<FileWatcher.Event> await(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 10 * FileWatcher.MAX_DELAY;
+			while (events.size() < count && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			// Allow late events to arrive
+			wait(FileWatcher.MAX_DELAY);
+			return new ArrayList<>(events);
+		}
+	}
+}
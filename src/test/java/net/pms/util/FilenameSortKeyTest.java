@@ -0,0 +1,210 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import static org.junit.Assert.*;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+
+/**
+ * Tests that sorting with {@link FilenameSortKey} gives the same order as the
+ * comparators it replaces, on generated anime and TV episode filenames.
+ */
+public class FilenameSortKeyTest {
+
+	private static final String[] GROUPS = {"HorribleSubs", "Coalgirls", "FFF", "Commie", "gg"};
+	private static final String[] ANIME = {"Shingeki no Kyojin", "Mushishi", "K-On!!", "Steins;Gate", "Ano Hana"};
+	private static final String[] SHOWS = {"The Wire", "A Touch of Frost", "Breaking Bad", "Über Uns", "the.office.us"};
+	private static final String[] SUFFIXES = {"720p.HDTV.x264", "1080p", "WEB-DL.AAC2.0", "BluRay", ""};
+
+	private static Collator collator;
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+		collator = Collator.getInstance();
+		collator.setStrength(Collator.PRIMARY);
+	}
+
+	@After
+	public void tearDown() {
+		PMS.getConfiguration().setPrettifyFilenames(false);
+		PMS.getConfiguration().setIgnoreTheWordAandThe(false);
+		FilenameSortKey.clearCache();
+	}
+
+	@Test
+	public void testOrderMatchesComparators() {
+		List<String> names = generateNames(200, 1);
+		names.add("Episode 0");
+		names.add("Episode 00");
+		names.add("Episode 007");
+		names.add("Episode 7");
+		names.add("Episode 7a");
+		names.add("Episode A");
+		names.add("Episode -1");
+		names.add("12 Monkeys");
+		names.add("");
+		for (boolean prettify : new boolean[] {false, true}) {
+			for (boolean ignoreArticles : new boolean[] {false, true}) {
+				PMS.getConfiguration().setPrettifyFilenames(prettify);
+				PMS.getConfiguration().setIgnoreTheWordAandThe(ignoreArticles);
+				for (int method : new int[] {UMSUtils.SORT_LOC_SENS, UMSUtils.SORT_LOC_NAT, UMSUtils.SORT_INS_ASCII}) {
+					for (String name1 : names) {
+						FilenameSortKey key1 = FilenameSortKey.get(name1);
+						for (String name2 : names) {
+							assertEquals(
+								"Method " + method + " comparing \"" + name1 + "\" to \"" + name2 + "\"",
+								Integer.signum(getLegacyComparator(method).compare(name1, name2)),
+								Integer.signum(getComparator(method).compare(key1, FilenameSortKey.get(name2)))
+							);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCacheFollowsSettings() {
+		PMS.getConfiguration().setPrettifyFilenames(false);
+		assertEquals("[gg] Mushishi - 01.mkv", FilenameSortKey.get("[gg] Mushishi - 01.mkv").getSortName());
+		PMS.getConfiguration().setPrettifyFilenames(true);
+		assertEquals("Mushishi - 01 mkv", FilenameSortKey.get("[gg] Mushishi - 01.mkv").getSortName());
+	}
+
+	@Test
+	public void testCachedKeys() {
+		PMS.getConfiguration().setPrettifyFilenames(true);
+		PMS.getConfiguration().setIgnoreTheWordAandThe(true);
+		List<String> names = generateNames(1000, 2);
+		for (int method : new int[] {UMSUtils.SORT_LOC_SENS, UMSUtils.SORT_LOC_NAT}) {
+			FilenameSortKey.clearCache();
+			List<String> legacy = sortLegacy(names, method);
+			assertEquals(legacy, sortKeys(names, method));
+			// The second sort uses the cached keys
+			assertEquals(legacy, sortKeys(names, method));
+		}
+	}
+
+	private static List<String> sortLegacy(List<String> names, int method) {
+		List<String> result = new ArrayList<>(names);
+		Collections.sort(result, getLegacyComparator(method));
+		return result;
+	}
+
+	private static List<String> sortKeys(List<String> names, int method) {
+		Map<FilenameSortKey, String> keyNames = new IdentityHashMap<>(names.size());
+		List<FilenameSortKey> keys = new ArrayList<>(names.size());
+		for (String name : names) {
+			FilenameSortKey key = FilenameSortKey.get(name);
+			keyNames.put(key, name);
+			keys.add(key);
+		}
+		Collections.sort(keys, getComparator(method));
+		List<String> result = new ArrayList<>(keys.size());
+		for (FilenameSortKey key : keys) {
+			result.add(keyNames.get(key));
+		}
+		return result;
+	}
+
+	private static Comparator<FilenameSortKey> getComparator(int method) {
+		switch (method) {
+			case UMSUtils.SORT_LOC_NAT:
+				return FilenameSortKey.NATURAL_COMPARATOR;
+			case UMSUtils.SORT_INS_ASCII:
+				return FilenameSortKey.IGNORE_CASE_COMPARATOR;
+			default:
+				return FilenameSortKey.LOCALE_SENSITIVE_COMPARATOR;
+		}
+	}
+
+	/**
+	 * @return A comparator that renames the filenames for every comparison,
+	 *         like {@link UMSUtils} did before {@link FilenameSortKey}.
+	 */
+	private static Comparator<String> getLegacyComparator(final int method) {
+		return new Comparator<String>() {
+			@Override
+			public int compare(String name1, String name2) {
+				String sortName1 = FileUtil.renameForSorting(name1);
+				String sortName2 = FileUtil.renameForSorting(name2);
+				switch (method) {
+					case UMSUtils.SORT_LOC_NAT:
+						return NaturalComparator.compareNatural(collator, sortName1, sortName2);
+					case UMSUtils.SORT_INS_ASCII:
+						return sortName1.compareToIgnoreCase(sortName2);
+					default:
+						return collator.compare(sortName1, sortName2);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Generates distinct filenames in the styles used by anime fansub groups
+	 * and TV releases, in random order.
+	 */
+	private static List<String> generateNames(int count, long seed) {
+		Random random = new Random(seed);
+		List<String> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String suffix = SUFFIXES[random.nextInt(SUFFIXES.length)];
+			if (random.nextBoolean()) {
+				result.add(String.format(
+					"[%s] %s - %02d%s [%08X].mkv",
+					GROUPS[random.nextInt(GROUPS.length)],
+					ANIME[random.nextInt(ANIME.length)],
+					random.nextInt(30),
+					suffix.isEmpty() ? "" : " (" + suffix + ")",
+					i
+				));
+			} else {
+				result.add(String.format(
+					"%s.S%02dE%d%s.%d.mp4",
+					SHOWS[random.nextInt(SHOWS.length)],
+					random.nextInt(10),
+					random.nextInt(25),
+					suffix.isEmpty() ? "" : "." + suffix,
+					i
+				));
+			}
+		}
+		return result;
+	}
+}
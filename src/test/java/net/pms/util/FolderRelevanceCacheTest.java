@@ -0,0 +1,141 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+public class FolderRelevanceCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+		PMS.setTestConfiguration();
+	}
+
+	@After
+	public void tearDown() {
+		FolderRelevanceCache.clearCache();
+	}
+
+	@Test
+	public void testRelevance() throws IOException {
+		File root = folder.newFolder("root");
+		File media = createDirectory(root, "a", "b", "c");
+		File empty = createDirectory(root, "d", "e");
+		assertTrue(new File(media, "song.mp3").createNewFile());
+		assertTrue(new File(empty, "notes.txt").createNewFile());
+		age(root);
+
+		PmsConfiguration configuration = PMS.getConfiguration();
+		assertTrue(FolderRelevanceCache.isRelevant(root, configuration));
+		assertTrue(FolderRelevanceCache.isRelevant(new File(root, "a"), configuration));
+		assertFalse(FolderRelevanceCache.isRelevant(new File(root, "d"), configuration));
+		assertFalse(FolderRelevanceCache.isRelevant(empty, configuration));
+	}
+
+	@Test
+	public void testCachedResultsAreChecked() throws IOException {
+		File root = folder.newFolder("root");
+		File deep = createDirectory(root, "a", "b", "c");
+		age(root);
+
+		PmsConfiguration configuration = PMS.getConfiguration();
+		assertFalse(FolderRelevanceCache.isRelevant(root, configuration));
+
+		// Only the modification time of the deepest directory changes
+		File song = new File(deep, "song.mp3");
+		assertTrue(song.createNewFile());
+		assertTrue(FolderRelevanceCache.isRelevant(root, configuration));
+
+		assertTrue(song.delete());
+		assertFalse(FolderRelevanceCache.isRelevant(root, configuration));
+	}
+
+	@Test
+	public void testUpdateBubblesUp() throws IOException {
+		File root = folder.newFolder("root");
+		File deep = createDirectory(root, "a", "b", "c");
+		File other = createDirectory(root, "d");
+		age(root);
+
+		PmsConfiguration configuration = PMS.getConfiguration();
+		assertFalse(FolderRelevanceCache.isRelevant(root, configuration));
+
+		File song = new File(deep, "song.mp3");
+		assertTrue(song.createNewFile());
+		List<File> changed = FolderRelevanceCache.update(song, true, false, configuration);
+		assertEquals(4, changed.size());
+		assertTrue(changed.contains(root.getAbsoluteFile()));
+		assertTrue(changed.contains(deep.getAbsoluteFile()));
+
+		// An irrelevant file doesn't change anything above its directory
+		File text = new File(other, "notes.txt");
+		assertTrue(text.createNewFile());
+		assertTrue(FolderRelevanceCache.update(text, true, false, configuration).isEmpty());
+
+		assertTrue(song.delete());
+		changed = FolderRelevanceCache.update(song, false, false, configuration);
+		assertEquals(4, changed.size());
+		assertFalse(FolderRelevanceCache.isRelevant(root, configuration));
+	}
+
+	private static File createDirectory(File parent, String... names) {
+		File result = parent;
+		for (String name : names) {
+			result = new File(result, name);
+			assertTrue(result.mkdir());
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the modification times of the directories back, since results
+	 * for recently modified directories aren't cached.
+	 */
+	private static void age(File directory) {
+		File[] children = directory.listFiles();
+		assertNotNull(children);
+		for (File child : children) {
+			if (child.isDirectory()) {
+				age(child);
+			}
+		}
+		assertTrue(directory.setLastModified(System.currentTimeMillis() - 60000));
+	}
+}
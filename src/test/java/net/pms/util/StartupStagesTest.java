@@ -0,0 +1,109 @@
+/*
+ * Digital Media Server, for streaming digital media to UPnP AV or DLNA
+ * compatible devices based on PS3 Media Server and Universal Media Server.
+ * Copyright (C) 2016 Digital Media Server developers.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses/.
+ */
+package net.pms.util;
+
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import net.pms.util.StartupStages.StageFailedException;
+
+public class StartupStagesTest {
+
+	@BeforeClass
+	public static void setUpClass() {
+		// Silence all log messages from the DMS code that is being tested
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.OFF);
+	}
+
+	@Test
+	public void testBackgroundStages() throws InterruptedException {
+		StartupStages stages = new StartupStages();
+		final CountDownLatch release = new CountDownLatch(1);
+		stages.start("a", new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+			}
+		});
+		stages.start("b", new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		});
+
+		// Stages don't wait for each other
+		stages.await("b");
+		assertEquals(Arrays.asList("b"), stages.getCompleted());
+		assertEquals(-1, stages.getDuration("a"));
+
+		release.countDown();
+		stages.await("a");
+		assertEquals(Arrays.asList("b", "a"), stages.getCompleted());
+		assertTrue(stages.getDuration("a") >= 0);
+
+		stages.record("c", System.nanoTime());
+		stages.await("c");
+		assertEquals(Arrays.asList("b", "a", "c"), stages.getCompleted());
+		stages.logTimings("Done");
+	}
+
+	@Test
+	public void testFailure() throws InterruptedException {
+		StartupStages stages = new StartupStages();
+		stages.start("a", new Runnable() {
+
+			@Override
+			public void run() {
+				throw new IllegalStateException("broken");
+			}
+		});
+		try {
+			stages.await("a");
+			fail("StageFailedException wasn't thrown");
+		} catch (StageFailedException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertTrue(stages.getCompleted().isEmpty());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testDuplicateStage() {
+		StartupStages stages = new StartupStages();
+		stages.record("a", System.nanoTime());
+		stages.start("a", new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		});
+	}
+}